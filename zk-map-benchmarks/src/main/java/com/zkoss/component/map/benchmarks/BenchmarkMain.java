@@ -0,0 +1,44 @@
+package com.zkoss.component.map.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.zkoss.component.map.core.Version;
+
+/**
+ * Punto de entrada de benchmarks.jar. Acepta las mismas opciones que JMH
+ * y, si no se indican, agrega el perfilador de GC (asignaciones por
+ * operación) y guarda los resultados en zk-map-VERSION.json, para comparar
+ * una versión con la siguiente.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams()
+                || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        if (cmd.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        if (!cmd.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+            if (!cmd.getResult().hasValue()) {
+                options.result("zk-map-" + Version.UID + ".json");
+            }
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,180 @@
+package com.zkoss.component.map.benchmarks;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.zkoss.json.JSONArray;
+import org.zkoss.zk.au.DeferredValue;
+import org.zkoss.zk.ui.Desktop;
+import org.zkoss.zk.ui.Execution;
+import org.zkoss.zk.ui.HtmlBasedComponent;
+import org.zkoss.zk.ui.sys.ContentRenderer;
+import org.zkoss.zk.ui.sys.DesktopCtrl;
+import org.zkoss.zk.ui.sys.ExecutionCtrl;
+import org.zkoss.zk.ui.sys.ExecutionsCtrl;
+
+import com.zkoss.component.map.core.AbstractMapComponent;
+import com.zkoss.component.map.core.Marker;
+import com.zkoss.component.map.google.GMMapComponent;
+import com.zkoss.component.map.leaflet.LFMapComponent;
+import com.zkoss.component.map.openlayers.OLMapComponent;
+
+/**
+ * Utilidades comunes de los benchmarks: los componentes de cada proveedor,
+ * marcadores de prueba y un entorno de ZK mínimo para usar los componentes
+ * sin servidor.
+ * <p>
+ * Los componentes no se agregan a ninguna página, así que ZK descarta las
+ * respuestas al cliente después de generarlas; lo que se mide es el
+ * trabajo del servidor hasta ese punto.
+ */
+final class BenchmarkSupport {
+
+    /** Valores de los parámetros "provider" */
+    static final String LEAFLET = "leaflet";
+    static final String GOOGLE = "google";
+    static final String OPENLAYERS = "openlayers";
+
+    private static final Method RENDER_PROPERTIES;
+
+    static {
+        try {
+            RENDER_PROPERTIES = HtmlBasedComponent.class.getDeclaredMethod("renderProperties", ContentRenderer.class);
+            RENDER_PROPERTIES.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Crea el componente de un proveedor
+     * @param provider "leaflet", "google" u "openlayers"
+     */
+    static AbstractMapComponent create(String provider) {
+        switch (provider) {
+            case LEAFLET:
+                return new LFMapComponent();
+            case GOOGLE:
+                return new GMMapComponent();
+            case OPENLAYERS:
+                return new OLMapComponent();
+            default:
+                throw new IllegalArgumentException("Proveedor desconocido: " + provider);
+        }
+    }
+
+    /**
+     * Componente de Leaflet que, en lugar de enviar los comandos al cliente,
+     * suma los caracteres del JSON de cada par [comando, datos], como los
+     * lleva la lista de comandos de una respuesta
+     * @param chars Contador de caracteres
+     */
+    static AbstractMapComponent counting(LongAdder chars) {
+        return new LFMapComponent() {
+            @Override
+            protected void invokeWidget(String key, String command, Object data) {
+                final JSONArray pair = new JSONArray();
+                pair.add(command);
+                pair.add(data instanceof DeferredValue ? ((DeferredValue) data).getValue() : data);
+                chars.add(pair.toJSONString().length());
+            }
+        };
+    }
+
+    /**
+     * Marcadores repartidos por Europa, siempre los mismos para una semilla;
+     * uno de cada cuatro lleva descripción
+     */
+    static List<Marker> markers(int count, long seed) {
+        final Random random = new Random(seed);
+        final List<Marker> markers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            markers.add(new Marker(36 + random.nextDouble() * 24, -10 + random.nextDouble() * 40,
+                    "Marcador " + i, i % 4 == 0 ? "Descripción del marcador " + i : null));
+        }
+        return markers;
+    }
+
+    /**
+     * Llama a renderProperties del componente, como hace ZK al dibujarlo
+     */
+    static void renderProperties(AbstractMapComponent map, ContentRenderer renderer) throws IOException {
+        try {
+            RENDER_PROPERTIES.invoke(map, renderer);
+        } catch (ReflectiveOperationException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException(cause != null ? cause : e);
+        }
+    }
+
+    /**
+     * Escritorio vacío para construir peticiones del cliente
+     */
+    static Desktop desktop() {
+        return (Desktop) Proxy.newProxyInstance(BenchmarkSupport.class.getClassLoader(),
+                new Class<?>[] {Desktop.class, DesktopCtrl.class},
+                (proxy, method, args) -> defaultValue(proxy, method, args));
+    }
+
+    /**
+     * Establece en el hilo actual una ejecución que solo cuenta los eventos
+     * publicados con Events.postEvent
+     * @param desktop Escritorio de la ejecución
+     * @param posted Contador de eventos
+     */
+    static void beginExecution(Desktop desktop, LongAdder posted) {
+        final Execution exec = (Execution) Proxy.newProxyInstance(BenchmarkSupport.class.getClassLoader(),
+                new Class<?>[] {Execution.class, ExecutionCtrl.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "postEvent":
+                            posted.increment();
+                            return null;
+                        case "getDesktop":
+                            return desktop;
+                        default:
+                            return defaultValue(proxy, method, args);
+                    }
+                });
+        ExecutionsCtrl.setCurrent(exec);
+    }
+
+    static void endExecution() {
+        ExecutionsCtrl.setCurrent(null);
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "benchmark";
+            default:
+                break;
+        }
+        final Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0d;
+        }
+        return null;
+    }
+}
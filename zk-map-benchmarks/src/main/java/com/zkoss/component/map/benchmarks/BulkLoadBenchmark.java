@@ -0,0 +1,95 @@
+package com.zkoss.component.map.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import com.zkoss.component.map.core.AbstractMapComponent;
+import com.zkoss.component.map.core.Marker;
+
+/**
+ * Carga masiva con addMarkers frente a un addMarker por marcador en un
+ * componente nuevo. Además del tiempo del servidor informa los caracteres
+ * por marcador de los comandos que recibiría el cliente.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class BulkLoadBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int markers;
+
+    private List<Marker> batch;
+
+    /**
+     * Tamaño de los comandos de la última carga, como contador secundario.
+     * JMH suma estos contadores en las iteraciones medidas, así que cada
+     * una aporta su parte del promedio
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Output {
+        public double payloadCharsPerMarker;
+        private int iterations;
+
+        @Setup(Level.Iteration)
+        public void reset(BenchmarkParams params) {
+            iterations = params.getMeasurement().getCount();
+            payloadCharsPerMarker = 0;
+        }
+
+        void record(double value) {
+            payloadCharsPerMarker = value / iterations;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        batch = BenchmarkSupport.markers(markers, 1);
+    }
+
+    /**
+     * Un addMarker por marcador: un comando por marcador
+     */
+    @Benchmark
+    public AbstractMapComponent addMarkerLoop(Output output) {
+        final LongAdder chars = new LongAdder();
+        final AbstractMapComponent map = BenchmarkSupport.counting(chars);
+        for (Marker marker : batch) {
+            map.addMarker(marker.getLatitude(), marker.getLongitude(), marker.getTitle(), marker.getDescription());
+        }
+        output.record((double) chars.sum() / markers);
+        return map;
+    }
+
+    /**
+     * Carga masiva: bloques de markerChunkSize filas
+     */
+    @Benchmark
+    public AbstractMapComponent addMarkers(Output output) {
+        final LongAdder chars = new LongAdder();
+        final AbstractMapComponent map = BenchmarkSupport.counting(chars);
+        map.addMarkers(batch);
+        output.record((double) chars.sum() / markers);
+        return map;
+    }
+}
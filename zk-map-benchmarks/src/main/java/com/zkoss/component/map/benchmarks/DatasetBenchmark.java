@@ -0,0 +1,68 @@
+package com.zkoss.component.map.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zkoss.component.map.core.AbstractMapComponent;
+import com.zkoss.component.map.core.MarkerDataset;
+
+/**
+ * Conjuntos de marcadores compartidos: un componente más que muestra una
+ * versión ya codificada (el caso de cada sesión nueva) frente a publicar
+ * una versión y enviarla, que vuelve a codificar el estado completo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class DatasetBenchmark {
+
+    @Param({"10000", "100000"})
+    public int markers;
+
+    private MarkerDataset dataset;
+    private double shift;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new MarkerDataset("benchmark");
+        dataset.publish(BenchmarkSupport.markers(markers, 1));
+        attachShared(); // Codifica la versión actual
+    }
+
+    /**
+     * Componente nuevo sobre la versión ya publicada: reutiliza el JSON
+     */
+    @Benchmark
+    public AbstractMapComponent attachShared() {
+        final AbstractMapComponent map = BenchmarkSupport.create(BenchmarkSupport.LEAFLET);
+        map.setDataset(dataset);
+        return map;
+    }
+
+    /**
+     * Mueve un marcador, publica la versión y la envía a un componente nuevo
+     */
+    @Benchmark
+    public AbstractMapComponent publishAndAttach() {
+        shift = shift == 0 ? 0.001 : 0;
+        dataset.update(store -> store.setPosition(0, 40.4168 + shift, -3.7038));
+        final AbstractMapComponent map = BenchmarkSupport.create(BenchmarkSupport.LEAFLET);
+        map.setDataset(dataset);
+        return map;
+    }
+}
@@ -0,0 +1,133 @@
+package com.zkoss.component.map.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zkoss.component.map.core.AbstractMapComponent;
+import com.zkoss.component.map.core.CsvMarkerReader;
+import com.zkoss.component.map.core.GeoJsonMarkerReader;
+import com.zkoss.component.map.core.Marker;
+import com.zkoss.component.map.core.MarkerReader;
+import com.zkoss.component.map.core.MarkerStore;
+
+/**
+ * Lectura en streaming de GeoJSON y CSV de hasta un millón de puntos, a
+ * un almacén y a un componente con addMarkers(Stream). Los documentos se
+ * generan en memoria para no medir el disco. El contador "features"
+ * da los puntos leídos por unidad de tiempo con {@code -bm thrpt}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class IngestBenchmark {
+
+    @Param({"geojson", "csv"})
+    public String format;
+
+    @Param({"100000", "1000000"})
+    public int features;
+
+    private byte[] document;
+    private MarkerReader reader;
+
+    /**
+     * Puntos leídos, como contador secundario que JMH divide por el tiempo
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public long features;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            features = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final List<Marker> markers = BenchmarkSupport.markers(features, 1);
+        final StringBuilder out = new StringBuilder(features * 120);
+        if ("csv".equals(format)) {
+            reader = new CsvMarkerReader();
+            out.append("id,lat,lng,title,description\n");
+            for (int i = 0; i < markers.size(); i++) {
+                final Marker marker = markers.get(i);
+                out.append(i).append(',').append(marker.getLatitude()).append(',').append(marker.getLongitude())
+                        .append(',').append(marker.getTitle()).append(',');
+                if (marker.getDescription() != null) {
+                    out.append('"').append(marker.getDescription()).append('"');
+                }
+                out.append('\n');
+            }
+        } else {
+            reader = new GeoJsonMarkerReader();
+            out.append("{\"type\":\"FeatureCollection\",\"features\":[");
+            for (int i = 0; i < markers.size(); i++) {
+                final Marker marker = markers.get(i);
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                        .append(marker.getLongitude()).append(',').append(marker.getLatitude())
+                        .append("]},\"properties\":{\"id\":").append(i)
+                        .append(",\"title\":\"").append(marker.getTitle()).append('"');
+                if (marker.getDescription() != null) {
+                    out.append(",\"description\":\"").append(marker.getDescription()).append('"');
+                }
+                out.append("}}");
+            }
+            out.append("]}");
+        }
+        document = out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lectura directa a un almacén, sin crear un Marker por punto
+     */
+    @Benchmark
+    public MarkerStore loadStore(Throughput throughput) throws IOException {
+        final MarkerStore store = new MarkerStore();
+        try (InputStream in = new ByteArrayInputStream(document)) {
+            reader.load(in, store);
+        }
+        throughput.features += store.size();
+        return store;
+    }
+
+    /**
+     * Lectura a un componente nuevo de Leaflet, con un Marker por punto
+     */
+    @Benchmark
+    public AbstractMapComponent addMarkers(Throughput throughput) throws IOException {
+        final AbstractMapComponent map = BenchmarkSupport.create(BenchmarkSupport.LEAFLET);
+        try (InputStream in = new ByteArrayInputStream(document);
+                Stream<Marker> stream = reader.stream(in)) {
+            map.addMarkers(stream);
+        }
+        throughput.features += map.getMarkerList().size();
+        return map;
+    }
+}
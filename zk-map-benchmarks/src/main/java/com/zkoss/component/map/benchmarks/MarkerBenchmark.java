@@ -0,0 +1,79 @@
+package com.zkoss.component.map.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zkoss.component.map.core.AbstractMapComponent;
+import com.zkoss.component.map.core.Marker;
+
+/**
+ * Altas y bajas de marcadores en un componente que ya tiene muchos: al
+ * final y en el medio del almacén, y la carga masiva con addMarkers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class MarkerBenchmark {
+
+    @Param({BenchmarkSupport.LEAFLET, BenchmarkSupport.GOOGLE, BenchmarkSupport.OPENLAYERS})
+    public String provider;
+
+    @Param({"1000", "100000"})
+    public int markers;
+
+    private AbstractMapComponent map;
+    private List<Marker> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        batch = BenchmarkSupport.markers(markers, 1);
+        map = BenchmarkSupport.create(provider);
+        map.addMarkers(batch);
+    }
+
+    /**
+     * Agrega un marcador y lo quita; el componente mantiene su tamaño
+     */
+    @Benchmark
+    public long addRemoveLast() {
+        final long id = map.addMarker(40.4168, -3.7038, "Nuevo", null, 0);
+        map.removeMarkerById(id);
+        return id;
+    }
+
+    /**
+     * Quita el marcador del medio y agrega otro al final
+     */
+    @Benchmark
+    public long removeMiddleAddLast() {
+        map.removeMarker(map.getMarkerList().size() / 2);
+        return map.addMarker(40.4168, -3.7038, "Nuevo", null, 0);
+    }
+
+    /**
+     * Carga todos los marcadores en un componente nuevo
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public AbstractMapComponent addMarkers() {
+        final AbstractMapComponent fresh = BenchmarkSupport.create(provider);
+        fresh.addMarkers(batch);
+        return fresh;
+    }
+}
@@ -0,0 +1,85 @@
+package com.zkoss.component.map.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.zkoss.zk.ui.sys.JsContentRenderer;
+
+import com.zkoss.component.map.core.AbstractMapComponent;
+
+/**
+ * Primer render del componente (renderProperties) con 1.000 a 1.000.000
+ * de marcadores, en JSON y en formato compacto. Además del tiempo informa
+ * los caracteres generados por marcador.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class RenderBenchmark {
+
+    @Param({BenchmarkSupport.LEAFLET, BenchmarkSupport.GOOGLE, BenchmarkSupport.OPENLAYERS})
+    public String provider;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int markers;
+
+    @Param({"json", "compact"})
+    public String markerEncoding;
+
+    private AbstractMapComponent map;
+
+    /**
+     * Tamaño de la última respuesta, como contador secundario. JMH suma
+     * estos contadores en las iteraciones medidas, así que cada una aporta
+     * su parte del promedio
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Output {
+        public double charsPerMarker;
+        private int iterations;
+
+        @Setup(Level.Iteration)
+        public void reset(BenchmarkParams params) {
+            iterations = params.getMeasurement().getCount();
+            charsPerMarker = 0;
+        }
+
+        void record(double value) {
+            charsPerMarker = value / iterations;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = BenchmarkSupport.create(provider);
+        map.setMarkerEncoding(markerEncoding);
+        map.addMarkers(BenchmarkSupport.markers(markers, 1));
+    }
+
+    @Benchmark
+    public CharSequence renderProperties(Output output) throws IOException {
+        final JsContentRenderer renderer = new JsContentRenderer();
+        BenchmarkSupport.renderProperties(map, renderer);
+        final CharSequence buffer = renderer.getBuffer();
+        output.record((double) buffer.length() / markers);
+        return buffer;
+    }
+}
@@ -0,0 +1,113 @@
+package com.zkoss.component.map.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import com.zkoss.component.map.core.AbstractMapComponent;
+import com.zkoss.component.map.core.MarkerStore;
+
+/**
+ * Serialización del componente como la hace el contenedor al replicar o
+ * guardar la sesión. Además del tiempo informa los bytes por marcador;
+ * con compress en "true" los marcadores se comprimen
+ * ({@link MarkerStore#COMPRESS_PROPERTY}). Con format en "json" se
+ * serializa en cambio el JSONArray de marcadores que guardaba antes el
+ * componente, con la serialización por defecto, para comparar con el
+ * formato anterior (compress no influye).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SerializationBenchmark {
+
+    @Param({BenchmarkSupport.LEAFLET, BenchmarkSupport.GOOGLE, BenchmarkSupport.OPENLAYERS})
+    public String provider;
+
+    @Param({"10000", "100000"})
+    public int markers;
+
+    @Param({"false", "true"})
+    public String compress;
+
+    @Param({"packed", "json"})
+    public String format;
+
+    private Object session;
+    private byte[] serialized;
+
+    /**
+     * Tamaño del último componente serializado, como contador secundario.
+     * JMH suma estos contadores en las iteraciones medidas, así que cada
+     * una aporta su parte del promedio
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Output {
+        public double bytesPerMarker;
+        private int iterations;
+
+        @Setup(Level.Iteration)
+        public void reset(BenchmarkParams params) {
+            iterations = params.getMeasurement().getCount();
+            bytesPerMarker = 0;
+        }
+
+        void record(double value) {
+            bytesPerMarker = value / iterations;
+        }
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("deprecation") // getMarkers() da el formato anterior
+    public void setUp() throws IOException {
+        System.setProperty(MarkerStore.COMPRESS_PROPERTY, compress);
+        final AbstractMapComponent map = BenchmarkSupport.create(provider);
+        map.addMarkers(BenchmarkSupport.markers(markers, 1));
+        session = "json".equals(format) ? map.getMarkers() : map;
+        serialized = serialize(session);
+    }
+
+    @Benchmark
+    public byte[] serialize(Output output) throws IOException {
+        final byte[] bytes = serialize(session);
+        output.record((double) bytes.length / markers);
+        return bytes;
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+}
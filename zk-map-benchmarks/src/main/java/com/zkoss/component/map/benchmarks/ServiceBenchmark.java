@@ -0,0 +1,103 @@
+package com.zkoss.component.map.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zkoss.zk.au.AuRequest;
+import org.zkoss.zk.ui.Desktop;
+
+import com.zkoss.component.map.core.AbstractMapComponent;
+
+/**
+ * Despacho de los eventos del cliente en service(): desde la petición ya
+ * decodificada hasta el evento publicado en la ejecución. onMarkerClickBatch
+ * mide por clic una petición agrupada de {@value #BATCH} clics que se
+ * publica como un solo onMarkerClickBatch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceBenchmark {
+
+    @Param({BenchmarkSupport.LEAFLET, BenchmarkSupport.GOOGLE, BenchmarkSupport.OPENLAYERS})
+    public String provider;
+
+    @Param({"1000", "100000"})
+    public int markers;
+
+    private static final int BATCH = 1000; // Clics de una petición agrupada
+
+    private final LongAdder posted = new LongAdder();
+    private AbstractMapComponent map;
+    private AbstractMapComponent batchMap; // Escucha onMarkerClickBatch
+    private Desktop desktop;
+    private Map<String, Object> mapClick;
+    private Map<String, Object> markerClick;
+    private Map<String, Object> markerClickBatch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = BenchmarkSupport.create(provider);
+        map.addMarkers(BenchmarkSupport.markers(markers, 1));
+        desktop = BenchmarkSupport.desktop();
+        BenchmarkSupport.beginExecution(desktop, posted);
+        mapClick = Collections.singletonMap("data", Arrays.asList(40.4168, -3.7038));
+        markerClick = Collections.singletonMap("data",
+                Collections.singletonList(map.getMarkerId(markers / 2)));
+
+        batchMap = BenchmarkSupport.create(provider);
+        batchMap.addMarkers(BenchmarkSupport.markers(markers, 1));
+        batchMap.addEventListener("onMarkerClickBatch", event -> { });
+        final List<Object> clicks = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            clicks.add(Collections.singletonList(batchMap.getMarkerId((int) ((long) i * markers / BATCH))));
+        }
+        markerClickBatch = Collections.singletonMap("batch", clicks);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.endExecution();
+        if (posted.sum() == 0) {
+            throw new IllegalStateException("No se publicó ningún evento");
+        }
+    }
+
+    @Benchmark
+    public void onMapClick() {
+        map.service(new AuRequest(desktop, "onMapClick", mapClick), false);
+    }
+
+    @Benchmark
+    public void onMarkerClick() {
+        map.service(new AuRequest(desktop, "onMarkerClick", markerClick), false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void onMarkerClickBatch() {
+        batchMap.service(new AuRequest(desktop, "onMarkerClick", markerClickBatch), false);
+    }
+}
@@ -0,0 +1,125 @@
+package com.zkoss.component.map.benchmarks;
+
+import java.lang.ref.Reference;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.zkoss.json.JSONArray;
+import org.zkoss.json.JSONObject;
+
+import com.zkoss.component.map.core.Marker;
+import com.zkoss.component.map.core.MarkerStore;
+
+/**
+ * Almacén de columnas ({@link MarkerStore}) frente al JSONArray de un
+ * JSONObject por marcador que usaba el componente antes. Además del tiempo
+ * de carga informa la memoria retenida por marcador, medida una vez por
+ * prueba con el heap usado antes y después de cargar.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class StoreBenchmark {
+
+    @Param({"store", "json"})
+    public String structure;
+
+    @Param({"50000", "500000"})
+    public int markers;
+
+    private List<Marker> batch;
+    private double retainedPerMarker;
+
+    /**
+     * Memoria retenida por marcador, como contador secundario. JMH suma
+     * estos contadores en las iteraciones medidas, así que cada una aporta
+     * su parte del promedio
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Output {
+        public double retainedBytesPerMarker;
+        private int iterations;
+
+        @Setup(Level.Iteration)
+        public void reset(BenchmarkParams params) {
+            iterations = params.getMeasurement().getCount();
+            retainedBytesPerMarker = 0;
+        }
+
+        void record(double value) {
+            retainedBytesPerMarker = value / iterations;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        batch = BenchmarkSupport.markers(markers, 1);
+        retainedPerMarker = (double) retained(this::build) / markers;
+    }
+
+    @Benchmark
+    public Object load(Output output) {
+        output.record(retainedPerMarker);
+        return build();
+    }
+
+    private Object build() {
+        if ("json".equals(structure)) {
+            final JSONArray array = new JSONArray();
+            long id = 1;
+            for (Marker marker : batch) {
+                final JSONObject json = new JSONObject();
+                json.put("id", id++);
+                json.put("lat", marker.getLatitude());
+                json.put("lng", marker.getLongitude());
+                json.put("title", marker.getTitle());
+                json.put("description", marker.getDescription());
+                array.add(json);
+            }
+            return array;
+        }
+        final MarkerStore store = new MarkerStore();
+        for (Marker marker : batch) {
+            store.add(marker.getLatitude(), marker.getLongitude(), marker.getTitle(), marker.getDescription());
+        }
+        return store;
+    }
+
+    /**
+     * Bytes de heap que quedan ocupados por el valor creado
+     */
+    private static long retained(Supplier<Object> factory) {
+        final long before = usedAfterGc();
+        final Object value = factory.get();
+        final long after = usedAfterGc();
+        Reference.reachabilityFence(value);
+        return after - before;
+    }
+
+    private static long usedAfterGc() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -1,9 +1,35 @@
 package com.zkoss.component.map.core;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.zkoss.zk.au.AuRequest;
+import org.zkoss.zk.au.DeferredValue;
+import org.zkoss.zk.au.out.AuInvoke;
 import org.zkoss.zk.ui.Component;
+import org.zkoss.zk.ui.Desktop;
+import org.zkoss.zk.ui.Execution;
+import org.zkoss.zk.ui.Executions;
+import org.zkoss.zk.ui.Page;
+import org.zkoss.zk.ui.event.Event;
+import org.zkoss.zk.ui.event.Events;
 import org.zkoss.zul.impl.XulElement;
-import org.zkoss.json.JSONObject;
 import org.zkoss.json.JSONArray;
+import org.zkoss.json.JSONAware;
+import org.zkoss.json.JSONObject;
 
 /**
  * Clase base abstracta para componentes de mapa
@@ -14,13 +40,136 @@ public abstract class AbstractMapComponent extends XulElement implements MapComp
     
     private static final long serialVersionUID = 1L;
     
+    // Decodificadores de eventos del cliente por clase de componente y nombre
+    private static final Map<Class<?>, Map<String, MapEventDecoder<?>>> eventDecoders = new ConcurrentHashMap<>();
+    
+    static {
+        addClientEvent(AbstractMapComponent.class, "onMarkersLoad", 0);
+        // Importantes: sin listeners viajan diferidos para sincronizar el estado
+        addClientEvent(AbstractMapComponent.class, "onViewportChange", CE_IMPORTANT);
+        addClientEvent(AbstractMapComponent.class, "onMarkerDrag", CE_IMPORTANT);
+        
+        // Eventos que solo se traducen y se publican, comunes a todos los proveedores
+        addEventDecoder(AbstractMapComponent.class, "onMapClick", (map, name, data) -> data.size() >= 2
+                ? new MapClickEvent(name, map, ((Number) data.get(0)).doubleValue(),
+                        ((Number) data.get(1)).doubleValue())
+                : null);
+        addEventDecoder(AbstractMapComponent.class, "onMarkerClick", (map, name, data) -> {
+            if (data.isEmpty()) {
+                return null;
+            }
+            final long markerId = ((Number) data.get(0)).longValue();
+            final int markerIndex = map.indexOfMarker(markerId);
+            if (markerIndex < 0 && !map.isDatasetMarker(markerId)) {
+                return null;
+            }
+            return new MarkerClickEvent(name, map, markerIndex, markerId);
+        });
+        addEventDecoder(AbstractMapComponent.class, "onMarkersLoad", (map, name, data) -> data.size() >= 2
+                ? new MarkersLoadEvent(name, map, ((Number) data.get(0)).intValue(),
+                        ((Number) data.get(1)).intValue())
+                : null);
+    }
+    
+    /**
+     * Registra el decodificador de un evento del cliente. Vale para la
+     * clase indicada y sus subclases, así que un evento registrado en
+     * AbstractMapComponent llega a todos los proveedores; una subclase
+     * puede reemplazarlo con su propio registro
+     * @param cls Clase de componente
+     * @param name Nombre del evento que envía el widget
+     * @param decoder Decodificador de los datos de un evento
+     */
+    public static void addEventDecoder(Class<? extends AbstractMapComponent> cls, String name,
+            MapEventDecoder<?> decoder) {
+        eventDecoders.computeIfAbsent(cls, k -> new ConcurrentHashMap<>()).put(name, Objects.requireNonNull(decoder));
+    }
+    
+    /**
+     * Busca el decodificador de un evento en la clase y sus superclases
+     * @return Decodificador, null si el evento no tiene
+     */
+    static MapEventDecoder<?> getEventDecoder(Class<?> cls, String name) {
+        for (Class<?> c = cls; c != null && c != XulElement.class; c = c.getSuperclass()) {
+            final Map<String, MapEventDecoder<?>> decoders = eventDecoders.get(c);
+            final MapEventDecoder<?> decoder = decoders != null ? decoders.get(name) : null;
+            if (decoder != null) {
+                return decoder;
+            }
+        }
+        return null;
+    }
+    
     // Propiedades del mapa
     protected double latitude = 40.4168; // Madrid por defecto
     protected double longitude = -3.7038;
     protected int zoom = 10;
     protected String mapType = "standard"; // Tipo de mapa por defecto
     protected boolean showControls = true;
-    protected JSONArray markers = new JSONArray();
+    protected MarkerStore markers = new MarkerStore();
+    protected int markerChunkSize = 5000; // Marcadores por bloque en las cargas masivas
+    protected String markerEncoding = "json"; // Formato de los marcadores en el primer render
+    protected String renderMode = "dom"; // Dibujo de los marcadores: dom, canvas o webgl
+    private final List<MarkerStyle> markerStyles = new ArrayList<>(); // Identificador = posición + 1
+    private final Map<MarkerStyle, Integer> markerStyleIds = new HashMap<>();
+    
+    // Agrupación de marcadores
+    protected boolean clustering = false;
+    protected int clusterRadius = MarkerClusterer.DEFAULT_RADIUS;
+    protected int clusterMaxZoom = MarkerClusterer.DEFAULT_MAX_ZOOM;
+    protected boolean clusterZoomOnClick = true;
+    private transient MarkerClusterer clusterer; // Se construye al primer uso
+    
+    // Envío de marcadores según el área visible
+    protected boolean viewportStreaming = false;
+    protected double viewportMargin = 0.5; // Margen del área pedida, proporcional a la visible
+    private boolean hasViewport;           // El cliente ya informó su área
+    private double viewSouth, viewWest, viewNorth, viewEast;
+    private long[] clientKeys = new long[0]; // Claves de los marcadores del cliente, en orden
+    private int clientCount;
+    
+    // Eventos regulados del cliente
+    protected boolean markersDraggable = false;
+    protected int viewportEventDelay = 300; // Espera tras el último movimiento, en ms
+    protected int dragEventInterval = 150;  // Intervalo mínimo entre eventos de arrastre, en ms
+    
+    // Conjunto de marcadores compartido, además de los propios
+    protected MarkerDataset dataset;
+    private transient long datasetVersion = -1; // Versión que tiene el cliente
+    protected String vectorTiles; // URL base del servlet de tiles vectoriales, null = marcadores
+    
+    // Líneas y polígonos, simplificados según el zoom
+    protected double shapeTolerance = 1; // Desviación permitida al simplificar, en píxeles
+    private final ShapeStore shapes = new ShapeStore();
+    private int shapesZoom = -1;         // Zoom de las formas que tiene el cliente
+    private boolean shapesReset;         // El cliente debe recibir todas las formas
+    private final List<Long> shapesAdded = new ArrayList<>();   // Altas aún no enviadas
+    private final List<Long> shapesRemoved = new ArrayList<>(); // Bajas aún no enviadas
+    
+    // Mapa de calor agregado en el servidor
+    protected HeatmapLayer heatmap;
+    private transient long heatmapVersion = -1; // Versión de los puntos que tiene el cliente
+    
+    // Seguimiento en vivo
+    protected int trackingRate = 0;             // Cuadros por segundo, 0 = desactivado
+    protected boolean trackingAnimation = true; // Animar los marcadores entre cuadros
+    private transient volatile LiveTracker tracker;
+    
+    // Índice espacial de los marcadores
+    protected int hitTolerance = 12; // Píxeles alrededor de un clic que cuentan como acierto
+    private transient MarkerIndex spatialIndex; // Se construye al primer uso
+    private transient ReverseGeocoder reverseGeocoder; // Nombres de lugar de los clics
+    
+    // Creación del mapa del cliente al verse por primera vez
+    protected boolean lazyInit = false;
+    private boolean clientPending; // El widget aún no se vio: no recibe comandos
+    private boolean clientShowing; // El próximo render es el del widget ya visible
+    
+    // Combinación de comandos por ejecución y lotes explícitos
+    private transient Execution commandExecution;
+    private transient MapCommandQueue commandQueue;
+    private int batchDepth;
+    private boolean batchClusters, batchViewport;
     
     @Override
     public double getLatitude() {
@@ -29,11 +178,9 @@ public abstract class AbstractMapComponent extends XulElement implements MapComp
     
     @Override
     public void setLatitude(double latitude) {
-        if (latitude < -90 || latitude > 90) {
-            throw new IllegalArgumentException("Latitude debe estar entre -90 y 90");
-        }
+        checkLatitude(latitude);
         this.latitude = latitude;
-        smartUpdate("latitude", latitude);
+        handleCenterMap(latitude, longitude);
     }
     
     @Override
@@ -43,11 +190,9 @@ public abstract class AbstractMapComponent extends XulElement implements MapComp
     
     @Override
     public void setLongitude(double longitude) {
-        if (longitude < -180 || longitude > 180) {
-            throw new IllegalArgumentException("Longitude debe estar entre -180 y 180");
-        }
+        checkLongitude(longitude);
         this.longitude = longitude;
-        smartUpdate("longitude", longitude);
+        handleCenterMap(latitude, longitude);
     }
     
     @Override
@@ -57,11 +202,10 @@ public abstract class AbstractMapComponent extends XulElement implements MapComp
     
     @Override
     public void setZoom(int zoom) {
-        if (zoom < 0 || zoom > 20) {
-            throw new IllegalArgumentException("Zoom debe estar entre 0 y 20");
-        }
+        checkZoom(zoom);
         this.zoom = zoom;
-        smartUpdate("zoom", zoom);
+        handleSetZoom(zoom);
+        updateShapesForZoom();
     }
     
     @Override
@@ -86,109 +230,1986 @@ public abstract class AbstractMapComponent extends XulElement implements MapComp
         smartUpdate("showControls", showControls);
     }
     
+    @Deprecated
     @Override
     public JSONArray getMarkers() {
-        return markers;
+        return markers.toJSONArray();
+    }
+    
+    @Override
+    public List<JSONObject> getMarkerList() {
+        return markers.asList();
     }
     
     @Override
     public void addMarker(double lat, double lng, String title, String description) {
-        JSONObject marker = new JSONObject();
-        marker.put("lat", lat);
-        marker.put("lng", lng);
-        marker.put("title", title);
-        marker.put("description", description);
-        markers.add(marker);
+        addMarker(lat, lng, title, description, 0);
+    }
+    
+    /**
+     * Agrega un marcador con estilo y devuelve su identificador
+     * @param lat Latitud del marcador
+     * @param lng Longitud del marcador
+     * @param title Título del marcador
+     * @param description Descripción del marcador
+     * @param style Identificador devuelto por {@link #addMarkerStyle}, 0
+     *        para el estilo por defecto
+     * @return Identificador del marcador
+     */
+    public long addMarker(double lat, double lng, String title, String description, int style) {
+        checkLatitude(lat);
+        checkLongitude(lng);
+        checkMarkerStyle(style);
+        int index = markers.add(lat, lng, title, description, style);
+        final long id = markers.getKey(index);
+        if (clusterer != null) {
+            clusterer.add(id, lat, lng);
+        }
+        if (spatialIndex != null) {
+            spatialIndex.insert(id, lat, lng);
+        }
         
         // La implementación específica debe manejar cómo actualizar el mapa
-        handleAddMarker(marker);
+        if (clustering) {
+            updateClusters();
+        } else if (viewportStreaming) {
+            if (isInViewport(lat, lng)) {
+                updateViewport();
+            }
+        } else {
+            handleAddMarker(markers.toJSON(index));
+        }
+        return id;
     }
     
     @Override
-    public void removeMarker(int index) {
-        if (index >= 0 && index < markers.size()) {
-            markers.remove(index);
+    public void addMarkers(Collection<? extends Marker> markers) {
+        addMarkers(markers.stream());
+    }
+    
+    @Override
+    public void addMarkers(Stream<? extends Marker> stream) {
+        final int offset = markers.size();
+        try {
+            stream.forEachOrdered(m -> {
+                checkLatitude(m.getLatitude());
+                checkLongitude(m.getLongitude());
+                checkMarkerStyle(m.getStyle());
+                markers.add(m.getLatitude(), m.getLongitude(), m.getTitle(), m.getDescription(), m.getStyle());
+            });
+        } catch (RuntimeException e) {
+            // Un marcador inválido o nulo, o un error al leer el origen
+            // (UncheckedIOException de MarkerReader), descarta toda la carga
+            for (int i = markers.size() - 1; i >= offset; i--) {
+                markers.remove(i);
+            }
+            throw e;
+        }
+        if (clusterer != null) {
+            for (int i = offset; i < markers.size(); i++) {
+                clusterer.add(markers.getKey(i), markers.getLatitude(i), markers.getLongitude(i));
+            }
+        }
+        if (spatialIndex != null) {
+            if (markers.size() - offset > offset) {
+                // Más de la mitad son nuevos: es más rápido recargar con STR
+                spatialIndex = null;
+            } else {
+                for (int i = offset; i < markers.size(); i++) {
+                    spatialIndex.insert(markers.getKey(i), markers.getLatitude(i), markers.getLongitude(i));
+                }
+            }
+        }
+        
+        if (clustering) {
+            updateClusters();
+        } else if (viewportStreaming) {
+            updateViewport();
+        } else {
+            sendMarkerChunks(offset, markers.size());
+        }
+    }
+    
+    /**
+     * Establece cuántos marcadores viajan en cada bloque de una carga masiva
+     * @param markerChunkSize Marcadores por bloque (mayor que 0)
+     */
+    public void setMarkerChunkSize(int markerChunkSize) {
+        if (markerChunkSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de bloque debe ser mayor que 0");
+        }
+        this.markerChunkSize = markerChunkSize;
+    }
+    
+    /**
+     * Obtiene cuántos marcadores viajan en cada bloque de una carga masiva
+     * @return Marcadores por bloque
+     */
+    public int getMarkerChunkSize() {
+        return markerChunkSize;
+    }
+    
+    /**
+     * Establece el formato con que viajan los marcadores en el render
+     * inicial: "json" (lista de objetos) o "compact" (coordenadas en
+     * precisión fija codificadas por diferencias y tabla de textos
+     * compartida, mucho más pequeño en mapas grandes)
+     * @param markerEncoding Formato de los marcadores
+     */
+    public void setMarkerEncoding(String markerEncoding) {
+        if (!"json".equals(markerEncoding) && !"compact".equals(markerEncoding)) {
+            throw new IllegalArgumentException("El formato de marcadores debe ser json o compact");
+        }
+        this.markerEncoding = markerEncoding;
+    }
+    
+    /**
+     * Obtiene el formato de los marcadores en el render inicial
+     * @return "json" o "compact"
+     */
+    public String getMarkerEncoding() {
+        return markerEncoding;
+    }
+    
+    /**
+     * Establece cómo dibuja el cliente los marcadores propios y los del
+     * conjunto compartido: "dom" (un elemento por marcador, con icono,
+     * título y arrastre), "canvas" (círculos dibujados en un canvas
+     * compartido, para decenas de miles de marcadores) o "webgl" (capa de
+     * puntos de OpenLayers en la GPU; Leaflet y Google Maps dibujan como
+     * en canvas). En webgl las cargas masivas viajan como arreglos planos
+     * (coordenadas en float32, identificadores y códigos de texto). Los
+     * clics siguen generando onMarkerClick en todos los modos; fuera de dom
+     * los estilos se reducen a su color y tamaño y el arrastre solo
+     * funciona en OpenLayers. Cambiarlo redibuja el mapa.
+     * @param renderMode Modo de dibujo
+     */
+    public void setRenderMode(String renderMode) {
+        if (!"dom".equals(renderMode) && !"canvas".equals(renderMode) && !"webgl".equals(renderMode)) {
+            throw new IllegalArgumentException("El modo de dibujo debe ser dom, canvas o webgl");
+        }
+        if (!this.renderMode.equals(renderMode)) {
+            this.renderMode = renderMode;
+            invalidate();
+        }
+    }
+    
+    /**
+     * Obtiene cómo dibuja el cliente los marcadores
+     * @return "dom", "canvas" o "webgl"
+     */
+    public String getRenderMode() {
+        return renderMode;
+    }
+    
+    /**
+     * Activa la creación diferida del mapa: el widget no crea el mapa ni
+     * carga la librería hasta que su nodo se ve por primera vez (por
+     * ejemplo, al abrir la pestaña que lo contiene). Mientras tanto el
+     * servidor no le envía comandos y guarda el estado; al mostrarse lo
+     * redibuja una sola vez con todo el estado y los marcadores en el
+     * formato compacto
+     * @param lazyInit true para esperar a que el mapa se vea
+     */
+    public void setLazyInit(boolean lazyInit) {
+        if (this.lazyInit != lazyInit) {
+            this.lazyInit = lazyInit;
+            if (!lazyInit && clientPending) {
+                // El widget que espera no recibió el estado
+                clientShowing = true;
+                invalidate();
+            }
+        }
+    }
+    
+    /**
+     * Indica si el mapa se crea al verse por primera vez
+     * @return true si la creación es diferida
+     */
+    public boolean isLazyInit() {
+        return lazyInit;
+    }
+    
+    /**
+     * Establece un conjunto de marcadores compartido (ver
+     * {@link MarkerDatasets}). Sus marcadores se muestran en una capa
+     * propia, además de los del componente; la agrupación, el envío por
+     * área visible, el arrastre y {@link #getMarkerList()} solo se aplican a
+     * los marcadores del componente.
+     * @param dataset Conjunto compartido, null para quitarlo
+     */
+    public void setDataset(MarkerDataset dataset) {
+        if (this.dataset != dataset) {
+            this.dataset = dataset;
+            datasetVersion = -1;
+            if (dataset != null) {
+                refreshDataset();
+            } else {
+                handleUpdateDataset(MarkerDataset.EMPTY.fullPayload());
+            }
+        }
+    }
+    
+    /**
+     * Obtiene el conjunto de marcadores compartido
+     * @return Conjunto compartido, null si no hay
+     */
+    public MarkerDataset getDataset() {
+        return dataset;
+    }
+    
+    /**
+     * Envía al cliente la última versión del conjunto compartido, si aún no
+     * la tiene: solo las diferencias cuando el cliente tiene la versión
+     * anterior y el estado completo en otro caso. Ambos se codifican una
+     * vez por versión y se reutilizan en todos los componentes. Se llama
+     * sola con cada petición del cliente a este componente; para mostrar
+     * las publicaciones sin esperar una, se llama desde server push o un
+     * temporizador.
+     */
+    public void refreshDataset() {
+        if (dataset == null) {
+            return;
+        }
+        final MarkerDataset.Snapshot snapshot = dataset.getSnapshot();
+        if (snapshot.getVersion() == datasetVersion) {
+            return;
+        }
+        JSONAware payload = snapshot.getVersion() == datasetVersion + 1 && !isDatasetTiled()
+                ? snapshot.diffPayload() : null;
+        if (payload == null) {
+            payload = datasetPayload(snapshot);
+        }
+        datasetVersion = snapshot.getVersion();
+        handleUpdateDataset(payload);
+    }
+    
+    /**
+     * Establece la URL base del servlet de tiles vectoriales (módulo
+     * zk-map-vector), por ejemplo "/zk-map/mvt". Con un conjunto compartido,
+     * el cliente carga entonces solo los tiles del área visible en lugar de
+     * recibir todos los marcadores, y cada nueva versión solo cambia la URL
+     * de la capa. Los proveedores sin capas vectoriales (Google Maps)
+     * siguen recibiendo los marcadores.
+     * @param vectorTiles URL base del servlet, null para enviar los marcadores
+     */
+    public void setVectorTiles(String vectorTiles) {
+        final String url = vectorTiles != null && vectorTiles.endsWith("/")
+                ? vectorTiles.substring(0, vectorTiles.length() - 1) : vectorTiles;
+        if (!Objects.equals(this.vectorTiles, url)) {
+            this.vectorTiles = url;
+            datasetVersion = -1;
+            refreshDataset();
+        }
+    }
+    
+    /**
+     * Obtiene la URL base del servlet de tiles vectoriales
+     * @return URL base, null si se envían los marcadores
+     */
+    public String getVectorTiles() {
+        return vectorTiles;
+    }
+    
+    /**
+     * Indica si la implementación puede mostrar tiles vectoriales (MVT)
+     * @return false por defecto
+     */
+    protected boolean supportsVectorTiles() {
+        return false;
+    }
+    
+    private boolean isDatasetTiled() {
+        return vectorTiles != null && supportsVectorTiles();
+    }
+    
+    /**
+     * Estado completo del conjunto para el cliente: los marcadores o, con
+     * tiles vectoriales, {version, tiles} con la URL de los tiles de esa
+     * versión (la versión en la URL permite cachearlos sin caducidad)
+     */
+    private JSONAware datasetPayload(MarkerDataset.Snapshot snapshot) {
+        if (!isDatasetTiled()) {
+            return snapshot.fullPayload();
+        }
+        final JSONObject payload = new JSONObject();
+        payload.put("version", snapshot.getVersion());
+        payload.put("tiles", vectorTiles + "/"
+                + URLEncoder.encode(dataset.getName(), StandardCharsets.UTF_8).replace("+", "%20")
+                + "/{z}/{x}/{y}.pbf?v=" + snapshot.getVersion());
+        return payload;
+    }
+    
+    /**
+     * Indica si un identificador de marcador pertenece al conjunto compartido
+     * @param id Identificador del marcador
+     * @return true si es un marcador de la última versión del conjunto
+     */
+    public boolean isDatasetMarker(long id) {
+        return dataset != null && id >= MarkerDataset.KEY_BASE
+                && dataset.getSnapshot().getMarker(id) != null;
+    }
+    
+    /**
+     * Envía al cliente los marcadores [from, to) en bloques de
+     * {@link #markerChunkSize} filas (ver {@link #markerRow}), o de arreglos
+     * planos en el modo webgl
+     */
+    private void sendMarkerChunks(int from, int to) {
+        final int total = to - from;
+        for (int start = from; start < to; start += markerChunkSize) {
+            final int end = Math.min(to, start + markerChunkSize);
+            JSONObject chunk = new JSONObject();
+            chunk.put("loaded", end - from);
+            chunk.put("total", total);
+            if ("webgl".equals(renderMode)) {
+                final int[] indexes = new int[end - start];
+                for (int i = start; i < end; i++) {
+                    indexes[i - start] = i;
+                }
+                chunk.put("arrays", new JSONPayload(MarkerCodec.encodeArrays(markers, indexes)));
+            } else {
+                final List<Object[]> rows = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) {
+                    rows.add(markerRow(i));
+                }
+                chunk.put("markers", rows);
+            }
             
             // La implementación específica debe manejar cómo actualizar el mapa
-            handleRemoveMarker(index);
+            handleAddMarkers(chunk);
         }
     }
     
+    /**
+     * Fila [lat, lng, title, description, id] de un marcador, con el
+     * identificador del estilo como sexto elemento si no es el por defecto
+     */
+    private Object[] markerRow(int index) {
+        final int style = markers.getStyle(index);
+        return style == 0
+                ? new Object[] {
+                    markers.getLatitude(index), markers.getLongitude(index),
+                    markers.getTitle(index), markers.getDescription(index), markers.getKey(index)
+                }
+                : new Object[] {
+                    markers.getLatitude(index), markers.getLongitude(index),
+                    markers.getTitle(index), markers.getDescription(index), markers.getKey(index), style
+                };
+    }
+    
     @Override
-    public void clearMarkers() {
-        markers.clear();
+    public void removeMarker(int index) {
+        if (index >= 0 && index < markers.size()) {
+            removeMarkerById(markers.getKey(index));
+        }
+    }
+    
+    @Override
+    public boolean removeMarkerById(long id) {
+        final int index = markers.indexOfKey(id);
+        if (index < 0) {
+            return false;
+        }
+        if (clusterer != null) {
+            clusterer.remove(id, markers.getLatitude(index), markers.getLongitude(index));
+        }
+        if (spatialIndex != null) {
+            spatialIndex.remove(id, markers.getLatitude(index), markers.getLongitude(index));
+        }
+        markers.remove(index);
         
         // La implementación específica debe manejar cómo actualizar el mapa
-        handleClearMarkers();
+        if (clustering) {
+            updateClusters();
+        } else if (viewportStreaming) {
+            if (isOnClient(id)) {
+                updateViewport();
+            }
+        } else {
+            handleRemoveMarker(id);
+        }
+        return true;
     }
     
     @Override
-    public void centerMap(double lat, double lng) {
-        setLatitude(lat);
-        setLongitude(lng);
+    public boolean moveMarker(long id, double lat, double lng) {
+        checkLatitude(lat);
+        checkLongitude(lng);
+        final int index = markers.indexOfKey(id);
+        if (index < 0) {
+            return false;
+        }
+        if (markers.getLatitude(index) != lat || markers.getLongitude(index) != lng) {
+            relocateMarker(id, index, lat, lng);
+            
+            JSONObject changes = new JSONObject();
+            changes.put("id", id);
+            changes.put("lat", lat);
+            changes.put("lng", lng);
+            sendMarkerChanges(id, lat, lng, changes);
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean updateMarker(long id, double lat, double lng, String title, String description) {
+        checkLatitude(lat);
+        checkLongitude(lng);
+        final int index = markers.indexOfKey(id);
+        if (index < 0) {
+            return false;
+        }
+        
+        // Solo viajan los campos que cambian
+        JSONObject changes = new JSONObject();
+        changes.put("id", id);
+        if (markers.getLatitude(index) != lat || markers.getLongitude(index) != lng) {
+            relocateMarker(id, index, lat, lng);
+            changes.put("lat", lat);
+            changes.put("lng", lng);
+        }
+        if (!Objects.equals(title, markers.getTitle(index))) {
+            markers.setTitle(index, title);
+            changes.put("title", title);
+        }
+        if (!Objects.equals(description, markers.getDescription(index))) {
+            markers.setDescription(index, description);
+            changes.put("description", description);
+        }
+        if (changes.size() > 1) {
+            sendMarkerChanges(id, lat, lng, changes);
+        }
+        return true;
+    }
+    
+    /**
+     * Cambia el estilo de un marcador; el cliente solo recibe el
+     * identificador del nuevo estilo
+     * @param id Identificador del marcador
+     * @param style Identificador devuelto por {@link #addMarkerStyle}, 0
+     *        para el estilo por defecto
+     * @return true si el marcador existe
+     */
+    public boolean setMarkerStyle(long id, int style) {
+        checkMarkerStyle(style);
+        final int index = markers.indexOfKey(id);
+        if (index < 0) {
+            return false;
+        }
+        if (markers.getStyle(index) != style) {
+            markers.setStyle(index, style);
+            
+            JSONObject changes = new JSONObject();
+            changes.put("id", id);
+            changes.put("style", style);
+            sendMarkerChanges(id, markers.getLatitude(index), markers.getLongitude(index), changes);
+        }
+        return true;
+    }
+    
+    /**
+     * Registra un estilo de marcador y devuelve su identificador. Un estilo
+     * igual a otro ya registrado recibe el mismo identificador, así que se
+     * puede llamar por cada marcador sin duplicar nada. La definición viaja
+     * al cliente una sola vez y el widget crea un único objeto de estilo
+     * por identificador, compartido por todos sus marcadores
+     * @param style Estilo del marcador
+     * @return Identificador del estilo (mayor que 0)
+     */
+    public int addMarkerStyle(MarkerStyle style) {
+        Objects.requireNonNull(style, "El estilo es obligatorio");
+        final Integer found = markerStyleIds.get(style);
+        if (found != null) {
+            return found;
+        }
+        markerStyles.add(style);
+        final int id = markerStyles.size();
+        markerStyleIds.put(style, id);
         
         // La implementación específica debe manejar cómo actualizar el mapa
-        handleCenterMap(lat, lng);
+        JSONObject definition = new JSONObject();
+        definition.put(String.valueOf(id), style.toJSON());
+        handleDefineMarkerStyles(definition);
+        return id;
+    }
+    
+    /**
+     * Obtiene un estilo registrado
+     * @param id Identificador devuelto por {@link #addMarkerStyle}
+     * @return Estilo, null si el identificador es 0 o no está registrado
+     */
+    public MarkerStyle getMarkerStyle(int id) {
+        return id > 0 && id <= markerStyles.size() ? markerStyles.get(id - 1) : null;
+    }
+    
+    private void checkMarkerStyle(int style) {
+        if (style < 0 || style > markerStyles.size()) {
+            throw new IllegalArgumentException("Estilo de marcador no registrado: " + style);
+        }
+    }
+    
+    /**
+     * Definiciones {id: estilo} de todos los estilos registrados
+     */
+    private JSONObject encodeMarkerStyles() {
+        final JSONObject styles = new JSONObject();
+        for (int i = 0; i < markerStyles.size(); i++) {
+            styles.put(String.valueOf(i + 1), markerStyles.get(i).toJSON());
+        }
+        return styles;
     }
     
     @Override
-    public void setMapView(double lat, double lng, int zoom) {
-        setLatitude(lat);
-        setLongitude(lng);
-        setZoom(zoom);
-
-        // La implementación específica debe manejar cómo actualizar el mapa
-        handleSetMapView(lat, lng, zoom);
+    public long getMarkerId(int index) {
+        return markers.getKey(index);
     }
     
     @Override
-    public Component getComponent() {
-        return this;
+    public int indexOfMarker(long id) {
+        return markers.indexOfKey(id);
+    }
+    
+    /**
+     * Cambia la posición de un marcador en el almacén, el motor de
+     * agrupación y el índice espacial
+     */
+    private void relocateMarker(long id, int index, double lat, double lng) {
+        final double oldLat = markers.getLatitude(index);
+        final double oldLng = markers.getLongitude(index);
+        if (clusterer != null) {
+            clusterer.remove(id, oldLat, oldLng);
+            clusterer.add(id, lat, lng);
+        }
+        if (spatialIndex != null) {
+            spatialIndex.remove(id, oldLat, oldLng);
+            spatialIndex.insert(id, lat, lng);
+        }
+        markers.setPosition(index, lat, lng);
+    }
+    
+    /**
+     * Envía al cliente los cambios de un marcador según el modo de envío
+     */
+    private void sendMarkerChanges(long id, double lat, double lng, JSONObject changes) {
+        if (clustering) {
+            updateClusters();
+        } else if (viewportStreaming) {
+            final boolean onClient = isOnClient(id);
+            if (onClient) {
+                handleUpdateMarker(changes);
+            }
+            if (onClient != isInViewport(lat, lng)) {
+                updateViewport();
+            }
+        } else {
+            handleUpdateMarker(changes);
+        }
+    }
+    
+    /**
+     * Indica si el cliente tiene dibujado un marcador del área visible
+     */
+    private boolean isOnClient(long id) {
+        return Arrays.binarySearch(clientKeys, 0, clientCount, id) >= 0;
     }
     
     @Override
-    protected void renderProperties(org.zkoss.zk.ui.sys.ContentRenderer renderer)
-            throws java.io.IOException {
-        super.renderProperties(renderer);
-        render(renderer, "latitude", latitude);
-        render(renderer, "longitude", longitude);
-        render(renderer, "zoom", zoom);
-        render(renderer, "mapType", mapType);
-        render(renderer, "showControls", showControls);
-        render(renderer, "markers", markers.toString());
+    public void clearMarkers() {
+        markers.clear();
+        if (clusterer != null) {
+            clusterer.clear();
+        }
+        if (spatialIndex != null) {
+            spatialIndex.clear();
+        }
+        clientCount = 0;
+        
+        // La implementación específica debe manejar cómo actualizar el mapa
+        if (clustering) {
+            updateClusters();
+        } else {
+            handleClearMarkers();
+        }
     }
     
-    // Métodos abstractos que las implementaciones específicas deben implementar
+    /**
+     * Establece el mapa de calor. Sus puntos no viajan al cliente: el
+     * servidor los agrega en una grilla según el zoom y solo envía las
+     * celdas del área visible (con el margen de {@link #setViewportMargin})
+     * y su cantidad de puntos. Se puede compartir entre componentes
+     * @param heatmap Mapa de calor, null para quitarlo
+     */
+    public void setHeatmap(HeatmapLayer heatmap) {
+        if (this.heatmap != heatmap) {
+            this.heatmap = heatmap;
+            heatmapVersion = -1;
+            smartUpdate("heatmap", heatmap != null);
+            if (heatmap != null && hasViewport) {
+                updateHeatmap();
+            }
+        }
+    }
     
     /**
-     * Maneja la adición de un marcador específico para la implementación del mapa
-     * @param marker El objeto JSON que representa el marcador
+     * Obtiene el mapa de calor
+     * @return Mapa de calor, null si no hay
      */
-    protected abstract void handleAddMarker(JSONObject marker);
+    public HeatmapLayer getHeatmap() {
+        return heatmap;
+    }
     
     /**
-     * Maneja la eliminación de un marcador específico para la implementación del mapa
-     * @param index El índice del marcador a eliminar
+     * Envía al cliente las celdas del mapa de calor si se agregaron puntos
+     * desde el último envío. Se llama sola con cada petición del cliente a
+     * este componente; para mostrar los puntos nuevos sin esperar una, se
+     * llama desde server push o un temporizador. Solo se combinan con la
+     * grilla los puntos nuevos
      */
-    protected abstract void handleRemoveMarker(int index);
+    public void refreshHeatmap() {
+        if (heatmap != null && hasViewport && heatmap.getVersion() != heatmapVersion) {
+            updateHeatmap();
+        }
+    }
     
     /**
-     * Maneja la eliminación de todos los marcadores para la implementación del mapa
+     * Programa el envío de las celdas del área visible. Se calculan una
+     * sola vez al generar la respuesta
      */
-    protected abstract void handleClearMarkers();
+    protected void updateHeatmap() {
+        handleUpdateHeatmap(this::encodeHeatmap);
+    }
+    
+    private JSONAware encodeHeatmap() {
+        final HeatmapLayer layer = heatmap;
+        if (layer == null) {
+            return new JSONPayload("null");
+        }
+        heatmapVersion = layer.getVersion();
+        return new JSONPayload(layer.encode(zoom, viewSouth, viewWest, viewNorth, viewEast));
+    }
     
     /**
-     * Maneja el centrado del mapa para la implementación específica
-     * @param lat Latitud del nuevo centro
-     * @param lng Longitud del nuevo centro
+     * Activa el seguimiento en vivo: {@link #trackMarker} acepta posiciones
+     * desde cualquier hilo, se combinan por marcador (la última gana) y se
+     * envían en un único cuadro por intervalo con server push, que se
+     * activa en el escritorio si hace falta. Con la agrupación, los
+     * clusters se recalculan en cada cuadro; con el envío por área
+     * visible, los marcadores que entran o salen viajan como altas y bajas
+     * @param trackingRate Cuadros por segundo (1 a 60), 0 para desactivarlo
      */
-    protected abstract void handleCenterMap(double lat, double lng);
+    public void setTrackingRate(int trackingRate) {
+        if (trackingRate < 0 || trackingRate > 60) {
+            throw new IllegalArgumentException("La frecuencia debe estar entre 0 y 60 cuadros por segundo");
+        }
+        if (this.trackingRate != trackingRate) {
+            this.trackingRate = trackingRate;
+            restartTracking();
+        }
+    }
     
     /**
-     * Maneja el establecimiento de vista del mapa para la implementación específica
-     * @param lat Latitud del centro
-     * @param lng Longitud del centro
-     * @param zoom Nivel de zoom
+     * Obtiene la frecuencia del seguimiento en vivo
+     * @return Cuadros por segundo, 0 si está desactivado
+     */
+    public int getTrackingRate() {
+        return trackingRate;
+    }
+    
+    /**
+     * Indica si el cliente anima los marcadores entre un cuadro y el
+     * siguiente en lugar de moverlos de golpe
+     * @param trackingAnimation true para animarlos
      */
-    protected abstract void handleSetMapView(double lat, double lng, int zoom);
+    public void setTrackingAnimation(boolean trackingAnimation) {
+        this.trackingAnimation = trackingAnimation;
+    }
+    
+    /**
+     * Indica si el cliente anima los marcadores entre cuadros
+     * @return true si los anima
+     */
+    public boolean isTrackingAnimation() {
+        return trackingAnimation;
+    }
+    
+    /**
+     * Registra la posición de un marcador para el próximo cuadro del
+     * seguimiento en vivo. Se puede llamar desde cualquier hilo
+     * @param id Identificador del marcador
+     * @param lat Latitud
+     * @param lng Longitud
+     * @return false si el seguimiento no está activo (frecuencia 0,
+     *         componente fuera de una página o escritorio destruido)
+     */
+    public boolean trackMarker(long id, double lat, double lng) {
+        checkLatitude(lat);
+        checkLongitude(lng);
+        final LiveTracker current = tracker;
+        return current != null && current.update(id, lat, lng);
+    }
+    
+    /**
+     * Obtiene el seguimiento en vivo activo, con sus contadores
+     * @return Seguimiento, null si no está activo
+     */
+    public LiveTracker getLiveTracker() {
+        return tracker;
+    }
+    
+    private void restartTracking() {
+        final LiveTracker current = tracker;
+        if (current != null) {
+            tracker = null;
+            current.stop();
+        }
+        final Desktop desktop = getDesktop();
+        if (trackingRate > 0 && desktop != null) {
+            if (!desktop.isServerPushEnabled()) {
+                desktop.enableServerPush(true);
+            }
+            final LiveTracker next = new LiveTracker(this, desktop, trackingRate);
+            tracker = next;
+            next.start();
+        }
+    }
+    
+    /**
+     * Aplica las posiciones pendientes y envía el cuadro. Se ejecuta en el
+     * hilo de eventos del escritorio, programado por el seguimiento
+     */
+    void applyTrackingFrame(LiveTracker source) {
+        if (tracker != source) {
+            return;
+        }
+        final List<Object[]> updates = source.drain();
+        final long[] ids = new long[updates.size()];
+        final double[] lats = new double[ids.length];
+        final double[] lngs = new double[ids.length];
+        int count = 0;
+        int unknown = 0;
+        boolean moved = false;
+        boolean crossed = false; // Algún marcador entra o sale del área visible
+        for (Object[] update : updates) {
+            final long id = (Long) update[0];
+            final double[] position = (double[]) update[1];
+            final int index = markers.indexOfKey(id);
+            if (index < 0) {
+                unknown++;
+                continue;
+            }
+            if (markers.getLatitude(index) == position[0] && markers.getLongitude(index) == position[1]) {
+                continue;
+            }
+            relocateMarker(id, index, position[0], position[1]);
+            moved = true;
+            if (clustering) {
+                continue;
+            }
+            if (viewportStreaming) {
+                final boolean onClient = isOnClient(id);
+                if (onClient != isInViewport(position[0], position[1])) {
+                    crossed = true;
+                }
+                if (!onClient) {
+                    continue;
+                }
+            }
+            ids[count] = id;
+            lats[count] = position[0];
+            lngs[count] = position[1];
+            count++;
+        }
+        source.applied(updates.size() - unknown, unknown);
+        
+        if (clustering && moved) {
+            updateClusters();
+        }
+        if (crossed) {
+            updateViewport();
+        }
+        if (count > 0) {
+            JSONObject frame = new JSONObject();
+            frame.put("duration", trackingAnimation ? 1000 / source.getRate() : 0);
+            frame.put("markers", new JSONPayload(MarkerCodec.encodePositions(ids, lats, lngs, count)));
+            handleTrackFrame(frame);
+        }
+        refreshDataset();
+        refreshHeatmap();
+    }
+    
+    @Override
+    public void onPageAttached(Page newpage, Page oldpage) {
+        super.onPageAttached(newpage, oldpage);
+        if (oldpage == null && MapMetrics.isEnabled()) {
+            MapMetrics.attached(this);
+        }
+        if (trackingRate > 0 && tracker == null) {
+            restartTracking();
+        }
+    }
+    
+    /**
+     * El seguimiento no se serializa: tras restaurar la sesión (por
+     * ejemplo, en otro nodo) se vuelve a iniciar con la misma frecuencia
+     * @param page Página del componente
+     */
+    @Override
+    public void sessionDidActivate(Page page) {
+        super.sessionDidActivate(page);
+        if (trackingRate > 0 && tracker == null) {
+            restartTracking();
+        }
+    }
+    
+    @Override
+    public void onPageDetached(Page page) {
+        super.onPageDetached(page);
+        if (MapMetrics.isEnabled()) {
+            MapMetrics.detached(this);
+        }
+        final LiveTracker current = tracker;
+        if (current != null) {
+            tracker = null;
+            current.stop();
+        }
+    }
+    
+    @Override
+    public long addShape(Shape shape) {
+        final long id = shapes.add(shape, ShapeStore.simplify(shape));
+        shapesAdded.add(id);
+        updateShapes();
+        return id;
+    }
+    
+    @Override
+    public void addShapes(Collection<? extends Shape> list) {
+        // La simplificación es lo costoso: se reparte entre los núcleos
+        final List<? extends Shape> ordered = new ArrayList<>(list);
+        final List<float[]> significance = ordered.parallelStream()
+                .map(ShapeStore::simplify)
+                .collect(Collectors.toList());
+        for (int i = 0; i < ordered.size(); i++) {
+            shapesAdded.add(shapes.add(ordered.get(i), significance.get(i)));
+        }
+        updateShapes();
+    }
+    
+    @Override
+    public boolean removeShape(long id) {
+        if (!shapes.remove(id)) {
+            return false;
+        }
+        if (!shapesAdded.remove(Long.valueOf(id))) {
+            shapesRemoved.add(id);
+        }
+        updateShapes();
+        return true;
+    }
+    
+    @Override
+    public void clearShapes() {
+        shapes.clear();
+        shapesReset = true;
+        updateShapes();
+    }
+    
+    /**
+     * Obtiene una forma
+     * @param id Identificador de la forma
+     * @return Forma, null si no existe
+     */
+    public Shape getShape(long id) {
+        return shapes.get(id);
+    }
+    
+    /**
+     * Obtiene los identificadores de las formas, en el orden en que se agregaron
+     * @return Identificadores de las formas
+     */
+    public long[] getShapeIds() {
+        return shapes.keys();
+    }
+    
+    /**
+     * Establece cuánto se pueden desviar las formas simplificadas de las
+     * originales. Con 1 píxel la diferencia no se ve; valores mayores
+     * envían menos vértices
+     * @param shapeTolerance Desviación en píxeles (mayor que 0)
+     */
+    public void setShapeTolerance(double shapeTolerance) {
+        if (!(shapeTolerance > 0)) {
+            throw new IllegalArgumentException("La tolerancia debe ser mayor que 0");
+        }
+        if (this.shapeTolerance != shapeTolerance) {
+            this.shapeTolerance = shapeTolerance;
+            shapes.invalidate();
+            if (shapes.size() > 0) {
+                shapesReset = true;
+                updateShapes();
+            }
+        }
+    }
+    
+    /**
+     * Obtiene la desviación permitida al simplificar las formas
+     * @return Desviación en píxeles
+     */
+    public double getShapeTolerance() {
+        return shapeTolerance;
+    }
+    
+    /**
+     * Programa el envío de las formas. Se calcula una sola vez al generar
+     * la respuesta: todas las formas con el detalle del zoom actual si el
+     * cliente tiene otro, o solo las altas y bajas pendientes
+     */
+    protected void updateShapes() {
+        handleUpdateShapes(() -> encodeShapes(shapesReset || shapesZoom != zoom));
+    }
+    
+    private void updateShapesForZoom() {
+        if (shapes.size() > 0 && zoom != shapesZoom) {
+            updateShapes();
+        }
+    }
+    
+    /**
+     * {zoom, reset, count, remove, shapes, p}: las formas llevan sus
+     * vértices con la codificación de polilíneas en precisión p; count es
+     * el total, incluidas las que no se ven a este zoom
+     */
+    private JSONAware encodeShapes(boolean reset) {
+        final StringBuilder sb = new StringBuilder(128)
+                .append("{\"zoom\":").append(zoom)
+                .append(",\"reset\":").append(reset)
+                .append(",\"count\":").append(shapes.size())
+                .append(",\"p\":").append(MarkerCodec.PRECISION)
+                .append(",\"remove\":[");
+        if (!reset) {
+            for (int i = 0; i < shapesRemoved.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(shapesRemoved.get(i));
+            }
+        }
+        sb.append("],\"shapes\":[")
+                .append(shapes.encode(reset ? null : shapesAdded, zoom, shapeTolerance))
+                .append("]}");
+        shapesZoom = zoom;
+        shapesReset = false;
+        shapesAdded.clear();
+        shapesRemoved.clear();
+        return new JSONPayload(sb.toString());
+    }
+    
+    /**
+     * Activa o desactiva la agrupación de marcadores. Con la agrupación
+     * activa el cliente solo recibe los clusters y marcadores individuales
+     * del nivel de zoom actual
+     * @param clustering true para agrupar los marcadores
+     */
+    public void setClustering(boolean clustering) {
+        if (this.clustering != clustering) {
+            this.clustering = clustering;
+            smartUpdate("clustering", clustering);
+            if (clustering) {
+                updateClusters();
+            } else if (viewportStreaming) {
+                clientCount = 0;
+                updateViewport();
+            } else if (!clientPending) {
+                smartUpdate("markers", markers.asList());
+            }
+        }
+    }
+    
+    /**
+     * Indica si la agrupación de marcadores está activa
+     * @return true si los marcadores se agrupan
+     */
+    public boolean isClustering() {
+        return clustering;
+    }
+    
+    /**
+     * Establece el radio de agrupación
+     * @param clusterRadius Radio en píxeles (mayor que 0)
+     */
+    public void setClusterRadius(int clusterRadius) {
+        if (clusterRadius <= 0) {
+            throw new IllegalArgumentException("El radio de agrupación debe ser mayor que 0");
+        }
+        this.clusterRadius = clusterRadius;
+        resetClusterer();
+    }
+    
+    /**
+     * Obtiene el radio de agrupación
+     * @return Radio en píxeles
+     */
+    public int getClusterRadius() {
+        return clusterRadius;
+    }
+    
+    /**
+     * Establece el último nivel de zoom con agrupación; por encima se
+     * muestran los marcadores individuales
+     * @param clusterMaxZoom Nivel de zoom (entre 0 y 20)
+     */
+    public void setClusterMaxZoom(int clusterMaxZoom) {
+        if (clusterMaxZoom < 0 || clusterMaxZoom > 20) {
+            throw new IllegalArgumentException("El zoom máximo de agrupación debe estar entre 0 y 20");
+        }
+        this.clusterMaxZoom = clusterMaxZoom;
+        resetClusterer();
+    }
+    
+    /**
+     * Obtiene el último nivel de zoom con agrupación
+     * @return Nivel de zoom
+     */
+    public int getClusterMaxZoom() {
+        return clusterMaxZoom;
+    }
+    
+    /**
+     * Indica si el clic en un cluster acerca el mapa hasta el nivel en el
+     * que el cluster se divide (además de generar "onClusterClick")
+     * @param clusterZoomOnClick true para expandir los clusters al hacer clic
+     */
+    public void setClusterZoomOnClick(boolean clusterZoomOnClick) {
+        this.clusterZoomOnClick = clusterZoomOnClick;
+    }
+    
+    /**
+     * Indica si el clic en un cluster acerca el mapa
+     * @return true si los clusters se expanden al hacer clic
+     */
+    public boolean isClusterZoomOnClick() {
+        return clusterZoomOnClick;
+    }
+    
+    /**
+     * Activa o desactiva el envío de marcadores según el área visible. El
+     * cliente informa su área (ampliada con {@link #getViewportMargin()}) al
+     * terminar cada desplazamiento que la abandona y solo recibe como
+     * altas y bajas los marcadores que entran o salen de ella
+     * @param viewportStreaming true para enviar solo los marcadores visibles
+     */
+    public void setViewportStreaming(boolean viewportStreaming) {
+        if (this.viewportStreaming != viewportStreaming) {
+            this.viewportStreaming = viewportStreaming;
+            smartUpdate("viewportStreaming", viewportStreaming);
+            clientCount = 0;
+            if (clustering) {
+                updateClusters();
+            } else if (viewportStreaming) {
+                handleClearMarkers();
+                updateViewport();
+            } else if (!clientPending) {
+                smartUpdate("markers", markers.asList());
+            }
+        }
+    }
+    
+    /**
+     * Indica si los marcadores se envían según el área visible
+     * @return true si el cliente solo recibe los marcadores de su área
+     */
+    public boolean isViewportStreaming() {
+        return viewportStreaming;
+    }
+    
+    /**
+     * Establece el margen que el cliente agrega a su área visible al
+     * pedir marcadores, de modo que los desplazamientos cortos no
+     * requieran ir al servidor
+     * @param viewportMargin Margen por lado, proporcional al tamaño del
+     *                       área visible (0.5 = media pantalla)
+     */
+    public void setViewportMargin(double viewportMargin) {
+        if (viewportMargin < 0) {
+            throw new IllegalArgumentException("El margen del área visible no puede ser negativo");
+        }
+        this.viewportMargin = viewportMargin;
+        smartUpdate("viewportMargin", viewportMargin);
+    }
+    
+    /**
+     * Obtiene el margen que el cliente agrega a su área visible
+     * @return Margen por lado, proporcional al área visible
+     */
+    public double getViewportMargin() {
+        return viewportMargin;
+    }
+    
+    /**
+     * Establece si el usuario puede arrastrar los marcadores; cada arrastre
+     * actualiza la posición en el servidor y genera onMarkerDrag
+     * @param markersDraggable true para permitir arrastrar los marcadores
+     */
+    public void setMarkersDraggable(boolean markersDraggable) {
+        if (this.markersDraggable != markersDraggable) {
+            this.markersDraggable = markersDraggable;
+            smartUpdate("markersDraggable", markersDraggable);
+        }
+    }
+    
+    /**
+     * Indica si el usuario puede arrastrar los marcadores
+     * @return true si los marcadores se pueden arrastrar
+     */
+    public boolean isMarkersDraggable() {
+        return markersDraggable;
+    }
+    
+    /**
+     * Establece cuánto espera el widget tras el último desplazamiento o
+     * zoom antes de enviar onViewportChange; los cambios intermedios se
+     * descartan
+     * @param viewportEventDelay Espera en milisegundos (no negativa)
+     */
+    public void setViewportEventDelay(int viewportEventDelay) {
+        if (viewportEventDelay < 0) {
+            throw new IllegalArgumentException("La espera del evento de área visible no puede ser negativa");
+        }
+        this.viewportEventDelay = viewportEventDelay;
+        smartUpdate("viewportEventDelay", viewportEventDelay);
+    }
+    
+    /**
+     * Obtiene la espera tras el último desplazamiento antes de enviar onViewportChange
+     * @return Espera en milisegundos
+     */
+    public int getViewportEventDelay() {
+        return viewportEventDelay;
+    }
+    
+    /**
+     * Establece el intervalo mínimo entre dos eventos onMarkerDrag durante
+     * un arrastre; la posición final siempre se envía al soltar
+     * @param dragEventInterval Intervalo en milisegundos (no negativo)
+     */
+    public void setDragEventInterval(int dragEventInterval) {
+        if (dragEventInterval < 0) {
+            throw new IllegalArgumentException("El intervalo del evento de arrastre no puede ser negativo");
+        }
+        this.dragEventInterval = dragEventInterval;
+        smartUpdate("dragEventInterval", dragEventInterval);
+    }
+    
+    /**
+     * Obtiene el intervalo mínimo entre dos eventos onMarkerDrag
+     * @return Intervalo en milisegundos
+     */
+    public int getDragEventInterval() {
+        return dragEventInterval;
+    }
+    
+    /**
+     * Indica si unas coordenadas caen en el área informada por el cliente.
+     * Si el área cruza el antimeridiano su oeste es mayor que su este
+     * @param lat Latitud
+     * @param lng Longitud
+     * @return true si están dentro del área, false si aún no hay área
+     */
+    protected boolean isInViewport(double lat, double lng) {
+        if (!hasViewport || lat < viewSouth || lat > viewNorth) {
+            return false;
+        }
+        return viewWest <= viewEast
+                ? lng >= viewWest && lng <= viewEast
+                : lng >= viewWest || lng <= viewEast;
+    }
+    
+    /**
+     * Programa el envío de las altas y bajas del área visible. Se calculan
+     * una sola vez al generar la respuesta
+     */
+    protected void updateViewport() {
+        if (batchDepth > 0) {
+            batchViewport = true;
+            return;
+        }
+        handleUpdateViewport(this::encodeViewportDiff);
+    }
+    
+    /**
+     * Compara los marcadores del área con los que ya tiene el cliente:
+     * "remove" con las claves que salen y "add" con las filas
+     * [lat, lng, title, description, id] que entran
+     */
+    private JSONObject encodeViewportDiff() {
+        final long[] visible = hasViewport
+                ? getMarkerIndex().search(viewSouth, viewWest, viewNorth, viewEast)
+                : new long[0];
+        final int count = visible.length;
+        
+        // Ambas listas de claves están ordenadas: basta una mezcla
+        final List<Long> removed = new ArrayList<>();
+        final List<Object[]> added = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < clientCount || j < count) {
+            if (j == count || (i < clientCount && clientKeys[i] < visible[j])) {
+                removed.add(clientKeys[i++]);
+            } else if (i == clientCount || visible[j] < clientKeys[i]) {
+                final int index = markers.indexOfKey(visible[j++]);
+                added.add(markerRow(index));
+            } else {
+                i++;
+                j++;
+            }
+        }
+        clientKeys = visible;
+        clientCount = count;
+        
+        JSONObject data = new JSONObject();
+        data.put("zoom", zoom);
+        data.put("remove", removed);
+        data.put("add", added);
+        return data;
+    }
+    
+    /**
+     * Busca los marcadores dentro de un rectángulo. Si el oeste es mayor
+     * que el este, el rectángulo cruza el antimeridiano
+     * @param south Latitud sur
+     * @param west Longitud oeste
+     * @param north Latitud norte
+     * @param east Longitud este
+     * @return Índices de los marcadores, en orden creciente
+     */
+    public int[] getMarkersIn(double south, double west, double north, double east) {
+        return toIndexes(getMarkerIndex().search(south, west, north, east));
+    }
+    
+    /**
+     * Busca los marcadores más cercanos a un punto, por distancia en pantalla
+     * @param lat Latitud del punto
+     * @param lng Longitud del punto
+     * @param k Cantidad máxima de marcadores
+     * @return Índices de los marcadores, del más cercano al más lejano
+     */
+    public int[] getNearestMarkers(double lat, double lng, int k) {
+        return toIndexes(getMarkerIndex().nearest(lat, lng, k));
+    }
+    
+    /**
+     * Busca los marcadores dibujados a menos de una distancia en píxeles de
+     * un punto, con el zoom actual del mapa
+     * @param lat Latitud del punto
+     * @param lng Longitud del punto
+     * @param pixels Distancia máxima en píxeles
+     * @return Índices de los marcadores, del más cercano al más lejano
+     */
+    public int[] getMarkersAt(double lat, double lng, double pixels) {
+        return toIndexes(getMarkerIndex().within(lat, lng, pixels, zoom));
+    }
+    
+    /**
+     * Establece la distancia en píxeles alrededor de un clic dentro de la
+     * cual un marcador se considera tocado
+     * @param hitTolerance Distancia en píxeles (no negativa)
+     * @see MapClickEvent#getNearestMarkers()
+     */
+    public void setHitTolerance(int hitTolerance) {
+        if (hitTolerance < 0) {
+            throw new IllegalArgumentException("La tolerancia de clic no puede ser negativa");
+        }
+        this.hitTolerance = hitTolerance;
+    }
+    
+    /**
+     * Obtiene la distancia en píxeles alrededor de un clic dentro de la
+     * cual un marcador se considera tocado
+     * @return Distancia en píxeles
+     */
+    public int getHitTolerance() {
+        return hitTolerance;
+    }
+    
+    /**
+     * Establece el nomenclátor con que {@link MapClickEvent#getPlace()}
+     * nombra el punto de cada clic. Se puede compartir entre componentes;
+     * no se serializa con el componente, así que tras replicar la sesión
+     * hay que volver a asignarlo
+     * @param reverseGeocoder Geocodificador, null para no nombrar los clics
+     */
+    public void setReverseGeocoder(ReverseGeocoder reverseGeocoder) {
+        this.reverseGeocoder = reverseGeocoder;
+    }
+    
+    /**
+     * Obtiene el nomenclátor con que se nombran los clics
+     * @return Geocodificador, null si no hay
+     */
+    public ReverseGeocoder getReverseGeocoder() {
+        return reverseGeocoder;
+    }
+    
+    /**
+     * Obtiene el índice espacial de los marcadores del componente,
+     * construyéndolo con una carga masiva en el primer uso
+     * @return Índice espacial
+     */
+    protected MarkerIndex getMarkerIndex() {
+        if (spatialIndex == null) {
+            spatialIndex = new MarkerIndex();
+            spatialIndex.load(markers);
+        }
+        return spatialIndex;
+    }
+    
+    private int[] toIndexes(long[] keys) {
+        final int[] indexes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            indexes[i] = markers.indexOfKey(keys[i]);
+        }
+        return indexes;
+    }
+    
+    /**
+     * Obtiene el motor de agrupación sobre los marcadores del componente,
+     * construyéndolo en el primer uso
+     * @return Motor de agrupación
+     */
+    protected MarkerClusterer getClusterer() {
+        if (clusterer == null) {
+            clusterer = new MarkerClusterer(markers, clusterRadius, clusterMaxZoom);
+            clusterer.build();
+        }
+        return clusterer;
+    }
+    
+    private void resetClusterer() {
+        clusterer = null;
+        if (clustering) {
+            updateClusters();
+        }
+    }
+    
+    /**
+     * Programa el envío de los clusters del zoom actual. Se calculan una
+     * sola vez al generar la respuesta, aunque se llame varias veces en la
+     * misma ejecución
+     */
+    protected void updateClusters() {
+        if (batchDepth > 0) {
+            batchClusters = true;
+            return;
+        }
+        handleSetClusters(this::encodeClusters);
+    }
+    
+    /**
+     * Codifica los clusters del zoom actual: "clusters" con filas
+     * [lat, lng, count, id] y "markers" con los marcadores individuales
+     * [lat, lng, title, description, id]. Si el cliente ya informó su
+     * área, solo viajan los que caen en ella
+     */
+    private JSONObject encodeClusters() {
+        final List<Object[]> groups = new ArrayList<>();
+        final List<Object[]> singles = new ArrayList<>();
+        if (zoom > getClusterer().getMaxZoom()) {
+            // Todos son individuales: se leen sin crear un cluster por marcador
+            if (hasViewport) {
+                for (long key : getMarkerIndex().search(viewSouth, viewWest, viewNorth, viewEast)) {
+                    singles.add(markerRow(markers.indexOfKey(key)));
+                }
+            } else {
+                for (int i = 0; i < markers.size(); i++) {
+                    singles.add(markerRow(i));
+                }
+            }
+            return clusterData(groups, singles);
+        }
+        for (MarkerClusterer.Cluster cluster : getClusterer().getClusters(zoom)) {
+            if (hasViewport && !isInViewport(cluster.getLatitude(), cluster.getLongitude())) {
+                continue;
+            }
+            if (cluster.getCount() == 1) {
+                final int index = markers.indexOfKey(cluster.getMarkerKey());
+                if (index >= 0) {
+                    singles.add(markerRow(index));
+                }
+            } else {
+                groups.add(new Object[] {
+                    cluster.getLatitude(), cluster.getLongitude(), cluster.getCount(), cluster.getId()
+                });
+            }
+        }
+        return clusterData(groups, singles);
+    }
+    
+    private JSONObject clusterData(List<Object[]> groups, List<Object[]> singles) {
+        JSONObject data = new JSONObject();
+        data.put("zoom", zoom);
+        data.put("clusters", groups);
+        data.put("markers", singles);
+        return data;
+    }
+    
+    @Override
+    public void centerMap(double lat, double lng) {
+        checkLatitude(lat);
+        checkLongitude(lng);
+        this.latitude = lat;
+        this.longitude = lng;
+        
+        // La implementación específica debe manejar cómo actualizar el mapa
+        handleCenterMap(lat, lng);
+    }
+    
+    @Override
+    public void setMapView(double lat, double lng, int zoom) {
+        checkLatitude(lat);
+        checkLongitude(lng);
+        checkZoom(zoom);
+        this.latitude = lat;
+        this.longitude = lng;
+        this.zoom = zoom;
+
+        // La implementación específica debe manejar cómo actualizar el mapa
+        handleSetMapView(lat, lng, zoom);
+        updateShapesForZoom();
+    }
+    
+    private static void checkLatitude(double latitude) {
+        if (!(latitude >= -90 && latitude <= 90)) { // También rechaza NaN
+            throw new IllegalArgumentException("Latitude debe estar entre -90 y 90");
+        }
+    }
+    
+    private static void checkLongitude(double longitude) {
+        if (!(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Longitude debe estar entre -180 y 180");
+        }
+    }
+    
+    private static void checkZoom(int zoom) {
+        if (zoom < 0 || zoom > 20) {
+            throw new IllegalArgumentException("Zoom debe estar entre 0 y 20");
+        }
+    }
+    
+    @Override
+    public void batch(Runnable task) {
+        batchDepth++;
+        try {
+            task.run();
+        } finally {
+            if (--batchDepth == 0) {
+                if (batchClusters) {
+                    batchClusters = false;
+                    updateClusters();
+                }
+                if (batchViewport) {
+                    batchViewport = false;
+                    updateViewport();
+                }
+            }
+        }
+    }
+    
+    @Override
+    public Component getComponent() {
+        return this;
+    }
+    
+    @Override
+    protected void renderProperties(org.zkoss.zk.ui.sys.ContentRenderer renderer)
+            throws java.io.IOException {
+        super.renderProperties(renderer);
+        render(renderer, "latitude", latitude);
+        render(renderer, "longitude", longitude);
+        render(renderer, "zoom", zoom);
+        render(renderer, "mapType", mapType);
+        render(renderer, "showControls", showControls);
+        render(renderer, "markersDraggable", markersDraggable);
+        render(renderer, "viewportEventDelay", viewportEventDelay);
+        render(renderer, "dragEventInterval", dragEventInterval);
+        if (!"dom".equals(renderMode)) {
+            render(renderer, "renderMode", renderMode);
+        }
+        if (lazyInit && !clientShowing) {
+            // El estado viaja cuando el widget informe que se ve
+            render(renderer, "lazyInit", true);
+            clientPending = true;
+            return;
+        }
+        final boolean showing = clientShowing;
+        clientPending = false;
+        clientShowing = false;
+        if (!markerStyles.isEmpty()) {
+            // Antes que los marcadores que los usan
+            render(renderer, "markerStyles", encodeMarkerStyles());
+        }
+        if (viewportStreaming) {
+            render(renderer, "viewportStreaming", true);
+            render(renderer, "viewportMargin", viewportMargin);
+        }
+        if (clustering) {
+            render(renderer, "clustering", true);
+            render(renderer, "clusters", encodeClusters());
+        } else if (viewportStreaming) {
+            // El widget se crea de nuevo y pedirá los marcadores de su área
+            clientCount = 0;
+        } else if ("webgl".equals(renderMode)) {
+            renderer.renderDirectly("markerArrays", MarkerCodec.encodeArrays(markers, null));
+        } else if (showing || "compact".equals(markerEncoding)) {
+            renderer.renderDirectly("encodedMarkers", MarkerCodec.encode(markers));
+        } else {
+            render(renderer, "markers", markers.asList());
+        }
+        if (dataset != null) {
+            final MarkerDataset.Snapshot snapshot = dataset.getSnapshot();
+            render(renderer, "datasetMarkers", datasetPayload(snapshot));
+            datasetVersion = snapshot.getVersion();
+        }
+        if (heatmap != null) {
+            // El widget pedirá las celdas al informar su área
+            render(renderer, "heatmap", true);
+            heatmapVersion = -1;
+        }
+        if (shapes.size() > 0) {
+            render(renderer, "shapes", encodeShapes(true));
+        } else {
+            encodeShapes(true); // El widget nuevo no tiene formas
+        }
+    }
+    
+    @Override
+    public void redraw(Writer out) throws IOException {
+        if (!MapMetrics.isEnabled()) {
+            super.redraw(out);
+            return;
+        }
+        final MapMetrics.CountingWriter counter = new MapMetrics.CountingWriter(out);
+        final long start = System.nanoTime();
+        super.redraw(counter);
+        MapMetrics.rendered(this, System.nanoTime() - start, counter.count);
+    }
+    
+    @Override
+    public void service(AuRequest request, boolean everError) {
+        if (!MapMetrics.isEnabled()) {
+            dispatch(request, everError);
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            dispatch(request, everError);
+        } finally {
+            MapMetrics.dispatched(this, request.getCommand(), System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * Atiende una petición del cliente. Los eventos con un
+     * {@link MapEventDecoder} registrado se traducen y se publican; el resto
+     * de las peticiones comunes actualizan el estado del componente. Los
+     * proveedores pueden sobrescribirla para peticiones propias y llamar a
+     * la de la superclase con las demás; {@link #service} la envuelve para
+     * medir su duración
+     * @param request Petición
+     * @param everError Si ya hubo un error en la misma ejecución
+     */
+    protected void dispatch(AuRequest request, boolean everError) {
+        // Comandos del cliente comunes a todos los proveedores
+        final String cmd = request.getCommand();
+        refreshDataset();
+        refreshHeatmap();
+        final MapEventDecoder<?> decoder = getEventDecoder(getClass(), cmd);
+        if (decoder != null) {
+            postDecoded(request, cmd, decoder);
+        } else if ("onClusterClick".equals(cmd)) {
+            handleClusterClick(request);
+        } else if ("onMapViewport".equals(cmd)) {
+            handleMapViewport(request);
+        } else if ("onViewportChange".equals(cmd)) {
+            handleViewportChange(request);
+        } else if ("onMarkerDrag".equals(cmd)) {
+            handleMarkerDrag(request);
+        } else if ("onMapShow".equals(cmd)) {
+            handleMapShow();
+        } else {
+            super.service(request, everError);
+        }
+    }
+    
+    /**
+     * Publica los eventos de una petición: uno con {data: [...]}, o varios
+     * con {batch: [[...], ...]}. Los de una petición agrupada se publican
+     * como un único {@link MapBatchEvent} si el componente lo escucha
+     */
+    private <E extends Event> void postDecoded(AuRequest request, String cmd, MapEventDecoder<E> decoder) {
+        final Map<String, Object> data = request.getData();
+        final List<?> batch = (List<?>) data.get("batch");
+        if (batch == null) {
+            final List<?> args = (List<?>) data.get("data");
+            final E event = args != null ? decoder.decode(this, cmd, args) : null;
+            if (event != null) {
+                Events.postEvent(event);
+            }
+            return;
+        }
+        
+        final List<E> events = new ArrayList<>(batch.size());
+        for (Object item : batch) {
+            final E event = item instanceof List ? decoder.decode(this, cmd, (List<?>) item) : null;
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        final String batchName = cmd + MapBatchEvent.SUFFIX;
+        if (Events.isListened(this, batchName, false)) {
+            Events.postEvent(new MapBatchEvent<>(batchName, this, cmd, events));
+        } else {
+            for (E event : events) {
+                Events.postEvent(event);
+            }
+        }
+    }
+    
+    private void handleClusterClick(AuRequest request) {
+        final List<?> data = (List<?>) request.getData().get("data");
+        if (data != null && data.size() >= 1) {
+            final String clusterId = String.valueOf(data.get(0));
+            final MarkerClusterer.Cluster cluster = getClusterer().getCluster(clusterId);
+            if (cluster == null) {
+                return;
+            }
+            final int expansionZoom = Math.min(getClusterer().getExpansionZoom(clusterId), 20);
+            
+            ClusterClickEvent event = new ClusterClickEvent("onClusterClick", this, clusterId,
+                    cluster.getLatitude(), cluster.getLongitude(), cluster.getCount(), expansionZoom);
+            Events.postEvent(event);
+            
+            if (clusterZoomOnClick) {
+                setMapView(cluster.getLatitude(), cluster.getLongitude(), expansionZoom);
+            }
+        }
+    }
+    
+    /**
+     * El cliente informa su zoom y su área visible ampliada con el margen
+     * ([zoom, south, west, north, east]) al terminar un desplazamiento que
+     * la abandona; el zoom se actualiza sin smartUpdate porque el cliente
+     * ya lo tiene
+     */
+    private void handleMapViewport(AuRequest request) {
+        final List<?> data = (List<?>) request.getData().get("data");
+        if (data != null && data.size() >= 5) {
+            final int newZoom = ((Number) data.get(0)).intValue();
+            if (newZoom < 0 || newZoom > 20) {
+                return;
+            }
+            this.zoom = newZoom;
+            this.viewSouth = ((Number) data.get(1)).doubleValue();
+            this.viewWest = ((Number) data.get(2)).doubleValue();
+            this.viewNorth = ((Number) data.get(3)).doubleValue();
+            this.viewEast = ((Number) data.get(4)).doubleValue();
+            this.hasViewport = true;
+            
+            if (clustering) {
+                updateClusters();
+            } else if (viewportStreaming) {
+                updateViewport();
+            }
+            updateShapesForZoom();
+            if (heatmap != null) {
+                updateHeatmap();
+            }
+        }
+    }
+    
+    /**
+     * El widget de creación diferida se ve por primera vez: se redibuja con
+     * el estado acumulado. Los comandos de la misma ejecución se descartan
+     * porque el render ya los incluye
+     */
+    private void handleMapShow() {
+        if (clientPending && !clientShowing) {
+            clientShowing = true;
+            invalidate();
+        }
+    }
+    
+    /**
+     * El cliente informa el área que ve ([lat, lng, zoom, south, west, north,
+     * east]) tras terminar un desplazamiento; el centro y el zoom se
+     * actualizan sin devolver nada al cliente
+     */
+    private void handleViewportChange(AuRequest request) {
+        final List<?> data = (List<?>) request.getData().get("data");
+        if (data != null && data.size() >= 7) {
+            final double lat = ((Number) data.get(0)).doubleValue();
+            final double lng = ((Number) data.get(1)).doubleValue();
+            final int newZoom = ((Number) data.get(2)).intValue();
+            if (lat < -90 || lat > 90 || lng < -180 || lng > 180 || newZoom < 0 || newZoom > 20) {
+                return;
+            }
+            this.latitude = lat;
+            this.longitude = lng;
+            this.zoom = newZoom;
+            updateShapesForZoom();
+            
+            ViewportChangeEvent event = new ViewportChangeEvent("onViewportChange", this, lat, lng, newZoom,
+                    ((Number) data.get(3)).doubleValue(), ((Number) data.get(4)).doubleValue(),
+                    ((Number) data.get(5)).doubleValue(), ((Number) data.get(6)).doubleValue());
+            Events.postEvent(event);
+        }
+    }
+    
+    /**
+     * El cliente informa la posición de un marcador arrastrado ([id, lat,
+     * lng, soltado]); el cliente ya lo muestra ahí, por lo que solo se
+     * actualizan el almacén y los índices. Al soltarlo se recalculan los
+     * clusters, porque el marcador puede haber entrado en otro grupo. Si
+     * los marcadores no son arrastrables la petición se ignora: no la
+     * envía el widget, así que no se acepta una fabricada.
+     */
+    private void handleMarkerDrag(AuRequest request) {
+        if (!markersDraggable) {
+            return;
+        }
+        final List<?> data = (List<?>) request.getData().get("data");
+        if (data != null && data.size() >= 4) {
+            final long id = ((Number) data.get(0)).longValue();
+            final double lat = ((Number) data.get(1)).doubleValue();
+            final double lng = ((Number) data.get(2)).doubleValue();
+            final boolean dragEnd = Boolean.TRUE.equals(data.get(3));
+            final int index = markers.indexOfKey(id);
+            if (index < 0 || !(lat >= -90 && lat <= 90) || !(lng >= -180 && lng <= 180)) {
+                return;
+            }
+            relocateMarker(id, index, lat, lng);
+            if (dragEnd && clustering) {
+                updateClusters();
+            }
+            
+            MarkerDragEvent event = new MarkerDragEvent("onMarkerDrag", this, index, id, lat, lng, dragEnd);
+            Events.postEvent(event);
+        }
+    }
+    
+    /**
+     * Envía un comando al widget del cliente, que lo atiende en su método
+     * service_. Los comandos de una misma ejecución se combinan y viajan
+     * juntos en una única lista (ver {@link MapCommandQueue})
+     * @param command Nombre del comando
+     * @param data Argumentos del comando (se serializan como JSON)
+     */
+    protected void invokeWidget(String command, Object data) {
+        invokeWidget(null, command, data);
+    }
+    
+    /**
+     * Envía un comando al widget reemplazando cualquier envío anterior con
+     * la misma clave dentro de la misma ejecución
+     * @param key Clave de reemplazo de la respuesta
+     * @param command Nombre del comando
+     * @param data Argumentos del comando; un {@link DeferredValue} se evalúa
+     *             al generar la respuesta
+     */
+    protected void invokeWidget(String key, String command, Object data) {
+        if (clientPending) {
+            // El widget que espera a verse no tiene mapa: el render enviará el estado
+            return;
+        }
+        final Execution exec = Executions.getCurrent();
+        if (exec == null) {
+            response(key, new AuInvoke(this, "service_", command, data));
+            return;
+        }
+        if (getPage() == null) {
+            // Sin página ZK descarta las respuestas; el render enviará el estado
+            return;
+        }
+        if (commandExecution != exec) {
+            commandExecution = exec;
+            commandQueue = new MapCommandQueue();
+            final MapCommandQueue queue = commandQueue;
+            response("mapCommands", new AuInvoke(this, "service_", "batch", (DeferredValue) () -> {
+                final List<?> batch = queue.drain();
+                if (MapMetrics.isEnabled()) {
+                    MapMetrics.commandsSent(this, batch);
+                }
+                return batch;
+            }));
+        }
+        commandQueue.add(key, command, data);
+    }
+    
+    /**
+     * Tras replicar la sesión no se sabe qué tiene el cliente: el conjunto
+     * compartido, el mapa de calor y los marcadores del área visible se
+     * envían completos en la próxima actualización. Los marcadores se leen
+     * con el formato propio de {@link MarkerStore}
+     * @param in Flujo de la sesión
+     * @throws IOException si el flujo no se puede leer
+     * @throws ClassNotFoundException si falta la clase de algún campo
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        datasetVersion = -1;
+        heatmapVersion = -1;
+        clientCount = 0;
+    }
+    
+    // Envío de cada cambio al widget. Todos los proveedores reciben los
+    // mismos comandos; una implementación solo los redefine si su widget
+    // necesita otros datos
+    
+    /**
+     * Maneja la adición de un marcador específico para la implementación del mapa
+     * @param marker El objeto JSON que representa el marcador
+     */
+    protected void handleAddMarker(JSONObject marker) {
+        invokeWidget("addMarker", marker);
+    }
+    
+    /**
+     * Maneja la adición de un bloque de una carga masiva de marcadores
+     * @param chunk Objeto JSON con las filas del bloque ("markers") y el
+     *              avance ("loaded", "total")
+     */
+    protected void handleAddMarkers(JSONObject chunk) {
+        invokeWidget("addMarkers", chunk);
+    }
+    
+    /**
+     * Maneja el envío de los clusters y marcadores individuales del zoom actual
+     * @param clusters Valor diferido con el objeto JSON de los clusters
+     */
+    protected void handleSetClusters(DeferredValue clusters) {
+        invokeWidget("clusters", "setClusters", clusters);
+    }
+    
+    /**
+     * Maneja el envío de las altas y bajas de marcadores del área visible
+     * @param diff Valor diferido con el objeto JSON de las diferencias
+     */
+    protected void handleUpdateViewport(DeferredValue diff) {
+        invokeWidget("viewport", "updateViewport", diff);
+    }
+    
+    /**
+     * Maneja la eliminación de un marcador específico para la implementación del mapa
+     * @param id El identificador del marcador a eliminar
+     */
+    protected void handleRemoveMarker(long id) {
+        JSONObject data = new JSONObject();
+        data.put("id", id);
+        invokeWidget("removeMarker", data);
+    }
+    
+    /**
+     * Maneja los cambios de un marcador para la implementación del mapa
+     * @param changes Objeto JSON con el "id" del marcador y solo los campos
+     *                que cambiaron (lat y lng, title, description, style)
+     */
+    protected void handleUpdateMarker(JSONObject changes) {
+        invokeWidget("updateMarker", changes);
+    }
+    
+    /**
+     * Maneja el envío de estilos de marcador recién registrados
+     * @param styles Objeto JSON {id: definición} con icon, color, size y
+     *               label, solo los presentes
+     */
+    protected void handleDefineMarkerStyles(JSONObject styles) {
+        invokeWidget("defineMarkerStyles", styles);
+    }
+    
+    /**
+     * Maneja la eliminación de todos los marcadores para la implementación del mapa
+     */
+    protected void handleClearMarkers() {
+        invokeWidget("clearMarkers", null);
+    }
+    
+    /**
+     * Maneja el envío de una versión del conjunto compartido
+     * @param payload Objeto JSON ya generado: {version, reset: true, markers}
+     *                con el estado completo o {version, remove, markers}
+     *                con las diferencias; markers usa la codificación compacta
+     */
+    protected void handleUpdateDataset(JSONAware payload) {
+        invokeWidget("updateDataset", payload);
+    }
+    
+    /**
+     * Maneja el envío de las formas
+     * @param shapes Valor diferido con el objeto JSON {zoom, reset, count,
+     *               remove, shapes, p}; shapes lleva {id, type, title,
+     *               description, color, n, c} con los vértices codificados
+     */
+    protected void handleUpdateShapes(DeferredValue shapes) {
+        invokeWidget("shapes", "updateShapes", shapes);
+    }
+    
+    /**
+     * Maneja el envío de las celdas del mapa de calor
+     * @param cells Valor diferido con el objeto JSON {zoom, cell, bits, max,
+     *              n, c} (null si se quitó el mapa de calor); c lleva por
+     *              celda la diferencia de su clave con la anterior y su
+     *              cantidad de puntos
+     */
+    protected void handleUpdateHeatmap(DeferredValue cells) {
+        invokeWidget("heatmap", "updateHeatmap", cells);
+    }
+    
+    /**
+     * Maneja el envío de un cuadro del seguimiento en vivo
+     * @param frame Objeto JSON {duration, markers}: duración de la animación
+     *              en ms (0 = sin animación) y las posiciones {n, p, c}
+     *              con identificador, latitud y longitud codificados
+     */
+    protected void handleTrackFrame(JSONObject frame) {
+        invokeWidget("trackFrame", frame);
+    }
+    
+    /**
+     * Maneja el centrado del mapa para la implementación específica
+     * @param lat Latitud del nuevo centro
+     * @param lng Longitud del nuevo centro
+     */
+    protected void handleCenterMap(double lat, double lng) {
+        JSONObject data = new JSONObject();
+        data.put("lat", lat);
+        data.put("lng", lng);
+        invokeWidget("centerMap", data);
+    }
+    
+    /**
+     * Maneja el establecimiento de vista del mapa para la implementación específica
+     * @param lat Latitud del centro
+     * @param lng Longitud del centro
+     * @param zoom Nivel de zoom
+     */
+    protected void handleSetMapView(double lat, double lng, int zoom) {
+        JSONObject data = new JSONObject();
+        data.put("lat", lat);
+        data.put("lng", lng);
+        data.put("zoom", zoom);
+        invokeWidget("setMapView", data);
+    }
+    
+    /**
+     * Maneja el cambio de zoom, sin mover el centro, para la implementación específica
+     * @param zoom Nivel de zoom
+     */
+    protected void handleSetZoom(int zoom) {
+        JSONObject data = new JSONObject();
+        data.put("zoom", zoom);
+        invokeWidget("setZoom", data);
+    }
 }
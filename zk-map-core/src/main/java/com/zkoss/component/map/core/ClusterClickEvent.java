@@ -0,0 +1,78 @@
+package com.zkoss.component.map.core;
+
+import org.zkoss.zk.ui.Component;
+import org.zkoss.zk.ui.event.Event;
+
+/**
+ * Evento generado cuando se hace clic en un cluster de marcadores
+ */
+public class ClusterClickEvent extends Event {
+    private static final long serialVersionUID = 1L;
+    
+    private final String clusterId;
+    private final double latitude;
+    private final double longitude;
+    private final int count;
+    private final int expansionZoom;
+    
+    /**
+     * Constructor para el evento de clic en cluster
+     * 
+     * @param name Nombre del evento (normalmente "onClusterClick")
+     * @param target Componente que generó el evento
+     * @param clusterId Identificador del cluster
+     * @param lat Latitud del centroide del cluster
+     * @param lng Longitud del centroide del cluster
+     * @param count Cantidad de marcadores agrupados
+     * @param expansionZoom Nivel de zoom en el que el cluster se divide
+     */
+    public ClusterClickEvent(String name, Component target, String clusterId,
+            double lat, double lng, int count, int expansionZoom) {
+        super(name, target);
+        this.clusterId = clusterId;
+        this.latitude = lat;
+        this.longitude = lng;
+        this.count = count;
+        this.expansionZoom = expansionZoom;
+    }
+    
+    /**
+     * Obtiene el identificador del cluster
+     * @return Identificador ("zoom/x/y")
+     */
+    public String getClusterId() {
+        return clusterId;
+    }
+    
+    /**
+     * Obtiene la latitud del centroide del cluster
+     * @return Latitud en grados decimales
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+    
+    /**
+     * Obtiene la longitud del centroide del cluster
+     * @return Longitud en grados decimales
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+    
+    /**
+     * Obtiene la cantidad de marcadores agrupados
+     * @return Cantidad de marcadores
+     */
+    public int getCount() {
+        return count;
+    }
+    
+    /**
+     * Obtiene el nivel de zoom en el que el cluster se divide en varios grupos
+     * @return Nivel de zoom de expansión
+     */
+    public int getExpansionZoom() {
+        return expansionZoom;
+    }
+}
@@ -0,0 +1,186 @@
+package com.zkoss.component.map.core;
+
+import java.util.Arrays;
+
+/**
+ * Nivel de la pirámide de clusters: una rejilla de celdas guardada en
+ * columnas primitivas e indexada por una tabla hash de direccionamiento
+ * abierto. Cada celda acumula la cantidad de marcadores, la suma de sus
+ * coordenadas del mundo (para el centroide) y el XOR de sus claves, que
+ * cuando la celda tiene un solo marcador es exactamente la clave de ese
+ * marcador y permite altas y bajas en O(1). Las celdas que se quedan sin
+ * marcadores se eliminan, así que el nivel nunca tiene más celdas que
+ * marcadores.
+ */
+final class ClusterLevel {
+
+    private long[] cellKeys = new long[16];
+    private int[] counts = new int[16];
+    private double[] sumX = new double[16];
+    private double[] sumY = new double[16];
+    private long[] keyXor = new long[16];
+    private int cells;
+    private int[] slots = new int[32]; // celda + 1, 0 = libre
+
+    /**
+     * Agrega un marcador a una celda
+     */
+    void add(long cellKey, double x, double y, long key) {
+        final int cell = cellOf(cellKey, true);
+        counts[cell]++;
+        sumX[cell] += x;
+        sumY[cell] += y;
+        keyXor[cell] ^= key;
+    }
+
+    /**
+     * Quita un marcador de una celda; la celda que se queda sin marcadores
+     * se elimina
+     */
+    void remove(long cellKey, double x, double y, long key) {
+        final int slot = probe(cellKey);
+        if (slots[slot] == 0) {
+            return;
+        }
+        final int cell = slots[slot] - 1;
+        if (--counts[cell] == 0) {
+            deleteCell(slot, cell);
+            return;
+        }
+        sumX[cell] -= x;
+        sumY[cell] -= y;
+        keyXor[cell] ^= key;
+    }
+
+    /**
+     * Busca la celda de una clave
+     * @return Índice de la celda, -1 si no existe y create es false
+     */
+    int cellOf(long cellKey, boolean create) {
+        final int slot = probe(cellKey);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+        if (!create) {
+            return -1;
+        }
+
+        final int cell = cells++;
+        if (cell == cellKeys.length) {
+            final int capacity = cell * 2;
+            cellKeys = Arrays.copyOf(cellKeys, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            sumX = Arrays.copyOf(sumX, capacity);
+            sumY = Arrays.copyOf(sumY, capacity);
+            keyXor = Arrays.copyOf(keyXor, capacity);
+        }
+        cellKeys[cell] = cellKey;
+        counts[cell] = 0;
+        sumX[cell] = 0;
+        sumY[cell] = 0;
+        keyXor[cell] = 0;
+        slots[slot] = cell + 1;
+        if (cells * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return cell;
+    }
+
+    int cells() {
+        return cells;
+    }
+
+    long cellKey(int cell) {
+        return cellKeys[cell];
+    }
+
+    int count(int cell) {
+        return counts[cell];
+    }
+
+    double centerX(int cell) {
+        return sumX[cell] / counts[cell];
+    }
+
+    double centerY(int cell) {
+        return sumY[cell] / counts[cell];
+    }
+
+    /**
+     * Clave del marcador de una celda con un único marcador
+     */
+    long singleKey(int cell) {
+        return keyXor[cell];
+    }
+
+    /**
+     * Cantidad de marcadores de una celda, 0 si la celda no existe
+     */
+    int countOf(long cellKey) {
+        final int cell = cellOf(cellKey, false);
+        return cell >= 0 ? counts[cell] : 0;
+    }
+
+    /**
+     * Celda de la tabla hash que apunta a una clave, o la celda libre en
+     * la que terminaría si no existe
+     */
+    private int probe(long cellKey) {
+        final int mask = slots.length - 1;
+        int slot = mix(cellKey) & mask;
+        for (int cell; (cell = slots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (cellKeys[cell] == cellKey) {
+                break;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Elimina una celda vacía: la última celda pasa a ocupar su posición y
+     * la tabla hash se compacta desplazando hacia atrás las entradas que
+     * siguen en la misma secuencia de sondeo
+     */
+    private void deleteCell(int slot, int cell) {
+        final int mask = slots.length - 1;
+        int free = slot;
+        slots[free] = 0;
+        for (int next = (free + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            final int home = mix(cellKeys[slots[next] - 1]) & mask;
+            // Se mueve si su celda ideal no está entre la libre y la actual
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                slots[free] = slots[next];
+                slots[next] = 0;
+                free = next;
+            }
+        }
+
+        final int last = --cells;
+        if (cell != last) {
+            slots[probe(cellKeys[last])] = cell + 1;
+            cellKeys[cell] = cellKeys[last];
+            counts[cell] = counts[last];
+            sumX[cell] = sumX[last];
+            sumY[cell] = sumY[last];
+            keyXor[cell] = keyXor[last];
+        }
+    }
+
+    private void rehash(int capacity) {
+        final int[] table = new int[capacity];
+        final int mask = capacity - 1;
+        for (int cell = 0; cell < cells; cell++) {
+            int slot = mix(cellKeys[cell]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = cell + 1;
+        }
+        slots = table;
+    }
+
+    private static int mix(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,292 @@
+package com.zkoss.component.map.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lee marcadores de un CSV (RFC 4180) cuya primera fila tiene los nombres
+ * de las columnas.
+ * <p>
+ * Las columnas de latitud y longitud se buscan por nombre, sin distinguir
+ * mayúsculas: las configuradas o, si no, la primera de lat, latitude,
+ * latitud e y, y de lng, lon, long, longitude, longitud y x. El título y
+ * la descripción salen de las columnas "title" y "description" por
+ * defecto. Solo se copian los campos de esas columnas; las filas con
+ * coordenadas vacías o inválidas se omiten.
+ */
+public class CsvMarkerReader extends MarkerReader {
+
+    private static final List<String> LATITUDE_COLUMNS = Arrays.asList("lat", "latitude", "latitud", "y");
+    private static final List<String> LONGITUDE_COLUMNS = Arrays.asList("lng", "lon", "long", "longitude", "longitud", "x");
+
+    private static final int FIELD = 0;  // Termina en delimitador
+    private static final int RECORD = 1; // Termina en fin de línea
+    private static final int END = 2;    // Termina en fin del flujo
+
+    private char delimiter = ',';
+    private String latitudeColumn;
+    private String longitudeColumn;
+
+    /**
+     * Crea un lector de CSV separado por comas
+     */
+    public CsvMarkerReader() {
+    }
+
+    /**
+     * Establece el separador de campos
+     * @param delimiter Separador (',' por defecto; ';' o '\t' son habituales)
+     */
+    public void setDelimiter(char delimiter) {
+        if (delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+            throw new IllegalArgumentException("Separador inválido");
+        }
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Obtiene el separador de campos
+     * @return Separador
+     */
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * Establece la columna de la latitud
+     * @param latitudeColumn Nombre de la columna, null para buscarla
+     */
+    public void setLatitudeColumn(String latitudeColumn) {
+        this.latitudeColumn = latitudeColumn;
+    }
+
+    /**
+     * Obtiene la columna de la latitud
+     * @return Nombre de la columna, null si se busca
+     */
+    public String getLatitudeColumn() {
+        return latitudeColumn;
+    }
+
+    /**
+     * Establece la columna de la longitud
+     * @param longitudeColumn Nombre de la columna, null para buscarla
+     */
+    public void setLongitudeColumn(String longitudeColumn) {
+        this.longitudeColumn = longitudeColumn;
+    }
+
+    /**
+     * Obtiene la columna de la longitud
+     * @return Nombre de la columna, null si se busca
+     */
+    public String getLongitudeColumn() {
+        return longitudeColumn;
+    }
+
+    @Override
+    Cursor open(InputStream in) throws IOException {
+        final CsvCursor cursor = new CsvCursor(new InputStreamReader(in, StandardCharsets.UTF_8), delimiter);
+        final List<String> header = cursor.readHeader();
+        final int lat = find(header, latitudeColumn, LATITUDE_COLUMNS);
+        final int lng = find(header, longitudeColumn, LONGITUDE_COLUMNS);
+        if (lat < 0 || lng < 0) {
+            throw new IOException("El CSV no tiene columnas de latitud y longitud: " + header);
+        }
+        cursor.setColumns(lat, lng, find(header, titleProperty, null), find(header, descriptionProperty, null));
+        return cursor;
+    }
+
+    private static int find(List<String> header, String column, List<String> candidates) {
+        if (column != null) {
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).equalsIgnoreCase(column)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        if (candidates != null) {
+            for (String candidate : candidates) {
+                final int index = find(header, candidate, null);
+                if (index >= 0) {
+                    return index;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Recorre las filas leyendo el texto por bloques
+     */
+    private static final class CsvCursor extends Cursor {
+        private final Reader reader;
+        private final char delimiter;
+        private final char[] buffer = new char[64 * 1024];
+        private int position;
+        private int limit;
+        private boolean done;
+
+        private StringBuilder[] fields; // Campos copiados por columna (null = se saltan)
+        private int latColumn;
+        private int lngColumn;
+        private int titleColumn;
+        private int descriptionColumn;
+
+        CsvCursor(Reader reader, char delimiter) {
+            this.reader = reader;
+            this.delimiter = delimiter;
+        }
+
+        List<String> readHeader() throws IOException {
+            final List<String> header = new ArrayList<>();
+            final StringBuilder field = new StringBuilder();
+            int end;
+            do {
+                field.setLength(0);
+                end = readField(field);
+                header.add(field.toString().trim());
+            } while (end == FIELD);
+            done = end == END;
+            if (!header.isEmpty() && header.get(0).startsWith("\uFEFF")) {
+                header.set(0, header.get(0).substring(1).trim());
+            }
+            return header;
+        }
+
+        void setColumns(int lat, int lng, int title, int description) {
+            latColumn = lat;
+            lngColumn = lng;
+            titleColumn = title;
+            descriptionColumn = description;
+            fields = new StringBuilder[Math.max(Math.max(lat, lng), Math.max(title, description)) + 1];
+            for (int column : new int[] {lat, lng, title, description}) {
+                if (column >= 0) {
+                    fields[column] = new StringBuilder();
+                }
+            }
+        }
+
+        @Override
+        boolean next() throws IOException {
+            while (!done) {
+                for (StringBuilder field : fields) {
+                    if (field != null) {
+                        field.setLength(0);
+                    }
+                }
+                int column = 0;
+                int end;
+                do {
+                    end = readField(column < fields.length ? fields[column] : null);
+                    column++;
+                } while (end == FIELD);
+                done = end == END;
+
+                if (column > latColumn && column > lngColumn && parseCoordinates()) {
+                    title = text(titleColumn, column);
+                    description = text(descriptionColumn, column);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // El flujo lo cierra quien lo abrió
+        }
+
+        private boolean parseCoordinates() {
+            try {
+                lat = Double.parseDouble(fields[latColumn].toString().trim());
+                lng = Double.parseDouble(fields[lngColumn].toString().trim());
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return Math.abs(lat) <= 90 && Math.abs(lng) <= 180;
+        }
+
+        private String text(int index, int columns) {
+            return index >= 0 && index < columns && fields[index].length() > 0 ? fields[index].toString() : null;
+        }
+
+        /**
+         * Lee un campo, copiándolo si se indica dónde
+         * @return FIELD, RECORD o END según lo que termina el campo
+         */
+        private int readField(StringBuilder out) throws IOException {
+            int c = read();
+            if (c == '"') {
+                // Entre comillas: el separador y los saltos de línea son texto
+                while (true) {
+                    c = read();
+                    if (c < 0) {
+                        return END;
+                    } else if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            break;
+                        }
+                    }
+                    if (out != null) {
+                        out.append((char) c);
+                    }
+                }
+                // Lo que siga a la comilla de cierre se ignora
+                while (c >= 0 && c != delimiter && c != '\n' && c != '\r') {
+                    c = read();
+                }
+            } else {
+                while (c >= 0 && c != delimiter && c != '\n' && c != '\r') {
+                    if (out != null) {
+                        out.append((char) c);
+                    }
+                    c = read();
+                }
+            }
+            if (c == delimiter) {
+                return FIELD;
+            } else if (c == '\r') {
+                if (peek() == '\n') {
+                    position++;
+                }
+                return peek() < 0 ? END : RECORD;
+            } else if (c == '\n') {
+                return peek() < 0 ? END : RECORD;
+            }
+            return END;
+        }
+
+        private int read() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++];
+        }
+
+        private int peek() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position];
+        }
+
+        private boolean fill() throws IOException {
+            final int read = reader.read(buffer, 0, buffer.length);
+            if (read <= 0) {
+                return false;
+            }
+            position = 0;
+            limit = read;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.zkoss.component.map.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Lee marcadores de un GeoJSON con el parser en streaming de Jackson.
+ * <p>
+ * Acepta una FeatureCollection o un arreglo de Features. Cada Feature con
+ * geometría Point es un marcador; el título y la descripción salen de sus
+ * properties (por defecto "title" y "description"; los números y booleanos
+ * se convierten a texto). Las demás geometrías y las propiedades que no se
+ * usan se saltan sin leerlas en memoria.
+ */
+public class GeoJsonMarkerReader extends MarkerReader {
+
+    private static final JsonFactory FACTORY = new JsonFactory()
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    /**
+     * Crea un lector con las propiedades "title" y "description"
+     */
+    public GeoJsonMarkerReader() {
+    }
+
+    /**
+     * Crea un lector con otras propiedades para el título y la descripción
+     * @param titleProperty Propiedad del título (null para no leerlo)
+     * @param descriptionProperty Propiedad de la descripción (null para no leerla)
+     */
+    public GeoJsonMarkerReader(String titleProperty, String descriptionProperty) {
+        this.titleProperty = titleProperty;
+        this.descriptionProperty = descriptionProperty;
+    }
+
+    @Override
+    Cursor open(InputStream in) throws IOException {
+        final JsonParser parser = FACTORY.createParser(in);
+        final JsonToken first = parser.nextToken();
+        boolean features = first == JsonToken.START_ARRAY;
+        if (first == JsonToken.START_OBJECT) {
+            // Buscar "features" entre los campos de la FeatureCollection
+            while (!features && parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("features".equals(name) && value == JsonToken.START_ARRAY) {
+                    features = true;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else if (first != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new IOException("GeoJSON inválido: se esperaba un objeto o un arreglo");
+        }
+        return new GeoJsonCursor(parser, features, titleProperty, descriptionProperty);
+    }
+
+    /**
+     * Recorre el arreglo de Features
+     */
+    private static final class GeoJsonCursor extends Cursor {
+        private final JsonParser parser;
+        private final String titleProperty;
+        private final String descriptionProperty;
+        private boolean done;
+        private boolean point;
+
+        GeoJsonCursor(JsonParser parser, boolean features, String titleProperty, String descriptionProperty) {
+            this.parser = parser;
+            this.done = !features;
+            this.titleProperty = titleProperty;
+            this.descriptionProperty = descriptionProperty;
+        }
+
+        @Override
+        boolean next() throws IOException {
+            while (!done) {
+                final JsonToken token = parser.nextToken();
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    done = true;
+                } else if (token == JsonToken.START_OBJECT) {
+                    if (readFeature()) {
+                        return true;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+
+        private boolean readFeature() throws IOException {
+            point = false;
+            title = null;
+            description = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("geometry".equals(name) && value == JsonToken.START_OBJECT) {
+                    readGeometry();
+                } else if ("properties".equals(name) && value == JsonToken.START_OBJECT) {
+                    readProperties();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return point && Math.abs(lat) <= 90 && Math.abs(lng) <= 180;
+        }
+
+        private void readGeometry() throws IOException {
+            boolean isPoint = false;
+            boolean coordinates = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("type".equals(name)) {
+                    isPoint = "Point".equals(parser.getValueAsString());
+                } else if ("coordinates".equals(name) && value == JsonToken.START_ARRAY) {
+                    coordinates = readPosition();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            point = isPoint && coordinates;
+        }
+
+        /**
+         * Lee [lng, lat, ...] y deja el parser al final del arreglo
+         * @return false si no es una posición (otra geometría)
+         */
+        private boolean readPosition() throws IOException {
+            JsonToken token = parser.nextToken();
+            boolean valid = false;
+            if (token.isNumeric()) {
+                lng = parser.getDoubleValue();
+                token = parser.nextToken();
+                if (token.isNumeric()) {
+                    lat = parser.getDoubleValue();
+                    valid = true;
+                    token = parser.nextToken();
+                }
+            }
+            // Altitud, o el resto de una geometría que no es Point
+            while (token != JsonToken.END_ARRAY) {
+                parser.skipChildren();
+                token = parser.nextToken();
+            }
+            return valid;
+        }
+
+        private void readProperties() throws IOException {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                final boolean isTitle = name.equals(titleProperty);
+                final boolean isDescription = name.equals(descriptionProperty);
+                if ((isTitle || isDescription) && value.isScalarValue()) {
+                    final String text = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    if (isTitle) {
+                        title = text;
+                    }
+                    if (isDescription) {
+                        description = text;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.zkoss.component.map.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Puntos de un mapa de calor agregados en una grilla que depende del zoom
+ * (ver {@link AbstractMapComponent#setHeatmap}).
+ * <p>
+ * Los puntos se guardan como coordenadas del mundo Web Mercator en enteros
+ * de 31 bits, así que la celda de un punto a cualquier zoom es un
+ * desplazamiento de bits. Cada nivel de zoom se agrega la primera vez que
+ * se pide: las claves de celda de todos los puntos se calculan y se
+ * ordenan en paralelo, y quedan como arreglos ordenados de claves y
+ * cantidades. Los puntos agregados después se ordenan aparte y se
+ * combinan con los niveles ya calculados, sin volver a agregar los
+ * anteriores.
+ * <p>
+ * Se puede compartir entre componentes y cargar desde otros hilos: los
+ * métodos están sincronizados.
+ */
+public class HeatmapLayer implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Niveles de zoom agregados (0 a 20) */
+    static final int LEVELS = 21;
+
+    private static final double SCALE = 1L << 31;   // Coordenadas del mundo a enteros
+    private static final int MAX = Integer.MAX_VALUE;
+    private static final int PARALLEL_MIN = 1 << 16; // Puntos a partir de los que se agrega en paralelo
+
+    private final int cellSize;
+    private int[] xs = new int[1024];
+    private int[] ys = new int[1024];
+    private int size;
+    private long version;
+    private transient Level[] levels;
+
+    /**
+     * Crea un mapa de calor con celdas de 16 píxeles
+     */
+    public HeatmapLayer() {
+        this(16);
+    }
+
+    /**
+     * Crea un mapa de calor
+     * @param cellSize Lado de las celdas en píxeles: 4, 8, 16, 32 o 64
+     */
+    public HeatmapLayer(int cellSize) {
+        if (cellSize < 4 || cellSize > 64 || Integer.bitCount(cellSize) != 1) {
+            throw new IllegalArgumentException("El tamaño de celda debe ser 4, 8, 16, 32 o 64");
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Agrega un punto
+     * @param lat Latitud
+     * @param lng Longitud
+     */
+    public synchronized void addPoint(double lat, double lng) {
+        ensureCapacity(size + 1);
+        xs[size] = toWorld(Mercator.x(lng));
+        ys[size] = toWorld(Mercator.y(lat));
+        size++;
+        version++;
+    }
+
+    /**
+     * Agrega varios puntos
+     * @param coordinates Puntos [lat0, lng0, lat1, lng1, ...]
+     */
+    public synchronized void addPoints(double[] coordinates) {
+        if (coordinates.length % 2 != 0) {
+            throw new IllegalArgumentException("Las coordenadas deben ser pares latitud, longitud");
+        }
+        final int count = coordinates.length / 2;
+        ensureCapacity(size + count);
+        for (int i = 0; i < count; i++) {
+            xs[size + i] = toWorld(Mercator.x(coordinates[i * 2 + 1]));
+            ys[size + i] = toWorld(Mercator.y(coordinates[i * 2]));
+        }
+        size += count;
+        version++;
+    }
+
+    /**
+     * Quita todos los puntos
+     */
+    public synchronized void clear() {
+        xs = new int[1024];
+        ys = new int[1024];
+        size = 0;
+        levels = null;
+        version++;
+    }
+
+    /**
+     * Obtiene la cantidad de puntos
+     * @return Puntos agregados
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Obtiene el lado de las celdas
+     * @return Tamaño en píxeles
+     */
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Obtiene la versión de los puntos, que cambia con cada alta o limpieza
+     * @return Versión
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Obtiene la cantidad de puntos de la celda más cargada de un zoom
+     * @param zoom Nivel de zoom
+     * @return Puntos de la celda más cargada
+     */
+    public synchronized int getMaxIntensity(int zoom) {
+        return level(zoom).max;
+    }
+
+    /**
+     * Celdas con puntos dentro de un área, como objeto JSON
+     * {zoom, cell, bits, max, n, c}: c lleva por celda la diferencia de su
+     * clave (fila &lt;&lt; bits | columna) con la anterior y su cantidad
+     * @param zoom Nivel de zoom
+     * @param south Latitud sur
+     * @param west Longitud oeste (mayor que la este si cruza el antimeridiano)
+     * @param north Latitud norte
+     * @param east Longitud este
+     * @return Objeto JSON
+     */
+    synchronized String encode(int zoom, double south, double west, double north, double east) {
+        final int z = Math.max(0, Math.min(LEVELS - 1, zoom));
+        final Level level = level(z);
+        final int bits = bits(z);
+        final StringBuilder cells = new StringBuilder();
+        int n = 0;
+        long last = 0;
+
+        final long top = cell(toWorld(Mercator.y(north)), bits);
+        final long bottom = cell(toWorld(Mercator.y(south)), bits);
+        final long left = cell(toWorld(Mercator.x(west)), bits);
+        final long right = cell(toWorld(Mercator.x(east)), bits);
+        final long lastColumn = (1L << bits) - 1;
+        for (long row = top; row <= bottom; row++) {
+            // Si cruza el antimeridiano son dos tramos de columnas
+            final long[] ranges = left <= right
+                    ? new long[] {left, right}
+                    : new long[] {0, right, left, lastColumn};
+            for (int r = 0; r < ranges.length; r += 2) {
+                final long from = row << bits | ranges[r];
+                final long to = row << bits | ranges[r + 1];
+                int i = Arrays.binarySearch(level.keys, 0, level.count, from);
+                if (i < 0) {
+                    i = -i - 1;
+                }
+                for (; i < level.count && level.keys[i] <= to; i++) {
+                    MarkerCodec.writeUnsigned(cells, level.keys[i] - last);
+                    MarkerCodec.writeUnsigned(cells, level.counts[i]);
+                    last = level.keys[i];
+                    n++;
+                }
+            }
+        }
+        return new StringBuilder(cells.length() + 96)
+                .append("{\"zoom\":").append(z)
+                .append(",\"cell\":").append(cellSize)
+                .append(",\"bits\":").append(bits)
+                .append(",\"max\":").append(level.max)
+                .append(",\"n\":").append(n)
+                .append(",\"c\":\"").append(cells).append("\"}")
+                .toString();
+    }
+
+    /**
+     * Nivel agregado de un zoom, al día con todos los puntos
+     */
+    private Level level(int zoom) {
+        if (levels == null) {
+            levels = new Level[LEVELS];
+        }
+        Level level = levels[zoom];
+        if (level == null) {
+            level = aggregate(0, size, bits(zoom));
+            levels[zoom] = level;
+        } else if (level.points < size) {
+            // Solo se agregan los puntos nuevos y se combinan con el nivel
+            level = level.merge(aggregate(level.points, size, bits(zoom)));
+            levels[zoom] = level;
+        }
+        return level;
+    }
+
+    /**
+     * Agrega los puntos [from, to) en celdas
+     */
+    private Level aggregate(int from, int to, int bits) {
+        final int n = to - from;
+        final long[] keys = new long[n];
+        final int[] px = xs;
+        final int[] py = ys;
+        if (n >= PARALLEL_MIN) {
+            IntStream.range(0, n).parallel().forEach(i -> keys[i] = key(px[from + i], py[from + i], bits));
+            Arrays.parallelSort(keys);
+        } else {
+            for (int i = 0; i < n; i++) {
+                keys[i] = key(px[from + i], py[from + i], bits);
+            }
+            Arrays.sort(keys);
+        }
+
+        // Las claves iguales quedaron juntas: se cuentan en el mismo arreglo
+        final int[] counts = new int[n];
+        int cells = 0;
+        for (int i = 0; i < n; i++) {
+            if (cells > 0 && keys[cells - 1] == keys[i]) {
+                counts[cells - 1]++;
+            } else {
+                keys[cells] = keys[i];
+                counts[cells++] = 1;
+            }
+        }
+        return new Level(Arrays.copyOf(keys, cells), Arrays.copyOf(counts, cells), cells, to);
+    }
+
+    /**
+     * Bits de la columna (y de la fila) de una celda a un zoom
+     */
+    private int bits(int zoom) {
+        return zoom + 8 - Integer.numberOfTrailingZeros(cellSize);
+    }
+
+    private static long key(int x, int y, int bits) {
+        return cell(y, bits) << bits | cell(x, bits);
+    }
+
+    private static long cell(int world, int bits) {
+        return world >>> (31 - bits);
+    }
+
+    private static int toWorld(double value) {
+        return (int) Math.max(0, Math.min(MAX, Math.floor(value * SCALE)));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > xs.length) {
+            final int length = Math.max(capacity, xs.length + (xs.length >> 1));
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+        }
+    }
+
+    /**
+     * Celdas de un zoom ordenadas por clave, con la cantidad de puntos de
+     * cada una
+     */
+    private static final class Level {
+        final long[] keys;
+        final int[] counts;
+        final int count;   // Celdas usadas de los arreglos
+        final int points;  // Puntos agregados
+        final int max;     // Cantidad de la celda más cargada
+
+        Level(long[] keys, int[] counts, int count, int points) {
+            this(keys, counts, count, points, max(counts, count));
+        }
+
+        private Level(long[] keys, int[] counts, int count, int points, int max) {
+            this.keys = keys;
+            this.counts = counts;
+            this.count = count;
+            this.points = points;
+            this.max = max;
+        }
+
+        private static int max(int[] counts, int count) {
+            int max = 0;
+            for (int i = 0; i < count; i++) {
+                max = Math.max(max, counts[i]);
+            }
+            return max;
+        }
+
+        /**
+         * Combina dos niveles ordenados sumando las celdas comunes
+         */
+        Level merge(Level added) {
+            // Si todas las celdas nuevas ya existen se suman en el lugar
+            final int[] found = new int[added.count];
+            int j = 0;
+            while (j < added.count
+                    && (found[j] = Arrays.binarySearch(this.keys, 0, count, added.keys[j])) >= 0) {
+                j++;
+            }
+            if (j == added.count) {
+                int max = this.max;
+                for (j = 0; j < added.count; j++) {
+                    this.counts[found[j]] += added.counts[j];
+                    max = Math.max(max, this.counts[found[j]]);
+                }
+                return new Level(this.keys, this.counts, count, added.points, max);
+            }
+
+            final long[] keys = new long[count + added.count];
+            final int[] counts = new int[keys.length];
+            int i = 0;
+            int k = 0;
+            j = 0;
+            while (i < count || j < added.count) {
+                if (j == added.count || (i < count && this.keys[i] < added.keys[j])) {
+                    keys[k] = this.keys[i];
+                    counts[k++] = this.counts[i++];
+                } else if (i == count || added.keys[j] < this.keys[i]) {
+                    keys[k] = added.keys[j];
+                    counts[k++] = added.counts[j++];
+                } else {
+                    keys[k] = this.keys[i];
+                    counts[k++] = this.counts[i++] + added.counts[j++];
+                }
+            }
+            return k == keys.length
+                    ? new Level(keys, counts, k, added.points)
+                    : new Level(Arrays.copyOf(keys, k), Arrays.copyOf(counts, k), k, added.points);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.zkoss.component.map.core;
+
+import org.zkoss.json.JSONAware;
+
+/**
+ * JSON ya generado; se escribe tal cual en cada respuesta, de modo que un
+ * mismo contenido codificado una vez se puede enviar a muchos clientes
+ */
+final class JSONPayload implements JSONAware {
+    private final String json;
+
+    JSONPayload(String json) {
+        this.json = json;
+    }
+
+    @Override
+    public String toJSONString() {
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+}
@@ -0,0 +1,202 @@
+package com.zkoss.component.map.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.zkoss.zk.ui.Desktop;
+import org.zkoss.zk.ui.Executions;
+import org.zkoss.zk.ui.event.Event;
+
+/**
+ * Seguimiento en vivo de los marcadores de un componente
+ * (ver {@link AbstractMapComponent#setTrackingRate}).
+ * <p>
+ * Las posiciones llegan desde cualquier hilo y se acumulan por marcador:
+ * solo cuenta la última de cada uno. Un temporizador compartido revisa los
+ * pendientes a la frecuencia configurada y, si hay alguno, programa con
+ * server push un único evento en el escritorio, que aplica todas las
+ * posiciones y envía un cuadro al cliente. Mientras ese evento no se
+ * procese no se programa otro, así que un cliente lento recibe menos
+ * cuadros en lugar de acumularlos.
+ */
+public final class LiveTracker {
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(task -> {
+        final Thread thread = new Thread(task, "zk-map-tracking");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AbstractMapComponent map;
+    private final Desktop desktop;
+    private final int rate;
+    private final ConcurrentHashMap<Long, double[]> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private volatile boolean stopped;
+    private ScheduledFuture<?> task;
+
+    LiveTracker(AbstractMapComponent map, Desktop desktop, int rate) {
+        this.map = map;
+        this.desktop = desktop;
+        this.rate = rate;
+    }
+
+    void start() {
+        final long period = TimeUnit.SECONDS.toMicros(1) / rate;
+        task = TIMER.scheduleAtFixedRate(this::tick, period, period, TimeUnit.MICROSECONDS);
+    }
+
+    void stop() {
+        stopped = true;
+        if (task != null) {
+            task.cancel(false);
+        }
+        dropped.add(pending.size());
+        pending.clear();
+    }
+
+    /**
+     * Registra una posición; reemplaza la anterior del mismo marcador si
+     * aún no se envió
+     * @return false si el seguimiento ya se detuvo
+     */
+    boolean update(long id, double lat, double lng) {
+        if (stopped) {
+            dropped.increment();
+            return false;
+        }
+        received.increment();
+        if (pending.put(id, new double[] {lat, lng}) != null) {
+            coalesced.increment();
+        }
+        return true;
+    }
+
+    /**
+     * Se ejecuta en el hilo del temporizador. ZK no separa los componentes
+     * de la página cuando caduca la sesión, así que el escritorio se
+     * revisa en cada tick, también sin pendientes o con un cuadro sin
+     * procesar, para no mantener vivo el temporizador
+     */
+    private void tick() {
+        if (!desktop.isAlive()) {
+            stop();
+            return;
+        }
+        if (pending.isEmpty() || !frameScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Executions.schedule(desktop, event -> {
+                try {
+                    map.applyTrackingFrame(this);
+                } finally {
+                    frameScheduled.set(false);
+                }
+            }, new Event("onTrackingFrame", map));
+        } catch (RuntimeException e) {
+            // Server push desactivado o escritorio destruido
+            frameScheduled.set(false);
+            stop();
+        }
+    }
+
+    /**
+     * Quita las posiciones pendientes, ordenadas por identificador. Se
+     * llama en el hilo de eventos del escritorio
+     * @return Pares {identificador, [lat, lng]}
+     */
+    List<Object[]> drain() {
+        final List<Long> ids = new ArrayList<>(pending.keySet());
+        Collections.sort(ids);
+        final List<Object[]> updates = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            final double[] position = pending.remove(id);
+            if (position != null) {
+                updates.add(new Object[] {id, position});
+            }
+        }
+        frames.increment();
+        return updates;
+    }
+
+    void applied(int count, int unknown) {
+        applied.add(count);
+        dropped.add(unknown);
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Obtiene la frecuencia de envío
+     * @return Cuadros por segundo
+     */
+    public int getRate() {
+        return rate;
+    }
+
+    /**
+     * Obtiene las posiciones recibidas desde que se activó el seguimiento
+     * @return Posiciones recibidas
+     */
+    public long getReceivedUpdates() {
+        return received.sum();
+    }
+
+    /**
+     * Obtiene las posiciones reemplazadas por otra más reciente del mismo
+     * marcador antes de enviarse
+     * @return Posiciones combinadas
+     */
+    public long getCoalescedUpdates() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Obtiene las posiciones descartadas: de marcadores que ya no existen,
+     * llegadas con el seguimiento detenido o pendientes al detenerlo
+     * @return Posiciones descartadas
+     */
+    public long getDroppedUpdates() {
+        return dropped.sum();
+    }
+
+    /**
+     * Obtiene las posiciones aplicadas a los marcadores
+     * @return Posiciones aplicadas
+     */
+    public long getAppliedUpdates() {
+        return applied.sum();
+    }
+
+    /**
+     * Obtiene los cuadros procesados
+     * @return Cuadros procesados
+     */
+    public long getFrames() {
+        return frames.sum();
+    }
+
+    /**
+     * Obtiene las posiciones que esperan el próximo cuadro
+     * @return Marcadores con posición pendiente
+     */
+    public int getPendingUpdates() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,65 @@
+package com.zkoss.component.map.core;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.zkoss.zk.ui.Component;
+import org.zkoss.zk.ui.event.Event;
+
+/**
+ * Varios eventos del mismo tipo que el widget envió en una sola petición
+ * (una selección de muchos marcadores, una ráfaga de clics). Se publica con
+ * el nombre del evento seguido de {@value #SUFFIX}, por ejemplo
+ * "onMarkerClickBatch", en lugar de publicar cada evento por separado.
+ * Si el componente no escucha el evento agrupado, los eventos se publican
+ * uno por uno como siempre.
+ *
+ * @param <E> Tipo de los eventos agrupados
+ */
+public class MapBatchEvent<E extends Event> extends Event {
+    private static final long serialVersionUID = 1L;
+
+    /** Sufijo del nombre de los eventos agrupados */
+    public static final String SUFFIX = "Batch";
+
+    private final String eventName;
+    private final List<E> events;
+
+    /**
+     * Constructor para el evento agrupado
+     *
+     * @param name Nombre del evento (el del evento agrupado más {@value #SUFFIX})
+     * @param target Componente que generó el evento
+     * @param eventName Nombre de los eventos agrupados (por ejemplo "onMarkerClick")
+     * @param events Eventos en el orden en que los envió el cliente
+     */
+    public MapBatchEvent(String name, Component target, String eventName, List<E> events) {
+        super(name, target);
+        this.eventName = eventName;
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Obtiene el nombre de los eventos agrupados
+     * @return Nombre del evento, por ejemplo "onMarkerClick"
+     */
+    public String getEventName() {
+        return eventName;
+    }
+
+    /**
+     * Obtiene los eventos agrupados
+     * @return Lista de solo lectura
+     */
+    public List<E> getEvents() {
+        return events;
+    }
+
+    /**
+     * Obtiene la cantidad de eventos agrupados
+     * @return Cantidad de eventos
+     */
+    public int size() {
+        return events.size();
+    }
+}
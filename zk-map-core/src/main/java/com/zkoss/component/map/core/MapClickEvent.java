@@ -11,6 +11,8 @@ public class MapClickEvent extends Event {
     
     private final double latitude;
     private final double longitude;
+    private Place place;
+    private boolean placeResolved;
     
     /**
      * Constructor para el evento de clic en mapa
@@ -41,4 +43,51 @@ public class MapClickEvent extends Event {
     public double getLongitude() {
         return longitude;
     }
+    
+    /**
+     * Obtiene los marcadores dibujados bajo el clic, según la tolerancia
+     * del componente y su zoom actual. Se resuelve en el servidor con el
+     * índice espacial, sin recorrer todos los marcadores
+     * @return Índices de los marcadores, del más cercano al más lejano;
+     *         vacío si el destino no es un componente de mapa
+     * @see AbstractMapComponent#setHitTolerance(int)
+     */
+    public int[] getNearestMarkers() {
+        if (!(getTarget() instanceof AbstractMapComponent)) {
+            return new int[0];
+        }
+        final AbstractMapComponent map = (AbstractMapComponent) getTarget();
+        return map.getMarkersAt(latitude, longitude, map.getHitTolerance());
+    }
+    
+    /**
+     * Obtiene los marcadores más cercanos al punto del clic
+     * @param k Cantidad máxima de marcadores
+     * @return Índices de los marcadores, del más cercano al más lejano;
+     *         vacío si el destino no es un componente de mapa
+     */
+    public int[] getNearestMarkers(int k) {
+        if (!(getTarget() instanceof AbstractMapComponent)) {
+            return new int[0];
+        }
+        return ((AbstractMapComponent) getTarget()).getNearestMarkers(latitude, longitude, k);
+    }
+    
+    /**
+     * Obtiene el lugar más cercano al punto del clic según el nomenclátor
+     * del componente. Se busca la primera vez que se pide
+     * @return Lugar con su distancia al clic; null si el componente no
+     *         tiene nomenclátor o está vacío
+     * @see AbstractMapComponent#setReverseGeocoder(ReverseGeocoder)
+     */
+    public Place getPlace() {
+        if (!placeResolved) {
+            placeResolved = true;
+            if (getTarget() instanceof AbstractMapComponent) {
+                final ReverseGeocoder geocoder = ((AbstractMapComponent) getTarget()).getReverseGeocoder();
+                place = geocoder != null ? geocoder.nearest(latitude, longitude) : null;
+            }
+        }
+        return place;
+    }
 }
@@ -0,0 +1,185 @@
+package com.zkoss.component.map.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.zkoss.json.JSONArray;
+import org.zkoss.json.JSONObject;
+import org.zkoss.zk.au.DeferredValue;
+
+/**
+ * Cola de comandos de un componente durante una ejecución de ZK. Combina
+ * las operaciones antes de enviarlas:
+ * <ul>
+ * <li>los cambios de vista (centerMap, setMapView, setZoom) se funden campo
+ * a campo en una sola operación, en la posición del último cambio;</li>
+ * <li>un alta seguida de la baja del mismo marcador se anulan, y las
+ * modificaciones se suman al alta o a la modificación pendiente;</li>
+ * <li>clearMarkers descarta las operaciones de marcadores anteriores;</li>
+ * <li>las definiciones de estilos de marcador se juntan en una sola
+ * operación que va primero, antes de cualquier marcador que las use;</li>
+ * <li>las operaciones con clave reemplazan a la anterior con la misma clave.</li>
+ * </ul>
+ * El resultado es una única lista ordenada de pares [comando, datos].
+ */
+final class MapCommandQueue {
+
+    private final List<Object[]> ops = new ArrayList<>(); // {clave, comando, datos}, null = anulada
+    private final Map<Long, Integer> markerOps = new HashMap<>(); // id -> alta o modificación pendiente
+    private final Map<String, Integer> keyedOps = new HashMap<>();
+    private JSONObject markerStyles; // Definiciones pendientes, null = ninguna
+    private int viewOp = -1;
+
+    /**
+     * Agrega un comando a la cola
+     * @param key Clave del comando (null si no reemplaza a otro)
+     * @param command Nombre del comando
+     * @param data Argumentos del comando; un DeferredValue se evalúa al vaciar la cola
+     */
+    void add(String key, String command, Object data) {
+        if (key != null) {
+            cancel(keyedOps.remove(key));
+            keyedOps.put(key, ops.size());
+            append(key, command, data);
+            return;
+        }
+
+        switch (command) {
+            case "centerMap":
+            case "setMapView":
+            case "setZoom":
+                addView((JSONObject) data);
+                break;
+            case "addMarker":
+                markerOps.put(idOf(data), ops.size());
+                append(null, command, data);
+                break;
+            case "updateMarker":
+                addUpdate((JSONObject) data);
+                break;
+            case "removeMarker":
+                addRemove((JSONObject) data);
+                break;
+            case "clearMarkers":
+                clearMarkerOps();
+                append(null, command, data);
+                break;
+            case "defineMarkerStyles":
+                if (markerStyles == null) {
+                    markerStyles = new JSONObject();
+                }
+                markerStyles.putAll((JSONObject) data);
+                break;
+            default:
+                append(null, command, data);
+        }
+    }
+
+    /**
+     * Vacía la cola
+     * @return Lista de pares [comando, datos] en el orden en que se emitieron
+     */
+    JSONArray drain() {
+        final JSONArray list = new JSONArray();
+        if (markerStyles != null) {
+            final JSONArray pair = new JSONArray();
+            pair.add("defineMarkerStyles");
+            pair.add(markerStyles);
+            list.add(pair);
+        }
+        for (Object[] op : ops) {
+            if (op != null) {
+                final JSONArray pair = new JSONArray();
+                pair.add(op[1]);
+                pair.add(op[2] instanceof DeferredValue ? ((DeferredValue) op[2]).getValue() : op[2]);
+                list.add(pair);
+            }
+        }
+        ops.clear();
+        markerOps.clear();
+        keyedOps.clear();
+        markerStyles = null;
+        viewOp = -1;
+        return list;
+    }
+
+    private void addView(JSONObject data) {
+        final JSONObject view = new JSONObject();
+        if (viewOp >= 0) {
+            view.putAll((JSONObject) ops.get(viewOp)[2]);
+            cancel(viewOp);
+        }
+        view.putAll(data);
+
+        final String command;
+        if (!view.containsKey("zoom")) {
+            command = "centerMap";
+        } else if (view.containsKey("lat")) {
+            command = "setMapView";
+        } else {
+            command = "setZoom";
+        }
+        viewOp = ops.size();
+        append(null, command, view);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addUpdate(JSONObject changes) {
+        final Integer pending = markerOps.get(idOf(changes));
+        if (pending != null) {
+            // Se suman al alta o a la modificación pendiente del mismo marcador
+            ((JSONObject) ops.get(pending)[2]).putAll(changes);
+            return;
+        }
+        markerOps.put(idOf(changes), ops.size());
+        append(null, "updateMarker", changes);
+    }
+
+    private void addRemove(JSONObject data) {
+        final Integer pending = markerOps.remove(idOf(data));
+        if (pending != null) {
+            final boolean added = "addMarker".equals(ops.get(pending)[1]);
+            cancel(pending);
+            if (added) {
+                // El cliente nunca llegó a tener el marcador
+                return;
+            }
+        }
+        append(null, "removeMarker", data);
+    }
+
+    private void clearMarkerOps() {
+        for (int i = 0; i < ops.size(); i++) {
+            final Object[] op = ops.get(i);
+            if (op != null && op[0] == null) {
+                switch ((String) op[1]) {
+                    case "addMarker":
+                    case "addMarkers":
+                    case "updateMarker":
+                    case "removeMarker":
+                    case "clearMarkers":
+                        ops.set(i, null);
+                        break;
+                    default:
+                }
+            }
+        }
+        markerOps.clear();
+    }
+
+    private void append(String key, String command, Object data) {
+        ops.add(new Object[] {key, command, data});
+    }
+
+    private void cancel(Integer index) {
+        if (index != null) {
+            ops.set(index, null);
+        }
+    }
+
+    private static Long idOf(Object data) {
+        return ((Number) ((JSONObject) data).get("id")).longValue();
+    }
+}
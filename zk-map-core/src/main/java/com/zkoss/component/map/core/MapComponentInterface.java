@@ -1,5 +1,9 @@
 package com.zkoss.component.map.core;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
 import org.zkoss.zk.ui.Component;
 import org.zkoss.json.JSONObject;
 import org.zkoss.json.JSONArray;
@@ -71,31 +75,143 @@ public interface MapComponentInterface {
     boolean isShowControls();
     
     /**
-     * Agrega un marcador al mapa
+     * Agrega un marcador al mapa, que ocupa el último índice
      * @param lat Latitud del marcador
      * @param lng Longitud del marcador
      * @param title Título del marcador
      * @param description Descripción del marcador
+     * @throws IllegalArgumentException si las coordenadas están fuera de
+     *         rango o no son números finitos
+     * @see #getMarkerId(int)
      */
     void addMarker(double lat, double lng, String title, String description);
     
     /**
-     * Elimina un marcador específico
+     * Agrega muchos marcadores en una sola operación. El cliente los recibe
+     * en pocos bloques grandes que dibuja de forma progresiva, notificando
+     * el avance con el evento "onMarkersLoad"
+     * @param markers Marcadores a agregar
+     * @throws IllegalArgumentException si algún marcador tiene coordenadas
+     *         inválidas; en ese caso no se agrega ninguno
+     */
+    void addMarkers(Collection<? extends Marker> markers);
+    
+    /**
+     * Agrega los marcadores de un stream en una sola operación. Si el
+     * stream falla a mitad de la lectura (por ejemplo, con la
+     * UncheckedIOException de un {@link MarkerReader}) no se agrega ninguno
+     * y la excepción se propaga
+     * @param markers Stream de marcadores a agregar
+     * @throws IllegalArgumentException si algún marcador tiene coordenadas
+     *         inválidas; en ese caso no se agrega ninguno
+     * @see #addMarkers(Collection)
+     */
+    void addMarkers(Stream<? extends Marker> markers);
+    
+    /**
+     * Elimina un marcador específico; el último marcador pasa a ocupar su índice
      * @param index Índice del marcador a eliminar
      */
     void removeMarker(int index);
     
+    /**
+     * Elimina un marcador a partir de su identificador; el último marcador
+     * pasa a ocupar su índice
+     * @param id Identificador del marcador
+     * @return true si el marcador existía
+     */
+    boolean removeMarkerById(long id);
+    
+    /**
+     * Mueve un marcador; el cliente solo recibe la nueva posición
+     * @param id Identificador del marcador
+     * @param lat Nueva latitud
+     * @param lng Nueva longitud
+     * @return true si el marcador existe
+     * @throws IllegalArgumentException si las coordenadas son inválidas
+     */
+    boolean moveMarker(long id, double lat, double lng);
+    
+    /**
+     * Modifica un marcador; el cliente solo recibe los campos que cambian
+     * @param id Identificador del marcador
+     * @param lat Latitud del marcador
+     * @param lng Longitud del marcador
+     * @param title Título del marcador
+     * @param description Descripción del marcador
+     * @return true si el marcador existe
+     * @throws IllegalArgumentException si las coordenadas son inválidas
+     */
+    boolean updateMarker(long id, double lat, double lng, String title, String description);
+    
+    /**
+     * Obtiene el identificador del marcador que ocupa un índice. Los
+     * índices no se conservan al eliminar marcadores (el último ocupa el
+     * índice liberado); el identificador sí
+     * @param index Índice del marcador
+     * @return Identificador del marcador
+     */
+    long getMarkerId(int index);
+    
+    /**
+     * Obtiene el índice actual de un marcador
+     * @param id Identificador del marcador
+     * @return Índice del marcador, -1 si ya no existe
+     */
+    int indexOfMarker(long id);
+    
     /**
      * Elimina todos los marcadores del mapa
      */
     void clearMarkers();
     
     /**
-     * Obtiene todos los marcadores actuales
-     * @return Array JSON con la información de los marcadores
+     * Obtiene todos los marcadores actuales, en el orden de sus índices.
+     * Al eliminar un marcador el último pasa a ocupar su lugar, así que el
+     * orden es el de inserción solo mientras no se elimine ninguno
+     * @return Copia en un array JSON con la información de los marcadores
+     * @deprecated Copia todos los marcadores en cada llamada; usar
+     *             {@link #getMarkerList()}, que los recorre sin copiarlos
      */
+    @Deprecated
     JSONArray getMarkers();
     
+    /**
+     * Obtiene todos los marcadores actuales sin copiarlos, en el orden de
+     * sus índices. Al eliminar un marcador el último pasa a ocupar su
+     * lugar, así que el orden es el de inserción solo mientras no se
+     * elimine ninguno
+     * @return Vista de solo lectura con un objeto JSON por marcador
+     */
+    List<JSONObject> getMarkerList();
+    
+    /**
+     * Agrega una línea o un polígono. El cliente solo recibe los vértices
+     * que se distinguen al zoom actual, y los demás al acercarse
+     * @param shape Forma a agregar
+     * @return Identificador de la forma
+     */
+    long addShape(Shape shape);
+    
+    /**
+     * Agrega muchas formas en una sola operación; la simplificación de
+     * cada una se calcula en paralelo
+     * @param shapes Formas a agregar
+     */
+    void addShapes(Collection<? extends Shape> shapes);
+    
+    /**
+     * Elimina una forma
+     * @param id Identificador de la forma
+     * @return true si la forma existía
+     */
+    boolean removeShape(long id);
+    
+    /**
+     * Elimina todas las formas del mapa
+     */
+    void clearShapes();
+    
     /**
      * Centra el mapa en unas coordenadas específicas
      * @param lat Latitud del nuevo centro
@@ -111,6 +227,16 @@ public interface MapComponentInterface {
      */
     void setMapView(double lat, double lng, int zoom);
     
+    /**
+     * Agrupa explícitamente las operaciones hechas dentro de la tarea.
+     * Los clusters y las altas y bajas del área visible se recalculan una
+     * sola vez al terminar el lote, y todas las operaciones viajan al
+     * cliente en una única lista ya combinada, que el widget aplica en una
+     * sola pasada. Los lotes se pueden anidar.
+     * @param task Operaciones sobre el mapa
+     */
+    void batch(Runnable task);
+    
     /**
      * Método para obtener el elemento UI subyacente
      * @return Componente ZK que implementa el mapa
@@ -0,0 +1,31 @@
+package com.zkoss.component.map.core;
+
+import java.util.List;
+
+import org.zkoss.zk.ui.event.Event;
+
+/**
+ * Traduce los datos que envía el widget para un evento en el evento de ZK
+ * que se publica en el servidor. Se registra por nombre de evento con
+ * {@link AbstractMapComponent#addEventDecoder}; los proveedores no tienen
+ * que atender cada evento por separado.
+ * <p>
+ * El widget puede enviar un evento ({data: [...]}) o muchos del mismo tipo
+ * en una sola petición ({batch: [[...], [...]]}); el decodificador recibe
+ * siempre los datos de un solo evento.
+ *
+ * @param <E> Tipo del evento generado
+ */
+@FunctionalInterface
+public interface MapEventDecoder<E extends Event> {
+
+    /**
+     * Genera el evento a partir de los datos del cliente
+     * @param map Componente que recibió la petición
+     * @param name Nombre del evento (onMapClick, onMarkerClick, ...)
+     * @param data Datos de un evento, tal como los envió el widget
+     * @return Evento a publicar, o null si los datos no son válidos o el
+     *         evento ya no aplica (por ejemplo, un marcador que se quitó)
+     */
+    E decode(AbstractMapComponent map, String name, List<?> data);
+}
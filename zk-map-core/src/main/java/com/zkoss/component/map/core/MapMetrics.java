@@ -0,0 +1,241 @@
+package com.zkoss.component.map.core;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.zkoss.json.JSONValue;
+import org.zkoss.lang.Library;
+
+/**
+ * Instrumentación de los componentes de mapa.
+ * <p>
+ * Las mediciones (comandos enviados y sus bytes, render, peticiones del
+ * cliente, componentes vivos) se entregan a los {@link MapMetricsListener}
+ * registrados. Sin listeners la instrumentación está desactivada y su
+ * costo es leer un campo volatile: no se mide tiempo ni se serializa nada.
+ * <p>
+ * {@link #registerMBean()} registra en JMX las estadísticas propias
+ * ({@link MapStatistics}). También se registran solas con la propiedad
+ * de librería (o del sistema) {@value #JMX_PROPERTY} en "true", por
+ * ejemplo en zk.xml:
+ * <pre>
+ * &lt;library-property&gt;
+ *     &lt;name&gt;com.zkoss.component.map.metrics.jmx&lt;/name&gt;
+ *     &lt;value&gt;true&lt;/value&gt;
+ * &lt;/library-property&gt;
+ * </pre>
+ */
+public final class MapMetrics {
+
+    /** Propiedad que registra las estadísticas en JMX al cargar la clase */
+    public static final String JMX_PROPERTY = "com.zkoss.component.map.metrics.jmx";
+
+    /** Nombre JMX de las estadísticas */
+    public static final String OBJECT_NAME = "com.zkoss.component.map:type=MapStatistics";
+
+    private static final MapMetricsListener[] NONE = new MapMetricsListener[0];
+
+    private static volatile MapMetricsListener[] listeners = NONE;
+    private static volatile boolean enabled;
+    private static MapStatistics statistics; // Registradas en JMX
+
+    static {
+        if ("true".equalsIgnoreCase(Library.getProperty(JMX_PROPERTY))) {
+            try {
+                registerMBean();
+            } catch (IllegalStateException e) {
+                // Las métricas no deben impedir cargar el componente
+            }
+        }
+    }
+
+    private MapMetrics() {
+    }
+
+    /**
+     * Agrega un listener; la instrumentación se activa con el primero
+     * @param listener Listener
+     */
+    public static synchronized void addListener(MapMetricsListener listener) {
+        final MapMetricsListener[] current = listeners;
+        final MapMetricsListener[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = listener;
+        listeners = next;
+        enabled = true;
+    }
+
+    /**
+     * Quita un listener; sin listeners la instrumentación se desactiva
+     * @param listener Listener
+     * @return true si estaba registrado
+     */
+    public static synchronized boolean removeListener(MapMetricsListener listener) {
+        final MapMetricsListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                final MapMetricsListener[] next = new MapMetricsListener[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, next.length - i);
+                listeners = next.length > 0 ? next : NONE;
+                enabled = next.length > 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Obtiene los listeners registrados
+     * @return Lista de solo lectura
+     */
+    public static List<MapMetricsListener> getListeners() {
+        return Arrays.asList(listeners.clone());
+    }
+
+    /**
+     * Indica si hay algún listener registrado
+     * @return true si la instrumentación está activa
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Registra en JMX las estadísticas propias con el nombre
+     * {@value #OBJECT_NAME} y las agrega como listener. Si ya estaban
+     * registradas no hace nada. El MBean de otra aplicación del mismo
+     * servidor con ese nombre no se reemplaza
+     * @return Estadísticas registradas
+     * @throws IllegalStateException si el nombre ya está registrado por
+     *         otra aplicación o JMX rechaza el registro
+     */
+    public static synchronized MapStatistics registerMBean() {
+        if (statistics == null) {
+            final MapStatistics created = new MapStatistics();
+            try {
+                final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                final ObjectName name = new ObjectName(OBJECT_NAME);
+                if (server.isRegistered(name)) {
+                    throw new IllegalStateException("Otra aplicación ya registró " + OBJECT_NAME + " en JMX");
+                }
+                server.registerMBean(created, name);
+            } catch (JMException e) {
+                throw new IllegalStateException("No se pudieron registrar las estadísticas en JMX", e);
+            }
+            statistics = created;
+            addListener(created);
+        }
+        return statistics;
+    }
+
+    /**
+     * Quita de JMX las estadísticas propias y deja de alimentarlas
+     */
+    public static synchronized void unregisterMBean() {
+        if (statistics != null) {
+            removeListener(statistics);
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                // Ya no estaba registrado
+            }
+            statistics = null;
+        }
+    }
+
+    static void attached(AbstractMapComponent map) {
+        for (MapMetricsListener listener : listeners) {
+            try {
+                listener.componentAttached(map);
+            } catch (RuntimeException e) {
+                // Las métricas no deben afectar al componente
+            }
+        }
+    }
+
+    static void detached(AbstractMapComponent map) {
+        for (MapMetricsListener listener : listeners) {
+            try {
+                listener.componentDetached(map);
+            } catch (RuntimeException e) {
+                // Las métricas no deben afectar al componente
+            }
+        }
+    }
+
+    /**
+     * Mide los comandos de un lote ya evaluado: pares [comando, datos]
+     */
+    static void commandsSent(AbstractMapComponent map, List<?> batch) {
+        final MapMetricsListener[] current = listeners;
+        for (Object item : batch) {
+            final List<?> pair = (List<?>) item;
+            final String command = (String) pair.get(0);
+            final int bytes = JSONValue.toJSONString(pair.get(1)).length();
+            for (MapMetricsListener listener : current) {
+                try {
+                    listener.commandSent(map, command, bytes);
+                } catch (RuntimeException e) {
+                    // Las métricas no deben afectar al componente
+                }
+            }
+        }
+    }
+
+    static void rendered(AbstractMapComponent map, long nanos, int bytes) {
+        for (MapMetricsListener listener : listeners) {
+            try {
+                listener.rendered(map, nanos, bytes);
+            } catch (RuntimeException e) {
+                // Las métricas no deben afectar al componente
+            }
+        }
+    }
+
+    static void dispatched(AbstractMapComponent map, String command, long nanos) {
+        for (MapMetricsListener listener : listeners) {
+            try {
+                listener.dispatched(map, command, nanos);
+            } catch (RuntimeException e) {
+                // Las métricas no deben afectar al componente
+            }
+        }
+    }
+
+    /**
+     * Writer que cuenta los caracteres escritos
+     */
+    static final class CountingWriter extends FilterWriter {
+        int count;
+
+        CountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            out.write(c);
+            count++;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            out.write(cbuf, off, len);
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            out.write(str, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.zkoss.component.map.core;
+
+/**
+ * Recibe las mediciones de los componentes de mapa (ver
+ * {@link MapMetrics#addListener}). Permite llevarlas a cualquier librería
+ * de métricas sin que el componente dependa de ella.
+ * <p>
+ * Los métodos se llaman en el hilo que hace el trabajo, normalmente el de
+ * eventos del escritorio, así que deben ser rápidos y seguros entre hilos.
+ * Una excepción en un listener se ignora.
+ */
+public interface MapMetricsListener {
+
+    /**
+     * Un componente se agregó a una página
+     * @param map Componente
+     */
+    default void componentAttached(AbstractMapComponent map) {
+    }
+
+    /**
+     * Un componente se quitó de su página
+     * @param map Componente
+     */
+    default void componentDetached(AbstractMapComponent map) {
+    }
+
+    /**
+     * Se envió un comando al widget
+     * @param map Componente
+     * @param command Nombre del comando (addMarker, updateClusters, ...)
+     * @param bytes Caracteres del JSON de sus datos
+     */
+    default void commandSent(AbstractMapComponent map, String command, int bytes) {
+    }
+
+    /**
+     * Se dibujó el componente completo (primer render o redibujado)
+     * @param map Componente
+     * @param nanos Duración en nanosegundos
+     * @param bytes Caracteres generados
+     */
+    default void rendered(AbstractMapComponent map, long nanos, int bytes) {
+    }
+
+    /**
+     * Se atendió una petición del cliente
+     * @param map Componente
+     * @param command Nombre de la petición (onMapClick, onMapViewport, ...)
+     * @param nanos Duración en nanosegundos
+     */
+    default void dispatched(AbstractMapComponent map, String command, long nanos) {
+    }
+}
@@ -0,0 +1,218 @@
+package com.zkoss.component.map.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.zkoss.zk.ui.Desktop;
+
+/**
+ * Estadísticas propias de los componentes de mapa: contadores por tipo de
+ * comando y de petición, histogramas de tamaños y tiempos, y los
+ * componentes vivos. Es el listener que {@link MapMetrics#registerMBean()}
+ * expone en JMX; también se puede registrar con
+ * {@link MapMetrics#addListener} y consultar directamente.
+ * <p>
+ * Los componentes vivos se guardan con referencias débiles: los de
+ * sesiones terminadas desaparecen aunque no se hayan quitado de la página.
+ */
+public class MapStatistics implements MapMetricsListener, MapStatisticsMXBean {
+
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final Map<AbstractMapComponent, Boolean> live = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Map<String, LongAdder> commands = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> commandBytes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final MetricHistogram commandSizes = new MetricHistogram();
+    private final MetricHistogram renderTimes = new MetricHistogram();
+    private final MetricHistogram renderSizes = new MetricHistogram();
+    private final MetricHistogram dispatchTimes = new MetricHistogram();
+
+    @Override
+    public void componentAttached(AbstractMapComponent map) {
+        live.put(map, Boolean.TRUE);
+    }
+
+    @Override
+    public void componentDetached(AbstractMapComponent map) {
+        live.remove(map);
+    }
+
+    @Override
+    public void commandSent(AbstractMapComponent map, String command, int bytes) {
+        commands.computeIfAbsent(command, k -> new LongAdder()).increment();
+        commandBytes.computeIfAbsent(command, k -> new LongAdder()).add(bytes);
+        commandSizes.record(bytes);
+    }
+
+    @Override
+    public void rendered(AbstractMapComponent map, long nanos, int bytes) {
+        renderTimes.record(nanos);
+        renderSizes.record(bytes);
+    }
+
+    @Override
+    public void dispatched(AbstractMapComponent map, String command, long nanos) {
+        requests.computeIfAbsent(command, k -> new LongAdder()).increment();
+        dispatchTimes.record(nanos);
+    }
+
+    /**
+     * Componentes vivos: en una página de un escritorio que no se destruyó
+     */
+    private List<AbstractMapComponent> liveComponents() {
+        final List<AbstractMapComponent> maps;
+        synchronized (live) {
+            maps = new ArrayList<>(live.keySet());
+        }
+        maps.removeIf(map -> {
+            final Desktop desktop = map.getDesktop();
+            return desktop == null || !desktop.isAlive();
+        });
+        return maps;
+    }
+
+    @Override
+    public int getLiveComponents() {
+        return liveComponents().size();
+    }
+
+    @Override
+    public long getMarkerCount() {
+        long count = 0;
+        for (AbstractMapComponent map : liveComponents()) {
+            count += map.markers.size();
+        }
+        return count;
+    }
+
+    @Override
+    public Map<String, Long> getMarkersByDesktop() {
+        final Map<String, Long> byDesktop = new TreeMap<>();
+        for (AbstractMapComponent map : liveComponents()) {
+            final Desktop desktop = map.getDesktop();
+            if (desktop != null) {
+                byDesktop.merge(desktop.getId(), (long) map.markers.size(), Long::sum);
+            }
+        }
+        return byDesktop;
+    }
+
+    @Override
+    public Map<String, Long> getCommandsSent() {
+        return snapshot(commands);
+    }
+
+    @Override
+    public Map<String, Long> getCommandBytes() {
+        return snapshot(commandBytes);
+    }
+
+    @Override
+    public long getCommandCount() {
+        return commandSizes.getCount();
+    }
+
+    @Override
+    public double getCommandBytesMean() {
+        return commandSizes.getMean();
+    }
+
+    @Override
+    public long getCommandBytes99thPercentile() {
+        return commandSizes.getPercentile(0.99);
+    }
+
+    @Override
+    public long getCommandBytesMax() {
+        return commandSizes.getMax();
+    }
+
+    @Override
+    public long getRenderCount() {
+        return renderTimes.getCount();
+    }
+
+    @Override
+    public double getRenderMeanMillis() {
+        return renderTimes.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getRender95thPercentileMillis() {
+        return renderTimes.getPercentile(0.95) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getRender99thPercentileMillis() {
+        return renderTimes.getPercentile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getRenderMaxMillis() {
+        return renderTimes.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getRenderBytesMean() {
+        return renderSizes.getMean();
+    }
+
+    @Override
+    public long getRenderBytesMax() {
+        return renderSizes.getMax();
+    }
+
+    @Override
+    public Map<String, Long> getRequestsReceived() {
+        return snapshot(requests);
+    }
+
+    @Override
+    public long getDispatchCount() {
+        return dispatchTimes.getCount();
+    }
+
+    @Override
+    public double getDispatchMeanMillis() {
+        return dispatchTimes.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getDispatch95thPercentileMillis() {
+        return dispatchTimes.getPercentile(0.95) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getDispatch99thPercentileMillis() {
+        return dispatchTimes.getPercentile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getDispatchMaxMillis() {
+        return dispatchTimes.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void reset() {
+        commands.clear();
+        commandBytes.clear();
+        requests.clear();
+        commandSizes.reset();
+        renderTimes.reset();
+        renderSizes.reset();
+        dispatchTimes.reset();
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+        final Map<String, Long> values = new TreeMap<>();
+        counters.forEach((key, counter) -> values.put(key, counter.sum()));
+        return values;
+    }
+}
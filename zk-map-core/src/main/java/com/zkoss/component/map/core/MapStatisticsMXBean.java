@@ -0,0 +1,147 @@
+package com.zkoss.component.map.core;
+
+import java.util.Map;
+
+/**
+ * Estadísticas de los componentes de mapa expuestas en JMX (ver
+ * {@link MapMetrics#registerMBean()}). Los tiempos están en milisegundos
+ * y los tamaños en caracteres del JSON enviado; los percentiles son
+ * aproximados (error menor al 12,5%).
+ */
+public interface MapStatisticsMXBean {
+
+    /**
+     * Componentes en páginas de escritorios vivos
+     * @return Cantidad de componentes
+     */
+    int getLiveComponents();
+
+    /**
+     * Marcadores de los componentes vivos
+     * @return Cantidad de marcadores
+     */
+    long getMarkerCount();
+
+    /**
+     * Marcadores de los componentes vivos por identificador de escritorio
+     * @return Identificador de escritorio -> marcadores
+     */
+    Map<String, Long> getMarkersByDesktop();
+
+    /**
+     * Comandos enviados al cliente por tipo
+     * @return Comando -> veces enviado
+     */
+    Map<String, Long> getCommandsSent();
+
+    /**
+     * Caracteres enviados al cliente por tipo de comando
+     * @return Comando -> caracteres enviados
+     */
+    Map<String, Long> getCommandBytes();
+
+    /**
+     * Comandos enviados al cliente
+     * @return Cantidad de comandos
+     */
+    long getCommandCount();
+
+    /**
+     * Tamaño medio de los datos de un comando
+     * @return Caracteres por comando, 0 sin comandos
+     */
+    double getCommandBytesMean();
+
+    /**
+     * Percentil 99 del tamaño de los datos de un comando
+     * @return Caracteres, 0 sin comandos
+     */
+    long getCommandBytes99thPercentile();
+
+    /**
+     * Mayor tamaño de los datos de un comando
+     * @return Caracteres, 0 sin comandos
+     */
+    long getCommandBytesMax();
+
+    /**
+     * Renders completos de componentes
+     * @return Cantidad de renders
+     */
+    long getRenderCount();
+
+    /**
+     * Tiempo medio de un render completo
+     * @return Milisegundos, 0 sin renders
+     */
+    double getRenderMeanMillis();
+
+    /**
+     * Percentil 95 del tiempo de un render completo
+     * @return Milisegundos, 0 sin renders
+     */
+    double getRender95thPercentileMillis();
+
+    /**
+     * Percentil 99 del tiempo de un render completo
+     * @return Milisegundos, 0 sin renders
+     */
+    double getRender99thPercentileMillis();
+
+    /**
+     * Mayor tiempo de un render completo
+     * @return Milisegundos, 0 sin renders
+     */
+    double getRenderMaxMillis();
+
+    /**
+     * Tamaño medio de un render completo
+     * @return Caracteres por render, 0 sin renders
+     */
+    double getRenderBytesMean();
+
+    /**
+     * Mayor tamaño de un render completo
+     * @return Caracteres, 0 sin renders
+     */
+    long getRenderBytesMax();
+
+    /**
+     * Peticiones del cliente por tipo
+     * @return Comando -> peticiones recibidas
+     */
+    Map<String, Long> getRequestsReceived();
+
+    /**
+     * Peticiones del cliente atendidas
+     * @return Cantidad de peticiones
+     */
+    long getDispatchCount();
+
+    /**
+     * Tiempo medio en atender una petición del cliente
+     * @return Milisegundos, 0 sin peticiones
+     */
+    double getDispatchMeanMillis();
+
+    /**
+     * Percentil 95 del tiempo en atender una petición del cliente
+     * @return Milisegundos, 0 sin peticiones
+     */
+    double getDispatch95thPercentileMillis();
+
+    /**
+     * Percentil 99 del tiempo en atender una petición del cliente
+     * @return Milisegundos, 0 sin peticiones
+     */
+    double getDispatch99thPercentileMillis();
+
+    /**
+     * Mayor tiempo en atender una petición del cliente
+     * @return Milisegundos, 0 sin peticiones
+     */
+    double getDispatchMaxMillis();
+
+    /** Pone a cero los contadores e histogramas (no los componentes vivos) */
+    void reset();
+}
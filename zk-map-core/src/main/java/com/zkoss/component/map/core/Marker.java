@@ -0,0 +1,87 @@
+package com.zkoss.component.map.core;
+
+import java.io.Serializable;
+
+/**
+ * Datos de un marcador para las operaciones de carga masiva
+ * (ver {@link MapComponentInterface#addMarkers(java.util.Collection)})
+ */
+public class Marker implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final double latitude;
+    private final double longitude;
+    private final String title;
+    private final String description;
+    private final int style;
+
+    /**
+     * Constructor del marcador con el estilo por defecto
+     *
+     * @param lat Latitud del marcador
+     * @param lng Longitud del marcador
+     * @param title Título del marcador
+     * @param description Descripción del marcador
+     */
+    public Marker(double lat, double lng, String title, String description) {
+        this(lat, lng, title, description, 0);
+    }
+
+    /**
+     * Constructor del marcador
+     *
+     * @param lat Latitud del marcador
+     * @param lng Longitud del marcador
+     * @param title Título del marcador
+     * @param description Descripción del marcador
+     * @param style Identificador devuelto por
+     *        {@link AbstractMapComponent#addMarkerStyle}, 0 para el estilo por defecto
+     */
+    public Marker(double lat, double lng, String title, String description, int style) {
+        this.latitude = lat;
+        this.longitude = lng;
+        this.title = title;
+        this.description = description;
+        this.style = style;
+    }
+
+    /**
+     * Obtiene la latitud del marcador
+     * @return Latitud en grados decimales
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Obtiene la longitud del marcador
+     * @return Longitud en grados decimales
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Obtiene el título del marcador
+     * @return Título, puede ser null
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Obtiene la descripción del marcador
+     * @return Descripción, puede ser null
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Obtiene el estilo del marcador
+     * @return Identificador del estilo, 0 para el estilo por defecto
+     */
+    public int getStyle() {
+        return style;
+    }
+}
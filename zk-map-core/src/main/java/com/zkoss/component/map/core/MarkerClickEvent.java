@@ -10,6 +10,7 @@ public class MarkerClickEvent extends Event {
     private static final long serialVersionUID = 1L;
     
     private final int markerIndex;
+    private final long markerId;
     
     /**
      * Constructor para el evento de clic en marcador
@@ -19,15 +20,38 @@ public class MarkerClickEvent extends Event {
      * @param markerIndex Índice del marcador que recibió el clic
      */
     public MarkerClickEvent(String name, Component target, int markerIndex) {
+        this(name, target, markerIndex, 0);
+    }
+    
+    /**
+     * Constructor para el evento de clic en marcador
+     * 
+     * @param name Nombre del evento (normalmente "onMarkerClick")
+     * @param target Componente que generó el evento
+     * @param markerIndex Índice actual del marcador que recibió el clic
+     *                    (-1 si es un marcador del conjunto compartido)
+     * @param markerId Identificador del marcador que recibió el clic
+     */
+    public MarkerClickEvent(String name, Component target, int markerIndex, long markerId) {
         super(name, target);
         this.markerIndex = markerIndex;
+        this.markerId = markerId;
     }
     
     /**
      * Obtiene el índice del marcador que recibió el clic
-     * @return Índice del marcador en la colección de marcadores
+     * @return Índice del marcador en la colección de marcadores, -1 si
+     *         pertenece al conjunto compartido (ver {@link AbstractMapComponent#setDataset})
      */
     public int getMarkerIndex() {
         return markerIndex;
     }
+    
+    /**
+     * Obtiene el identificador del marcador que recibió el clic
+     * @return Identificador del marcador, 0 si no se conoce
+     */
+    public long getMarkerId() {
+        return markerId;
+    }
 }
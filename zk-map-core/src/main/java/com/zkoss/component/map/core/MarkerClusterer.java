@@ -0,0 +1,301 @@
+package com.zkoss.component.map.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Motor de agrupación jerárquica de marcadores (pirámide de zoom al estilo
+ * supercluster). Cada nivel de zoom es una rejilla cuyas celdas miden
+ * {@code radius} píxeles en pantalla; como la celda de un nivel contiene
+ * exactamente cuatro celdas del nivel siguiente, los clusters de todos los
+ * niveles están anidados.
+ *
+ * La construcción proyecta los marcadores y llena los niveles en paralelo,
+ * y las altas y bajas posteriores actualizan una celda por nivel.
+ */
+public class MarkerClusterer {
+
+    /** Radio de agrupación por defecto en píxeles */
+    public static final int DEFAULT_RADIUS = 60;
+
+    /** Último nivel de zoom con agrupación por defecto */
+    public static final int DEFAULT_MAX_ZOOM = 16;
+
+    private final MarkerStore store;
+    private final int radius;
+    private final int maxZoom;
+    private ClusterLevel[] levels;
+
+    /**
+     * Constructor del motor de agrupación
+     *
+     * @param store Almacén de marcadores a agrupar
+     * @param radius Radio de agrupación en píxeles
+     * @param maxZoom Último nivel de zoom con agrupación; por encima se
+     *                devuelven los marcadores individuales
+     */
+    public MarkerClusterer(MarkerStore store, int radius, int maxZoom) {
+        if (radius <= 0) {
+            throw new IllegalArgumentException("El radio de agrupación debe ser mayor que 0");
+        }
+        if (maxZoom < 0 || maxZoom > 20) {
+            throw new IllegalArgumentException("El zoom máximo de agrupación debe estar entre 0 y 20");
+        }
+        this.store = store;
+        this.radius = radius;
+        this.maxZoom = maxZoom;
+    }
+
+    /**
+     * Construye la pirámide completa a partir del almacén, usando todos
+     * los núcleos disponibles
+     */
+    public void build() {
+        final int n = store.size();
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        final long[] keys = new long[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            xs[i] = Mercator.x(store.getLongitude(i));
+            ys[i] = Mercator.y(store.getLatitude(i));
+            keys[i] = store.getKey(i);
+        });
+
+        final ClusterLevel[] built = new ClusterLevel[maxZoom + 1];
+        IntStream.rangeClosed(0, maxZoom).parallel().forEach(zoom -> {
+            final ClusterLevel level = new ClusterLevel();
+            final double scale = scale(zoom);
+            for (int i = 0; i < n; i++) {
+                level.add(cellKey(xs[i], ys[i], scale), xs[i], ys[i], keys[i]);
+            }
+            built[zoom] = level;
+        });
+        levels = built;
+    }
+
+    /**
+     * Agrega un marcador a todos los niveles
+     * @param key Clave del marcador en el almacén
+     * @param lat Latitud del marcador
+     * @param lng Longitud del marcador
+     */
+    public void add(long key, double lat, double lng) {
+        final double x = Mercator.x(lng);
+        final double y = Mercator.y(lat);
+        for (int zoom = 0; zoom <= maxZoom; zoom++) {
+            levels()[zoom].add(cellKey(x, y, scale(zoom)), x, y, key);
+        }
+    }
+
+    /**
+     * Quita un marcador de todos los niveles
+     * @param key Clave del marcador en el almacén
+     * @param lat Latitud que tenía el marcador
+     * @param lng Longitud que tenía el marcador
+     */
+    public void remove(long key, double lat, double lng) {
+        final double x = Mercator.x(lng);
+        final double y = Mercator.y(lat);
+        for (int zoom = 0; zoom <= maxZoom; zoom++) {
+            levels()[zoom].remove(cellKey(x, y, scale(zoom)), x, y, key);
+        }
+    }
+
+    /**
+     * Vacía todos los niveles
+     */
+    public void clear() {
+        final ClusterLevel[] empty = new ClusterLevel[maxZoom + 1];
+        for (int zoom = 0; zoom <= maxZoom; zoom++) {
+            empty[zoom] = new ClusterLevel();
+        }
+        levels = empty;
+    }
+
+    /**
+     * Obtiene los clusters y marcadores individuales visibles en un nivel de zoom
+     * @param zoom Nivel de zoom
+     * @return Clusters del nivel; los de un solo marcador traen su clave
+     */
+    public List<Cluster> getClusters(int zoom) {
+        final List<Cluster> clusters = new ArrayList<>();
+        if (zoom > maxZoom) {
+            for (int i = 0; i < store.size(); i++) {
+                clusters.add(new Cluster(null, store.getLatitude(i), store.getLongitude(i),
+                        1, store.getKey(i)));
+            }
+            return clusters;
+        }
+
+        final int z = Math.max(0, zoom);
+        final ClusterLevel level = levels()[z];
+        for (int cell = 0; cell < level.cells(); cell++) {
+            if (level.count(cell) > 0) {
+                clusters.add(toCluster(z, level, cell));
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * Busca un cluster por su identificador
+     * @param id Identificador devuelto en {@link Cluster#getId()}
+     * @return Cluster actual, o null si ya no tiene marcadores
+     */
+    public Cluster getCluster(String id) {
+        final long[] parsed = parseId(id);
+        if (parsed == null) {
+            return null;
+        }
+        final int zoom = (int) parsed[0];
+        final ClusterLevel level = levels()[zoom];
+        final int cell = level.cellOf(cellKey((int) parsed[1], (int) parsed[2]), false);
+        return cell >= 0 && level.count(cell) > 0 ? toCluster(zoom, level, cell) : null;
+    }
+
+    /**
+     * Calcula el primer nivel de zoom en el que un cluster se divide en
+     * más de un grupo, recorriendo la pirámide hacia abajo
+     * @param id Identificador del cluster
+     * @return Nivel de zoom de expansión, maxZoom + 1 si no se divide antes
+     */
+    public int getExpansionZoom(String id) {
+        final long[] parsed = parseId(id);
+        if (parsed == null) {
+            return maxZoom + 1;
+        }
+        int cx = (int) parsed[1];
+        int cy = (int) parsed[2];
+        for (int zoom = (int) parsed[0] + 1; zoom <= maxZoom; zoom++) {
+            final ClusterLevel level = levels()[zoom];
+            int children = 0;
+            int nextX = 0;
+            int nextY = 0;
+            for (int dx = 0; dx < 2; dx++) {
+                for (int dy = 0; dy < 2; dy++) {
+                    if (level.countOf(cellKey(cx * 2 + dx, cy * 2 + dy)) > 0) {
+                        children++;
+                        nextX = cx * 2 + dx;
+                        nextY = cy * 2 + dy;
+                    }
+                }
+            }
+            if (children != 1) {
+                return zoom;
+            }
+            cx = nextX;
+            cy = nextY;
+        }
+        return maxZoom + 1;
+    }
+
+    /**
+     * Obtiene el radio de agrupación
+     * @return Radio en píxeles
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Obtiene el último nivel de zoom con agrupación
+     * @return Zoom máximo de agrupación
+     */
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    private ClusterLevel[] levels() {
+        if (levels == null) {
+            build();
+        }
+        return levels;
+    }
+
+    private Cluster toCluster(int zoom, ClusterLevel level, int cell) {
+        final long cellKey = level.cellKey(cell);
+        final int count = level.count(cell);
+        return new Cluster(zoom + "/" + (int) (cellKey >> 32) + "/" + (int) cellKey,
+                Mercator.lat(level.centerY(cell)), Mercator.lng(level.centerX(cell)),
+                count, count == 1 ? level.singleKey(cell) : 0);
+    }
+
+    private double scale(int zoom) {
+        return Mercator.worldSize(zoom) / radius;
+    }
+
+    private static long cellKey(double x, double y, double scale) {
+        return cellKey((int) Math.floor(x * scale), (int) Math.floor(y * scale));
+    }
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private long[] parseId(String id) {
+        if (id == null) {
+            return null;
+        }
+        final String[] parts = id.split("/");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            final long zoom = Integer.parseInt(parts[0]);
+            if (zoom < 0 || zoom > maxZoom) {
+                return null;
+            }
+            return new long[] {zoom, Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Cluster (o marcador individual) de un nivel de zoom
+     */
+    public static class Cluster {
+        private final String id;
+        private final double latitude;
+        private final double longitude;
+        private final int count;
+        private final long markerKey;
+
+        Cluster(String id, double latitude, double longitude, int count, long markerKey) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.count = count;
+            this.markerKey = markerKey;
+        }
+
+        /**
+         * Identificador del cluster ("zoom/x/y"), null para marcadores
+         * individuales por encima del zoom máximo de agrupación
+         */
+        public String getId() {
+            return id;
+        }
+
+        /** Latitud del centroide */
+        public double getLatitude() {
+            return latitude;
+        }
+
+        /** Longitud del centroide */
+        public double getLongitude() {
+            return longitude;
+        }
+
+        /** Cantidad de marcadores agrupados */
+        public int getCount() {
+            return count;
+        }
+
+        /** Clave del marcador cuando el cluster tiene uno solo, 0 en otro caso */
+        public long getMarkerKey() {
+            return markerKey;
+        }
+    }
+}
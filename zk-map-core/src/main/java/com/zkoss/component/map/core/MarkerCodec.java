@@ -0,0 +1,205 @@
+package com.zkoss.component.map.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+
+import org.zkoss.json.JSONValue;
+
+/**
+ * Codificación compacta de la lista de marcadores para el primer render.
+ *
+ * Cada marcador se escribe como cinco enteros de longitud variable con el
+ * alfabeto del algoritmo de polilíneas (grupos de 5 bits desplazados a los
+ * caracteres 63..126): latitud, longitud e identificador como diferencias
+ * en zigzag respecto del marcador anterior, con las coordenadas en
+ * precisión fija, y el título y la descripción como posición + 1 en una
+ * tabla con los textos usados (0 = null). Si algún marcador tiene estilo,
+ * se agrega a cada uno un sexto entero con el identificador del estilo y
+ * el objeto lleva "y": 1. El resultado es un objeto JSON {n, p, c, s[, y]},
+ * válido también como literal JavaScript, que decodifica MarkerCodec.js.
+ * Para el modo de dibujo webgl, {@link #encodeArrays} escribe en cambio
+ * arreglos planos de tamaño fijo.
+ */
+final class MarkerCodec {
+
+    /** Decimales conservados en las coordenadas (~0,11 m) */
+    static final int PRECISION = 6;
+
+    private static final double FACTOR = Math.pow(10, PRECISION);
+
+    private MarkerCodec() {
+    }
+
+    /**
+     * Codifica todos los marcadores de un almacén
+     * @param store Almacén de marcadores
+     * @return Objeto JSON listo para ContentRenderer.renderDirectly
+     */
+    static String encode(MarkerStore store) {
+        return encode(store, null);
+    }
+
+    /**
+     * Codifica algunos marcadores de un almacén
+     * @param store Almacén de marcadores
+     * @param indexes Índices de los marcadores a codificar, en orden (null = todos)
+     * @return Objeto JSON listo para ContentRenderer.renderDirectly
+     */
+    static String encode(MarkerStore store, int[] indexes) {
+        final int n = indexes == null ? store.size() : indexes.length;
+        final TextTable table = new TextTable(store);
+        boolean styled = false;
+        for (int k = 0; k < n && !styled; k++) {
+            styled = store.getStyle(indexes == null ? k : indexes[k]) != 0;
+        }
+
+        // Unos 14 caracteres por marcador cuando están ordenados por cercanía
+        final StringBuilder out = new StringBuilder(64 + n * 14);
+        out.append("{\"n\":").append(n).append(",\"p\":").append(PRECISION).append(",\"c\":\"");
+        long lastLat = 0;
+        long lastLng = 0;
+        long lastId = 0;
+        for (int k = 0; k < n; k++) {
+            final int i = indexes == null ? k : indexes[k];
+            final long lat = Math.round(store.getLatitude(i) * FACTOR);
+            final long lng = Math.round(store.getLongitude(i) * FACTOR);
+            final long id = store.getKey(i);
+            writeSigned(out, lat - lastLat);
+            writeSigned(out, lng - lastLng);
+            writeSigned(out, id - lastId);
+            lastLat = lat;
+            lastLng = lng;
+            lastId = id;
+
+            writeUnsigned(out, table.code(store.titleCode(i)));
+            writeUnsigned(out, table.code(store.descriptionCode(i)));
+            if (styled) {
+                writeUnsigned(out, store.getStyle(i));
+            }
+        }
+        out.append("\",\"s\":[").append(table.json).append(']');
+        if (styled) {
+            out.append(",\"y\":1");
+        }
+        return out.append('}').toString();
+    }
+
+    /**
+     * Codifica marcadores como arreglos planos en base64 (little-endian),
+     * listos para pasar a Float32Array, Float64Array y Uint32Array en el
+     * cliente sin recorrer texto: xy con longitud y latitud en float32, id
+     * con los identificadores en float64 y a con el título, la descripción
+     * (posición + 1 en la tabla s, 0 = null) y el estilo de cada marcador.
+     * El paso de float32 crece con el valor: con |lng| &gt;= 128 es de 2^-16
+     * grados, unos 1,7 m en el ecuador (el error, la mitad); cerca de 0 es
+     * mucho menor
+     * @param store Almacén de marcadores
+     * @param indexes Índices de los marcadores a codificar, en orden (null = todos)
+     * @return Objeto JSON {n, xy, id, a, s}
+     */
+    static String encodeArrays(MarkerStore store, int[] indexes) {
+        final int n = indexes == null ? store.size() : indexes.length;
+        final TextTable table = new TextTable(store);
+        final ByteBuffer xy = ByteBuffer.allocate(n * 8).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer ids = ByteBuffer.allocate(n * 8).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer attributes = ByteBuffer.allocate(n * 12).order(ByteOrder.LITTLE_ENDIAN);
+        for (int k = 0; k < n; k++) {
+            final int i = indexes == null ? k : indexes[k];
+            xy.putFloat((float) store.getLongitude(i)).putFloat((float) store.getLatitude(i));
+            ids.putDouble(store.getKey(i));
+            attributes.putInt(table.code(store.titleCode(i)))
+                      .putInt(table.code(store.descriptionCode(i)))
+                      .putInt(store.getStyle(i));
+        }
+        final Base64.Encoder base64 = Base64.getEncoder();
+        return new StringBuilder(64 + n * 38 + table.json.length())
+                .append("{\"n\":").append(n)
+                .append(",\"xy\":\"").append(base64.encodeToString(xy.array()))
+                .append("\",\"id\":\"").append(base64.encodeToString(ids.array()))
+                .append("\",\"a\":\"").append(base64.encodeToString(attributes.array()))
+                .append("\",\"s\":[").append(table.json).append("]}").toString();
+    }
+
+    /**
+     * Codifica posiciones de marcadores como tres enteros por marcador:
+     * identificador, latitud y longitud como diferencias en zigzag
+     * @param ids Identificadores, en orden creciente
+     * @param lats Latitudes
+     * @param lngs Longitudes
+     * @param n Cantidad de posiciones
+     * @return Objeto JSON {n, p, c}
+     */
+    static String encodePositions(long[] ids, double[] lats, double[] lngs, int n) {
+        final StringBuilder out = new StringBuilder(32 + n * 12);
+        out.append("{\"n\":").append(n).append(",\"p\":").append(PRECISION).append(",\"c\":\"");
+        long lastId = 0;
+        long lastLat = 0;
+        long lastLng = 0;
+        for (int i = 0; i < n; i++) {
+            final long lat = Math.round(lats[i] * FACTOR);
+            final long lng = Math.round(lngs[i] * FACTOR);
+            writeSigned(out, ids[i] - lastId);
+            writeSigned(out, lat - lastLat);
+            writeSigned(out, lng - lastLng);
+            lastId = ids[i];
+            lastLat = lat;
+            lastLng = lng;
+        }
+        return out.append("\"}").toString();
+    }
+
+    static void writeSigned(StringBuilder out, long value) {
+        writeUnsigned(out, value < 0 ? ~(value << 1) : value << 1);
+    }
+
+    static void writeUnsigned(StringBuilder out, long value) {
+        while (value >= 0x20) {
+            writeChar(out, (int) ((0x20 | (value & 0x1f)) + 63));
+            value >>>= 5;
+        }
+        writeChar(out, (int) (value + 63));
+    }
+
+    /**
+     * Tabla de los textos usados, en orden de primer uso
+     */
+    private static final class TextTable {
+        private final MarkerStore store;
+        private final int[] wireCodes; // posición + 1, 0 = sin asignar
+        private final StringBuilder json = new StringBuilder();
+        private int size;
+
+        TextTable(MarkerStore store) {
+            this.store = store;
+            this.wireCodes = new int[store.stringCount()];
+        }
+
+        /**
+         * Posición + 1 de un texto del almacén, agregándolo la primera vez
+         * @param code Código en la tabla del almacén, -1 = null
+         * @return Código en la tabla enviada, 0 = null
+         */
+        int code(int code) {
+            if (code < 0) {
+                return 0;
+            }
+            if (wireCodes[code] == 0) {
+                if (size > 0) {
+                    json.append(',');
+                }
+                json.append(JSONValue.toJSONString(store.string(code)));
+                wireCodes[code] = ++size;
+            }
+            return wireCodes[code];
+        }
+    }
+
+    private static void writeChar(StringBuilder out, int c) {
+        // La barra invertida es el único carácter del alfabeto que se escapa
+        if (c == '\\') {
+            out.append('\\');
+        }
+        out.append((char) c);
+    }
+}
@@ -0,0 +1,383 @@
+package com.zkoss.component.map.core;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.zkoss.json.JSONAware;
+import org.zkoss.json.JSONObject;
+import org.zkoss.zk.ui.WebApp;
+import org.zkoss.zk.ui.WebApps;
+
+/**
+ * Conjunto de marcadores compartido por muchos componentes, normalmente de
+ * distintos escritorios (por ejemplo, la flota que ven todos los usuarios).
+ * Se publica como instantáneas inmutables numeradas: cada cambio copia el
+ * almacén, aplica las modificaciones sobre la copia y reemplaza la
+ * instantánea actual de una vez (copy-on-write), de modo que los lectores
+ * nunca bloquean ni ven un estado a medias. Los componentes solo guardan la
+ * referencia al conjunto y la versión que ya tiene su cliente.
+ * <p>
+ * Las claves de los marcadores del conjunto empiezan en {@link #KEY_BASE},
+ * para no coincidir con las de los marcadores propios de cada componente.
+ * Al serializarse, el conjunto se sustituye por su nombre y se recupera
+ * del registro de {@link MarkerDatasets}; si al deserializar no hay una
+ * aplicación actual (por ejemplo, al restaurar una sesión fuera de una
+ * petición), se busca en el registro la primera vez que se usa.
+ */
+public class MarkerDataset implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Primera clave de los marcadores de un conjunto compartido */
+    public static final long KEY_BASE = 1L << 40;
+
+    /** Estado vacío, para quitar el conjunto de un cliente */
+    static final Snapshot EMPTY = new Snapshot(new MarkerStore(KEY_BASE), 0, null, null);
+
+    private final String name;
+    private transient volatile Snapshot current;
+    private transient volatile MarkerDataset target; // null hasta buscarlo en el registro
+
+    /**
+     * Crea un conjunto vacío (versión 0)
+     * @param name Nombre del conjunto
+     */
+    public MarkerDataset(String name) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.current = new Snapshot(new MarkerStore(KEY_BASE), 0, null, null);
+        this.target = this;
+    }
+
+    /**
+     * Crea un sustituto del conjunto registrado con ese nombre, que se
+     * busca al primer uso
+     */
+    private MarkerDataset(Ref ref) {
+        this.name = ref.name;
+    }
+
+    /**
+     * Obtiene el conjunto que guarda las instantáneas: este mismo o, en un
+     * sustituto, el del registro de la aplicación actual
+     * @throws IllegalStateException si aún no hay aplicación actual
+     */
+    private MarkerDataset target() {
+        MarkerDataset result = target;
+        if (result == null) {
+            result = MarkerDatasets.get(name);
+            target = result;
+        }
+        return result;
+    }
+
+    /**
+     * Obtiene el nombre del conjunto
+     * @return Nombre con el que se registró
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Obtiene la última instantánea publicada; no bloquea
+     * @return Instantánea actual
+     */
+    public Snapshot getSnapshot() {
+        return target().current;
+    }
+
+    /**
+     * Publica una nueva versión modificando una copia de la actual. El
+     * escritor recibe la copia y no debe conservarla después: al volver,
+     * pasa a formar parte de una instantánea inmutable. Las claves de la
+     * versión anterior se conservan, de modo que se pueden guardar para
+     * mover o eliminar los mismos marcadores en versiones siguientes.
+     * Las publicaciones se ejecutan de a una; la copia cuesta O(n).
+     * @param writer Modificaciones a aplicar
+     * @return Instantánea publicada
+     */
+    public Snapshot update(Consumer<? super MarkerStore> writer) {
+        return target().apply(writer);
+    }
+
+    private synchronized Snapshot apply(Consumer<? super MarkerStore> writer) {
+        final Snapshot previous = current;
+        final MarkerStore store = previous.store.copy();
+        writer.accept(store);
+        current = diff(previous, store);
+        return current;
+    }
+
+    /**
+     * Publica una nueva versión que reemplaza todos los marcadores. El
+     * estilo de cada marcador es el identificador que devuelve
+     * {@link AbstractMapComponent#addMarkerStyle} en los componentes que
+     * muestran el conjunto, así que deben registrar los mismos estilos en
+     * el mismo orden; un identificador no registrado se dibuja con el
+     * estilo por defecto
+     * @param markers Marcadores de la nueva versión
+     * @return Instantánea publicada
+     */
+    public Snapshot publish(Collection<? extends Marker> markers) {
+        return update(store -> {
+            store.clear();
+            store.ensureCapacity(markers.size());
+            for (Marker m : markers) {
+                store.add(m.getLatitude(), m.getLongitude(), m.getTitle(), m.getDescription(), m.getStyle());
+            }
+        });
+    }
+
+    /**
+     * Calcula al publicar las diferencias con la versión anterior (claves
+     * eliminadas e índices de altas y cambios), para no retener la
+     * instantánea anterior. Como la copia conserva los códigos de texto,
+     * los textos se comparan por código.
+     */
+    private static Snapshot diff(Snapshot previous, MarkerStore next) {
+        final MarkerStore prev = previous.store;
+        int[] changed = new int[16];
+        int changedCount = 0;
+        for (int i = 0; i < next.size(); i++) {
+            final int j = prev.indexOfKey(next.getKey(i));
+            if (j < 0
+                    || prev.getLatitude(j) != next.getLatitude(i)
+                    || prev.getLongitude(j) != next.getLongitude(i)
+                    || prev.titleCode(j) != next.titleCode(i)
+                    || prev.descriptionCode(j) != next.descriptionCode(i)
+                    || prev.getStyle(j) != next.getStyle(i)) {
+                if (changedCount == changed.length) {
+                    changed = Arrays.copyOf(changed, changedCount * 2);
+                }
+                changed[changedCount++] = i;
+            }
+        }
+        long[] removed = new long[16];
+        int removedCount = 0;
+        for (int j = 0; j < prev.size(); j++) {
+            final long key = prev.getKey(j);
+            if (next.indexOfKey(key) < 0) {
+                if (removedCount == removed.length) {
+                    removed = Arrays.copyOf(removed, removedCount * 2);
+                }
+                removed[removedCount++] = key;
+            }
+        }
+        return new Snapshot(next, previous.version + 1,
+                Arrays.copyOf(changed, changedCount), Arrays.copyOf(removed, removedCount));
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new Ref(name);
+    }
+
+    /**
+     * Forma serializada de un conjunto: solo el nombre
+     */
+    private static final class Ref implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+
+        Ref(String name) {
+            this.name = name;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            final WebApp webApp = WebApps.getCurrent();
+            return webApp != null ? MarkerDatasets.get(webApp, name) : new MarkerDataset(this);
+        }
+    }
+
+    /**
+     * Versión inmutable de un conjunto. Guarda, ya codificados, el estado
+     * completo y las diferencias con la versión anterior; se calculan al
+     * primer uso y los reutilizan todos los componentes que la envían.
+     */
+    public static final class Snapshot {
+
+        private final MarkerStore store;
+        private final long version;
+        private final int[] changed;   // null en la versión 0
+        private final long[] removed;
+        private volatile JSONAware fullPayload;
+        private volatile JSONAware diffPayload;
+        private volatile MarkerIndex index;
+
+        private Snapshot(MarkerStore store, long version, int[] changed, long[] removed) {
+            this.store = store;
+            this.version = version;
+            this.changed = changed;
+            this.removed = removed;
+        }
+
+        /**
+         * Obtiene el número de versión
+         * @return Versión, creciente desde 0
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Cantidad de marcadores de esta versión
+         * @return Cantidad de marcadores
+         */
+        public int size() {
+            return store.size();
+        }
+
+        /**
+         * Obtiene los marcadores de esta versión
+         * @return Lista de solo lectura
+         */
+        public List<JSONObject> getMarkers() {
+            return store.asList();
+        }
+
+        /**
+         * Obtiene un marcador por su clave
+         * @param id Clave del marcador
+         * @return Objeto JSON del marcador, null si no existe en esta versión
+         */
+        public JSONObject getMarker(long id) {
+            final int index = store.indexOfKey(id);
+            return index < 0 ? null : store.toJSON(index);
+        }
+
+        /**
+         * Obtiene la clave de un marcador
+         * @param index Índice del marcador
+         * @return Clave del marcador
+         */
+        public long getKey(int index) {
+            return store.getKey(index);
+        }
+
+        /**
+         * Obtiene la latitud de un marcador
+         * @param index Índice del marcador
+         * @return Latitud en grados decimales
+         */
+        public double getLatitude(int index) {
+            return store.getLatitude(index);
+        }
+
+        /**
+         * Obtiene la longitud de un marcador
+         * @param index Índice del marcador
+         * @return Longitud en grados decimales
+         */
+        public double getLongitude(int index) {
+            return store.getLongitude(index);
+        }
+
+        /**
+         * Obtiene el título de un marcador
+         * @param index Índice del marcador
+         * @return Título (puede ser null)
+         */
+        public String getTitle(int index) {
+            return store.getTitle(index);
+        }
+
+        /**
+         * Obtiene la descripción de un marcador
+         * @param index Índice del marcador
+         * @return Descripción (puede ser null)
+         */
+        public String getDescription(int index) {
+            return store.getDescription(index);
+        }
+
+        /**
+         * Obtiene el estilo de un marcador
+         * @param index Índice del marcador
+         * @return Identificador del estilo, 0 para el estilo por defecto
+         */
+        public int getStyle(int index) {
+            return store.getStyle(index);
+        }
+
+        /**
+         * Busca los marcadores dentro de un rectángulo. El índice espacial se
+         * construye al primer uso, una vez por versión, y lo comparten todos
+         * los hilos. Si el oeste es mayor que el este, el rectángulo cruza
+         * el antimeridiano
+         * @param south Latitud sur
+         * @param west Longitud oeste
+         * @param north Latitud norte
+         * @param east Longitud este
+         * @return Índices de los marcadores, en orden creciente
+         */
+        public int[] getMarkersIn(double south, double west, double north, double east) {
+            final long[] keys = index().search(south, west, north, east);
+            final int[] indexes = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                indexes[i] = store.indexOfKey(keys[i]);
+            }
+            Arrays.sort(indexes);
+            return indexes;
+        }
+
+        private MarkerIndex index() {
+            MarkerIndex result = index;
+            if (result == null) {
+                synchronized (this) {
+                    result = index;
+                    if (result == null) {
+                        result = new MarkerIndex();
+                        result.load(store);
+                        index = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Estado completo para el widget: {version, reset: true, markers}
+         * con los marcadores en la codificación de {@link MarkerCodec}
+         */
+        JSONAware fullPayload() {
+            JSONAware payload = fullPayload;
+            if (payload == null) {
+                payload = new JSONPayload("{\"version\":" + version + ",\"reset\":true,\"markers\":"
+                        + MarkerCodec.encode(store) + "}");
+                fullPayload = payload;
+            }
+            return payload;
+        }
+
+        /**
+         * Diferencias con la versión anterior: {version, remove, markers}
+         * con las claves eliminadas y los marcadores nuevos o modificados
+         * @return null si no hay versión anterior o si las diferencias
+         *         ocupan más que la mitad del conjunto
+         */
+        JSONAware diffPayload() {
+            if (changed == null || changed.length + removed.length > store.size() / 2) {
+                return null;
+            }
+            JSONAware payload = diffPayload;
+            if (payload == null) {
+                final StringBuilder sb = new StringBuilder(64 + removed.length * 16)
+                        .append("{\"version\":").append(version).append(",\"remove\":[");
+                for (int i = 0; i < removed.length; i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    sb.append(removed[i]);
+                }
+                sb.append("],\"markers\":").append(MarkerCodec.encode(store, changed)).append('}');
+                payload = new JSONPayload(sb.toString());
+                diffPayload = payload;
+            }
+            return payload;
+        }
+    }
+}
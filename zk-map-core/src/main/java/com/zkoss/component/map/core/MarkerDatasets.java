@@ -0,0 +1,81 @@
+package com.zkoss.component.map.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.zkoss.zk.ui.WebApp;
+import org.zkoss.zk.ui.WebApps;
+
+/**
+ * Registro de los conjuntos de marcadores compartidos de la aplicación.
+ * Se guarda como atributo de la {@link WebApp}, de modo que todos los
+ * escritorios, y también los hilos en segundo plano que publican, obtienen
+ * el mismo conjunto por nombre.
+ */
+public final class MarkerDatasets {
+
+    private static final String ATTRIBUTE = MarkerDatasets.class.getName();
+
+    private MarkerDatasets() {
+    }
+
+    /**
+     * Obtiene un conjunto de la aplicación actual, creándolo vacío si no existe
+     * @param name Nombre del conjunto
+     * @return Conjunto compartido
+     * @throws IllegalStateException si la aplicación ZK no está iniciada
+     */
+    public static MarkerDataset get(String name) {
+        final WebApp webApp = WebApps.getCurrent();
+        if (webApp == null) {
+            throw new IllegalStateException("La aplicación ZK no está iniciada");
+        }
+        return get(webApp, name);
+    }
+
+    /**
+     * Obtiene un conjunto de una aplicación, creándolo vacío si no existe
+     * @param webApp Aplicación
+     * @param name Nombre del conjunto
+     * @return Conjunto compartido
+     */
+    public static MarkerDataset get(WebApp webApp, String name) {
+        return registry(webApp).computeIfAbsent(name, MarkerDataset::new);
+    }
+
+    /**
+     * Busca un conjunto existente, sin crearlo
+     * @param webApp Aplicación
+     * @param name Nombre del conjunto
+     * @return Conjunto compartido, null si no existe
+     */
+    public static MarkerDataset find(WebApp webApp, String name) {
+        return registry(webApp).get(name);
+    }
+
+    /**
+     * Quita un conjunto del registro; los componentes que lo usan conservan
+     * la última versión recibida
+     * @param webApp Aplicación
+     * @param name Nombre del conjunto
+     * @return Conjunto quitado, null si no existía
+     */
+    public static MarkerDataset remove(WebApp webApp, String name) {
+        return registry(webApp).remove(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentMap<String, MarkerDataset> registry(WebApp webApp) {
+        Object registry = webApp.getAttribute(ATTRIBUTE);
+        if (registry == null) {
+            synchronized (MarkerDatasets.class) {
+                registry = webApp.getAttribute(ATTRIBUTE);
+                if (registry == null) {
+                    registry = new ConcurrentHashMap<String, MarkerDataset>();
+                    webApp.setAttribute(ATTRIBUTE, registry);
+                }
+            }
+        }
+        return (ConcurrentMap<String, MarkerDataset>) registry;
+    }
+}
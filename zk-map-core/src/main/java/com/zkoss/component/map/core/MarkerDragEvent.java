@@ -0,0 +1,80 @@
+package com.zkoss.component.map.core;
+
+import org.zkoss.zk.ui.Component;
+import org.zkoss.zk.ui.event.Event;
+
+/**
+ * Evento generado mientras el usuario arrastra un marcador (como mucho uno
+ * cada {@code dragEventInterval} milisegundos) y al soltarlo. Cuando llega
+ * el evento, el componente ya tiene la nueva posición del marcador.
+ */
+public class MarkerDragEvent extends Event {
+    private static final long serialVersionUID = 1L;
+
+    private final int markerIndex;
+    private final long markerId;
+    private final double latitude;
+    private final double longitude;
+    private final boolean dragEnd;
+
+    /**
+     * Constructor para el evento de arrastre de marcador
+     *
+     * @param name Nombre del evento (normalmente "onMarkerDrag")
+     * @param target Componente que generó el evento
+     * @param markerIndex Índice actual del marcador arrastrado
+     * @param markerId Identificador del marcador arrastrado
+     * @param latitude Nueva latitud del marcador
+     * @param longitude Nueva longitud del marcador
+     * @param dragEnd true si el usuario soltó el marcador
+     */
+    public MarkerDragEvent(String name, Component target, int markerIndex, long markerId,
+            double latitude, double longitude, boolean dragEnd) {
+        super(name, target);
+        this.markerIndex = markerIndex;
+        this.markerId = markerId;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.dragEnd = dragEnd;
+    }
+
+    /**
+     * Obtiene el índice del marcador arrastrado
+     * @return Índice del marcador en la colección de marcadores
+     */
+    public int getMarkerIndex() {
+        return markerIndex;
+    }
+
+    /**
+     * Obtiene el identificador del marcador arrastrado
+     * @return Identificador del marcador
+     */
+    public long getMarkerId() {
+        return markerId;
+    }
+
+    /**
+     * Obtiene la nueva latitud del marcador
+     * @return Latitud en grados decimales
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Obtiene la nueva longitud del marcador
+     * @return Longitud en grados decimales
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Indica si el usuario terminó el arrastre
+     * @return true al soltar el marcador, false durante el arrastre
+     */
+    public boolean isDragEnd() {
+        return dragEnd;
+    }
+}
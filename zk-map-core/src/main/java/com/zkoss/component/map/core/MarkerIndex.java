@@ -0,0 +1,593 @@
+package com.zkoss.component.map.core;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Índice espacial R-tree sobre los marcadores de un {@link MarkerStore},
+ * identificados por su clave. Los puntos se guardan en coordenadas del
+ * mundo Web Mercator, de modo que las distancias corresponden a distancias
+ * en pantalla y las consultas por píxeles son exactas a cualquier zoom.
+ *
+ * La carga masiva usa Sort-Tile-Recursive (STR); las altas dividen los
+ * nodos llenos por la mediana del eje más extendido y las bajas eliminan
+ * los nodos vacíos y recalculan los límites, igual que rbush.
+ */
+public class MarkerIndex {
+
+    /** Entradas máximas por nodo */
+    static final int MAX_ENTRIES = 16;
+
+    private Node root = new Node(true);
+    private int size;
+
+    /**
+     * Reemplaza el contenido del índice por todos los marcadores de un
+     * almacén, construyendo el árbol empaquetado con STR
+     * @param store Almacén de marcadores
+     */
+    public void load(MarkerStore store) {
+        final int n = store.size();
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        final long[] keys = new long[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            xs[i] = Mercator.x(store.getLongitude(i));
+            ys[i] = Mercator.y(store.getLatitude(i));
+            keys[i] = store.getKey(i);
+        });
+        root = n == 0 ? new Node(true) : build(xs, ys, keys);
+        size = n;
+    }
+
+    /**
+     * Agrega un marcador
+     * @param key Clave del marcador en el almacén
+     * @param lat Latitud del marcador
+     * @param lng Longitud del marcador
+     */
+    public void insert(long key, double lat, double lng) {
+        final Node sibling = insert(root, key, Mercator.x(lng), Mercator.y(lat));
+        if (sibling != null) {
+            final Node parent = new Node(false);
+            parent.addChild(root);
+            parent.addChild(sibling);
+            root = parent;
+        }
+        size++;
+    }
+
+    /**
+     * Quita un marcador
+     * @param key Clave del marcador en el almacén
+     * @param lat Latitud que tenía el marcador
+     * @param lng Longitud que tenía el marcador
+     * @return true si el marcador estaba en el índice
+     */
+    public boolean remove(long key, double lat, double lng) {
+        if (!remove(root, key, Mercator.x(lng), Mercator.y(lat))) {
+            return false;
+        }
+        while (!root.leaf && root.size == 1) {
+            root = root.children[0];
+        }
+        if (root.size == 0) {
+            root = new Node(true);
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * Vacía el índice
+     */
+    public void clear() {
+        root = new Node(true);
+        size = 0;
+    }
+
+    /**
+     * Cantidad de marcadores del índice
+     * @return Cantidad de marcadores
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Busca los marcadores dentro de un rectángulo. Si el oeste es mayor
+     * que el este, el rectángulo cruza el antimeridiano
+     * @param south Latitud sur
+     * @param west Longitud oeste
+     * @param north Latitud norte
+     * @param east Longitud este
+     * @return Claves de los marcadores, en orden creciente
+     */
+    public long[] search(double south, double west, double north, double east) {
+        final KeyBuffer out = new KeyBuffer();
+        final double minY = Mercator.y(north);
+        final double maxY = Mercator.y(south);
+        if (west <= east) {
+            search(root, Mercator.x(west), minY, Mercator.x(east), maxY, out);
+        } else {
+            search(root, Mercator.x(west), minY, 1, maxY, out);
+            search(root, 0, minY, Mercator.x(east), maxY, out);
+        }
+        final long[] keys = out.toArray();
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Busca los k marcadores más cercanos a un punto, por distancia en
+     * pantalla y teniendo en cuenta el antimeridiano
+     * @param lat Latitud del punto
+     * @param lng Longitud del punto
+     * @param k Cantidad máxima de marcadores
+     * @return Claves de los marcadores, del más cercano al más lejano
+     */
+    public long[] nearest(double lat, double lng, int k) {
+        return nearest(Mercator.x(lng), Mercator.y(lat), k, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Busca los marcadores a menos de una distancia en píxeles de un punto
+     * @param lat Latitud del punto
+     * @param lng Longitud del punto
+     * @param pixels Distancia máxima en píxeles
+     * @param zoom Nivel de zoom en el que se mide la distancia
+     * @return Claves de los marcadores, del más cercano al más lejano
+     */
+    public long[] within(double lat, double lng, double pixels, int zoom) {
+        final double radius = pixels / Mercator.worldSize(zoom);
+        return nearest(Mercator.x(lng), Mercator.y(lat), Integer.MAX_VALUE, radius * radius);
+    }
+
+    private Node insert(Node node, long key, double x, double y) {
+        node.extend(x, y, x, y);
+        if (node.leaf) {
+            node.addEntry(key, x, y);
+        } else {
+            final Node sibling = insert(chooseSubtree(node, x, y), key, x, y);
+            if (sibling != null) {
+                node.addChild(sibling);
+            }
+        }
+        return node.size > MAX_ENTRIES ? split(node) : null;
+    }
+
+    /**
+     * Hijo cuyo rectángulo crece menos al agregar el punto (a igualdad, el menor)
+     */
+    private static Node chooseSubtree(Node node, double x, double y) {
+        Node best = null;
+        double bestEnlargement = Double.POSITIVE_INFINITY;
+        double bestArea = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < node.size; i++) {
+            final Node child = node.children[i];
+            final double area = child.area();
+            final double enlargement = (Math.max(child.maxX, x) - Math.min(child.minX, x))
+                    * (Math.max(child.maxY, y) - Math.min(child.minY, y)) - area;
+            if (enlargement < bestEnlargement
+                    || (enlargement == bestEnlargement && area < bestArea)) {
+                best = child;
+                bestEnlargement = enlargement;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Divide un nodo lleno por la mediana del eje en el que sus entradas
+     * están más extendidas
+     * @return Nuevo nodo hermano con la mitad superior de las entradas
+     */
+    private static Node split(Node node) {
+        final int n = node.size;
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, node.centerX(i));
+            maxX = Math.max(maxX, node.centerX(i));
+            minY = Math.min(minY, node.centerY(i));
+            maxY = Math.max(maxY, node.centerY(i));
+        }
+        final boolean byX = maxX - minX >= maxY - minY;
+
+        // Orden por inserción: los nodos tienen pocas entradas
+        final int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            final double c = byX ? node.centerX(i) : node.centerY(i);
+            int j = i;
+            while (j > 0 && (byX ? node.centerX(order[j - 1]) : node.centerY(order[j - 1])) > c) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+
+        final Node copy = node.copy();
+        final Node sibling = new Node(node.leaf);
+        node.reset();
+        for (int i = 0; i < n; i++) {
+            copy.moveTo(order[i], i < n / 2 ? node : sibling);
+        }
+        return sibling;
+    }
+
+    private static boolean remove(Node node, long key, double x, double y) {
+        if (!node.contains(x, y)) {
+            return false;
+        }
+        for (int i = 0; i < node.size; i++) {
+            if (node.leaf) {
+                if (node.keys[i] == key && node.xs[i] == x && node.ys[i] == y) {
+                    node.removeAt(i);
+                    node.recalculate();
+                    return true;
+                }
+            } else if (remove(node.children[i], key, x, y)) {
+                if (node.children[i].size == 0) {
+                    node.removeAt(i);
+                }
+                node.recalculate();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void search(Node node, double minX, double minY, double maxX, double maxY,
+            KeyBuffer out) {
+        if (node.minX > maxX || node.maxX < minX || node.minY > maxY || node.maxY < minY) {
+            return;
+        }
+        for (int i = 0; i < node.size; i++) {
+            if (node.leaf) {
+                final double x = node.xs[i];
+                final double y = node.ys[i];
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                    out.add(node.keys[i]);
+                }
+            } else {
+                search(node.children[i], minX, minY, maxX, maxY, out);
+            }
+        }
+    }
+
+    /**
+     * Búsqueda del mejor primero: los nodos se visitan en orden de distancia
+     * mínima y se descartan en cuanto no pueden mejorar los k resultados
+     */
+    private long[] nearest(double x, double y, int k, double maxDistance2) {
+        if (k <= 0) {
+            return new long[0];
+        }
+        final Neighbors best = new Neighbors(k, maxDistance2);
+        final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        queue.add(new Candidate(root, 0));
+        while (!queue.isEmpty()) {
+            final Candidate candidate = queue.poll();
+            if (candidate.distance2 > best.bound()) {
+                break;
+            }
+            final Node node = candidate.node;
+            for (int i = 0; i < node.size; i++) {
+                if (node.leaf) {
+                    final double dx = wrappedDistance(x, node.xs[i], node.xs[i]);
+                    final double dy = y - node.ys[i];
+                    best.offer(node.keys[i], dx * dx + dy * dy);
+                } else {
+                    final Node child = node.children[i];
+                    final double dx = wrappedDistance(x, child.minX, child.maxX);
+                    final double dy = y < child.minY ? child.minY - y : y > child.maxY ? y - child.maxY : 0;
+                    final double distance2 = dx * dx + dy * dy;
+                    if (distance2 <= best.bound()) {
+                        queue.add(new Candidate(child, distance2));
+                    }
+                }
+            }
+        }
+        return best.keys();
+    }
+
+    /**
+     * Distancia horizontal de un punto a un intervalo, dando la vuelta al mundo
+     */
+    private static double wrappedDistance(double x, double min, double max) {
+        double distance = Double.POSITIVE_INFINITY;
+        for (int shift = -1; shift <= 1; shift++) {
+            final double sx = x + shift;
+            distance = Math.min(distance, sx < min ? min - sx : sx > max ? sx - max : 0);
+        }
+        return distance;
+    }
+
+    /**
+     * Construye el árbol de abajo hacia arriba empaquetando cada nivel con STR
+     */
+    private static Node build(double[] xs, double[] ys, long[] keys) {
+        int[] order = strOrder(xs, ys, keys.length);
+        Node[] level = new Node[(keys.length + MAX_ENTRIES - 1) / MAX_ENTRIES];
+        for (int i = 0; i < keys.length; i++) {
+            final int e = order[i];
+            Node leaf = level[i / MAX_ENTRIES];
+            if (leaf == null) {
+                leaf = level[i / MAX_ENTRIES] = new Node(true);
+            }
+            leaf.addEntry(keys[e], xs[e], ys[e]);
+        }
+
+        while (level.length > 1) {
+            final double[] cx = new double[level.length];
+            final double[] cy = new double[level.length];
+            for (int i = 0; i < level.length; i++) {
+                cx[i] = (level[i].minX + level[i].maxX) / 2;
+                cy[i] = (level[i].minY + level[i].maxY) / 2;
+            }
+            order = strOrder(cx, cy, level.length);
+            final Node[] parents = new Node[(level.length + MAX_ENTRIES - 1) / MAX_ENTRIES];
+            for (int i = 0; i < level.length; i++) {
+                Node parent = parents[i / MAX_ENTRIES];
+                if (parent == null) {
+                    parent = parents[i / MAX_ENTRIES] = new Node(false);
+                }
+                parent.addChild(level[order[i]]);
+            }
+            level = parents;
+        }
+        return level[0];
+    }
+
+    /**
+     * Orden Sort-Tile-Recursive: por X en franjas verticales y por Y dentro
+     * de cada franja, de modo que cada grupo consecutivo de
+     * {@link #MAX_ENTRIES} elementos forma un nodo compacto. Las
+     * coordenadas se cuantizan junto al índice en un long para ordenar sin
+     * objetos
+     */
+    private static int[] strOrder(double[] xs, double[] ys, int n) {
+        final int nodes = (n + MAX_ENTRIES - 1) / MAX_ENTRIES;
+        final int sliceSize = (int) Math.ceil(Math.sqrt(nodes)) * MAX_ENTRIES;
+        final long[] sorted = new long[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = quantize(xs[i]) << 32 | i;
+        }
+        Arrays.parallelSort(sorted);
+        for (int start = 0; start < n; start += sliceSize) {
+            final int end = Math.min(n, start + sliceSize);
+            for (int i = start; i < end; i++) {
+                final int e = (int) sorted[i];
+                sorted[i] = quantize(ys[e]) << 32 | e;
+            }
+            Arrays.sort(sorted, start, end);
+        }
+        final int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) sorted[i];
+        }
+        return order;
+    }
+
+    private static long quantize(double v) {
+        return (long) (Math.max(0, Math.min(1, v)) * Integer.MAX_VALUE);
+    }
+
+    /**
+     * Nodo del árbol: las hojas guardan puntos en columnas primitivas y los
+     * nodos internos sus hijos
+     */
+    private static final class Node {
+        final boolean leaf;
+        int size;
+        double minX, minY, maxX, maxY;
+        final long[] keys;
+        final double[] xs;
+        final double[] ys;
+        final Node[] children;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+            this.keys = leaf ? new long[MAX_ENTRIES + 1] : null;
+            this.xs = leaf ? new double[MAX_ENTRIES + 1] : null;
+            this.ys = leaf ? new double[MAX_ENTRIES + 1] : null;
+            this.children = leaf ? null : new Node[MAX_ENTRIES + 1];
+            resetBounds();
+        }
+
+        void reset() {
+            size = 0;
+            resetBounds();
+            if (children != null) {
+                Arrays.fill(children, null);
+            }
+        }
+
+        void resetBounds() {
+            minX = minY = Double.POSITIVE_INFINITY;
+            maxX = maxY = Double.NEGATIVE_INFINITY;
+        }
+
+        void addEntry(long key, double x, double y) {
+            keys[size] = key;
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+            extend(x, y, x, y);
+        }
+
+        void addChild(Node child) {
+            children[size++] = child;
+            extend(child.minX, child.minY, child.maxX, child.maxY);
+        }
+
+        void extend(double x0, double y0, double x1, double y1) {
+            minX = Math.min(minX, x0);
+            minY = Math.min(minY, y0);
+            maxX = Math.max(maxX, x1);
+            maxY = Math.max(maxY, y1);
+        }
+
+        void removeAt(int i) {
+            final int moved = size - i - 1;
+            if (leaf) {
+                System.arraycopy(keys, i + 1, keys, i, moved);
+                System.arraycopy(xs, i + 1, xs, i, moved);
+                System.arraycopy(ys, i + 1, ys, i, moved);
+            } else {
+                System.arraycopy(children, i + 1, children, i, moved);
+                children[size - 1] = null;
+            }
+            size--;
+        }
+
+        void recalculate() {
+            resetBounds();
+            for (int i = 0; i < size; i++) {
+                if (leaf) {
+                    extend(xs[i], ys[i], xs[i], ys[i]);
+                } else {
+                    extend(children[i].minX, children[i].minY, children[i].maxX, children[i].maxY);
+                }
+            }
+        }
+
+        Node copy() {
+            final Node copy = new Node(leaf);
+            for (int i = 0; i < size; i++) {
+                if (leaf) {
+                    copy.addEntry(keys[i], xs[i], ys[i]);
+                } else {
+                    copy.addChild(children[i]);
+                }
+            }
+            return copy;
+        }
+
+        void moveTo(int i, Node target) {
+            if (leaf) {
+                target.addEntry(keys[i], xs[i], ys[i]);
+            } else {
+                target.addChild(children[i]);
+            }
+        }
+
+        double centerX(int i) {
+            return leaf ? xs[i] : (children[i].minX + children[i].maxX) / 2;
+        }
+
+        double centerY(int i) {
+            return leaf ? ys[i] : (children[i].minY + children[i].maxY) / 2;
+        }
+
+        boolean contains(double x, double y) {
+            return x >= minX && x <= maxX && y >= minY && y <= maxY;
+        }
+
+        double area() {
+            return (maxX - minX) * (maxY - minY);
+        }
+    }
+
+    /**
+     * Nodo pendiente de visitar en la búsqueda de vecinos
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        final Node node;
+        final double distance2;
+
+        Candidate(Node node, double distance2) {
+            this.node = node;
+            this.distance2 = distance2;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(distance2, other.distance2);
+        }
+    }
+
+    /**
+     * Mejores vecinos encontrados, ordenados por distancia al cuadrado
+     */
+    private static final class Neighbors {
+        private final int k;
+        private final double maxDistance2;
+        private long[] keys = new long[16];
+        private double[] distances = new double[16];
+        private int count;
+
+        Neighbors(int k, double maxDistance2) {
+            this.k = k;
+            this.maxDistance2 = maxDistance2;
+        }
+
+        /** Distancia a partir de la cual nada puede entrar en el resultado */
+        double bound() {
+            return count == k ? distances[count - 1] : maxDistance2;
+        }
+
+        void offer(long key, double distance2) {
+            if (distance2 > bound()) {
+                return;
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                distances = Arrays.copyOf(distances, count * 2);
+            }
+            if (k == Integer.MAX_VALUE) {
+                // Sin límite: se ordena una sola vez al final
+                keys[count] = key;
+                distances[count++] = distance2;
+                return;
+            }
+            int i = count < k ? count++ : count - 1;
+            while (i > 0 && distances[i - 1] > distance2) {
+                keys[i] = keys[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            keys[i] = key;
+            distances[i] = distance2;
+        }
+
+        long[] keys() {
+            if (k != Integer.MAX_VALUE) {
+                return Arrays.copyOf(keys, count);
+            }
+            final long[] sorted = new long[count];
+            final Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+            for (int i = 0; i < count; i++) {
+                sorted[i] = keys[order[i]];
+            }
+            return sorted;
+        }
+    }
+
+    /**
+     * Lista creciente de claves sin objetos por elemento
+     */
+    private static final class KeyBuffer {
+        private long[] keys = new long[16];
+        private int count;
+
+        void add(long key) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+            }
+            keys[count++] = key;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(keys, count);
+        }
+    }
+}
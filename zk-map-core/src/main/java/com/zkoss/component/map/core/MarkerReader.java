@@ -0,0 +1,175 @@
+package com.zkoss.component.map.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lector de marcadores desde un archivo, sin construir el documento en
+ * memoria: cada registro se lee, se agrega y se descarta, de modo que la
+ * memoria usada no depende del tamaño del archivo. Los registros sin
+ * coordenadas válidas se omiten.
+ * <p>
+ * Los marcadores se pueden cargar directamente en un {@link MarkerStore}
+ * (por ejemplo, dentro de {@link MarkerDataset#update}) o recorrer como
+ * un {@link Stream} para {@link MapComponentInterface#addMarkers(Stream)}:
+ * <pre>
+ * try (Stream&lt;Marker&gt; markers = new GeoJsonMarkerReader().stream(path)) {
+ *     mapa.addMarkers(markers);
+ * }
+ * </pre>
+ * Un lector se puede reutilizar, pero no compartir entre hilos mientras
+ * se cambia su configuración.
+ */
+public abstract class MarkerReader {
+
+    protected String titleProperty = "title";
+    protected String descriptionProperty = "description";
+
+    MarkerReader() {
+    }
+
+    /**
+     * Establece la propiedad (o columna) de la que sale el título
+     * @param titleProperty Nombre de la propiedad, null para no leer títulos
+     */
+    public void setTitleProperty(String titleProperty) {
+        this.titleProperty = titleProperty;
+    }
+
+    /**
+     * Obtiene la propiedad (o columna) de la que sale el título
+     * @return Nombre de la propiedad, "title" por defecto
+     */
+    public String getTitleProperty() {
+        return titleProperty;
+    }
+
+    /**
+     * Establece la propiedad (o columna) de la que sale la descripción
+     * @param descriptionProperty Nombre de la propiedad, null para no leer descripciones
+     */
+    public void setDescriptionProperty(String descriptionProperty) {
+        this.descriptionProperty = descriptionProperty;
+    }
+
+    /**
+     * Obtiene la propiedad (o columna) de la que sale la descripción
+     * @return Nombre de la propiedad, "description" por defecto
+     */
+    public String getDescriptionProperty() {
+        return descriptionProperty;
+    }
+
+    /**
+     * Agrega a un almacén los marcadores de un flujo; el flujo no se cierra
+     * @param in Flujo en UTF-8
+     * @param store Almacén de destino
+     * @return Cantidad de marcadores agregados
+     * @throws IOException si no se puede leer o el formato es inválido
+     */
+    public int load(InputStream in, MarkerStore store) throws IOException {
+        try (Cursor cursor = open(in)) {
+            int count = 0;
+            while (cursor.next()) {
+                store.add(cursor.lat, cursor.lng, cursor.title, cursor.description);
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Agrega a un almacén los marcadores de un archivo
+     * @param path Archivo en UTF-8
+     * @param store Almacén de destino
+     * @return Cantidad de marcadores agregados
+     * @throws IOException si no se puede leer o el formato es inválido
+     */
+    public int load(Path path, MarkerStore store) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return load(in, store);
+        }
+    }
+
+    /**
+     * Recorre los marcadores de un flujo a medida que se leen. Al cerrar el
+     * Stream se cierra el flujo; los errores de lectura se lanzan como
+     * {@link UncheckedIOException}
+     * @param in Flujo en UTF-8
+     * @return Marcadores del flujo, en orden
+     * @throws IOException si no se puede empezar a leer
+     */
+    public Stream<Marker> stream(InputStream in) throws IOException {
+        final Cursor cursor;
+        try {
+            cursor = open(in);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        final Spliterator<Marker> markers = new Spliterators.AbstractSpliterator<Marker>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Marker> action) {
+                try {
+                    if (!cursor.next()) {
+                        return false;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                action.accept(new Marker(cursor.lat, cursor.lng, cursor.title, cursor.description));
+                return true;
+            }
+        };
+        return StreamSupport.stream(markers, false).onClose(() -> {
+            try {
+                cursor.close();
+                in.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Recorre los marcadores de un archivo a medida que se leen; hay que
+     * cerrar el Stream para cerrar el archivo
+     * @param path Archivo en UTF-8
+     * @return Marcadores del archivo, en orden
+     * @throws IOException si no se puede abrir el archivo
+     */
+    public Stream<Marker> stream(Path path) throws IOException {
+        return stream(Files.newInputStream(path));
+    }
+
+    /**
+     * Empieza a leer un flujo
+     */
+    abstract Cursor open(InputStream in) throws IOException;
+
+    /**
+     * Posición de lectura: cada llamada a next() deja en los campos los
+     * datos del siguiente marcador. Al cerrarla no se cierra el flujo
+     */
+    abstract static class Cursor implements Closeable {
+        double lat;
+        double lng;
+        String title;
+        String description;
+
+        /**
+         * @return false al terminar el flujo
+         */
+        abstract boolean next() throws IOException;
+    }
+}
@@ -0,0 +1,603 @@
+package com.zkoss.component.map.core;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+import org.zkoss.json.JSONArray;
+import org.zkoss.json.JSONAware;
+import org.zkoss.json.JSONObject;
+import org.zkoss.json.JSONValue;
+import org.zkoss.lang.Library;
+
+/**
+ * Almacén de marcadores en columnas primitivas (struct-of-arrays).
+ * Latitudes y longitudes se guardan en double[] y títulos y descripciones
+ * como códigos de una tabla de textos empaquetada, y el estilo como el
+ * identificador de un {@link MarkerStyle} registrado en el componente, de
+ * modo que agregar un marcador no crea objetos por marcador.
+ * Cada marcador recibe además una clave creciente que no cambia nunca y
+ * sirve como identificador público; una tabla hash de direccionamiento
+ * abierto la relaciona con la posición actual, de modo que buscar,
+ * modificar y eliminar por clave cuesta O(1). Al eliminar, el último
+ * marcador pasa a ocupar la posición liberada.
+ */
+public class MarkerStore implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * Propiedad de librería (o del sistema) que, en "true", comprime con
+     * Deflate los marcadores al serializar el almacén
+     */
+    public static final String COMPRESS_PROPERTY = "com.zkoss.component.map.serialization.compress";
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_COMPACT_GARBAGE = 1024;
+
+    // Las columnas se serializan a mano (writeObject)
+    private transient long[] keys = new long[INITIAL_CAPACITY];
+    private transient double[] latitudes = new double[INITIAL_CAPACITY];
+    private transient double[] longitudes = new double[INITIAL_CAPACITY];
+    private transient int[] titles = new int[INITIAL_CAPACITY];
+    private transient int[] descriptions = new int[INITIAL_CAPACITY];
+    private transient int[] styles = new int[INITIAL_CAPACITY]; // 0 = estilo por defecto
+    private transient int size;
+    private long nextKey = 1;
+    private transient int[] slots = new int[INITIAL_CAPACITY * 2]; // índice + 1, 0 = libre
+
+    private transient StringTable strings = new StringTable();
+    private transient int garbage; // Textos liberados desde la última compactación
+
+    /**
+     * Crea un almacén vacío
+     */
+    public MarkerStore() {
+    }
+
+    /**
+     * Crea un almacén vacío cuyas claves empiezan en el valor indicado
+     * @param firstKey Primera clave a asignar
+     */
+    MarkerStore(long firstKey) {
+        this.nextKey = firstKey;
+    }
+
+    /**
+     * Agrega un marcador al final del almacén
+     * @param lat Latitud del marcador
+     * @param lng Longitud del marcador
+     * @param title Título del marcador
+     * @param description Descripción del marcador
+     * @return Índice del nuevo marcador
+     */
+    public int add(double lat, double lng, String title, String description) {
+        return add(lat, lng, title, description, 0);
+    }
+
+    /**
+     * Agrega un marcador con estilo al final del almacén
+     * @param lat Latitud del marcador
+     * @param lng Longitud del marcador
+     * @param title Título del marcador
+     * @param description Descripción del marcador
+     * @param style Identificador del estilo, 0 para el estilo por defecto
+     * @return Índice del nuevo marcador
+     */
+    public int add(double lat, double lng, String title, String description, int style) {
+        if (size == latitudes.length) {
+            grow(size + 1);
+        }
+        final long key = nextKey++;
+        keys[size] = key;
+        latitudes[size] = lat;
+        longitudes[size] = lng;
+        titles[size] = strings.intern(title);
+        descriptions[size] = strings.intern(description);
+        styles[size] = style;
+        slots[freeSlot(key)] = size + 1;
+        return size++;
+    }
+
+    /**
+     * Reserva espacio para al menos la cantidad indicada de marcadores
+     * @param capacity Capacidad mínima
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > latitudes.length) {
+            grow(capacity);
+        }
+    }
+
+    /**
+     * Elimina un marcador en O(1); el último marcador pasa a ocupar su posición
+     * @param index Índice del marcador a eliminar
+     */
+    public void remove(int index) {
+        Objects.checkIndex(index, size);
+        deleteSlot(slotOf(keys[index]));
+        final int last = size - 1;
+        if (index != last) {
+            slots[slotOf(keys[last])] = index + 1;
+            keys[index] = keys[last];
+            latitudes[index] = latitudes[last];
+            longitudes[index] = longitudes[last];
+            titles[index] = titles[last];
+            descriptions[index] = descriptions[last];
+            styles[index] = styles[last];
+        }
+        size--;
+        if (++garbage > MIN_COMPACT_GARBAGE && garbage > size) {
+            compactStrings();
+        }
+    }
+    
+    /**
+     * Cambia la posición de un marcador
+     * @param index Índice del marcador
+     * @param lat Nueva latitud
+     * @param lng Nueva longitud
+     */
+    public void setPosition(int index, double lat, double lng) {
+        Objects.checkIndex(index, size);
+        latitudes[index] = lat;
+        longitudes[index] = lng;
+    }
+    
+    /**
+     * Cambia el título de un marcador
+     * @param index Índice del marcador
+     * @param title Nuevo título
+     */
+    public void setTitle(int index, String title) {
+        Objects.checkIndex(index, size);
+        titles[index] = replaceString(titles[index], title);
+    }
+    
+    /**
+     * Cambia la descripción de un marcador
+     * @param index Índice del marcador
+     * @param description Nueva descripción
+     */
+    public void setDescription(int index, String description) {
+        Objects.checkIndex(index, size);
+        descriptions[index] = replaceString(descriptions[index], description);
+    }
+
+    /**
+     * Cambia el estilo de un marcador
+     * @param index Índice del marcador
+     * @param style Identificador del estilo, 0 para el estilo por defecto
+     */
+    public void setStyle(int index, int style) {
+        Objects.checkIndex(index, size);
+        styles[index] = style;
+    }
+
+    /**
+     * Elimina todos los marcadores
+     */
+    public void clear() {
+        size = 0;
+        garbage = 0;
+        keys = new long[INITIAL_CAPACITY];
+        latitudes = new double[INITIAL_CAPACITY];
+        longitudes = new double[INITIAL_CAPACITY];
+        titles = new int[INITIAL_CAPACITY];
+        descriptions = new int[INITIAL_CAPACITY];
+        styles = new int[INITIAL_CAPACITY];
+        slots = new int[INITIAL_CAPACITY * 2];
+        strings.clear();
+    }
+
+    /**
+     * Copia independiente del almacén que conserva claves, posiciones y
+     * códigos de texto, de modo que ambas copias se pueden comparar
+     * marcador a marcador
+     * @return Nueva copia
+     */
+    MarkerStore copy() {
+        final MarkerStore copy = new MarkerStore(nextKey);
+        copy.keys = Arrays.copyOf(keys, Math.max(size, INITIAL_CAPACITY));
+        copy.latitudes = Arrays.copyOf(latitudes, copy.keys.length);
+        copy.longitudes = Arrays.copyOf(longitudes, copy.keys.length);
+        copy.titles = Arrays.copyOf(titles, copy.keys.length);
+        copy.descriptions = Arrays.copyOf(descriptions, copy.keys.length);
+        copy.styles = Arrays.copyOf(styles, copy.keys.length);
+        copy.slots = slots.clone();
+        copy.size = size;
+        copy.strings = strings.copy();
+        copy.garbage = garbage;
+        return copy;
+    }
+
+    /**
+     * Cantidad de marcadores del almacén
+     * @return Cantidad de marcadores
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Obtiene la clave (identificador) de un marcador
+     * @param index Índice del marcador
+     * @return Clave del marcador
+     */
+    public long getKey(int index) {
+        Objects.checkIndex(index, size);
+        return keys[index];
+    }
+
+    /**
+     * Busca el índice actual de un marcador a partir de su clave, en O(1)
+     * @param key Clave del marcador
+     * @return Índice del marcador, -1 si ya no existe
+     */
+    public int indexOfKey(long key) {
+        final int slot = slotOf(key);
+        return slot >= 0 ? slots[slot] - 1 : -1;
+    }
+
+    /**
+     * Obtiene la latitud de un marcador
+     * @param index Índice del marcador
+     * @return Latitud en grados decimales
+     */
+    public double getLatitude(int index) {
+        Objects.checkIndex(index, size);
+        return latitudes[index];
+    }
+
+    /**
+     * Obtiene la longitud de un marcador
+     * @param index Índice del marcador
+     * @return Longitud en grados decimales
+     */
+    public double getLongitude(int index) {
+        Objects.checkIndex(index, size);
+        return longitudes[index];
+    }
+
+    /**
+     * Obtiene el título de un marcador
+     * @param index Índice del marcador
+     * @return Título, puede ser null
+     */
+    public String getTitle(int index) {
+        Objects.checkIndex(index, size);
+        return strings.get(titles[index]);
+    }
+
+    /**
+     * Obtiene la descripción de un marcador
+     * @param index Índice del marcador
+     * @return Descripción, puede ser null
+     */
+    public String getDescription(int index) {
+        Objects.checkIndex(index, size);
+        return strings.get(descriptions[index]);
+    }
+
+    /**
+     * Obtiene el estilo de un marcador
+     * @param index Índice del marcador
+     * @return Identificador del estilo, 0 si usa el estilo por defecto
+     */
+    public int getStyle(int index) {
+        Objects.checkIndex(index, size);
+        return styles[index];
+    }
+
+    /**
+     * Crea la representación JSON de un marcador, con el mismo formato que
+     * usaba la lista de marcadores original más su identificador
+     * @param index Índice del marcador
+     * @return Objeto JSON nuevo con id, lat, lng, title, description y,
+     *         si no es el estilo por defecto, style
+     */
+    public JSONObject toJSON(int index) {
+        Objects.checkIndex(index, size);
+        JSONObject marker = new JSONObject();
+        marker.put("id", keys[index]);
+        marker.put("lat", latitudes[index]);
+        marker.put("lng", longitudes[index]);
+        marker.put("title", strings.get(titles[index]));
+        marker.put("description", strings.get(descriptions[index]));
+        if (styles[index] != 0) {
+            marker.put("style", styles[index]);
+        }
+        return marker;
+    }
+
+    /**
+     * Copia los marcadores del almacén en un array JSON, con un objeto
+     * nuevo por marcador
+     * @return Array JSON nuevo
+     */
+    public JSONArray toJSONArray() {
+        final JSONArray array = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            array.add(toJSON(i));
+        }
+        return array;
+    }
+
+    /**
+     * Obtiene una vista de solo lectura del almacén como lista de objetos
+     * JSON. Cada elemento se crea al leerlo, por lo que la vista no ocupa
+     * memoria por marcador y siempre refleja el contenido actual.
+     * @return Vista de solo lectura
+     */
+    public List<JSONObject> asList() {
+        return new ListView();
+    }
+
+    /**
+     * Código en la tabla de textos del título de un marcador, -1 si es null
+     */
+    int titleCode(int index) {
+        return titles[index];
+    }
+
+    /**
+     * Código en la tabla de textos de la descripción de un marcador, -1 si es null
+     */
+    int descriptionCode(int index) {
+        return descriptions[index];
+    }
+
+    /**
+     * Cantidad de códigos de la tabla de textos (incluye los liberados)
+     */
+    int stringCount() {
+        return strings.size();
+    }
+
+    /**
+     * Texto de un código de la tabla de textos
+     */
+    String string(int code) {
+        return strings.get(code);
+    }
+
+    private void grow(int minCapacity) {
+        final int capacity = Math.max(minCapacity, latitudes.length + (latitudes.length >> 1));
+        keys = Arrays.copyOf(keys, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+        styles = Arrays.copyOf(styles, capacity);
+        if (capacity * 2 > slots.length) {
+            rehash(Integer.highestOneBit(capacity * 2 - 1) << 1);
+        }
+    }
+    
+    /**
+     * Busca la celda de la tabla hash que apunta a una clave
+     * @return Celda, -1 si la clave no existe
+     */
+    private int slotOf(long key) {
+        final int mask = slots.length - 1;
+        for (int slot = mix(key) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slots[slot] - 1] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Primera celda libre de la secuencia de sondeo de una clave
+     */
+    private int freeSlot(long key) {
+        final int mask = slots.length - 1;
+        int slot = mix(key) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    /**
+     * Libera una celda desplazando hacia atrás las que le siguen en la
+     * misma secuencia de sondeo, sin dejar marcas de borrado
+     */
+    private void deleteSlot(int slot) {
+        final int mask = slots.length - 1;
+        int free = slot;
+        slots[free] = 0;
+        for (int next = (free + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            final int home = mix(keys[slots[next] - 1]) & mask;
+            // Se mueve si su celda ideal no está entre la libre y la actual
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                slots[free] = slots[next];
+                slots[next] = 0;
+                free = next;
+            }
+        }
+    }
+    
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            slots[freeSlot(keys[i])] = i + 1;
+        }
+    }
+    
+    private static int mix(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+    
+    /**
+     * Reemplaza un texto contando el anterior como basura de la tabla
+     */
+    private int replaceString(int code, String value) {
+        final int replaced = strings.intern(value);
+        if (replaced != code && ++garbage > MIN_COMPACT_GARBAGE && garbage > size) {
+            compactStrings();
+            return strings.intern(value);
+        }
+        return replaced;
+    }
+
+    /**
+     * Reconstruye la tabla de textos solo con los textos aún referenciados
+     */
+    private void compactStrings() {
+        final StringTable compacted = new StringTable();
+        for (int i = 0; i < size; i++) {
+            titles[i] = compacted.intern(strings.get(titles[i]));
+            descriptions[i] = compacted.intern(strings.get(descriptions[i]));
+        }
+        strings = compacted;
+        garbage = 0;
+    }
+
+    /**
+     * Escribe los marcadores como columnas empaquetadas: claves como
+     * diferencias con la anterior, coordenadas como doubles y textos como
+     * códigos de una tabla que solo lleva los textos en uso, cada uno una
+     * vez. Los estilos van al final, precedidos de una marca que indica si
+     * algún marcador usa otro que el estilo por defecto. No se escribe la
+     * capacidad sobrante ni la tabla hash, que se reconstruye al leer
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        final PackedData.Writer data = new PackedData.Writer(size * 24 + strings.dataLength() + 64);
+        data.writeVarInt(size);
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            data.writeZigZag(keys[i] - previous);
+            previous = keys[i];
+        }
+        for (int i = 0; i < size; i++) {
+            data.writeDouble(latitudes[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            data.writeDouble(longitudes[i]);
+        }
+        // Códigos nuevos (+1) en orden de primer uso; 0 = null
+        final int[] codes = new int[strings.size()];
+        final int[] used = new int[strings.size()];
+        int count = 0;
+        for (int[] column : new int[][] {titles, descriptions}) {
+            for (int i = 0; i < size; i++) {
+                final int code = column[i];
+                if (code >= 0 && codes[code] == 0) {
+                    used[count] = code;
+                    codes[code] = ++count;
+                }
+                data.writeVarInt(code >= 0 ? codes[code] : 0);
+            }
+        }
+        strings.write(data, used, count);
+        boolean styled = false;
+        for (int i = 0; i < size && !styled; i++) {
+            styled = styles[i] != 0;
+        }
+        data.writeVarInt(styled ? 1 : 0);
+        if (styled) {
+            for (int i = 0; i < size; i++) {
+                data.writeVarInt(styles[i]);
+            }
+        }
+        PackedData.write(out, data, "true".equalsIgnoreCase(Library.getProperty(COMPRESS_PROPERTY)));
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        final PackedData.Reader data = PackedData.read(in);
+        size = data.readVarInt();
+        if (size < 0 || size > data.remaining() / 19) { // Clave, coordenadas y textos por marcador
+            throw new InvalidObjectException("Cantidad de marcadores inválida: " + size);
+        }
+        final int capacity = Math.max(size, INITIAL_CAPACITY);
+        keys = new long[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        titles = new int[capacity];
+        descriptions = new int[capacity];
+        styles = new int[capacity];
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += data.readZigZag();
+            keys[i] = previous;
+        }
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = data.readDouble();
+        }
+        for (int i = 0; i < size; i++) {
+            longitudes[i] = data.readDouble();
+        }
+        for (int i = 0; i < size; i++) {
+            titles[i] = data.readVarInt() - 1;
+        }
+        for (int i = 0; i < size; i++) {
+            descriptions[i] = data.readVarInt() - 1;
+        }
+        strings = StringTable.read(data);
+        if (data.readVarInt() != 0) {
+            for (int i = 0; i < size; i++) {
+                styles[i] = data.readVarInt();
+            }
+        }
+        final int count = strings.size();
+        for (int i = 0; i < size; i++) {
+            if (titles[i] < -1 || titles[i] >= count || descriptions[i] < -1 || descriptions[i] >= count) {
+                throw new InvalidObjectException("Código de texto inválido");
+            }
+        }
+        garbage = 0;
+        rehash(Integer.highestOneBit(capacity * 2 - 1) << 1);
+    }
+
+    /**
+     * Vista perezosa de solo lectura sobre las columnas del almacén
+     */
+    private class ListView extends AbstractList<JSONObject> implements RandomAccess, JSONAware {
+
+        @Override
+        public JSONObject get(int index) {
+            return toJSON(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String toJSONString() {
+            final StringBuilder sb = new StringBuilder(size * 64 + 2).append('[');
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append("{\"id\":").append(keys[i])
+                  .append(",\"lat\":").append(latitudes[i])
+                  .append(",\"lng\":").append(longitudes[i])
+                  .append(",\"title\":").append(JSONValue.toJSONString(strings.get(titles[i])))
+                  .append(",\"description\":").append(JSONValue.toJSONString(strings.get(descriptions[i])));
+                if (styles[i] != 0) {
+                    sb.append(",\"style\":").append(styles[i]);
+                }
+                sb.append('}');
+            }
+            return sb.append(']').toString();
+        }
+
+        @Override
+        public String toString() {
+            return toJSONString();
+        }
+    }
+}
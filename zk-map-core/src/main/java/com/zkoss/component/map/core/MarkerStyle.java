@@ -0,0 +1,131 @@
+package com.zkoss.component.map.core;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+import org.zkoss.json.JSONObject;
+
+/**
+ * Estilo de marcador (ver {@link AbstractMapComponent#addMarkerStyle}).
+ * Se registra una vez en el componente, que le asigna un identificador
+ * entero; los marcadores llevan solo ese identificador y el cliente crea
+ * un único objeto de estilo por identificador, compartido por todos los
+ * marcadores que lo usan. Dos estilos con los mismos valores son iguales
+ * y reciben el mismo identificador.
+ */
+public final class MarkerStyle implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String icon;
+    private final String color;
+    private final int size;
+    private final String label;
+
+    /**
+     * Constructor de un estilo de círculo de color
+     *
+     * @param color Color CSS del relleno, null para el del proveedor
+     * @param size Diámetro en píxeles, 0 para el del proveedor
+     */
+    public MarkerStyle(String color, int size) {
+        this(null, color, size, null);
+    }
+
+    /**
+     * Constructor del estilo
+     *
+     * @param icon URL de la imagen del marcador, null para dibujar un círculo
+     *        del color indicado
+     * @param color Color CSS del relleno del círculo, null para el del
+     *        proveedor; no se usa si hay imagen
+     * @param size Tamaño en píxeles (lado de la imagen o diámetro del
+     *        círculo), 0 para el del proveedor
+     * @param label Texto fijo que se muestra sobre todos los marcadores del
+     *        estilo, null para ninguno (OpenLayers dibuja entonces el título
+     *        de cada marcador)
+     */
+    public MarkerStyle(String icon, String color, int size, String label) {
+        if (size < 0) {
+            throw new IllegalArgumentException("El tamaño del marcador no puede ser negativo: " + size);
+        }
+        this.icon = icon;
+        this.color = color;
+        this.size = size;
+        this.label = label;
+    }
+
+    /**
+     * Obtiene la URL de la imagen del marcador
+     * @return URL, null si el marcador es un círculo
+     */
+    public String getIcon() {
+        return icon;
+    }
+
+    /**
+     * Obtiene el color del círculo
+     * @return Color CSS, null para el del proveedor
+     */
+    public String getColor() {
+        return color;
+    }
+
+    /**
+     * Obtiene el tamaño del marcador
+     * @return Tamaño en píxeles, 0 para el del proveedor
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Obtiene el texto fijo del estilo
+     * @return Texto, null si no tiene
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Crea la definición que recibe el cliente, solo con los valores presentes
+     */
+    JSONObject toJSON() {
+        final JSONObject json = new JSONObject();
+        if (icon != null) {
+            json.put("icon", icon);
+        }
+        if (color != null) {
+            json.put("color", color);
+        }
+        if (size > 0) {
+            json.put("size", size);
+        }
+        if (label != null) {
+            json.put("label", label);
+        }
+        return json;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MarkerStyle)) {
+            return false;
+        }
+        final MarkerStyle other = (MarkerStyle) obj;
+        return size == other.size && Objects.equals(icon, other.icon)
+                && Objects.equals(color, other.color) && Objects.equals(label, other.label);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(icon, color, size, label);
+    }
+
+    @Override
+    public String toString() {
+        return "MarkerStyle" + toJSON();
+    }
+}
@@ -0,0 +1,53 @@
+package com.zkoss.component.map.core;
+
+import org.zkoss.zk.ui.Component;
+import org.zkoss.zk.ui.event.Event;
+
+/**
+ * Evento de progreso generado por el cliente mientras aplica los bloques
+ * enviados por {@link MapComponentInterface#addMarkers(java.util.Collection)}
+ */
+public class MarkersLoadEvent extends Event {
+    private static final long serialVersionUID = 1L;
+
+    private final int loaded;
+    private final int total;
+
+    /**
+     * Constructor para el evento de progreso de carga
+     *
+     * @param name Nombre del evento (normalmente "onMarkersLoad")
+     * @param target Componente que generó el evento
+     * @param loaded Marcadores de la carga ya dibujados en el cliente
+     * @param total Marcadores totales de la carga
+     */
+    public MarkersLoadEvent(String name, Component target, int loaded, int total) {
+        super(name, target);
+        this.loaded = loaded;
+        this.total = total;
+    }
+
+    /**
+     * Obtiene la cantidad de marcadores ya dibujados
+     * @return Marcadores cargados
+     */
+    public int getLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Obtiene la cantidad total de marcadores de la carga
+     * @return Marcadores totales
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Indica si el cliente terminó de aplicar todos los bloques
+     * @return true si la carga está completa
+     */
+    public boolean isComplete() {
+        return loaded >= total;
+    }
+}
@@ -0,0 +1,65 @@
+package com.zkoss.component.map.core;
+
+/**
+ * Conversiones entre coordenadas geográficas y coordenadas del mundo
+ * Web Mercator normalizadas a [0, 1], con el origen en la esquina
+ * noroeste, igual que los tiles de los tres proveedores.
+ */
+public final class Mercator {
+
+    /** Latitud máxima representable en Web Mercator */
+    public static final double MAX_LATITUDE = 85.05112878;
+
+    /** Tamaño en píxeles de un tile */
+    public static final int TILE_SIZE = 256;
+
+    private Mercator() {
+    }
+
+    /**
+     * Convierte una longitud a la coordenada X del mundo
+     * @param lng Longitud en grados decimales
+     * @return X en [0, 1]
+     */
+    public static double x(double lng) {
+        return lng / 360 + 0.5;
+    }
+
+    /**
+     * Convierte una latitud a la coordenada Y del mundo
+     * @param lat Latitud en grados decimales
+     * @return Y en [0, 1], creciendo hacia el sur
+     */
+    public static double y(double lat) {
+        final double clamped = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat));
+        final double sin = Math.sin(Math.toRadians(clamped));
+        return 0.5 - 0.25 * Math.log((1 + sin) / (1 - sin)) / Math.PI;
+    }
+
+    /**
+     * Convierte la coordenada X del mundo a longitud
+     * @param x X en [0, 1]
+     * @return Longitud en grados decimales
+     */
+    public static double lng(double x) {
+        return (x - 0.5) * 360;
+    }
+
+    /**
+     * Convierte la coordenada Y del mundo a latitud
+     * @param y Y en [0, 1]
+     * @return Latitud en grados decimales
+     */
+    public static double lat(double y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y))));
+    }
+
+    /**
+     * Tamaño del mundo en píxeles para un nivel de zoom
+     * @param zoom Nivel de zoom
+     * @return Ancho (y alto) del mundo en píxeles
+     */
+    public static double worldSize(int zoom) {
+        return TILE_SIZE * (double) (1L << zoom);
+    }
+}
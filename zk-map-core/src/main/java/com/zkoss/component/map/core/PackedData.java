@@ -0,0 +1,255 @@
+package com.zkoss.component.map.core;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Bloque binario de la forma serializada de los almacenes: enteros de
+ * longitud variable (LEB128, con zigzag para los que pueden ser negativos),
+ * enteros y doubles de tamaño fijo y bytes precedidos de su cantidad. El
+ * bloque se escribe en el flujo de una sola vez, opcionalmente comprimido
+ * con Deflate, en lugar de pasar cada valor por ObjectOutputStream.
+ */
+final class PackedData {
+
+    private static final int VERSION = 1;
+    private static final int RAW = 0;
+    private static final int DEFLATE = 1;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private PackedData() {
+    }
+
+    /**
+     * Escribe un bloque en el flujo
+     * @param compress true para comprimirlo
+     */
+    static void write(ObjectOutputStream out, Writer data, boolean compress) throws IOException {
+        out.writeByte(VERSION);
+        if (!compress) {
+            out.writeByte(RAW);
+            out.writeInt(data.length);
+            out.write(data.buffer, 0, data.length);
+            return;
+        }
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data.buffer, 0, data.length);
+            deflater.finish();
+            byte[] compressed = new byte[Math.max(64, data.length / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            out.writeByte(DEFLATE);
+            out.writeInt(data.length);
+            out.writeInt(length);
+            out.write(compressed, 0, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Lee un bloque escrito con {@link #write}
+     */
+    static Reader read(ObjectInputStream in) throws IOException {
+        final int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new InvalidObjectException("Versión de datos no soportada: " + version);
+        }
+        final int format = in.readUnsignedByte();
+        final int length = in.readInt();
+        if (length < 0 || format != RAW && format != DEFLATE) {
+            throw new InvalidObjectException("Datos empaquetados inválidos");
+        }
+        final byte[] buffer = new byte[length];
+        if (format == RAW) {
+            in.readFully(buffer);
+            return new Reader(buffer);
+        }
+        final int compressedLength = in.readInt();
+        if (compressedLength < 0) {
+            throw new InvalidObjectException("Datos empaquetados inválidos");
+        }
+        final byte[] compressed = new byte[compressedLength];
+        in.readFully(compressed);
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                final int n = inflater.inflate(buffer, read, length - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != length) {
+                throw new InvalidObjectException("Datos comprimidos incompletos");
+            }
+        } catch (DataFormatException e) {
+            throw new InvalidObjectException("Datos comprimidos inválidos: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return new Reader(buffer);
+    }
+
+    /**
+     * Bloque en construcción
+     */
+    static final class Writer {
+        private byte[] buffer;
+        private int length;
+
+        /**
+         * @param capacity Tamaño estimado en bytes
+         */
+        Writer(int capacity) {
+            buffer = new byte[Math.max(capacity, 64)];
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        void writeVarInt(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Entero con signo: los valores pequeños, positivos o negativos,
+         * ocupan pocos bytes
+         */
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeDouble(double value) {
+            ensure(8);
+            LONGS.set(buffer, length, Double.doubleToRawLongBits(value));
+            length += 8;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            INTS.set(buffer, length, value);
+            length += 4;
+        }
+
+        /**
+         * Bytes precedidos de su cantidad
+         */
+        void writeBytes(byte[] bytes, int offset, int count) {
+            writeVarInt(count);
+            ensure(count);
+            System.arraycopy(bytes, offset, buffer, length, count);
+            length += count;
+        }
+
+        private void ensure(int bytes) {
+            if (length + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+            }
+        }
+    }
+
+    /**
+     * Lectura secuencial de un bloque
+     */
+    static final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        long readVarLong() throws InvalidObjectException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = next();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new InvalidObjectException("Entero empaquetado inválido");
+        }
+
+        int readVarInt() throws InvalidObjectException {
+            final long value = readVarLong();
+            if (value > 0xFFFFFFFFL) {
+                throw new InvalidObjectException("Entero empaquetado inválido");
+            }
+            return (int) value;
+        }
+
+        long readZigZag() throws InvalidObjectException {
+            final long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        double readDouble() throws InvalidObjectException {
+            check(8);
+            final double value = Double.longBitsToDouble((long) LONGS.get(buffer, position));
+            position += 8;
+            return value;
+        }
+
+        int readInt() throws InvalidObjectException {
+            check(4);
+            final int value = (int) INTS.get(buffer, position);
+            position += 4;
+            return value;
+        }
+
+        /**
+         * Copia bytes escritos con {@link Writer#writeBytes}, cuya cantidad
+         * ya se leyó
+         */
+        void readBytes(byte[] bytes, int offset, int count) throws InvalidObjectException {
+            check(count);
+            System.arraycopy(buffer, position, bytes, offset, count);
+            position += count;
+        }
+
+        /**
+         * Bytes que quedan por leer
+         */
+        int remaining() {
+            return buffer.length - position;
+        }
+
+        private byte next() throws InvalidObjectException {
+            check(1);
+            return buffer[position++];
+        }
+
+        private void check(int bytes) throws InvalidObjectException {
+            if (bytes < 0 || bytes > buffer.length - position) {
+                throw new InvalidObjectException("Datos empaquetados incompletos");
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.zkoss.component.map.core;
+
+import java.io.Serializable;
+
+/**
+ * Lugar de un nomenclátor devuelto por {@link ReverseGeocoder}, con la
+ * distancia al punto consultado
+ */
+public final class Place implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final String countryCode;
+    private final double latitude;
+    private final double longitude;
+    private final double distance;
+
+    Place(String name, String countryCode, double latitude, double longitude, double distance) {
+        this.name = name;
+        this.countryCode = countryCode;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.distance = distance;
+    }
+
+    /**
+     * Obtiene el nombre del lugar
+     * @return Nombre, null si el nomenclátor no lo tiene
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Obtiene el código ISO 3166 del país
+     * @return Código de dos letras, null si el nomenclátor no lo tiene
+     */
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    /**
+     * Obtiene la latitud del lugar
+     * @return Latitud en grados decimales (precisión de float)
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Obtiene la longitud del lugar
+     * @return Longitud en grados decimales (precisión de float)
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Obtiene la distancia sobre la superficie terrestre entre el lugar y
+     * el punto consultado
+     * @return Distancia en metros
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    @Override
+    public String toString() {
+        return name + (countryCode != null ? " (" + countryCode + ")" : "")
+                + " a " + Math.round(distance) + " m";
+    }
+}
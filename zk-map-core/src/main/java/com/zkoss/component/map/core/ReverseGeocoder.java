@@ -0,0 +1,622 @@
+package com.zkoss.component.map.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Geocodificación inversa sin conexión: encuentra el lugar más cercano a
+ * un punto en un nomenclátor local, como los volcados de GeoNames
+ * (cities500.txt, allCountries.txt).
+ * <p>
+ * Los lugares forman un árbol k-d implícito sobre su posición en la esfera
+ * unidad (x, y, z): la distancia en línea recta ordena igual que la
+ * distancia sobre la superficie y no hay casos especiales en el
+ * antimeridiano ni en los polos. El árbol no tiene nodos; cada tramo del
+ * arreglo se divide en su elemento del medio, y todos los datos son
+ * arreglos primitivos dentro de un único buffer. Una consulta visita unas
+ * decenas de lugares y tarda microsegundos.
+ * <p>
+ * El árbol se construye en paralelo en el pool común. {@link #write(Path)}
+ * guarda el buffer tal cual y {@link #open(Path)} lo proyecta en memoria
+ * sin leerlo ni copiarlo, así que al reiniciar no hace falta volver a
+ * procesar el nomenclátor; {@link #load(Path, Path)} combina ambos. Una
+ * instancia es inmutable y se puede compartir entre hilos y componentes:
+ * <pre>
+ * ReverseGeocoder geocoder = ReverseGeocoder.load(Paths.get("cities500.txt"), Paths.get("cities500.bin"));
+ * mapa.setReverseGeocoder(geocoder);
+ * mapa.addEventListener("onMapClick", e -&gt; {
+ *     Place place = ((MapClickEvent) e).getPlace();
+ * });
+ * </pre>
+ */
+public final class ReverseGeocoder {
+
+    /** Radio medio de la Tierra en metros */
+    public static final double EARTH_RADIUS = 6_371_008.8;
+
+    private static final int MAGIC = 0x5A4B4744;          // "ZKGD"
+    private static final int VERSION = 1;
+    private static final int HEADER = 24;
+    private static final int LEAF_SIZE = 8;               // Tramos que se recorren sin dividir
+    private static final int PARALLEL_THRESHOLD = 65536;  // Lugares por tarea
+
+    private final ByteBuffer image;
+    private final int size;
+    private final FloatBuffer points;      // x, y, z en la esfera unidad, en orden del árbol
+    private final FloatBuffer coordinates; // lat, lng
+    private final IntBuffer names;         // Código del nombre de cada lugar, -1 = sin nombre
+    private final IntBuffer nameOffsets;   // nameOffsets[code] .. nameOffsets[code + 1]
+    private final ShortBuffer countries;   // Dos letras ASCII, 0 = sin país
+    private final ByteBuffer axes;         // Eje de división de cada nodo
+    private final ByteBuffer nameData;     // Nombres en UTF-8
+
+    /**
+     * Crea el geocodificador sobre un buffer ya validado con el formato de
+     * {@link #write(Path)}
+     */
+    private ReverseGeocoder(ByteBuffer image) {
+        this.image = image;
+        size = image.getInt(8);
+        final int nameCount = image.getInt(12);
+        final int nameBytes = image.getInt(16);
+        int offset = HEADER;
+        points = section(image, offset, size * 12).asFloatBuffer();
+        offset += size * 12;
+        coordinates = section(image, offset, size * 8).asFloatBuffer();
+        offset += size * 8;
+        names = section(image, offset, size * 4).asIntBuffer();
+        offset += size * 4;
+        nameOffsets = section(image, offset, (nameCount + 1) * 4).asIntBuffer();
+        offset += (nameCount + 1) * 4;
+        countries = section(image, offset, size * 2).asShortBuffer();
+        offset += size * 2;
+        axes = section(image, offset, size);
+        offset += size;
+        nameData = section(image, offset, nameBytes);
+    }
+
+    /**
+     * Lee un volcado de GeoNames: texto UTF-8 separado por tabuladores, sin
+     * cabecera, con el nombre en la columna 2, la latitud y la longitud en
+     * la 5 y la 6 y el país en la 9. Las líneas que no tienen ese formato
+     * se omiten
+     * @param in Flujo del volcado; no se cierra
+     * @return Geocodificador con los lugares del volcado
+     * @throws IOException si no se puede leer
+     */
+    public static ReverseGeocoder readGeoNames(InputStream in) throws IOException {
+        final Gazetteer gazetteer = new Gazetteer();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        for (String line; (line = reader.readLine()) != null;) {
+            gazetteer.addGeoNames(line);
+        }
+        return gazetteer.build();
+    }
+
+    /**
+     * Lee un volcado de GeoNames de un archivo
+     * @param path Archivo del volcado
+     * @return Geocodificador con los lugares del volcado
+     * @throws IOException si no se puede leer
+     * @see #readGeoNames(InputStream)
+     */
+    public static ReverseGeocoder readGeoNames(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return readGeoNames(in);
+        }
+    }
+
+    /**
+     * Lee un nomenclátor con un lector de marcadores, por ejemplo un CSV
+     * con cabecera. El nombre de cada lugar sale del título y el país de la
+     * descripción, si es un código de dos letras:
+     * <pre>
+     * CsvMarkerReader reader = new CsvMarkerReader();
+     * reader.setTitleProperty("name");
+     * reader.setDescriptionProperty("country");
+     * ReverseGeocoder geocoder = ReverseGeocoder.read(path, reader);
+     * </pre>
+     * @param path Archivo en UTF-8
+     * @param reader Lector del formato del archivo
+     * @return Geocodificador con los lugares del archivo
+     * @throws IOException si no se puede leer o el formato es inválido
+     */
+    public static ReverseGeocoder read(Path path, MarkerReader reader) throws IOException {
+        final Gazetteer gazetteer = new Gazetteer();
+        try (InputStream in = Files.newInputStream(path);
+                MarkerReader.Cursor cursor = reader.open(in)) {
+            while (cursor.next()) {
+                gazetteer.add(cursor.lat, cursor.lng, cursor.title, cursor.description);
+            }
+        }
+        return gazetteer.build();
+    }
+
+    /**
+     * Abre un nomenclátor guardado con {@link #write(Path)}. El archivo se
+     * proyecta en memoria: solo se leen del disco las páginas que tocan las
+     * consultas y el sistema operativo las comparte entre procesos
+     * @param path Archivo binario
+     * @return Geocodificador sobre el archivo
+     * @throws IOException si no se puede leer o no tiene el formato esperado
+     */
+    public static ReverseGeocoder open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long length = channel.size();
+            if (length < HEADER || length > Integer.MAX_VALUE) {
+                throw new IOException("No es un nomenclátor binario: " + path);
+            }
+            final ByteBuffer image = channel.map(FileChannel.MapMode.READ_ONLY, 0, length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (image.getInt(0) != MAGIC) {
+                throw new IOException("No es un nomenclátor binario: " + path);
+            }
+            if (image.getInt(4) != VERSION) {
+                throw new IOException("Versión de nomenclátor no soportada: " + image.getInt(4));
+            }
+            final int size = image.getInt(8);
+            final int nameCount = image.getInt(12);
+            final int nameBytes = image.getInt(16);
+            if (size < 0 || nameCount < 0 || nameBytes < 0 || length(size, nameCount, nameBytes) != length) {
+                throw new IOException("Nomenclátor binario incompleto: " + path);
+            }
+            return new ReverseGeocoder(image);
+        }
+    }
+
+    /**
+     * Abre el nomenclátor binario si está al día con el volcado de GeoNames
+     * y, si no, lee el volcado y guarda el binario para el próximo arranque
+     * @param gazetteer Volcado de GeoNames
+     * @param cache Archivo binario (se crea o se reemplaza)
+     * @return Geocodificador con los lugares del volcado
+     * @throws IOException si no se puede leer el volcado o escribir el binario
+     */
+    public static ReverseGeocoder load(Path gazetteer, Path cache) throws IOException {
+        if (Files.isRegularFile(cache)
+                && Files.getLastModifiedTime(cache).compareTo(Files.getLastModifiedTime(gazetteer)) >= 0) {
+            try {
+                return open(cache);
+            } catch (IOException e) {
+                // Binario de otra versión o dañado: se vuelve a generar
+            }
+        }
+        final ReverseGeocoder geocoder = readGeoNames(gazetteer);
+        geocoder.write(cache);
+        return geocoder;
+    }
+
+    /**
+     * Guarda el nomenclátor para abrirlo con {@link #open(Path)}. Se escribe
+     * en un archivo temporal que luego reemplaza al destino, de modo que
+     * quien tenga proyectado el archivo anterior puede seguir usándolo
+     * @param path Archivo binario
+     * @throws IOException si no se puede escribir
+     */
+    public void write(Path path) throws IOException {
+        final Path target = path.toAbsolutePath();
+        final Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer data = image.duplicate();
+                data.clear();
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Cantidad de lugares del nomenclátor
+     * @return Cantidad de lugares
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Busca el lugar más cercano a un punto
+     * @param lat Latitud del punto
+     * @param lng Longitud del punto
+     * @return Lugar más cercano, null si el nomenclátor está vacío
+     */
+    public Place nearest(double lat, double lng) {
+        return nearest(lat, lng, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Busca el lugar más cercano a un punto dentro de una distancia
+     * @param lat Latitud del punto
+     * @param lng Longitud del punto
+     * @param maxDistance Distancia máxima en metros
+     * @return Lugar más cercano, null si no hay ninguno a esa distancia
+     */
+    public Place nearest(double lat, double lng, double maxDistance) {
+        if (!(maxDistance >= 0)) {
+            throw new IllegalArgumentException("La distancia máxima no puede ser negativa");
+        }
+        final double phi = Math.toRadians(lat);
+        final double lambda = Math.toRadians(lng);
+        final double cos = Math.cos(phi);
+        final Search search = new Search(cos * Math.cos(lambda), cos * Math.sin(lambda), Math.sin(phi));
+        // Cuerda de la esfera unidad que corresponde a la distancia máxima
+        final double angle = maxDistance / EARTH_RADIUS;
+        if (angle < Math.PI) {
+            final double chord = 2 * Math.sin(angle / 2);
+            search.best = chord * chord;
+        }
+        search(search, 0, size);
+        if (search.index < 0) {
+            return null;
+        }
+        final int i = search.index;
+        final double placeLat = coordinates.get(i * 2);
+        final double placeLng = coordinates.get(i * 2 + 1);
+        return new Place(name(i), country(i), placeLat, placeLng, distance(lat, lng, placeLat, placeLng));
+    }
+
+    /**
+     * Recorre el subárbol de [from, to): primero el lado del punto y luego,
+     * si la división queda más cerca que el mejor lugar, el otro
+     */
+    private void search(Search search, int from, int to) {
+        while (to - from > LEAF_SIZE) {
+            final int middle = (from + to) >>> 1;
+            visit(search, middle);
+            final int axis = axes.get(middle);
+            final double diff = search.coordinate(axis) - points.get(middle * 3 + axis);
+            if (diff < 0) {
+                search(search, from, middle);
+                from = middle + 1;
+            } else {
+                search(search, middle + 1, to);
+                to = middle;
+            }
+            if (diff * diff >= search.best) {
+                return;
+            }
+        }
+        for (int i = from; i < to; i++) {
+            visit(search, i);
+        }
+    }
+
+    private void visit(Search search, int i) {
+        final double dx = search.x - points.get(i * 3);
+        final double dy = search.y - points.get(i * 3 + 1);
+        final double dz = search.z - points.get(i * 3 + 2);
+        final double d = dx * dx + dy * dy + dz * dz;
+        if (d < search.best) {
+            search.best = d;
+            search.index = i;
+        }
+    }
+
+    private String name(int i) {
+        final int code = names.get(i);
+        if (code < 0) {
+            return null;
+        }
+        final int start = nameOffsets.get(code);
+        final byte[] bytes = new byte[nameOffsets.get(code + 1) - start];
+        final ByteBuffer data = nameData.duplicate();
+        data.position(start);
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String country(int i) {
+        final short code = countries.get(i);
+        if (code == 0) {
+            return null;
+        }
+        return new String(new char[] {(char) ((code >>> 8) & 0xFF), (char) (code & 0xFF)});
+    }
+
+    /**
+     * Distancia de haversine en metros
+     */
+    private static double distance(double lat1, double lng1, double lat2, double lng2) {
+        final double dLat = Math.toRadians(lat2 - lat1);
+        final double dLng = Math.toRadians(lng2 - lng1);
+        final double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static long length(int size, int nameCount, int nameBytes) {
+        return HEADER + 27L * size + 4L * (nameCount + 1) + nameBytes;
+    }
+
+    private static ByteBuffer section(ByteBuffer image, int offset, int length) {
+        final ByteBuffer section = image.duplicate();
+        section.position(offset).limit(offset + length);
+        return section.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Estado de una consulta: el punto en la esfera unidad y el mejor lugar
+     */
+    private static final class Search {
+        final double x;
+        final double y;
+        final double z;
+        double best = Double.POSITIVE_INFINITY; // Cuadrado de la cuerda al mejor lugar
+        int index = -1;
+
+        Search(double x, double y, double z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        double coordinate(int axis) {
+            return axis == 0 ? x : axis == 1 ? y : z;
+        }
+    }
+
+    /**
+     * Lugares leídos, en el orden del archivo, antes de construir el árbol
+     */
+    private static final class Gazetteer {
+        private double[] lats = new double[1024];
+        private double[] lngs = new double[1024];
+        private int[] names = new int[1024];
+        private short[] countries = new short[1024];
+        private int count;
+        private final StringTable table = new StringTable();
+
+        void add(double lat, double lng, String name, String country) {
+            if (!(lat >= -90 && lat <= 90 && lng >= -180 && lng <= 180)) {
+                return;
+            }
+            if (count == lats.length) {
+                final int capacity = count * 2;
+                lats = Arrays.copyOf(lats, capacity);
+                lngs = Arrays.copyOf(lngs, capacity);
+                names = Arrays.copyOf(names, capacity);
+                countries = Arrays.copyOf(countries, capacity);
+            }
+            lats[count] = lat;
+            lngs[count] = lng;
+            names[count] = table.intern(name == null || name.isEmpty() ? null : name);
+            countries[count] = countryCode(country);
+            count++;
+        }
+
+        /**
+         * Agrega una línea de un volcado de GeoNames
+         */
+        void addGeoNames(String line) {
+            String name = null;
+            String country = null;
+            double lat = Double.NaN;
+            double lng = Double.NaN;
+            int column = 0;
+            int start = 0;
+            try {
+                for (int i = 0; i <= line.length() && column <= 8; i++) {
+                    if (i < line.length() && line.charAt(i) != '\t') {
+                        continue;
+                    }
+                    switch (column) {
+                        case 1: name = line.substring(start, i); break;
+                        case 4: lat = Double.parseDouble(line.substring(start, i)); break;
+                        case 5: lng = Double.parseDouble(line.substring(start, i)); break;
+                        case 8: country = line.substring(start, i); break;
+                        default: break;
+                    }
+                    column++;
+                    start = i + 1;
+                }
+            } catch (NumberFormatException e) {
+                return;
+            }
+            add(lat, lng, name, country);
+        }
+
+        private static short countryCode(String country) {
+            if (country == null || country.length() != 2) {
+                return 0;
+            }
+            final char first = Character.toUpperCase(country.charAt(0));
+            final char second = Character.toUpperCase(country.charAt(1));
+            if (first < 'A' || first > 'Z' || second < 'A' || second > 'Z') {
+                return 0;
+            }
+            return (short) (first << 8 | second);
+        }
+
+        ReverseGeocoder build() throws IOException {
+            final int n = count;
+            final byte[][] encoded = new byte[table.size()][];
+            long nameBytes = 0;
+            for (int code = 0; code < encoded.length; code++) {
+                encoded[code] = table.get(code).getBytes(StandardCharsets.UTF_8);
+                nameBytes += encoded[code].length;
+            }
+            final long length = length(n, encoded.length, (int) Math.min(nameBytes, Integer.MAX_VALUE));
+            if (nameBytes > Integer.MAX_VALUE || length > Integer.MAX_VALUE) {
+                throw new IOException("El nomenclátor es demasiado grande: " + n + " lugares");
+            }
+
+            final float[] xs = new float[n];
+            final float[] ys = new float[n];
+            final float[] zs = new float[n];
+            IntStream.range(0, n).parallel().forEach(i -> {
+                final double phi = Math.toRadians(lats[i]);
+                final double lambda = Math.toRadians(lngs[i]);
+                final double cos = Math.cos(phi);
+                xs[i] = (float) (cos * Math.cos(lambda));
+                ys[i] = (float) (cos * Math.sin(lambda));
+                zs[i] = (float) Math.sin(phi);
+            });
+            final int[] order = new int[n];
+            Arrays.setAll(order, i -> i);
+            final byte[] axes = new byte[n];
+            final Split task = new Split(xs, ys, zs, order, axes, 0, n);
+            if (n > PARALLEL_THRESHOLD) {
+                ForkJoinPool.commonPool().invoke(task);
+            } else {
+                task.compute();
+            }
+
+            final ByteBuffer image = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+            image.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(encoded.length).putInt((int) nameBytes).putInt(0);
+            for (int i = 0; i < n; i++) {
+                final int place = order[i];
+                image.putFloat(xs[place]).putFloat(ys[place]).putFloat(zs[place]);
+            }
+            for (int i = 0; i < n; i++) {
+                final int place = order[i];
+                image.putFloat((float) lats[place]).putFloat((float) lngs[place]);
+            }
+            for (int i = 0; i < n; i++) {
+                image.putInt(names[order[i]]);
+            }
+            int offset = 0;
+            for (byte[] bytes : encoded) {
+                image.putInt(offset);
+                offset += bytes.length;
+            }
+            image.putInt(offset);
+            for (int i = 0; i < n; i++) {
+                image.putShort(countries[order[i]]);
+            }
+            image.put(axes);
+            for (byte[] bytes : encoded) {
+                image.put(bytes);
+            }
+            return new ReverseGeocoder(image);
+        }
+    }
+
+    /**
+     * Ordena un tramo como árbol k-d: el elemento del medio queda en su
+     * posición según el eje de mayor extensión, con los menores antes y los
+     * mayores después, y se repite en cada mitad. Las mitades grandes se
+     * reparten en tareas
+     */
+    private static final class Split extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final float[] xs;
+        private final float[] ys;
+        private final float[] zs;
+        private final int[] order;
+        private final byte[] axes;
+        private final int from;
+        private final int to;
+
+        Split(float[] xs, float[] ys, float[] zs, int[] order, byte[] axes, int from, int to) {
+            this.xs = xs;
+            this.ys = ys;
+            this.zs = zs;
+            this.order = order;
+            this.axes = axes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            split(from, to);
+        }
+
+        private void split(int from, int to) {
+            while (to - from > LEAF_SIZE) {
+                final int axis = widestAxis(from, to);
+                final float[] values = axis == 0 ? xs : axis == 1 ? ys : zs;
+                final int middle = (from + to) >>> 1;
+                select(values, from, to - 1, middle);
+                axes[middle] = (byte) axis;
+                if (to - from > PARALLEL_THRESHOLD) {
+                    invokeAll(new Split(xs, ys, zs, order, axes, from, middle),
+                            new Split(xs, ys, zs, order, axes, middle + 1, to));
+                    return;
+                }
+                split(from, middle);
+                from = middle + 1;
+            }
+        }
+
+        private int widestAxis(int from, int to) {
+            float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+            for (int i = from; i < to; i++) {
+                final int place = order[i];
+                minX = Math.min(minX, xs[place]);
+                maxX = Math.max(maxX, xs[place]);
+                minY = Math.min(minY, ys[place]);
+                maxY = Math.max(maxY, ys[place]);
+                minZ = Math.min(minZ, zs[place]);
+                maxZ = Math.max(maxZ, zs[place]);
+            }
+            final float x = maxX - minX;
+            final float y = maxY - minY;
+            final float z = maxZ - minZ;
+            return x >= y && x >= z ? 0 : y >= z ? 1 : 2;
+        }
+
+        /**
+         * Selección rápida (Hoare) del elemento k de [lo, hi]
+         */
+        private void select(float[] values, int lo, int hi, int k) {
+            while (hi > lo) {
+                final float a = values[order[lo]];
+                final float b = values[order[(lo + hi) >>> 1]];
+                final float c = values[order[hi]];
+                final float pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+                int i = lo;
+                int j = hi;
+                while (i <= j) {
+                    while (values[order[i]] < pivot) {
+                        i++;
+                    }
+                    while (values[order[j]] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        final int swap = order[i];
+                        order[i++] = order[j];
+                        order[j--] = swap;
+                    }
+                }
+                if (k <= j) {
+                    hi = j;
+                } else if (k >= i) {
+                    lo = i;
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.zkoss.component.map.core;
+
+import java.io.Serializable;
+
+/**
+ * Línea o polígono del mapa (ver {@link MapComponentInterface#addShape}).
+ * Los vértices se guardan en un único arreglo de doubles con la latitud y
+ * la longitud alternadas; un polígono se cierra solo, sin repetir el
+ * primer vértice.
+ */
+public class Shape implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Tipo de forma */
+    public enum Type {
+        /** Línea abierta (ruta, recorrido GPS) */
+        LINE,
+        /** Polígono cerrado y relleno */
+        POLYGON
+    }
+
+    private final Type type;
+    private final double[] coordinates;
+    private final String title;
+    private final String description;
+    private final String color;
+
+    /**
+     * Constructor de la forma con el color por defecto del proveedor
+     *
+     * @param type Tipo de forma
+     * @param coordinates Vértices [lat0, lng0, lat1, lng1, ...]; se copian
+     * @param title Título de la forma
+     * @param description Descripción de la forma (se muestra al hacer clic)
+     */
+    public Shape(Type type, double[] coordinates, String title, String description) {
+        this(type, coordinates, title, description, null);
+    }
+
+    /**
+     * Constructor de la forma
+     *
+     * @param type Tipo de forma
+     * @param coordinates Vértices [lat0, lng0, lat1, lng1, ...]; se copian
+     * @param title Título de la forma
+     * @param description Descripción de la forma (se muestra al hacer clic)
+     * @param color Color CSS del trazo y del relleno, null para el del proveedor
+     */
+    public Shape(Type type, double[] coordinates, String title, String description, String color) {
+        if (type == null) {
+            throw new IllegalArgumentException("El tipo de forma es obligatorio");
+        }
+        if (coordinates.length % 2 != 0) {
+            throw new IllegalArgumentException("Las coordenadas deben ser pares latitud, longitud");
+        }
+        final int minimum = type == Type.POLYGON ? 3 : 2;
+        if (coordinates.length < minimum * 2) {
+            throw new IllegalArgumentException("La forma necesita al menos " + minimum + " vértices");
+        }
+        for (int i = 0; i < coordinates.length; i += 2) {
+            if (!(Math.abs(coordinates[i]) <= 90) || !(Math.abs(coordinates[i + 1]) <= 180)) {
+                throw new IllegalArgumentException("Vértice " + i / 2 + " fuera de rango");
+            }
+        }
+        this.type = type;
+        this.coordinates = coordinates.clone();
+        this.title = title;
+        this.description = description;
+        this.color = color;
+    }
+
+    /**
+     * Obtiene el tipo de forma
+     * @return Línea o polígono
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Obtiene la cantidad de vértices
+     * @return Vértices de la forma
+     */
+    public int getVertexCount() {
+        return coordinates.length / 2;
+    }
+
+    /**
+     * Obtiene la latitud de un vértice
+     * @param vertex Índice del vértice
+     * @return Latitud en grados decimales
+     */
+    public double getLatitude(int vertex) {
+        return coordinates[vertex * 2];
+    }
+
+    /**
+     * Obtiene la longitud de un vértice
+     * @param vertex Índice del vértice
+     * @return Longitud en grados decimales
+     */
+    public double getLongitude(int vertex) {
+        return coordinates[vertex * 2 + 1];
+    }
+
+    /**
+     * Obtiene una copia de los vértices
+     * @return Arreglo [lat0, lng0, lat1, lng1, ...]
+     */
+    public double[] getCoordinates() {
+        return coordinates.clone();
+    }
+
+    /**
+     * Obtiene el título de la forma
+     * @return Título, puede ser null
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Obtiene la descripción de la forma
+     * @return Descripción, puede ser null
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Obtiene el color de la forma
+     * @return Color CSS, null si se usa el del proveedor
+     */
+    public String getColor() {
+        return color;
+    }
+
+    /**
+     * Vértices sin copiar, para la simplificación
+     */
+    double[] coordinates() {
+        return coordinates;
+    }
+}
@@ -0,0 +1,211 @@
+package com.zkoss.component.map.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Simplificación de Douglas-Peucker calculada una sola vez para todos los
+ * niveles de zoom.
+ * <p>
+ * En lugar de simplificar con una tolerancia fija, se recorre la forma
+ * completa y cada vértice recibe su importancia: la distancia a la que el
+ * algoritmo lo conservó, acotada por la de sus antecesores en la
+ * recursión. Quedarse con los vértices cuya importancia supera una
+ * tolerancia da exactamente el resultado de Douglas-Peucker con esa
+ * tolerancia, así que cada nivel de zoom es un simple filtrado.
+ * <p>
+ * Las distancias se miden en coordenadas del mundo Web Mercator
+ * ({@link Mercator}), de modo que una tolerancia en píxeles vale lo mismo
+ * en todo el mapa. Los tramos grandes se reparten entre los hilos del
+ * pool común; la recursión usa una pila propia para no desbordar la del
+ * hilo con formas de cientos de miles de vértices.
+ */
+final class ShapeSimplifier {
+
+    /** Importancia de los vértices que se conservan siempre */
+    static final float KEEP = Float.POSITIVE_INFINITY;
+
+    private static final int PARALLEL_THRESHOLD = 16384; // Vértices por tarea
+
+    private ShapeSimplifier() {
+    }
+
+    /**
+     * Calcula la importancia de cada vértice
+     * @param coordinates Vértices [lat0, lng0, lat1, lng1, ...]
+     * @param closed true si es un polígono (el último vértice se une al primero)
+     * @return Importancia de cada vértice en unidades del mundo; en un
+     *         polígono solo el primero y el más lejano se conservan siempre
+     */
+    static float[] significance(double[] coordinates, boolean closed) {
+        final int vertices = coordinates.length / 2;
+        // En un anillo se repite el primer vértice al final para incluir el
+        // lado que cierra el polígono
+        final int n = closed ? vertices + 1 : vertices;
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        for (int i = 0; i < vertices; i++) {
+            xs[i] = Mercator.x(coordinates[i * 2 + 1]);
+            ys[i] = Mercator.y(coordinates[i * 2]);
+        }
+        if (closed) {
+            xs[vertices] = xs[0];
+            ys[vertices] = ys[0];
+        }
+        final float[] result = new float[n];
+        result[0] = KEEP;
+        result[n - 1] = KEEP;
+
+        final Segment task;
+        if (closed) {
+            // El anillo se parte en el vértice más lejano del primero
+            int far = 1;
+            double best = -1;
+            for (int i = 1; i < vertices; i++) {
+                final double dx = xs[i] - xs[0];
+                final double dy = ys[i] - ys[0];
+                final double d = dx * dx + dy * dy;
+                if (d > best) {
+                    best = d;
+                    far = i;
+                }
+            }
+            result[far] = KEEP;
+            task = new Segment(xs, ys, result, 0, far, KEEP, false);
+            task.sibling = new Segment(xs, ys, result, far, n - 1, KEEP, false);
+        } else {
+            task = new Segment(xs, ys, result, 0, n - 1, KEEP, false);
+        }
+        if (n > PARALLEL_THRESHOLD) {
+            task.parallel = true;
+            if (task.sibling != null) {
+                task.sibling.parallel = true;
+            }
+            ForkJoinPool.commonPool().invoke(task);
+        } else {
+            task.compute();
+        }
+        return closed ? Arrays.copyOf(result, vertices) : result;
+    }
+
+    /**
+     * Simplifica los tramos entre dos vértices ya conservados. Los tramos
+     * que quedan por debajo del umbral se resuelven en esta tarea con una
+     * pila; los mayores se reparten en tareas nuevas
+     */
+    private static final class Segment extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] xs;
+        private final double[] ys;
+        private final float[] result;
+        private final int first;
+        private final int last;
+        private final float limit;
+        private boolean parallel;  // Repartir los tramos grandes en tareas
+        private Segment sibling;   // Otro tramo que se resuelve a la vez (anillos)
+
+        Segment(double[] xs, double[] ys, float[] result, int first, int last, float limit, boolean parallel) {
+            this.xs = xs;
+            this.ys = ys;
+            this.result = result;
+            this.first = first;
+            this.last = last;
+            this.limit = limit;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected void compute() {
+            if (sibling != null) {
+                final Segment own = new Segment(xs, ys, result, first, last, limit, parallel);
+                if (parallel) {
+                    invokeAll(own, sibling);
+                } else {
+                    own.compute();
+                    sibling.compute();
+                }
+                return;
+            }
+            // Pila de tramos {primero, último} con la importancia de su vértice padre
+            int[] stack = new int[64];
+            float[] limits = new float[32];
+            stack[0] = first;
+            stack[1] = last;
+            limits[0] = limit;
+            int top = 1;
+            List<Segment> forked = null;
+            while (top > 0) {
+                top--;
+                final int a = stack[top * 2];
+                final int b = stack[top * 2 + 1];
+                final float parent = limits[top];
+                if (b - a < 2) {
+                    continue;
+                }
+                if (parallel && b - a > PARALLEL_THRESHOLD && (a != first || b != last)) {
+                    final Segment child = new Segment(xs, ys, result, a, b, parent, true);
+                    child.fork();
+                    if (forked == null) {
+                        forked = new ArrayList<>();
+                    }
+                    forked.add(child);
+                    continue;
+                }
+
+                int index = a + 1;
+                double best = -1;
+                for (int i = a + 1; i < b; i++) {
+                    final double d = distanceSq(xs[i], ys[i], xs[a], ys[a], xs[b], ys[b]);
+                    if (d > best) {
+                        best = d;
+                        index = i;
+                    }
+                }
+                final float importance = Math.min(parent, (float) Math.sqrt(best));
+                result[index] = importance;
+
+                if (top + 2 > limits.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                    limits = Arrays.copyOf(limits, limits.length * 2);
+                }
+                stack[top * 2] = a;
+                stack[top * 2 + 1] = index;
+                limits[top++] = importance;
+                stack[top * 2] = index;
+                stack[top * 2 + 1] = b;
+                limits[top++] = importance;
+            }
+            if (forked != null) {
+                for (Segment child : forked) {
+                    child.join();
+                }
+            }
+        }
+
+        /**
+         * Cuadrado de la distancia de (px, py) al segmento (ax, ay)-(bx, by)
+         */
+        private static double distanceSq(double px, double py, double ax, double ay, double bx, double by) {
+            double dx = bx - ax;
+            double dy = by - ay;
+            final double length = dx * dx + dy * dy;
+            if (length > 0) {
+                final double t = ((px - ax) * dx + (py - ay) * dy) / length;
+                if (t >= 1) {
+                    ax = bx;
+                    ay = by;
+                } else if (t > 0) {
+                    ax += dx * t;
+                    ay += dy * t;
+                }
+            }
+            dx = px - ax;
+            dy = py - ay;
+            return dx * dx + dy * dy;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.zkoss.component.map.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.zkoss.json.JSONValue;
+
+/**
+ * Líneas y polígonos de un componente con su simplificación.
+ * <p>
+ * Cada forma guarda sus vértices en un arreglo de doubles y la importancia
+ * de cada vértice ({@link ShapeSimplifier}) en uno de floats. El JSON de
+ * cada nivel de zoom se genera al primer uso y se reutiliza: solo lleva
+ * los vértices que se distinguen a ese zoom, con la codificación de
+ * polilíneas de {@link MarkerCodec}.
+ */
+final class ShapeStore implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Niveles de zoom con caché (0 a 20) */
+    static final int LEVELS = 21;
+
+    private static final double FACTOR = Math.pow(10, MarkerCodec.PRECISION);
+    private static final int PARALLEL_MIN = 8; // Formas a partir de las que se codifica en paralelo
+
+    private final Map<Long, Entry> shapes = new LinkedHashMap<>();
+    private long nextKey = 1;
+
+    /**
+     * Agrega una forma ya simplificada
+     * @param shape Forma
+     * @param significance Importancia de sus vértices
+     * @return Clave de la forma
+     */
+    long add(Shape shape, float[] significance) {
+        final long key = nextKey++;
+        shapes.put(key, new Entry(key, shape, significance));
+        return key;
+    }
+
+    /**
+     * Calcula la importancia de los vértices de una forma
+     */
+    static float[] simplify(Shape shape) {
+        return ShapeSimplifier.significance(shape.coordinates(), shape.getType() == Shape.Type.POLYGON);
+    }
+
+    boolean remove(long key) {
+        return shapes.remove(key) != null;
+    }
+
+    void clear() {
+        shapes.clear();
+    }
+
+    Shape get(long key) {
+        final Entry entry = shapes.get(key);
+        return entry != null ? entry.shape : null;
+    }
+
+    boolean contains(long key) {
+        return shapes.containsKey(key);
+    }
+
+    int size() {
+        return shapes.size();
+    }
+
+    long[] keys() {
+        final long[] keys = new long[shapes.size()];
+        int i = 0;
+        for (Long key : shapes.keySet()) {
+            keys[i++] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * Descarta el JSON de todos los niveles (cambió la tolerancia)
+     */
+    void invalidate() {
+        for (Entry entry : shapes.values()) {
+            entry.levels = null;
+        }
+    }
+
+    /**
+     * JSON de las formas indicadas a un zoom; las que no se ven a ese zoom
+     * (polígonos de menos de un píxel) se omiten
+     * @param keys Claves de las formas, null = todas
+     * @param zoom Nivel de zoom
+     * @param tolerance Desviación permitida en píxeles
+     * @return Objetos JSON separados por comas
+     */
+    String encode(Collection<Long> keys, int zoom, double tolerance) {
+        final List<Entry> entries = new ArrayList<>();
+        if (keys == null) {
+            entries.addAll(shapes.values());
+        } else {
+            for (Long key : keys) {
+                final Entry entry = shapes.get(key);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        }
+        final int level = Math.max(0, Math.min(LEVELS - 1, zoom));
+        final double worldTolerance = tolerance / Mercator.worldSize(level);
+        return (entries.size() >= PARALLEL_MIN ? entries.parallelStream() : entries.stream())
+                .map(entry -> entry.level(level, worldTolerance))
+                .filter(json -> !json.isEmpty())
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Forma con su simplificación y el JSON de los niveles ya usados
+     */
+    private static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long key;
+        private final Shape shape;
+        private final float[] significance;
+        private transient String[] levels; // "" = no se ve a ese zoom
+
+        Entry(long key, Shape shape, float[] significance) {
+            this.key = key;
+            this.shape = shape;
+            this.significance = significance;
+        }
+
+        String level(int zoom, double tolerance) {
+            String[] cache = levels;
+            if (cache == null) {
+                cache = new String[LEVELS];
+                levels = cache;
+            }
+            String json = cache[zoom];
+            if (json == null) {
+                json = encode(tolerance);
+                cache[zoom] = json;
+            }
+            return json;
+        }
+
+        /**
+         * {"id", "type", "title", "description", "color", "n", "c"} con los
+         * vértices cuya importancia supera la tolerancia
+         */
+        private String encode(double tolerance) {
+            final double[] coordinates = shape.coordinates();
+            final StringBuilder path = new StringBuilder();
+            long lastLat = 0;
+            long lastLng = 0;
+            int count = 0;
+            for (int i = 0; i < significance.length; i++) {
+                if (significance[i] > tolerance) {
+                    final long lat = Math.round(coordinates[i * 2] * FACTOR);
+                    final long lng = Math.round(coordinates[i * 2 + 1] * FACTOR);
+                    MarkerCodec.writeSigned(path, lat - lastLat);
+                    MarkerCodec.writeSigned(path, lng - lastLng);
+                    lastLat = lat;
+                    lastLng = lng;
+                    count++;
+                }
+            }
+            final boolean polygon = shape.getType() == Shape.Type.POLYGON;
+            if (polygon && count < 3) {
+                return "";
+            }
+            final StringBuilder out = new StringBuilder(path.length() + 96);
+            out.append("{\"id\":").append(key)
+                    .append(",\"type\":\"").append(polygon ? "polygon" : "line").append('"')
+                    .append(",\"title\":").append(JSONValue.toJSONString(shape.getTitle()))
+                    .append(",\"description\":").append(JSONValue.toJSONString(shape.getDescription()))
+                    .append(",\"color\":").append(JSONValue.toJSONString(shape.getColor()))
+                    .append(",\"n\":").append(count)
+                    .append(",\"c\":\"").append(path).append("\"}");
+            return out.toString();
+        }
+    }
+}
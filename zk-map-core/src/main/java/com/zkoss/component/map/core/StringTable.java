@@ -0,0 +1,213 @@
+package com.zkoss.component.map.core;
+
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tabla de textos empaquetada: guarda cada texto distinto una sola vez,
+ * codificado en UTF-8 dentro de un único byte[], y lo identifica por un
+ * código entero. La deduplicación usa una tabla hash de direccionamiento
+ * abierto sobre los propios códigos, sin objetos por entrada.
+ */
+final class StringTable implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private byte[] data = new byte[256];
+    private int dataLength;
+    private int[] offsets = new int[17]; // offsets[code] .. offsets[code + 1]
+    private int[] hashes = new int[16];
+    private int count;
+    private int[] slots = new int[32];   // code + 1, 0 = libre
+    private transient byte[] scratch;    // Texto buscado, en UTF-8
+
+    /**
+     * Obtiene el código de un texto, agregándolo si no existe. El texto se
+     * codifica en un buffer que se reutiliza, así que no se crea ningún
+     * objeto salvo al crecer la tabla
+     * @param s Texto (puede ser null)
+     * @return Código del texto, -1 para null
+     */
+    int intern(String s) {
+        if (s == null) {
+            return -1;
+        }
+        final int length = encode(s);
+        final byte[] bytes = scratch;
+        final int hash = s.hashCode();
+        final int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        for (int code; (code = slots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (hashes[code] == hash && Arrays.equals(data, offsets[code], offsets[code + 1],
+                    bytes, 0, length)) {
+                return code;
+            }
+        }
+
+        final int code = count++;
+        if (count == hashes.length) {
+            hashes = Arrays.copyOf(hashes, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2 + 1);
+        }
+        if (dataLength + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + length));
+        }
+        System.arraycopy(bytes, 0, data, dataLength, length);
+        dataLength += length;
+        hashes[code] = hash;
+        offsets[code + 1] = dataLength;
+        slots[slot] = code + 1;
+        if (count * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return code;
+    }
+
+    /**
+     * Obtiene el texto de un código
+     * @param code Código devuelto por {@link #intern(String)}
+     * @return Texto, null si el código es -1
+     */
+    String get(int code) {
+        if (code < 0) {
+            return null;
+        }
+        return new String(data, offsets[code], offsets[code + 1] - offsets[code],
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Cantidad de textos distintos de la tabla
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Bytes de texto ocupados en el buffer empaquetado
+     */
+    int dataLength() {
+        return dataLength;
+    }
+
+    /**
+     * Copia independiente de la tabla; los códigos se conservan
+     */
+    StringTable copy() {
+        final StringTable copy = new StringTable();
+        copy.data = Arrays.copyOf(data, Math.max(dataLength, 16));
+        copy.dataLength = dataLength;
+        copy.offsets = offsets.clone();
+        copy.hashes = hashes.clone();
+        copy.count = count;
+        copy.slots = slots.clone();
+        return copy;
+    }
+
+    /**
+     * Escribe algunos textos de la tabla, en el orden indicado, copiando
+     * sus bytes sin decodificarlos
+     * @param codes Códigos de textos distintos
+     * @param count Cantidad de códigos a escribir
+     */
+    void write(PackedData.Writer out, int[] codes, int count) {
+        out.writeVarInt(count);
+        for (int i = 0; i < count; i++) {
+            final int code = codes[i];
+            out.writeInt(hashes[code]);
+            out.writeBytes(data, offsets[code], offsets[code + 1] - offsets[code]);
+        }
+    }
+
+    /**
+     * Lee una tabla escrita con {@link #write}; los códigos son las
+     * posiciones en que se escribieron los textos
+     */
+    static StringTable read(PackedData.Reader in) throws InvalidObjectException {
+        final StringTable table = new StringTable();
+        final int count = in.readVarInt();
+        if (count < 0 || count > in.remaining() / 5) { // Hash y longitud por texto
+            throw new InvalidObjectException("Cantidad de textos inválida: " + count);
+        }
+        table.count = count;
+        table.hashes = new int[count + 1];
+        table.offsets = new int[count + 2];
+        for (int code = 0; code < count; code++) {
+            table.hashes[code] = in.readInt();
+            final int length = in.readVarInt();
+            if (table.dataLength + length > table.data.length) {
+                table.data = Arrays.copyOf(table.data, Math.max(table.data.length * 2, table.dataLength + length));
+            }
+            in.readBytes(table.data, table.dataLength, length);
+            table.dataLength += length;
+            table.offsets[code + 1] = table.dataLength;
+        }
+        table.rehash(Math.max(32, Integer.highestOneBit(Math.max(count * 2, 1)) << 1));
+        return table;
+    }
+
+    void clear() {
+        data = new byte[256];
+        dataLength = 0;
+        offsets = new int[17];
+        hashes = new int[16];
+        count = 0;
+        slots = new int[32];
+    }
+
+    /**
+     * Codifica un texto en UTF-8 en el buffer de trabajo, igual que
+     * String.getBytes (un surrogate suelto se escribe como '?')
+     * @return Cantidad de bytes escritos
+     */
+    private int encode(String s) {
+        final int chars = s.length();
+        if (scratch == null || scratch.length < chars * 3) {
+            scratch = new byte[Math.max(chars * 3, 64)];
+        }
+        final byte[] out = scratch;
+        int n = 0;
+        for (int i = 0; i < chars; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xC0 | c >> 6);
+                out[n++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    final int cp = Character.toCodePoint(c, s.charAt(++i));
+                    out[n++] = (byte) (0xF0 | cp >> 18);
+                    out[n++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    out[n++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    out[n++] = (byte) (0x80 | cp & 0x3F);
+                } else {
+                    out[n++] = '?';
+                }
+            } else {
+                out[n++] = (byte) (0xE0 | c >> 12);
+                out[n++] = (byte) (0x80 | c >> 6 & 0x3F);
+                out[n++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return n;
+    }
+
+    private void rehash(int capacity) {
+        final int[] table = new int[capacity];
+        final int mask = capacity - 1;
+        for (int code = 0; code < count; code++) {
+            int slot = mix(hashes[code]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = code + 1;
+        }
+        slots = table;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,103 @@
+package com.zkoss.component.map.core;
+
+import org.zkoss.zk.ui.Component;
+import org.zkoss.zk.ui.event.Event;
+
+/**
+ * Evento generado cuando el usuario termina de desplazar o hacer zoom en
+ * el mapa. El widget lo regula con {@code viewportEventDelay}; sin
+ * listeners viaja diferido con la siguiente petición, solo para mantener
+ * sincronizados el centro y el zoom del componente.
+ */
+public class ViewportChangeEvent extends Event {
+    private static final long serialVersionUID = 1L;
+
+    private final double latitude;
+    private final double longitude;
+    private final int zoom;
+    private final double south;
+    private final double west;
+    private final double north;
+    private final double east;
+
+    /**
+     * Constructor para el evento de cambio del área visible
+     *
+     * @param name Nombre del evento (normalmente "onViewportChange")
+     * @param target Componente que generó el evento
+     * @param latitude Latitud del centro
+     * @param longitude Longitud del centro
+     * @param zoom Nivel de zoom
+     * @param south Latitud del borde sur
+     * @param west Longitud del borde oeste
+     * @param north Latitud del borde norte
+     * @param east Longitud del borde este (menor que west si cruza el antimeridiano)
+     */
+    public ViewportChangeEvent(String name, Component target, double latitude, double longitude,
+            int zoom, double south, double west, double north, double east) {
+        super(name, target);
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.zoom = zoom;
+        this.south = south;
+        this.west = west;
+        this.north = north;
+        this.east = east;
+    }
+
+    /**
+     * Obtiene la latitud del centro del área visible
+     * @return Latitud en grados decimales
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Obtiene la longitud del centro del área visible
+     * @return Longitud en grados decimales
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Obtiene el nivel de zoom
+     * @return Nivel de zoom
+     */
+    public int getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Obtiene la latitud del borde sur del área visible
+     * @return Latitud en grados decimales
+     */
+    public double getSouth() {
+        return south;
+    }
+
+    /**
+     * Obtiene la longitud del borde oeste del área visible
+     * @return Longitud en grados decimales
+     */
+    public double getWest() {
+        return west;
+    }
+
+    /**
+     * Obtiene la latitud del borde norte del área visible
+     * @return Latitud en grados decimales
+     */
+    public double getNorth() {
+        return north;
+    }
+
+    /**
+     * Obtiene la longitud del borde este del área visible
+     * @return Longitud en grados decimales
+     */
+    public double getEast() {
+        return east;
+    }
+}
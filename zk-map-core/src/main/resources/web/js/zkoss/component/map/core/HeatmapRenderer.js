@@ -0,0 +1,90 @@
+/* HeatmapRenderer.js - Dibujo de las celdas del mapa de calor
+ *
+ * Las celdas llegan agregadas desde el servidor; aquí se dibujan en un
+ * canvas. Cada celda se estampa como un círculo difuminado en escala de
+ * grises con la opacidad de su intensidad y, al final, la opacidad
+ * acumulada de cada píxel se pinta con la paleta (azul a rojo). Lo usan
+ * Leaflet y Google Maps; OpenLayers tiene su propia capa de calor
+ */
+zk.$package('zkoss.component.map.core');
+
+zkoss.component.map.core.HeatmapRenderer = {
+    _palette: null, // 256 colores RGBA
+    _stamps: {},    // Círculo difuminado por radio
+
+    // Intensidad 0..1 de una celda; escala logarítmica para que las
+    // celdas poco cargadas no desaparezcan junto a las muy cargadas
+    intensity: function (count, max) {
+        return max > 1 ? Math.log(1 + count) / Math.log(1 + max) : 1;
+    },
+
+    // Dibujar los puntos [x, y, intensidad] en el canvas
+    draw: function (canvas, points, radius) {
+        const ctx = canvas.getContext('2d');
+        ctx.clearRect(0, 0, canvas.width, canvas.height);
+        if (!points.length || !canvas.width || !canvas.height) return;
+
+        const stamp = this._stamp(radius);
+        const half = stamp.width / 2;
+        for (let i = 0; i < points.length; i++) {
+            const p = points[i];
+            ctx.globalAlpha = Math.max(0.05, Math.min(1, p[2]));
+            ctx.drawImage(stamp, p[0] - half, p[1] - half);
+        }
+        ctx.globalAlpha = 1;
+
+        const image = ctx.getImageData(0, 0, canvas.width, canvas.height);
+        const data = image.data;
+        const palette = this._getPalette();
+        for (let i = 3; i < data.length; i += 4) {
+            const offset = data[i] * 4;
+            if (offset) {
+                data[i - 3] = palette[offset];
+                data[i - 2] = palette[offset + 1];
+                data[i - 1] = palette[offset + 2];
+            }
+        }
+        ctx.putImageData(image, 0, 0);
+    },
+
+    // Círculo negro difuminado; la sombra se dibuja desplazada para que
+    // el círculo en sí quede fuera del canvas
+    _stamp: function (radius) {
+        let stamp = this._stamps[radius];
+        if (!stamp) {
+            const blur = radius;
+            const size = (radius + blur) * 2;
+            stamp = document.createElement('canvas');
+            stamp.width = stamp.height = size;
+            const ctx = stamp.getContext('2d');
+            ctx.shadowOffsetX = ctx.shadowOffsetY = size * 2;
+            ctx.shadowBlur = blur;
+            ctx.shadowColor = 'black';
+            ctx.beginPath();
+            ctx.arc(-size * 1.5, -size * 1.5, radius, 0, Math.PI * 2, true);
+            ctx.closePath();
+            ctx.fill();
+            this._stamps[radius] = stamp;
+        }
+        return stamp;
+    },
+
+    _getPalette: function () {
+        if (!this._palette) {
+            const canvas = document.createElement('canvas');
+            canvas.width = 1;
+            canvas.height = 256;
+            const ctx = canvas.getContext('2d');
+            const gradient = ctx.createLinearGradient(0, 0, 0, 256);
+            gradient.addColorStop(0.4, 'blue');
+            gradient.addColorStop(0.6, 'cyan');
+            gradient.addColorStop(0.7, 'lime');
+            gradient.addColorStop(0.8, 'yellow');
+            gradient.addColorStop(1, 'red');
+            ctx.fillStyle = gradient;
+            ctx.fillRect(0, 0, 1, 256);
+            this._palette = ctx.getImageData(0, 0, 1, 256).data;
+        }
+        return this._palette;
+    }
+};
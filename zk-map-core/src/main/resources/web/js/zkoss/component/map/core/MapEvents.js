@@ -0,0 +1,121 @@
+/* MapEvents.js - Envío regulado de los eventos frecuentes de los mapas
+ *
+ * Los desplazamientos y los arrastres generan muchos eventos por segundo.
+ * Aquí se regulan (espera tras el último cambio o intervalo mínimo entre
+ * envíos) y, antes de encolar uno nuevo, se quitan de la cola de ZK los
+ * que aún no salieron y quedaron superados
+ */
+zk.$package('zkoss.component.map.core');
+
+zkoss.component.map.core.MapEvents = {
+
+    // Enviar el evento cuando pasen 'delay' ms sin cambios; 'dataFn'
+    // calcula los datos en ese momento (null si no hay nada que enviar)
+    debounce: function (wgt, name, delay, dataFn) {
+        const timers = wgt._eventTimers || (wgt._eventTimers = {});
+        const self = this;
+        clearTimeout(timers[name]);
+        timers[name] = setTimeout(function () {
+            delete timers[name];
+            const data = wgt.desktop && dataFn();
+            if (data) {
+                self.fireLatest(wgt, name, data, false);
+            }
+        }, delay);
+    },
+
+    // Enviar como mucho un evento cada 'interval' ms; el último cambio de
+    // cada intervalo sale al terminarlo. Los eventos llevan en data[0] la
+    // clave de lo que cambia y solo se descartan los de la misma clave
+    throttle: function (wgt, name, interval, data) {
+        const timers = wgt._eventTimers || (wgt._eventTimers = {});
+        const pending = wgt._eventData || (wgt._eventData = {});
+        if (timers[name]) {
+            pending[name] = data;
+            return;
+        }
+        this.fireLatest(wgt, name, data, true);
+
+        const self = this;
+        const tick = function () {
+            const next = pending[name];
+            if (next && wgt.desktop) {
+                delete pending[name];
+                self.fireLatest(wgt, name, next, true);
+                timers[name] = setTimeout(tick, interval);
+            } else {
+                delete timers[name];
+            }
+        };
+        timers[name] = setTimeout(tick, interval);
+    },
+
+    // Enviar ya el evento, descartando lo que quedara regulado
+    flush: function (wgt, name, data) {
+        if (wgt._eventTimers) {
+            clearTimeout(wgt._eventTimers[name]);
+            delete wgt._eventTimers[name];
+        }
+        if (wgt._eventData) {
+            delete wgt._eventData[name];
+        }
+        this.fireLatest(wgt, name, data, true);
+    },
+
+    // Disparar el evento quitando antes de la cola los del mismo widget y
+    // nombre que todavía no se enviaron; con 'keyed' solo los del mismo
+    // data[0] (por ejemplo, el mismo marcador)
+    fireLatest: function (wgt, name, data, keyed) {
+        if (wgt.desktop) {
+            const reqs = zAu.getAuRequests(wgt.desktop);
+            for (let i = reqs.length; i--;) {
+                const req = reqs[i];
+                if (req.target === wgt && req.name === name
+                        && (!keyed || req.data.data[0] === data.data[0])) {
+                    reqs.splice(i, 1);
+                }
+            }
+        }
+        wgt.fire(name, data);
+    },
+
+    // Enviar muchos eventos del mismo tipo en una sola petición; 'items'
+    // lleva los datos de cada uno (lo que iría en data). El servidor los
+    // publica juntos como name + 'Batch' si el componente lo escucha
+    fireBatch: function (wgt, name, items, opts) {
+        if (wgt.desktop && items.length) {
+            wgt.fire(name, {batch: items}, opts);
+        }
+    },
+
+    // Acumular los eventos generados en la misma tarea (por ejemplo, al
+    // recorrer los marcadores de una selección) y enviarlos juntos al
+    // terminarla
+    collect: function (wgt, name, item, opts) {
+        const batches = wgt._eventBatches || (wgt._eventBatches = {});
+        const items = batches[name];
+        if (items) {
+            items.push(item);
+            return;
+        }
+        batches[name] = [item];
+        const self = this;
+        Promise.resolve().then(function () {
+            const pending = wgt._eventBatches && wgt._eventBatches[name];
+            if (pending) {
+                delete wgt._eventBatches[name];
+                self.fireBatch(wgt, name, pending, opts);
+            }
+        });
+    },
+
+    // Cancelar los envíos pendientes al desligar el widget
+    cancel: function (wgt) {
+        for (const name in wgt._eventTimers) {
+            clearTimeout(wgt._eventTimers[name]);
+        }
+        wgt._eventTimers = null;
+        wgt._eventData = null;
+        wgt._eventBatches = null;
+    }
+};
@@ -0,0 +1,165 @@
+/* MapLoader.js - Carga compartida de las librerías de mapas
+ *
+ * Cada librería se carga una sola vez por página y solo cuando la pide el
+ * primer mapa que la usa: los mapas siguientes reciben la misma promesa,
+ * esté en curso o ya resuelta. Las copias incluidas en los jars se sirven
+ * desde ~./ con rutas que llevan la versión, así que ZK las entrega con
+ * caché de larga duración
+ */
+zk.$package('zkoss.component.map.core');
+
+zkoss.component.map.core.MapLoader = {
+
+    // Librerías conocidas. scripts y styles admiten funciones que reciben
+    // las opciones de load y devuelven la URL; ready indica si la librería
+    // ya está en la página (cargada por esta u otra vía)
+    _libraries: {
+        leaflet: {
+            scripts: [function () {
+                return zkoss.component.map.core.MapLoader.resource('leaflet', 'leaflet-1.9.4/leaflet.js');
+            }],
+            styles: [function () {
+                return zkoss.component.map.core.MapLoader.resource('leaflet', 'leaflet-1.9.4/leaflet.css');
+            }],
+            ready: function () {
+                return typeof L !== 'undefined';
+            }
+        },
+        vectorgrid: {
+            requires: ['leaflet'],
+            scripts: ['https://unpkg.com/leaflet.vectorgrid@1.3.0/dist/Leaflet.VectorGrid.bundled.js'],
+            ready: function () {
+                return typeof L !== 'undefined' && !!L.vectorGrid;
+            }
+        },
+        openlayers: {
+            scripts: ['https://cdn.jsdelivr.net/npm/ol@v7.2.2'],
+            styles: ['https://cdn.jsdelivr.net/npm/ol@v7.2.2/ol.css'],
+            ready: function () {
+                return typeof ol !== 'undefined';
+            }
+        },
+        google: {
+            // La API avisa con una función global; hay una sola por página
+            scripts: [function (options) {
+                return 'https://maps.googleapis.com/maps/api/js?key=' + encodeURIComponent(options.key)
+                    + '&callback=zkmapGoogleLoaded';
+            }],
+            callback: 'zkmapGoogleLoaded',
+            ready: function () {
+                return typeof google !== 'undefined' && typeof google.maps !== 'undefined';
+            }
+        }
+    },
+    _promises: {}, // Promesa de carga por librería
+
+    // Reemplazar o agregar una librería, por ejemplo para servir OpenLayers
+    // desde otra URL. Solo afecta a las cargas que aún no empezaron
+    register: function (name, library) {
+        this._libraries[name] = library;
+    },
+
+    // URL de un recurso incluido en el jar de un proveedor (carpeta lib)
+    resource: function (provider, path) {
+        return zk.ajaxURI('/web/js/zkoss/component/map/' + provider + '/lib/' + path, {au: true});
+    },
+
+    // Indica si la librería ya se puede usar
+    isLoaded: function (name) {
+        const library = this._libraries[name];
+        return !!library && library.ready();
+    },
+
+    // Cargar una librería y las que requiere. Devuelve la misma promesa a
+    // todos los que la piden; si falla se olvida para poder reintentar
+    load: function (name, options) {
+        const library = this._libraries[name];
+        if (!library) {
+            return Promise.reject(new Error('Librería de mapas desconocida: ' + name));
+        }
+        if (library.ready()) {
+            return Promise.resolve();
+        }
+        let promise = this._promises[name];
+        if (!promise) {
+            const self = this;
+            const requires = library.requires || [];
+            promise = Promise.all(requires.map(function (required) {
+                return self.load(required, options);
+            })).then(function () {
+                return self._inject(library, options || {});
+            });
+            this._promises[name] = promise;
+            promise.catch(function () {
+                delete self._promises[name];
+            });
+        }
+        return promise;
+    },
+
+    _inject: function (library, options) {
+        const styles = library.styles || [];
+        for (let i = 0; i < styles.length; i++) {
+            this._loadStyle(this._url(styles[i], options));
+        }
+
+        let callback = null;
+        if (library.callback) {
+            callback = new Promise(function (resolve) {
+                window[library.callback] = function () {
+                    delete window[library.callback];
+                    resolve();
+                };
+            });
+        }
+
+        // Los scripts se ejecutan en orden: cada uno puede usar el anterior
+        const self = this;
+        let chain = Promise.resolve();
+        const scripts = library.scripts || [];
+        for (let i = 0; i < scripts.length; i++) {
+            const src = this._url(scripts[i], options);
+            chain = chain.then(function () {
+                return self._loadScript(src);
+            });
+        }
+        return callback ? chain.then(function () {
+            return callback;
+        }) : chain;
+    },
+
+    _url: function (entry, options) {
+        return typeof entry === 'function' ? entry(options) : entry;
+    },
+
+    _loadScript: function (src) {
+        return new Promise(function (resolve, reject) {
+            const script = document.createElement('script');
+            script.type = 'text/javascript';
+            script.charset = 'UTF-8';
+            script.src = src;
+            script.onload = function () {
+                resolve();
+            };
+            script.onerror = function () {
+                script.parentNode.removeChild(script);
+                reject(new Error('No se pudo cargar ' + src));
+            };
+            document.head.appendChild(script);
+        });
+    },
+
+    // Las hojas de estilo no se esperan: el mapa puede crearse mientras llegan
+    _loadStyle: function (href) {
+        const links = document.getElementsByTagName('link');
+        for (let i = 0; i < links.length; i++) {
+            if (links[i].getAttribute('href') === href) {
+                return;
+            }
+        }
+        const link = document.createElement('link');
+        link.rel = 'stylesheet';
+        link.href = href;
+        document.head.appendChild(link);
+    }
+};
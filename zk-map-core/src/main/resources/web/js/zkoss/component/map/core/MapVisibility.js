@@ -0,0 +1,46 @@
+/* MapVisibility.js - Espera a que un mapa se vea
+ *
+ * Los mapas de creación diferida (lazyInit) no crean el mapa mientras su
+ * nodo está oculto (pestañas no seleccionadas, display: none) o fuera de
+ * la ventana; aquí se avisa la primera vez que se ve
+ */
+zk.$package('zkoss.component.map.core');
+
+zkoss.component.map.core.MapVisibility = {
+
+    // Margen con que se considera visible: la carga empieza un poco antes
+    // de que el mapa entre en la ventana
+    margin: '200px',
+
+    // Llamar a callback una sola vez, cuando el nodo del widget se vea.
+    // Sin IntersectionObserver se llama enseguida
+    observe: function (wgt, callback) {
+        this.cancel(wgt);
+        if (typeof IntersectionObserver === 'undefined') {
+            callback();
+            return;
+        }
+        const observer = new IntersectionObserver(function (entries) {
+            for (let i = 0; i < entries.length; i++) {
+                if (entries[i].isIntersecting) {
+                    observer.disconnect();
+                    wgt._visibilityObserver = null;
+                    if (wgt.desktop) {
+                        callback();
+                    }
+                    return;
+                }
+            }
+        }, {rootMargin: this.margin});
+        wgt._visibilityObserver = observer;
+        observer.observe(wgt.$n());
+    },
+
+    // Dejar de observar (al desligar el widget)
+    cancel: function (wgt) {
+        if (wgt._visibilityObserver) {
+            wgt._visibilityObserver.disconnect();
+            wgt._visibilityObserver = null;
+        }
+    }
+};
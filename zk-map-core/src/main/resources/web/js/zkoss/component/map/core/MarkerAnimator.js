@@ -0,0 +1,75 @@
+/* MarkerAnimator.js - Cuadros del seguimiento en vivo
+ *
+ * Aplica las posiciones de un cuadro a los marcadores dibujados de un
+ * widget. Con animación, cada marcador se desplaza desde su posición
+ * actual hasta la nueva durante la duración del cuadro; si llega otro
+ * antes, el anterior termina en el acto. El widget solo aporta la función
+ * que mueve el marcador en su proveedor
+ */
+zk.$package('zkoss.component.map.core');
+
+zkoss.component.map.core.MarkerAnimator = {
+
+    // Aplicar un cuadro {duration, markers} a las entradas por identificador;
+    // move(entry, lat, lng) mueve el marcador dibujado
+    apply: function (wgt, frame, entries, move) {
+        this.finish(wgt);
+        const positions = zkoss.component.map.core.MarkerCodec.decodePositions(frame.markers);
+        const animate = frame.duration > 0 && !document.hidden;
+        const items = [];
+        for (let i = 0; i < positions.length; i++) {
+            const p = positions[i];
+            const entry = entries[p.id];
+            if (!entry) continue;
+            if (animate) {
+                items.push({ entry: entry, lat: entry.lat, lng: entry.lng, toLat: p.lat, toLng: p.lng });
+            } else {
+                move(entry, p.lat, p.lng);
+            }
+            entry.lat = p.lat;
+            entry.lng = p.lng;
+        }
+        if (!items.length) return;
+
+        const animation = { items: items, move: move, start: null, duration: frame.duration, request: 0 };
+        const step = function (now) {
+            if (wgt._markerAnimation !== animation) return;
+            if (animation.start === null) {
+                animation.start = now;
+            }
+            const t = Math.min(1, (now - animation.start) / animation.duration);
+            for (let i = 0; i < items.length; i++) {
+                const item = items[i];
+                move(item.entry, item.lat + (item.toLat - item.lat) * t,
+                    item.lng + (item.toLng - item.lng) * t);
+            }
+            if (t < 1) {
+                animation.request = requestAnimationFrame(step);
+            } else {
+                wgt._markerAnimation = null;
+            }
+        };
+        wgt._markerAnimation = animation;
+        animation.request = requestAnimationFrame(step);
+    },
+
+    // Llevar ya los marcadores de la animación en curso a su destino
+    finish: function (wgt) {
+        const animation = wgt._markerAnimation;
+        if (!animation) return;
+        cancelAnimationFrame(animation.request);
+        wgt._markerAnimation = null;
+        for (let i = 0; i < animation.items.length; i++) {
+            const item = animation.items[i];
+            animation.move(item.entry, item.toLat, item.toLng);
+        }
+    },
+
+    // Detener la animación al desligar el widget
+    cancel: function (wgt) {
+        if (wgt._markerAnimation) {
+            cancelAnimationFrame(wgt._markerAnimation.request);
+            wgt._markerAnimation = null;
+        }
+    }
+};
@@ -0,0 +1,161 @@
+/* MarkerCodec.js - Decodificador de la lista compacta de marcadores
+ *
+ * Decodifica el objeto {n, p, c, s} que genera MarkerCodec en el servidor:
+ * cinco enteros por marcador con el alfabeto del algoritmo de polilíneas
+ * (latitud, longitud e identificador como diferencias en zigzag y los
+ * códigos de título y descripción en la tabla s, 0 = null), más el estilo
+ * cuando el objeto trae y = 1, y los arreglos planos {n, xy, id, a, s} del
+ * modo de dibujo webgl. También decodifica los vértices de las líneas y
+ * polígonos, las posiciones del seguimiento en vivo y las celdas del mapa
+ * de calor
+ */
+zk.$package('zkoss.component.map.core');
+
+zkoss.component.map.core.MarkerCodec = {
+
+    // Obtener la lista de marcadores {lat, lng, title, description, id[, style]}
+    decode: function (encoded) {
+        const text = encoded.c;
+        const strings = encoded.s;
+        const factor = Math.pow(10, encoded.p);
+        const markers = new Array(encoded.n);
+        const styled = encoded.y;
+        const pos = { i: 0 };
+        let lat = 0, lng = 0, id = 0;
+
+        for (let m = 0; m < encoded.n; m++) {
+            lat += this._readSigned(text, pos);
+            lng += this._readSigned(text, pos);
+            id += this._readSigned(text, pos);
+            const title = this._readUnsigned(text, pos);
+            const description = this._readUnsigned(text, pos);
+            markers[m] = {
+                lat: lat / factor,
+                lng: lng / factor,
+                title: title ? strings[title - 1] : null,
+                description: description ? strings[description - 1] : null,
+                id: id
+            };
+            if (styled) {
+                const style = this._readUnsigned(text, pos);
+                if (style) {
+                    markers[m].style = style;
+                }
+            }
+        }
+        return markers;
+    },
+
+    // Obtener la lista de marcadores de los arreglos planos del modo webgl:
+    // xy (Float32, longitud y latitud), id (Float64) y a (Uint32, título,
+    // descripción y estilo), en base64
+    decodeArrays: function (encoded) {
+        const xy = new Float32Array(this._base64(encoded.xy));
+        const ids = new Float64Array(this._base64(encoded.id));
+        const attributes = new Uint32Array(this._base64(encoded.a));
+        const strings = encoded.s;
+        const markers = new Array(encoded.n);
+
+        for (let m = 0; m < encoded.n; m++) {
+            const title = attributes[m * 3];
+            const description = attributes[m * 3 + 1];
+            markers[m] = {
+                lat: xy[m * 2 + 1],
+                lng: xy[m * 2],
+                title: title ? strings[title - 1] : null,
+                description: description ? strings[description - 1] : null,
+                id: ids[m],
+                style: attributes[m * 3 + 2]
+            };
+        }
+        return markers;
+    },
+
+    // Bytes de un texto en base64
+    _base64: function (text) {
+        const binary = atob(text);
+        const bytes = new Uint8Array(binary.length);
+        for (let i = 0; i < binary.length; i++) {
+            bytes[i] = binary.charCodeAt(i);
+        }
+        return bytes.buffer;
+    },
+
+    // Obtener los vértices [[lat, lng], ...] de una forma {n, c} codificada
+    // con diferencias en precisión p
+    decodePath: function (shape, precision) {
+        const text = shape.c;
+        const factor = Math.pow(10, precision);
+        const path = new Array(shape.n);
+        const pos = { i: 0 };
+        let lat = 0, lng = 0;
+
+        for (let v = 0; v < shape.n; v++) {
+            lat += this._readSigned(text, pos);
+            lng += this._readSigned(text, pos);
+            path[v] = [lat / factor, lng / factor];
+        }
+        return path;
+    },
+
+    // Obtener las posiciones {id, lat, lng} de un cuadro del seguimiento
+    // en vivo: identificador, latitud y longitud como diferencias
+    decodePositions: function (encoded) {
+        const text = encoded.c;
+        const factor = Math.pow(10, encoded.p);
+        const positions = new Array(encoded.n);
+        const pos = { i: 0 };
+        let id = 0, lat = 0, lng = 0;
+
+        for (let m = 0; m < encoded.n; m++) {
+            id += this._readSigned(text, pos);
+            lat += this._readSigned(text, pos);
+            lng += this._readSigned(text, pos);
+            positions[m] = { id: id, lat: lat / factor, lng: lng / factor };
+        }
+        return positions;
+    },
+
+    // Obtener las celdas {lat, lng, count} del mapa de calor: la clave de
+    // cada celda (fila * 2^bits + columna) como diferencia con la anterior
+    // y su cantidad de puntos. Se ubican en el centro de la celda
+    decodeCells: function (encoded) {
+        const text = encoded.c;
+        const side = Math.pow(2, encoded.bits);
+        const cells = new Array(encoded.n);
+        const pos = { i: 0 };
+        let key = 0;
+
+        for (let m = 0; m < encoded.n; m++) {
+            key += this._readUnsigned(text, pos);
+            const count = this._readUnsigned(text, pos);
+            const row = Math.floor(key / side);
+            const column = key - row * side;
+            const y = (row + 0.5) / side;
+            cells[m] = {
+                lat: Math.atan(Math.sinh(Math.PI * (1 - 2 * y))) * 180 / Math.PI,
+                lng: (column + 0.5) / side * 360 - 180,
+                count: count
+            };
+        }
+        return cells;
+    },
+
+    // Leer un entero sin signo; se multiplica en lugar de desplazar bits
+    // para no truncar a 32 bits los identificadores grandes
+    _readUnsigned: function (text, pos) {
+        let result = 0, factor = 1, b;
+        do {
+            b = text.charCodeAt(pos.i++) - 63;
+            result += (b & 0x1f) * factor;
+            factor *= 32;
+        } while (b >= 0x20);
+        return result;
+    },
+
+    // Leer un entero con signo codificado en zigzag
+    _readSigned: function (text, pos) {
+        const value = this._readUnsigned(text, pos);
+        return value % 2 ? -(value + 1) / 2 : value / 2;
+    }
+};
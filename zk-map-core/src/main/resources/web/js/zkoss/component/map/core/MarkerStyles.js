@@ -0,0 +1,51 @@
+/* MarkerStyles.js - Estilos de marcador compartidos
+ *
+ * El servidor envía cada estilo una sola vez como {id: definición} y los
+ * marcadores solo llevan el identificador. Cada proveedor construye su
+ * objeto de estilo (icono de Leaflet, símbolo de Google Maps, estilo de
+ * OpenLayers) la primera vez que lo necesita y todos los marcadores de la
+ * página con la misma definición comparten ese objeto
+ */
+zk.$package('zkoss.component.map.core');
+
+zkoss.component.map.core.MarkerStyles = {
+
+    // Objetos de estilo de la página por proveedor y definición
+    _shared: {},
+
+    // Guardar las definiciones {id: {icon, color, size, label}} recibidas
+    define: function (wgt, styles) {
+        const defs = wgt._markerStyleDefs || (wgt._markerStyleDefs = {});
+        for (const id in styles) {
+            defs[id] = styles[id];
+        }
+    },
+
+    // Definición de un estilo, null para el estilo por defecto
+    definition: function (wgt, id) {
+        return (id && wgt._markerStyleDefs && wgt._markerStyleDefs[id]) || null;
+    },
+
+    // Objeto de estilo de un identificador. 'create' (con el widget como
+    // this) lo construye a partir de la definición (null = estilo por
+    // defecto) solo la primera vez que el proveedor ve esa definición en la
+    // página; un identificador aún no definido usa el estilo por defecto
+    // sin recordarlo
+    get: function (wgt, id, provider, create) {
+        const cache = wgt._markerStyleObjects || (wgt._markerStyleObjects = {});
+        const cached = cache[id || 0];
+        if (cached !== undefined) {
+            return cached;
+        }
+        const def = this.definition(wgt, id);
+        const key = provider + (def ? ':' + JSON.stringify(def) : '');
+        let style = this._shared[key];
+        if (style === undefined) {
+            style = this._shared[key] = create.call(wgt, def);
+        }
+        if (def || !id) {
+            cache[id || 0] = style;
+        }
+        return style;
+    }
+};
@@ -0,0 +1,138 @@
+package com.zkoss.component.map.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.zkoss.zk.au.AuRequest;
+import org.zkoss.zk.ui.Desktop;
+
+public class AbstractMapComponentTest {
+
+    /**
+     * Componente que guarda los comandos enviados en lugar de enviarlos
+     */
+    private static final class RecordingMap extends AbstractMapComponent {
+        private static final long serialVersionUID = 1L;
+
+        final List<String> commands = new ArrayList<>();
+
+        @Override
+        protected void invokeWidget(String key, String command, Object data) {
+            commands.add(command);
+        }
+    }
+
+    @Test
+    public void hooksSendTheirCommands() {
+        final RecordingMap map = new RecordingMap();
+        final long id = map.addMarker(40.4168, -3.7038, "Madrid", null, 0);
+        map.moveMarker(id, 41.3874, 2.1686);
+        map.removeMarkerById(id);
+        map.clearMarkers();
+        map.setZoom(5);
+        assertEquals(Arrays.asList("addMarker", "updateMarker", "removeMarker", "clearMarkers", "setZoom"),
+                map.commands);
+    }
+
+    @Test
+    public void rejectsInvalidCoordinates() {
+        final RecordingMap map = new RecordingMap();
+        final long id = map.addMarker(0, 0, "Origen", null, 0);
+        for (double[] position : new double[][] {
+                {Double.NaN, 0}, {0, Double.NaN}, {91, 0}, {0, -181}, {Double.POSITIVE_INFINITY, 0}}) {
+            try {
+                map.addMarker(position[0], position[1], "x", null, 0);
+                fail("addMarker aceptó " + Arrays.toString(position));
+            } catch (IllegalArgumentException e) {
+                // Esperado
+            }
+            try {
+                map.moveMarker(id, position[0], position[1]);
+                fail("moveMarker aceptó " + Arrays.toString(position));
+            } catch (IllegalArgumentException e) {
+                // Esperado
+            }
+        }
+        assertEquals(1, map.getMarkerList().size());
+        assertEquals(0.0, (Double) map.getMarkerList().get(0).get("lat"), 0);
+    }
+
+    @Test
+    public void invalidBulkLoadAddsNothing() {
+        final RecordingMap map = new RecordingMap();
+        map.addMarker(0, 0, "Origen", null, 0);
+        try {
+            map.addMarkers(Arrays.asList(new Marker(1, 1, "a", null, 0), new Marker(2, 2, "b", null, 0),
+                    new Marker(Double.NaN, 3, "c", null, 0)));
+            fail("addMarkers aceptó una latitud NaN");
+        } catch (IllegalArgumentException e) {
+            // Esperado
+        }
+        assertEquals(1, map.getMarkerList().size());
+    }
+
+    @Test
+    public void failingStreamAddsNothing() {
+        final RecordingMap map = new RecordingMap();
+        map.addMarker(0, 0, "Origen", null, 0);
+        final Stream<Marker> failing = IntStream.range(0, 100).mapToObj(i -> {
+            if (i == 50) {
+                throw new UncheckedIOException(new IOException("Lectura interrumpida"));
+            }
+            return new Marker(i * 0.1, i * 0.1, "M" + i, null, 0);
+        });
+        try {
+            map.addMarkers(failing);
+            fail("El error del stream no llegó al llamador");
+        } catch (UncheckedIOException e) {
+            // Esperado
+        }
+        try {
+            map.addMarkers(Stream.of(new Marker(1, 1, "a", null, 0), null));
+            fail("addMarkers aceptó un marcador nulo");
+        } catch (NullPointerException e) {
+            // Esperado
+        }
+        assertEquals(1, map.getMarkerList().size());
+        map.commands.clear();
+        map.addMarkers(Arrays.asList(new Marker(2, 2, "b", null, 0)));
+        assertEquals(2, map.getMarkerList().size());
+        assertEquals(Arrays.asList("addMarkers"), map.commands);
+    }
+
+    @Test
+    public void ignoresDragsOfFixedMarkers() {
+        final RecordingMap map = new RecordingMap();
+        final long id = map.addMarker(10, 20, "Fijo", null, 0);
+        final Map<String, Object> data = new HashMap<>();
+        data.put("data", Arrays.asList(id, 30.0, 40.0, true));
+        map.service(new AuRequest(desktop(), "onMarkerDrag", data), false);
+        assertEquals(10.0, (Double) map.getMarkerList().get(0).get("lat"), 0);
+
+        // Arrastrable, pero con una posición inválida
+        map.setMarkersDraggable(true);
+        data.put("data", Arrays.asList(id, Double.NaN, 40.0, true));
+        map.service(new AuRequest(desktop(), "onMarkerDrag", data), false);
+        assertEquals(10.0, (Double) map.getMarkerList().get(0).get("lat"), 0);
+    }
+
+    /**
+     * Escritorio vacío: AuRequest solo exige que no sea null
+     */
+    private static Desktop desktop() {
+        return (Desktop) Proxy.newProxyInstance(Desktop.class.getClassLoader(), new Class<?>[] {Desktop.class},
+                (proxy, method, args) -> null);
+    }
+}
@@ -0,0 +1,120 @@
+package com.zkoss.component.map.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * Casos del CSV que el lector recorre por bloques sin usar una librería
+ */
+public class CsvMarkerReaderTest {
+
+    @Test
+    public void quotedFieldsKeepDelimitersNewlinesAndQuotes() throws IOException {
+        final List<Marker> markers = read(new CsvMarkerReader(),
+                "title,lat,lng,description\n"
+                + "\"Madrid, capital\",40.4168,-3.7038,\"Dijo \"\"hola\"\"\"\n"
+                + "\"Dos\nlíneas\",41.3874,2.1686,\"a\r\nb\"\n");
+        assertEquals(2, markers.size());
+        assertEquals("Madrid, capital", markers.get(0).getTitle());
+        assertEquals("Dijo \"hola\"", markers.get(0).getDescription());
+        assertEquals(40.4168, markers.get(0).getLatitude(), 0);
+        assertEquals(-3.7038, markers.get(0).getLongitude(), 0);
+        assertEquals("Dos\nlíneas", markers.get(1).getTitle());
+        assertEquals("a\r\nb", markers.get(1).getDescription());
+    }
+
+    @Test
+    public void acceptsCrLfAndByteOrderMark() throws IOException {
+        final List<Marker> markers = read(new CsvMarkerReader(),
+                "\uFEFFlat,lng,title\r\n1,2,a\r\n3,4,b\r\n");
+        assertEquals(2, markers.size());
+        assertEquals("a", markers.get(0).getTitle());
+        assertEquals(3, markers.get(1).getLatitude(), 0);
+        assertEquals(4, markers.get(1).getLongitude(), 0);
+        assertEquals("b", markers.get(1).getTitle());
+    }
+
+    @Test
+    public void skipsBlankAndInvalidRows() throws IOException {
+        final List<Marker> markers = read(new CsvMarkerReader(),
+                "lat,lng,title\n"
+                + "\n"
+                + "1,2,válida\n"
+                + "abc,2,texto\n"
+                + ",2,vacía\n"
+                + "91,0,fuera\n"
+                + "0,181,fuera\n"
+                + "5\n"
+                + "6,7,\n"
+                + "8,9"); // Sin salto de línea final
+        assertEquals(3, markers.size());
+        assertEquals("válida", markers.get(0).getTitle());
+        assertNull(markers.get(1).getTitle());
+        assertEquals(6, markers.get(1).getLatitude(), 0);
+        assertEquals(8, markers.get(2).getLatitude(), 0);
+        assertEquals(9, markers.get(2).getLongitude(), 0);
+    }
+
+    @Test
+    public void detectsOrUsesTheConfiguredColumns() throws IOException {
+        final String csv = "Nombre;Y;X;Latitud;Longitud\nA;1;2;3;4\n";
+        final CsvMarkerReader reader = new CsvMarkerReader();
+        reader.setDelimiter(';');
+        reader.setTitleProperty("nombre");
+
+        // Sin configurar gana la primera de la lista: latitud antes que y
+        Marker marker = read(reader, csv).get(0);
+        assertEquals(3, marker.getLatitude(), 0);
+        assertEquals(4, marker.getLongitude(), 0);
+        assertEquals("A", marker.getTitle());
+
+        reader.setLatitudeColumn("y");
+        reader.setLongitudeColumn("x");
+        marker = read(reader, csv).get(0);
+        assertEquals(1, marker.getLatitude(), 0);
+        assertEquals(2, marker.getLongitude(), 0);
+
+        reader.setLongitudeColumn("lon");
+        try {
+            read(reader, csv);
+            fail("Se aceptó una columna que no existe");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("latitud y longitud"));
+        }
+        try {
+            reader.setDelimiter('"');
+            fail("Se aceptó la comilla como separador");
+        } catch (IllegalArgumentException e) {
+            // Esperado
+        }
+    }
+
+    @Test
+    public void loadsIntoTheStore() throws IOException {
+        final MarkerStore store = new MarkerStore();
+        final int count = new CsvMarkerReader().load(input("lat,lng\n1,2\nx,y\n3,4\n"), store);
+        assertEquals(2, count);
+        assertEquals(2, store.size());
+    }
+
+    private static List<Marker> read(CsvMarkerReader reader, String csv) throws IOException {
+        try (Stream<Marker> markers = reader.stream(input(csv))) {
+            return markers.collect(Collectors.toList());
+        }
+    }
+
+    private static ByteArrayInputStream input(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
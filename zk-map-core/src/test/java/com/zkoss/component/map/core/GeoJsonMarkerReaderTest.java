@@ -0,0 +1,94 @@
+package com.zkoss.component.map.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * Casos del GeoJSON que el lector recorre en streaming
+ */
+public class GeoJsonMarkerReaderTest {
+
+    @Test
+    public void readsOnlyPoints() throws IOException {
+        final List<Marker> markers = read(new GeoJsonMarkerReader(), "{\"type\":\"FeatureCollection\",\"features\":["
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[1,2],[3,4]]},"
+                + "\"properties\":{\"title\":\"línea\"}},"
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[[0,0],[1,0],[1,1],[0,0]]]}},"
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"MultiPoint\",\"coordinates\":[[5,6]]}},"
+                + "{\"type\":\"Feature\",\"geometry\":null,\"properties\":{\"title\":\"sin geometría\"}},"
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[0,91]}},"
+                + "{\"type\":\"Feature\",\"properties\":{\"title\":\"punto\"},"
+                + "\"geometry\":{\"coordinates\":[-3.7038,40.4168],\"type\":\"Point\"}}"
+                + "]}");
+        assertEquals(1, markers.size());
+        assertEquals("punto", markers.get(0).getTitle());
+        assertEquals(40.4168, markers.get(0).getLatitude(), 0);
+        assertEquals(-3.7038, markers.get(0).getLongitude(), 0);
+    }
+
+    @Test
+    public void ignoresTheAltitude() throws IOException {
+        final Marker marker = read(new GeoJsonMarkerReader(), "[{\"type\":\"Feature\","
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[2.1686,41.3874,12.5,{\"m\":1}]}}]").get(0);
+        assertEquals(41.3874, marker.getLatitude(), 0);
+        assertEquals(2.1686, marker.getLongitude(), 0);
+    }
+
+    @Test
+    public void convertsOrSkipsProperties() throws IOException {
+        final List<Marker> markers = read(new GeoJsonMarkerReader("name", "pop"), "["
+                + point(1, 2, "null") + ","
+                + point(3, 4, "{\"name\":null,\"pop\":null}") + ","
+                + point(5, 6, "{\"name\":{\"es\":\"objeto\"},\"otra\":[1,2],\"pop\":3200000}") + ","
+                + point(7, 8, "{\"name\":\"Sevilla\",\"pop\":true}")
+                + "]");
+        assertEquals(4, markers.size());
+        assertNull(markers.get(0).getTitle());
+        assertNull(markers.get(1).getTitle());
+        assertNull(markers.get(1).getDescription());
+        assertNull(markers.get(2).getTitle());
+        assertEquals("3200000", markers.get(2).getDescription());
+        assertEquals("Sevilla", markers.get(3).getTitle());
+        assertEquals("true", markers.get(3).getDescription());
+    }
+
+    @Test
+    public void findsFeaturesAfterOtherMembers() throws IOException {
+        final List<Marker> markers = read(new GeoJsonMarkerReader(), "{\"type\":\"FeatureCollection\","
+                + "\"bbox\":[-180,-90,180,90],\"crs\":{\"type\":\"name\",\"properties\":{\"features\":[]}},"
+                + "\"features\":[" + point(10, 20, "{\"title\":\"a\"}") + "," + point(30, 40, "{}") + "]}");
+        assertEquals(2, markers.size());
+        assertEquals("a", markers.get(0).getTitle());
+        assertEquals(30, markers.get(1).getLatitude(), 0);
+
+        assertEquals(0, read(new GeoJsonMarkerReader(), "{\"type\":\"FeatureCollection\"}").size());
+        try {
+            read(new GeoJsonMarkerReader(), "\"texto\"");
+            fail("Se aceptó un GeoJSON que no es objeto ni arreglo");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("GeoJSON inválido"));
+        }
+    }
+
+    private static String point(double lat, double lng, String properties) {
+        return "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[" + lng + "," + lat + "]},"
+                + "\"properties\":" + properties + "}";
+    }
+
+    private static List<Marker> read(GeoJsonMarkerReader reader, String json) throws IOException {
+        try (Stream<Marker> markers = reader.stream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))) {
+            return markers.collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.zkoss.component.map.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.zkoss.json.JSONArray;
+import org.zkoss.json.JSONObject;
+import org.zkoss.zk.au.DeferredValue;
+
+public class MapCommandQueueTest {
+
+    @Test
+    public void viewChangesMerge() {
+        final MapCommandQueue queue = new MapCommandQueue();
+        queue.add(null, "centerMap", json("lat", 1.0, "lng", 2.0));
+        queue.add(null, "addMarkers", json("loaded", 1));
+        queue.add(null, "setZoom", json("zoom", 5));
+        final JSONArray batch = queue.drain();
+        assertEquals(2, batch.size());
+        assertEquals("addMarkers", command(batch, 0));
+        assertEquals("setMapView", command(batch, 1));
+        assertEquals(json("lat", 1.0, "lng", 2.0, "zoom", 5), data(batch, 1));
+    }
+
+    @Test
+    public void addThenRemoveCancels() {
+        final MapCommandQueue queue = new MapCommandQueue();
+        queue.add(null, "addMarker", json("id", 1L, "lat", 1.0));
+        queue.add(null, "updateMarker", json("id", 1L, "title", "a"));
+        queue.add(null, "removeMarker", json("id", 1L));
+        queue.add(null, "removeMarker", json("id", 2L));
+        final JSONArray batch = queue.drain();
+        assertEquals(1, batch.size());
+        assertEquals("removeMarker", command(batch, 0));
+        assertEquals(json("id", 2L), data(batch, 0));
+    }
+
+    @Test
+    public void updatesFoldIntoPendingOp() {
+        final MapCommandQueue queue = new MapCommandQueue();
+        queue.add(null, "addMarker", json("id", 1L, "lat", 1.0, "title", "a"));
+        queue.add(null, "updateMarker", json("id", 1L, "title", "b"));
+        queue.add(null, "updateMarker", json("id", 2L, "lat", 3.0));
+        queue.add(null, "updateMarker", json("id", 2L, "title", "c"));
+        final JSONArray batch = queue.drain();
+        assertEquals(2, batch.size());
+        assertEquals(json("id", 1L, "lat", 1.0, "title", "b"), data(batch, 0));
+        assertEquals("updateMarker", command(batch, 1));
+        assertEquals(json("id", 2L, "lat", 3.0, "title", "c"), data(batch, 1));
+    }
+
+    @Test
+    public void clearDropsEarlierMarkerOps() {
+        final MapCommandQueue queue = new MapCommandQueue();
+        queue.add(null, "addMarker", json("id", 1L));
+        queue.add(null, "addMarkers", json("loaded", 10));
+        queue.add(null, "centerMap", json("lat", 1.0, "lng", 2.0));
+        queue.add(null, "clearMarkers", null);
+        queue.add(null, "addMarker", json("id", 2L));
+        final JSONArray batch = queue.drain();
+        assertEquals(3, batch.size());
+        assertEquals("centerMap", command(batch, 0));
+        assertEquals("clearMarkers", command(batch, 1));
+        assertEquals(json("id", 2L), data(batch, 2));
+    }
+
+    @Test
+    public void stylesGoFirst() {
+        final MapCommandQueue queue = new MapCommandQueue();
+        queue.add(null, "addMarker", json("id", 1L, "style", 1));
+        queue.add(null, "defineMarkerStyles", json("1", json("color", "red")));
+        queue.add(null, "defineMarkerStyles", json("2", json("size", 8)));
+        final JSONArray batch = queue.drain();
+        assertEquals(2, batch.size());
+        assertEquals("defineMarkerStyles", command(batch, 0));
+        assertEquals(json("1", json("color", "red"), "2", json("size", 8)), data(batch, 0));
+        assertEquals("addMarker", command(batch, 1));
+    }
+
+    @Test
+    public void keyedOpsReplaceAndDeferredValuesResolveOnDrain() {
+        final MapCommandQueue queue = new MapCommandQueue();
+        final int[] evaluated = {0};
+        queue.add("clusters", "setClusters", (DeferredValue) () -> ++evaluated[0]);
+        queue.add(null, "addMarker", json("id", 1L));
+        queue.add("clusters", "setClusters", (DeferredValue) () -> "last");
+        final JSONArray batch = queue.drain();
+        assertEquals(0, evaluated[0]);
+        assertEquals(2, batch.size());
+        assertEquals("addMarker", command(batch, 0));
+        assertEquals("last", data(batch, 1));
+        assertEquals(0, queue.drain().size());
+    }
+
+    private static JSONObject json(Object... pairs) {
+        final JSONObject json = new JSONObject();
+        for (int i = 0; i < pairs.length; i += 2) {
+            json.put(pairs[i], pairs[i + 1]);
+        }
+        return json;
+    }
+
+    private static String command(JSONArray batch, int index) {
+        return (String) ((List<?>) batch.get(index)).get(0);
+    }
+
+    private static Object data(JSONArray batch, int index) {
+        return ((List<?>) batch.get(index)).get(1);
+    }
+}
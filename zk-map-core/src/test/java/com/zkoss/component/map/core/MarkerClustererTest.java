@@ -0,0 +1,87 @@
+package com.zkoss.component.map.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MarkerClustererTest {
+
+    @Test
+    public void emptyCellsAreRemoved() {
+        final ClusterLevel level = new ClusterLevel();
+        for (long key = 1; key <= 1000; key++) {
+            level.add(key % 300, key, key, key);
+        }
+        assertEquals(300, level.cells());
+        for (long key = 1; key <= 1000; key++) {
+            level.remove(key % 300, key, key, key);
+        }
+        assertEquals(0, level.cells());
+        assertEquals(0, level.countOf(7));
+    }
+
+    @Test
+    public void movesKeepTheGridBounded() {
+        final MarkerStore store = new MarkerStore();
+        final Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            store.add(lat(random), lng(random), null, null);
+        }
+        final MarkerClusterer clusterer = new MarkerClusterer(store, 60, 16);
+        clusterer.build();
+
+        // Un seguimiento largo: cada marcador recorre muchas celdas
+        for (int step = 0; step < 20000; step++) {
+            final int index = random.nextInt(store.size());
+            final long key = store.getKey(index);
+            clusterer.remove(key, store.getLatitude(index), store.getLongitude(index));
+            store.setPosition(index, lat(random), lng(random));
+            clusterer.add(key, store.getLatitude(index), store.getLongitude(index));
+        }
+
+        final MarkerClusterer rebuilt = new MarkerClusterer(store, 60, 16);
+        rebuilt.build();
+        for (int zoom = 0; zoom <= 16; zoom++) {
+            final List<MarkerClusterer.Cluster> actual = sorted(clusterer.getClusters(zoom));
+            final List<MarkerClusterer.Cluster> expected = sorted(rebuilt.getClusters(zoom));
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getId(), actual.get(i).getId());
+                assertEquals(expected.get(i).getCount(), actual.get(i).getCount());
+                assertEquals(expected.get(i).getMarkerKey(), actual.get(i).getMarkerKey());
+                assertEquals(expected.get(i).getLatitude(), actual.get(i).getLatitude(), 1e-9);
+            }
+            assertEquals(store.size(), actual.stream().mapToInt(MarkerClusterer.Cluster::getCount).sum());
+        }
+    }
+
+    @Test
+    public void removedClusterIsGone() {
+        final MarkerStore store = new MarkerStore();
+        store.add(40.4168, -3.7038, "Madrid", null);
+        final MarkerClusterer clusterer = new MarkerClusterer(store, 60, 16);
+        clusterer.build();
+        final String id = clusterer.getClusters(5).get(0).getId();
+        clusterer.remove(store.getKey(0), 40.4168, -3.7038);
+        assertNull(clusterer.getCluster(id));
+        assertEquals(0, clusterer.getClusters(5).size());
+    }
+
+    private static double lat(Random random) {
+        return 36 + random.nextDouble() * 24;
+    }
+
+    private static double lng(Random random) {
+        return -10 + random.nextDouble() * 40;
+    }
+
+    private static List<MarkerClusterer.Cluster> sorted(List<MarkerClusterer.Cluster> clusters) {
+        clusters.sort(Comparator.comparing(MarkerClusterer.Cluster::getId));
+        return clusters;
+    }
+}
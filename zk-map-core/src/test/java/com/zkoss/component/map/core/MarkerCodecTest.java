@@ -0,0 +1,171 @@
+package com.zkoss.component.map.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.zkoss.json.JSONArray;
+import org.zkoss.json.JSONObject;
+import org.zkoss.json.JSONValue;
+
+/**
+ * Decodifica en Java lo mismo que MarkerCodec.js y compara con el almacén
+ */
+public class MarkerCodecTest {
+
+    @Test
+    public void compactRoundTrip() {
+        final MarkerStore store = filled(2000);
+        store.add(-90, 180, null, "\\ \"   ñ", 0);
+        final JSONObject encoded = (JSONObject) JSONValue.parse(MarkerCodec.encode(store));
+        assertFalse(encoded.containsKey("y"));
+        assertDecoded(store, null, decode(encoded), 1e-6);
+    }
+
+    @Test
+    public void compactRoundTripWithStyles() {
+        final MarkerStore store = filled(500);
+        store.setStyle(3, 2);
+        store.setStyle(400, 31);
+        final JSONObject encoded = (JSONObject) JSONValue.parse(MarkerCodec.encode(store));
+        assertEquals(1L, ((Number) encoded.get("y")).longValue());
+        assertDecoded(store, null, decode(encoded), 1e-6);
+    }
+
+    @Test
+    public void compactSubset() {
+        final MarkerStore store = filled(300);
+        final int[] indexes = {5, 17, 18, 250, 299};
+        final JSONObject encoded = (JSONObject) JSONValue.parse(MarkerCodec.encode(store, indexes));
+        final JSONArray strings = (JSONArray) encoded.get("s");
+        assertTrue(strings.size() <= indexes.length * 2); // Solo los textos usados
+        assertDecoded(store, indexes, decode(encoded), 1e-6);
+    }
+
+    @Test
+    public void emptyStore() {
+        final JSONObject encoded = (JSONObject) JSONValue.parse(MarkerCodec.encode(new MarkerStore()));
+        assertEquals(0L, ((Number) encoded.get("n")).longValue());
+        assertEquals("", encoded.get("c"));
+        assertNull(encoded.get("y"));
+    }
+    @Test
+    public void arraysRoundTrip() {
+        final MarkerStore store = filled(1000);
+        store.setStyle(10, 4);
+        final JSONObject encoded = (JSONObject) JSONValue.parse(MarkerCodec.encodeArrays(store, null));
+        // float32 en grados: el paso a 180° es 2^-16 (unos 1,7 m)
+        assertDecoded(store, null, decodeArrays(encoded), 1.0 / (1 << 16));
+    }
+
+    private static MarkerStore filled(int count) {
+        final Random random = new Random(count);
+        final MarkerStore store = new MarkerStore();
+        for (int i = 0; i < count; i++) {
+            store.add(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180,
+                    i % 5 == 0 ? null : "Marcador " + (i % 50), i % 3 == 0 ? "Descripción " + i : null);
+        }
+        return store;
+    }
+
+    private static void assertDecoded(MarkerStore store, int[] indexes, List<Object[]> rows, double delta) {
+        assertEquals(indexes == null ? store.size() : indexes.length, rows.size());
+        for (int k = 0; k < rows.size(); k++) {
+            final int i = indexes == null ? k : indexes[k];
+            final Object[] row = rows.get(k);
+            assertEquals(store.getLatitude(i), (double) row[0], delta);
+            assertEquals(store.getLongitude(i), (double) row[1], delta);
+            assertEquals(store.getTitle(i), row[2]);
+            assertEquals(store.getDescription(i), row[3]);
+            assertEquals(store.getKey(i), (long) row[4]);
+            assertEquals(store.getStyle(i), (int) row[5]);
+        }
+    }
+
+    /**
+     * Filas [lat, lng, title, description, id, style] como MarkerCodec.decode
+     */
+    private static List<Object[]> decode(JSONObject encoded) {
+        final String text = (String) encoded.get("c");
+        final JSONArray strings = (JSONArray) encoded.get("s");
+        final double factor = Math.pow(10, ((Number) encoded.get("p")).intValue());
+        final boolean styled = encoded.containsKey("y");
+        final int n = ((Number) encoded.get("n")).intValue();
+        final int[] pos = {0};
+        final List<Object[]> rows = new ArrayList<>(n);
+        long lat = 0;
+        long lng = 0;
+        long id = 0;
+        for (int m = 0; m < n; m++) {
+            lat += readSigned(text, pos);
+            lng += readSigned(text, pos);
+            id += readSigned(text, pos);
+            final int title = (int) readUnsigned(text, pos);
+            final int description = (int) readUnsigned(text, pos);
+            final int style = styled ? (int) readUnsigned(text, pos) : 0;
+            rows.add(new Object[] {lat / factor, lng / factor, text(strings, title), text(strings, description),
+                id, style});
+        }
+        assertEquals(text.length(), pos[0]);
+        return rows;
+    }
+
+    /**
+     * Filas [lat, lng, title, description, id, style] como MarkerCodec.decodeArrays
+     */
+    private static List<Object[]> decodeArrays(JSONObject encoded) {
+        final ByteBuffer xy = buffer(encoded.get("xy"));
+        final ByteBuffer ids = buffer(encoded.get("id"));
+        final ByteBuffer attributes = buffer(encoded.get("a"));
+        final JSONArray strings = (JSONArray) encoded.get("s");
+        final int n = ((Number) encoded.get("n")).intValue();
+        final List<Object[]> rows = new ArrayList<>(n);
+        for (int m = 0; m < n; m++) {
+            final double lng = xy.getFloat();
+            final double lat = xy.getFloat();
+            rows.add(new Object[] {lat, lng, text(strings, attributes.getInt()), text(strings, attributes.getInt()),
+                (long) ids.getDouble(), attributes.getInt()});
+        }
+        assertFalse(xy.hasRemaining() || ids.hasRemaining() || attributes.hasRemaining());
+        return rows;
+    }
+
+    private static ByteBuffer buffer(Object base64) {
+        return ByteBuffer.wrap(Base64.getDecoder().decode((String) base64)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String text(JSONArray strings, int code) {
+        if (code == 0) {
+            return null;
+        }
+        final String value = (String) strings.get(code - 1);
+        assertTrue(value != null);
+        return value;
+    }
+
+    private static long readSigned(String text, int[] pos) {
+        final long value = readUnsigned(text, pos);
+        return (value & 1) != 0 ? ~(value >>> 1) : value >>> 1;
+    }
+
+    private static long readUnsigned(String text, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = text.charAt(pos[0]++) - 63;
+            result |= (long) (b & 0x1f) << shift;
+            shift += 5;
+        } while (b >= 0x20);
+        return result;
+    }
+}
@@ -0,0 +1,66 @@
+package com.zkoss.component.map.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MarkerDatasetTest {
+
+    @Test
+    public void publishKeepsStyles() {
+        final MarkerDataset dataset = new MarkerDataset("flota");
+        final MarkerDataset.Snapshot first = dataset.publish(Arrays.asList(
+                new Marker(40.4168, -3.7038, "Madrid", null, 2),
+                new Marker(41.3874, 2.1686, "Barcelona", null, 0)));
+        assertEquals(2, first.getStyle(0));
+        assertEquals(0, first.getStyle(1));
+        assertNotNull(first.fullPayload());
+    }
+
+    @Test
+    public void styleChangesAreDiffed() {
+        final MarkerDataset dataset = new MarkerDataset("flota");
+        dataset.update(store -> {
+            for (int i = 0; i < 10; i++) {
+                store.add(i, i, "M" + i, null);
+            }
+        });
+        final String unchanged = dataset.update(store -> { }).diffPayload().toJSONString();
+        final long key = dataset.getSnapshot().getKey(3);
+        final MarkerDataset.Snapshot next = dataset.update(store -> store.setStyle(store.indexOfKey(key), 1));
+        assertEquals(1, next.getStyle(next.getMarkersIn(2.5, 2.5, 3.5, 3.5)[0]));
+        assertNotEquals(unchanged.replace("\"version\":2", "\"version\":3"), next.diffPayload().toJSONString());
+    }
+
+    @Test
+    public void deserializesWithoutWebApp() throws IOException, ClassNotFoundException {
+        final MarkerDataset restored = roundTrip(new MarkerDataset("flota"));
+        assertEquals("flota", restored.getName());
+        try {
+            restored.getSnapshot();
+            fail("Sin aplicación actual no se puede resolver el conjunto");
+        } catch (IllegalStateException e) {
+            // El conjunto se busca en el registro al primer uso
+        }
+    }
+
+    private static MarkerDataset roundTrip(MarkerDataset dataset) throws IOException, ClassNotFoundException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(dataset);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (MarkerDataset) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.zkoss.component.map.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compara las consultas del índice con un recorrido de todos los puntos,
+ * tras la carga con STR y tras altas y bajas al azar
+ */
+public class MarkerIndexTest {
+
+    private final Random random = new Random(5);
+    private final Map<Long, double[]> points = new LinkedHashMap<>();
+    private final MarkerIndex index = new MarkerIndex();
+
+    @Test
+    public void matchesBruteForceAfterBulkLoad() {
+        final MarkerStore store = new MarkerStore();
+        for (int i = 0; i < 5000; i++) {
+            final double lat = randomLatitude();
+            final double lng = randomLongitude();
+            points.put(store.getKey(store.add(lat, lng, null, null)), new double[] {lat, lng});
+        }
+        index.load(store);
+        assertEquals(points.size(), index.size());
+        checkQueries();
+    }
+
+    @Test
+    public void matchesBruteForceAfterInsertsAndRemoves() {
+        long next = 1;
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < 1500; i++) {
+                final double lat = randomLatitude();
+                final double lng = randomLongitude();
+                index.insert(next, lat, lng);
+                points.put(next++, new double[] {lat, lng});
+            }
+            final List<Long> keys = new ArrayList<>(points.keySet());
+            for (int i = 0; i < 700; i++) {
+                final long key = keys.remove(random.nextInt(keys.size()));
+                final double[] point = points.remove(key);
+                assertTrue(index.remove(key, point[0], point[1]));
+            }
+            assertFalse(index.remove(next + 1, 0, 0));
+            assertEquals(points.size(), index.size());
+            checkQueries();
+        }
+
+        // Vaciar del todo deja un índice utilizable
+        for (Map.Entry<Long, double[]> entry : points.entrySet()) {
+            assertTrue(index.remove(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        points.clear();
+        assertEquals(0, index.size());
+        assertEquals(0, index.search(-80, -180, 80, 180).length);
+        index.insert(1, 10, 10);
+        assertArrayEquals(new long[] {1}, index.nearest(0, 0, 3));
+    }
+
+    @Test
+    public void searchCrossesTheAntimeridian() {
+        index.insert(1, 10, 179.5);
+        index.insert(2, 10, -179.5);
+        index.insert(3, 10, 0);
+        assertArrayEquals(new long[] {1, 2}, index.search(0, 179, 20, -179));
+        assertArrayEquals(new long[] {3}, index.search(0, -179, 20, 179));
+
+        // Desde -179,9 el segundo vecino está al otro lado del antimeridiano
+        index.insert(4, 10, 170);
+        assertArrayEquals(new long[] {2, 1, 4}, index.nearest(10, -179.9, 3));
+    }
+
+    private void checkQueries() {
+        for (int q = 0; q < 200; q++) {
+            final double south = randomLatitude();
+            final double north = Math.min(80, south + random.nextDouble() * 40);
+            final double west = randomLongitude();
+            final double east = randomLongitude(); // Con west > east cruza el antimeridiano
+            assertArrayEquals(bruteSearch(south, west, north, east), index.search(south, west, north, east));
+
+            final double lat = randomLatitude();
+            final double lng = randomLongitude();
+            final int k = 1 + random.nextInt(20);
+            assertArrayEquals(bruteNearest(lat, lng, k, Double.POSITIVE_INFINITY),
+                    distances(lat, lng, index.nearest(lat, lng, k)), 1e-15);
+
+            final int zoom = random.nextInt(8);
+            final double pixels = 5 + random.nextDouble() * 60;
+            final double radius = pixels / Mercator.worldSize(zoom);
+            assertArrayEquals(bruteNearest(lat, lng, Integer.MAX_VALUE, radius * radius),
+                    distances(lat, lng, index.within(lat, lng, pixels, zoom)), 1e-15);
+        }
+    }
+
+    private long[] bruteSearch(double south, double west, double north, double east) {
+        return points.entrySet().stream()
+                .filter(e -> {
+                    final double lat = e.getValue()[0];
+                    final double lng = e.getValue()[1];
+                    final boolean inLng = west <= east ? lng >= west && lng <= east : lng >= west || lng <= east;
+                    return lat >= south && lat <= north && inLng;
+                })
+                .mapToLong(Map.Entry::getKey)
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * Distancias (al cuadrado, en coordenadas del mundo) de los k puntos
+     * más cercanos dentro del máximo, en orden creciente
+     */
+    private double[] bruteNearest(double lat, double lng, int k, double maxDistance2) {
+        final double[] all = points.values().stream()
+                .mapToDouble(p -> distance2(lat, lng, p[0], p[1]))
+                .filter(d -> d <= maxDistance2)
+                .sorted()
+                .toArray();
+        return Arrays.copyOf(all, Math.min(k, all.length));
+    }
+
+    private double[] distances(double lat, double lng, long[] keys) {
+        final double[] result = new double[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            final double[] point = points.get(keys[i]);
+            result[i] = distance2(lat, lng, point[0], point[1]);
+        }
+        return result;
+    }
+
+    /**
+     * Distancia en pantalla dando la vuelta al mundo, como el índice
+     */
+    private static double distance2(double lat1, double lng1, double lat2, double lng2) {
+        double dx = Math.abs(Mercator.x(lng1) - Mercator.x(lng2));
+        dx = Math.min(dx, 1 - dx);
+        final double dy = Mercator.y(lat1) - Mercator.y(lat2);
+        return dx * dx + dy * dy;
+    }
+
+    private double randomLatitude() {
+        return random.nextDouble() * 160 - 80;
+    }
+
+    private double randomLongitude() {
+        return random.nextDouble() * 360 - 180;
+    }
+}
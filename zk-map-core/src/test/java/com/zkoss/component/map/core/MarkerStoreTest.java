@@ -0,0 +1,154 @@
+package com.zkoss.component.map.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.zkoss.json.JSONArray;
+import org.zkoss.json.JSONAware;
+import org.zkoss.json.JSONObject;
+import org.zkoss.json.JSONValue;
+
+public class MarkerStoreTest {
+
+    @Test
+    public void keepsColumnsAndKeys() {
+        final MarkerStore store = new MarkerStore();
+        final int index = store.add(40.4168, -3.7038, "Madrid", null, 2);
+        assertEquals(0, index);
+        assertEquals(1, store.getKey(index));
+        assertEquals(40.4168, store.getLatitude(index), 0);
+        assertEquals(-3.7038, store.getLongitude(index), 0);
+        assertEquals("Madrid", store.getTitle(index));
+        assertNull(store.getDescription(index));
+        assertEquals(2, store.getStyle(index));
+    }
+
+    @Test
+    public void keysSurviveRemovals() {
+        final MarkerStore store = filled(1000, 1);
+        final Random random = new Random(2);
+        for (int i = 0; i < 400; i++) {
+            store.remove(random.nextInt(store.size()));
+        }
+        for (int i = 0; i < store.size(); i++) {
+            final long key = store.getKey(i);
+            assertEquals(i, store.indexOfKey(key));
+            assertEquals("Marcador " + (key - 1), store.getTitle(i));
+        }
+        assertEquals(-1, store.indexOfKey(5000));
+    }
+
+    @Test
+    public void reusesTextCodes() {
+        final StringTable table = new StringTable();
+        final String[] texts = {"", "a", "ñandú", "日本語", "🗺 mapa", "suelto \uD800 x", "\uDC00"};
+        final int[] codes = new int[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            codes[i] = table.intern(texts[i]);
+        }
+        for (int i = 0; i < texts.length; i++) {
+            assertEquals(codes[i], table.intern(new String(texts[i].toCharArray())));
+            // Mismos bytes que String.getBytes, también con surrogates sueltos
+            assertEquals(new String(texts[i].getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8),
+                    table.get(codes[i]));
+        }
+        assertEquals(texts.length, table.size());
+        assertEquals(-1, table.intern(null));
+    }
+
+    @Test
+    public void serializationRoundTrip() throws Exception {
+        final MarkerStore store = filled(5000, 3);
+        store.setStyle(7, 3);
+        store.setTitle(9, "ñandú 🗺");
+        for (int i = 0; i < 100; i++) {
+            store.remove(i * 3);
+        }
+        final MarkerStore copy = roundTrip(store);
+        assertSameMarkers(store, copy);
+
+        // La tabla hash se reconstruye y las claves siguen creciendo
+        assertEquals(store.indexOfKey(store.getKey(42)), copy.indexOfKey(store.getKey(42)));
+        assertEquals(store.getKey(store.add(0, 0, null, null)), copy.getKey(copy.add(0, 0, null, null)));
+    }
+
+    @Test
+    public void serializedFormIsSmallerThanJsonArray() throws Exception {
+        // El formato anterior: el JSONArray de marcadores con la
+        // serialización por defecto
+        for (int count : new int[] {10_000, 100_000}) {
+            final MarkerStore store = filled(count, 4);
+            final int packed = serialize(store).length;
+            final int json = serialize(store.toJSONArray()).length;
+            assertTrue(count + " marcadores: " + packed + " frente a " + json + " bytes", packed * 2 < json);
+        }
+    }
+
+    @Test
+    public void serializesEmptyStore() throws Exception {
+        final MarkerStore copy = roundTrip(new MarkerStore());
+        assertEquals(0, copy.size());
+        assertEquals(0, copy.add(1, 2, "a", "b"));
+    }
+
+    @Test
+    public void listViewIsValidJson() {
+        final MarkerStore store = new MarkerStore();
+        store.add(1.5, -2.25, "Con \"comillas\"", null);
+        store.add(3, 4, "b", "c", 1);
+        final List<JSONObject> view = store.asList();
+        final JSONArray parsed = (JSONArray) JSONValue.parse(((JSONAware) view).toJSONString());
+        assertEquals(2, parsed.size());
+        assertEquals(store.toJSONArray().toJSONString(), JSONArray.toJSONString(parsed));
+        assertEquals("Con \"comillas\"", ((JSONObject) parsed.get(0)).get("title"));
+        assertEquals(view.get(1), store.toJSONArray().get(1));
+    }
+
+    private static MarkerStore filled(int count, long seed) {
+        final Random random = new Random(seed);
+        final MarkerStore store = new MarkerStore();
+        for (int i = 0; i < count; i++) {
+            store.add(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180, "Marcador " + i,
+                    i % 4 == 0 ? "Descripción " + (i % 7) : null);
+        }
+        return store;
+    }
+
+    private static MarkerStore roundTrip(MarkerStore store) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize(store)))) {
+            return (MarkerStore) in.readObject();
+        }
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void assertSameMarkers(MarkerStore expected, MarkerStore actual) {
+        assertEquals(expected.size(), actual.size());
+        final long[] keys = new long[expected.size()];
+        final long[] copied = new long[actual.size()];
+        for (int i = 0; i < expected.size(); i++) {
+            keys[i] = expected.getKey(i);
+            copied[i] = actual.getKey(i);
+            assertEquals(expected.toJSON(i), actual.toJSON(i));
+        }
+        assertArrayEquals(keys, copied);
+    }
+}
@@ -0,0 +1,205 @@
+package com.zkoss.component.map.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Compara el geocodificador con un recorrido de todos los lugares (la
+ * distancia se mide con haversine), en memoria y proyectado desde un archivo
+ */
+public class ReverseGeocoderTest {
+
+    /** Los lugares se guardan en float32: unos decímetros de error */
+    private static final double TOLERANCE = 2;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private double[] lats;
+    private double[] lngs;
+    private double[] xyz;
+
+    @Test
+    public void nearestMatchesBruteForce() throws IOException {
+        // Más lugares que una tarea de la construcción en paralelo
+        final ReverseGeocoder geocoder = geocoder(100_000, 6);
+        assertEquals(lats.length, geocoder.size());
+        final Random random = new Random(7);
+        for (int q = 0; q < 300; q++) {
+            checkNearest(geocoder, Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1)),
+                    random.nextDouble() * 360 - 180);
+        }
+    }
+
+    @Test
+    public void nearestAtThePolesAndTheAntimeridian() throws IOException {
+        final ReverseGeocoder geocoder = geocoder(2000, 8);
+        final double[][] queries = {
+            {90, 0}, {-90, 0}, {89.99, 179.99}, {-89.99, -45},
+            {0, 180}, {0, -180}, {10, 179.999}, {-10, -179.999}, {60, 180}
+        };
+        for (double[] query : queries) {
+            checkNearest(geocoder, query[0], query[1]);
+        }
+        // Los lugares añadidos a ambos lados del antimeridiano son los más cercanos
+        assertEquals("Este", geocoder.nearest(10, 179.999).getName());
+        assertEquals("Oeste", geocoder.nearest(10, -179.999).getName());
+        assertEquals("Norte", geocoder.nearest(90, 0).getName());
+        assertEquals("Sur", geocoder.nearest(-90, 123).getName());
+    }
+
+    @Test
+    public void maxDistanceLimitsTheSearch() throws IOException {
+        final ReverseGeocoder geocoder = geocoder(2000, 9);
+        final Place place = geocoder.nearest(40, -3);
+        assertNotNull(place);
+        assertEquals(place.getName(), geocoder.nearest(40, -3, place.getDistance() + TOLERANCE).getName());
+        assertNull(geocoder.nearest(40, -3, place.getDistance() - TOLERANCE));
+        assertNull(geocoder(0, 1).nearest(0, 0));
+        try {
+            geocoder.nearest(0, 0, -1);
+            fail("Se aceptó una distancia negativa");
+        } catch (IllegalArgumentException e) {
+            // Esperado
+        }
+    }
+
+    @Test
+    public void writeAndOpenRoundTrip() throws IOException {
+        final ReverseGeocoder heap = geocoder(20_000, 10);
+        final Path file = folder.getRoot().toPath().resolve("lugares.bin");
+        heap.write(file);
+        final ReverseGeocoder mapped = ReverseGeocoder.open(file);
+        assertEquals(heap.size(), mapped.size());
+        final Random random = new Random(11);
+        for (int q = 0; q < 500; q++) {
+            final double lat = random.nextDouble() * 180 - 90;
+            final double lng = random.nextDouble() * 360 - 180;
+            final Place expected = heap.nearest(lat, lng);
+            final Place actual = mapped.nearest(lat, lng);
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getCountryCode(), actual.getCountryCode());
+            assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+            assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedAndForeignFiles() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("lugares.bin");
+        geocoder(1000, 12).write(file);
+        final byte[] bytes = Files.readAllBytes(file);
+
+        final Path truncated = folder.newFile("truncado.bin").toPath();
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 5));
+        assertRejected(truncated, "incompleto");
+
+        final Path version = folder.newFile("version.bin").toPath();
+        Files.write(version, bytes);
+        try (FileChannel channel = FileChannel.open(version, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 99), 4);
+        }
+        assertRejected(version, "Versión");
+
+        final Path text = folder.newFile("texto.bin").toPath();
+        Files.write(text, "no es un nomenclátor binario".getBytes(StandardCharsets.UTF_8));
+        assertRejected(text, "No es");
+        assertRejected(folder.newFile("vacio.bin").toPath(), "No es");
+    }
+
+    private static void assertRejected(Path file, String message) {
+        try {
+            ReverseGeocoder.open(file);
+            fail("Se abrió " + file.getFileName());
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private void checkNearest(ReverseGeocoder geocoder, double lat, double lng) {
+        // El más cercano es el de mayor producto escalar en la esfera unidad
+        final double[] point = unit(lat, lng);
+        int nearest = -1;
+        double dot = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < lats.length; i++) {
+            final double d = point[0] * xyz[i * 3] + point[1] * xyz[i * 3 + 1] + point[2] * xyz[i * 3 + 2];
+            if (d > dot) {
+                dot = d;
+                nearest = i;
+            }
+        }
+        final double best = haversine(lat, lng, lats[nearest], lngs[nearest]);
+        final Place place = geocoder.nearest(lat, lng);
+        assertEquals("Cerca de " + lat + ", " + lng, best, place.getDistance(), TOLERANCE);
+    }
+
+    /**
+     * Lugares al azar uniformes en la esfera, más uno junto a cada polo y
+     * uno a cada lado del antimeridiano, escritos como un volcado de GeoNames
+     */
+    private ReverseGeocoder geocoder(int count, long seed) throws IOException {
+        final Random random = new Random(seed);
+        final int special = count > 0 ? 4 : 0;
+        lats = new double[count + special];
+        lngs = new double[count + special];
+        final StringBuilder dump = new StringBuilder(count * 40);
+        for (int i = 0; i < count; i++) {
+            lats[i] = Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+            lngs[i] = random.nextDouble() * 360 - 180;
+            line(dump, i, "L" + i, lats[i], lngs[i]);
+        }
+        if (special > 0) {
+            final String[] names = {"Norte", "Sur", "Este", "Oeste"};
+            final double[][] places = {{89.999, 10}, {-89.999, -170}, {10, 179.9995}, {10, -179.9995}};
+            for (int j = 0; j < special; j++) {
+                lats[count + j] = places[j][0];
+                lngs[count + j] = places[j][1];
+                line(dump, count + j, names[j], places[j][0], places[j][1]);
+            }
+        }
+        xyz = new double[lats.length * 3];
+        for (int i = 0; i < lats.length; i++) {
+            System.arraycopy(unit(lats[i], lngs[i]), 0, xyz, i * 3, 3);
+        }
+        dump.append("línea inválida\n");
+        return ReverseGeocoder.readGeoNames(new ByteArrayInputStream(dump.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void line(StringBuilder dump, int id, String name, double lat, double lng) {
+        dump.append(id).append('\t').append(name).append('\t').append(name).append("\t\t")
+                .append(lat).append('\t').append(lng).append("\tP\tPPL\tES\n");
+    }
+
+    private static double[] unit(double lat, double lng) {
+        final double phi = Math.toRadians(lat);
+        final double lambda = Math.toRadians(lng);
+        return new double[] {Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi)};
+    }
+
+    private static double haversine(double lat1, double lng1, double lat2, double lng2) {
+        final double dLat = Math.toRadians(lat2 - lat1);
+        final double dLng = Math.toRadians(lng2 - lng1);
+        final double a = Math.pow(Math.sin(dLat / 2), 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.pow(Math.sin(dLng / 2), 2);
+        return 2 * ReverseGeocoder.EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
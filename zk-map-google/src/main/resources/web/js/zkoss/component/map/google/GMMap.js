@@ -1,12 +1,37 @@
 zkoss.component.map.google.GMMap = zk.$extends(zul.Widget, {
     _map: null,           // Objeto de mapa Google
-    _markers: [],         // Array de marcadores
+    _markers: null,       // Marcadores dibujados por identificador
+    _pendingMarkers: null, // Marcadores recibidos antes de crear el mapa
+    _pendingOps: null,    // Altas, bajas y cambios de marcadores recibidos antes de crear el mapa
+    _datasetMarkers: null, // Marcadores del conjunto compartido por identificador
+    _pendingDataset: null, // Versiones del conjunto recibidas antes de crear el mapa
+    _shapes: null,        // Líneas y polígonos dibujados por identificador
+    _shapeCount: 0,       // Formas recibidas (el zoom se informa si hay alguna)
+    _pendingShapes: null, // Formas recibidas antes de crear el mapa
+    _heatmap: false,      // Mapa de calor agregado en el servidor
+    _heatmapData: null,   // Últimas celdas recibidas {zoom, cell, max, cells}
+    _heatmapOverlay: null, // OverlayView con el canvas del mapa de calor
+    _infoWindow: null,    // InfoWindow compartida para las descripciones
     _apiKey: '',          // API Key de Google Maps
     _latitude: 40.4168,   // Latitud inicial
     _longitude: -3.7038,  // Longitud inicial
     _zoom: 10,            // Zoom inicial
     _mapType: 'roadmap',  // Tipo de mapa (roadmap, satellite, hybrid, terrain)
     _showControls: true,  // Controles visibles
+    _chunks: null,        // Bloques de carga masiva pendientes de dibujar
+    _chunkTimer: null,    // Temporizador del siguiente bloque
+    _clustering: false,   // Agrupación de marcadores en el servidor
+    _clusters: null,      // Últimos clusters recibidos
+    _clusterMarkers: [],  // Marcadores de Google que representan clusters
+    _viewportStreaming: false, // Marcadores enviados según el área visible
+    _viewportMargin: 0.5, // Margen del área pedida, proporcional a la visible
+    _loadedBounds: null,  // Área (con margen) cuyos marcadores ya se tienen
+    _reportedZoom: null,  // Último zoom informado al servidor
+    _markersDraggable: false, // Marcadores arrastrables
+    _viewportEventDelay: 300, // Espera tras el último movimiento antes de onViewportChange
+    _dragEventInterval: 150,  // Intervalo mínimo entre eventos onMarkerDrag
+    _lazyInit: false,     // Crear el mapa cuando se vea por primera vez
+    _renderMode: 'dom',   // Dibujo de los marcadores (dom, canvas, webgl)
 
     // Getters y Setters estándar para propiedades
     $define: {
@@ -67,9 +92,91 @@ zkoss.component.map.google.GMMap = zk.$extends(zul.Widget, {
                     fullscreenControl: val
                 });
             }
+        },
+        clustering: function (val) {
+            this._clustering = val;
+            if (this._map && !val) {
+                this._clusters = null;
+                this._clearClusterMarkers();
+            }
+            this._loadedBounds = null;
+        },
+        viewportStreaming: function (val) {
+            this._viewportStreaming = val;
+            if (this._map) {
+                this._handleClearMarkers();
+                this._reportViewport(true);
+            }
+        },
+        viewportMargin: null,
+        heatmap: function (val) {
+            this._heatmap = val;
+            if (!val) {
+                this._heatmapData = null;
+                this._drawHeatmap();
+            }
+            this._reportViewport(true);
+        },
+        markersDraggable: function (val) {
+            this._markersDraggable = val;
+            if (this._markers) {
+                for (const id in this._markers) {
+                    this._markers[id].marker.setDraggable(val && this._renderMode === 'dom');
+                }
+            }
+        },
+        viewportEventDelay: null,
+        dragEventInterval: null,
+        lazyInit: null,
+        // El servidor redibuja el widget cuando cambia
+        renderMode: null
+    },
+
+    // Lista completa de marcadores enviada por el servidor (array o JSON en texto)
+    setMarkers: function (val) {
+        const markers = typeof val === 'string' ? JSON.parse(val) : (val || []);
+        if (!this._map) {
+            this._pendingMarkers = markers;
+            this._pendingOps = null;
+            return;
+        }
+
+        this._handleClearMarkers();
+        for (let i = 0; i < markers.length; i++) {
+            this._addMarkerToMap(markers[i]);
         }
     },
 
+    // Lista de marcadores en el formato compacto (markerEncoding="compact")
+    setEncodedMarkers: function (encoded) {
+        this.setMarkers(zkoss.component.map.core.MarkerCodec.decode(encoded));
+    },
+    
+    // Lista de marcadores en arreglos planos (renderMode="webgl")
+    setMarkerArrays: function (encoded) {
+        this.setMarkers(zkoss.component.map.core.MarkerCodec.decodeArrays(encoded));
+    },
+    
+    // Clusters iniciales enviados por el servidor
+    setClusters: function (data) {
+        this._handleSetClusters(data);
+    },
+
+    // Estado inicial del conjunto de marcadores compartido
+    setDatasetMarkers: function (data) {
+        this._handleUpdateDataset(data);
+    },
+
+    // Estado inicial de las líneas y polígonos
+    setShapes: function (data) {
+        this._handleUpdateShapes(data);
+    },
+    
+    // Definiciones de los estilos de marcador, antes que los marcadores
+    setMarkerStyles: function (styles) {
+        zkoss.component.map.core.MarkerStyles.define(this, styles);
+    },
+
     // Creación del widget
     bind_: function () {
         this.$supers(zkoss.component.map.google.GMMap, 'bind_', arguments);
@@ -81,31 +188,34 @@ zkoss.component.map.google.GMMap = zk.$extends(zul.Widget, {
             return;
         }
 
-        // Cargar la API de Google Maps si no está cargada ya
-        if (typeof google === 'undefined' || typeof google.maps === 'undefined') {
-            this._loadGoogleMapsAPI();
-        } else {
-            this._initMap();
+        // Creación diferida: el servidor envía el estado cuando el mapa se ve
+        if (this._lazyInit) {
+            const wgt = this;
+            zkoss.component.map.core.MapVisibility.observe(this, function () {
+                // La librería se carga mientras llega el estado
+                zkoss.component.map.core.MapLoader.load('google', {key: wgt._apiKey}).catch(function () {});
+                wgt.fire('onMapShow', null, {toServer: true});
+            });
+            return;
         }
-    },
 
-    // Carga asincrónica de la API de Google Maps
-    _loadGoogleMapsAPI: function () {
+        // La API se carga con el primer mapa de la página
+        const loader = zkoss.component.map.core.MapLoader;
+        if (loader.isLoaded('google')) {
+            this._initMap();
+            return;
+        }
         const self = this;
-        const script = document.createElement('script');
-        script.type = 'text/javascript';
-        script.src = `https://maps.googleapis.com/maps/api/js?key=${this._apiKey}&callback=initGMMap_${this.uuid}`;
-        script.async = true;
-        script.defer = true;
-
-        // Función global de inicialización que Google Maps llamará cuando se cargue la API
-        window[`initGMMap_${this.uuid}`] = function () {
-            self._initMap();
-            // Limpiamos la función global después de usarla
-            delete window[`initGMMap_${self.uuid}`];
-        };
-
-        document.head.appendChild(script);
+        loader.load('google', {key: this._apiKey}).then(function () {
+            if (self.desktop && !self._map) {
+                self._initMap();
+            }
+        }, function (error) {
+            console.error('Google Maps no está disponible', error);
+            if (self.desktop) {
+                self.$n().innerHTML = '<div class="gmmap-error">Error: Google Maps no está disponible</div>';
+            }
+        });
     },
 
     // Inicialización del mapa
@@ -144,13 +254,23 @@ zkoss.component.map.google.GMMap = zk.$extends(zul.Widget, {
 
         // Configurar eventos
         this._setupEvents();
+        this._markers = {};
+        this._datasetMarkers = {};
+        this._shapes = {};
+        this._clusterMarkers = [];
 
-        // Si hay marcadores, añadirlos
-        if (this._markers && this._markers.length > 0) {
-            for (let i = 0; i < this._markers.length; i++) {
-                this._addMarkerToMap(this._markers[i], i);
+        // Si hay clusters o marcadores, añadirlos
+        if (this._clusters) {
+            this._handleSetClusters(this._clusters);
+        } else if (this._pendingMarkers) {
+            for (let i = 0; i < this._pendingMarkers.length; i++) {
+                this._addMarkerToMap(this._pendingMarkers[i]);
             }
         }
+        this._pendingMarkers = null;
+        this._applyPendingOps();
+        this._applyPendingDataset();
+        this._applyPendingShapes();
     },
 
     // Configurar eventos del mapa
@@ -163,45 +283,265 @@ zkoss.component.map.google.GMMap = zk.$extends(zul.Widget, {
                 data: [event.latLng.lat(), event.latLng.lng()]
             }, { toServer: true });
         });
+
+        // Informar el área visible cuando el mapa queda quieto (también al iniciarse)
+        google.maps.event.addListener(this._map, 'idle', function () {
+            self._drawHeatmap();
+            self._reportViewport(false);
+            self._fireViewportChange();
+        });
+    },
+
+    // Área visible [south, west, north, east]; east puede pasar de 180.
+    // Los límites no existen hasta que el mapa termina de iniciarse
+    _visibleBounds: function () {
+        const bounds = this._map.getBounds();
+        if (!bounds) return null;
+        const sw = bounds.getSouthWest();
+        const ne = bounds.getNorthEast();
+        const east = ne.lng() < sw.lng() ? ne.lng() + 360 : ne.lng();
+        return [sw.lat(), sw.lng(), ne.lat(), east];
+    },
+
+    // Datos de onViewportChange: [lat, lng, zoom, south, west, north, east]
+    _viewportChangeData: function () {
+        const view = this._map && this._visibleBounds();
+        if (!view) return null;
+
+        const center = this._map.getCenter();
+        return [center.lat(), this._wrapLng(center.lng()), this._map.getZoom()]
+            .concat(this._normalizeBounds(view));
     },
 
-    // Añadir un marcador al mapa
-    _addMarkerToMap: function (markerData, index) {
+    // Informar el área visible cuando pasan viewportEventDelay ms sin moverse
+    _fireViewportChange: function () {
         const self = this;
+        zkoss.component.map.core.MapEvents.debounce(this, 'onViewportChange',
+            this._viewportEventDelay, function () {
+                const data = self._viewportChangeData();
+                return data && { data: data };
+            });
+    },
+
+    // Informar la posición de un marcador arrastrado (regulada por
+    // dragEventInterval; al soltarlo se envía siempre)
+    _markerDragged: function (entry, lat, lng, end) {
+        entry.lat = lat;
+        entry.lng = this._wrapLng(lng);
+        const data = { data: [entry.id, entry.lat, entry.lng, end] };
+        const events = zkoss.component.map.core.MapEvents;
+        if (end) {
+            events.flush(this, 'onMarkerDrag', data);
+        } else {
+            events.throttle(this, 'onMarkerDrag', this._dragEventInterval, data);
+        }
+    },
+
+    // Llevar una longitud al rango [-180, 180)
+    _wrapLng: function (lng) {
+        return ((lng + 180) % 360 + 360) % 360 - 180;
+    },
+
+    // Informar al servidor el zoom y el área visible con margen, solo si
+    // la vista salió del área ya cargada o cambió el zoom
+    _reportViewport: function (force) {
+        if (!this._map || (!this._clustering && !this._viewportStreaming && !this._shapeCount
+                && !this._heatmap)) return;
+
+        const view = this._visibleBounds();
+        if (!view) return;
+        const zoom = this._map.getZoom();
+        if (!force && zoom === this._reportedZoom && ((!this._viewportStreaming && !this._clustering && !this._heatmap)
+                || (this._loadedBounds && this._containsBounds(this._loadedBounds, view)))) {
+            return;
+        }
+
+        this._loadedBounds = this._expandBounds(view, this._viewportMargin);
+        this._reportedZoom = zoom;
+        this.fire('onMapViewport', {
+            data: [zoom].concat(this._normalizeBounds(this._loadedBounds))
+        }, { toServer: true });
+    },
+
+    // Área [sur, oeste, norte, este] ampliada con un margen proporcional a su tamaño
+    _expandBounds: function (view, margin) {
+        const dLat = (view[2] - view[0]) * margin;
+        const dLng = (view[3] - view[1]) * margin;
+        return [Math.max(-90, view[0] - dLat), view[1] - dLng,
+                Math.min(90, view[2] + dLat), view[3] + dLng];
+    },
+
+    // Indica si un área contiene a otra (longitudes sin normalizar)
+    _containsBounds: function (outer, inner) {
+        if (inner[0] < outer[0] || inner[2] > outer[2]) return false;
+        if (outer[3] - outer[1] >= 360) return true;
+        const west = inner[1] - 360 * Math.floor((inner[1] - outer[1]) / 360);
+        return west + (inner[3] - inner[1]) <= outer[3];
+    },
+
+    // Longitudes en [-180, 180]; si el área cruza el antimeridiano el oeste queda mayor que el este
+    _normalizeBounds: function (bounds) {
+        if (bounds[3] - bounds[1] >= 360) {
+            return [bounds[0], -180, bounds[2], 180];
+        }
+        const wrap = function (lng) {
+            return ((lng + 180) % 360 + 360) % 360 - 180;
+        };
+        return [bounds[0], wrap(bounds[1]), bounds[2], wrap(bounds[3])];
+    },
+
+    // Dibujar un cluster con la cantidad de marcadores que agrupa
+    _addClusterToMap: function (cluster) {
+        const self = this;
+        const count = cluster[2];
+        const color = count < 10 ? '#3CA014' : count < 100 ? '#C89600' : '#DC5000';
         const marker = new google.maps.Marker({
+            position: { lat: cluster[0], lng: cluster[1] },
+            map: this._map,
+            label: { text: String(count), color: '#FFFFFF', fontSize: '12px' },
+            icon: {
+                path: google.maps.SymbolPath.CIRCLE,
+                scale: count < 10 ? 14 : count < 100 ? 18 : 22,
+                fillColor: color,
+                fillOpacity: 0.8,
+                strokeColor: '#FFFFFF',
+                strokeWeight: 2
+            },
+            zIndex: google.maps.Marker.MAX_ZINDEX + count
+        });
+
+        marker.addListener('click', function () {
+            self.fire('onClusterClick', {
+                data: [cluster[3]]
+            }, { toServer: true });
+        });
+        this._clusterMarkers.push(marker);
+    },
+
+    // Quitar del mapa los marcadores de clusters
+    _clearClusterMarkers: function () {
+        for (let i = 0; i < this._clusterMarkers.length; i++) {
+            this._clusterMarkers[i].setMap(null);
+        }
+        this._clusterMarkers = [];
+    },
+
+    // Convertir una fila [lat, lng, title, description, id, style] en un
+    // marcador; el estilo solo viene si no es el por defecto
+    _rowToMarker: function (row) {
+        return {
+            lat: row[0],
+            lng: row[1],
+            title: row[2],
+            description: row[3],
+            id: row[4],
+            style: row[5] || 0
+        };
+    },
+
+    // Añadir un marcador al mapa (sin animación en las cargas masivas);
+    // los del conjunto compartido se guardan aparte y no se arrastran.
+    // Fuera del modo dom son marcadores optimizados, que Google Maps dibuja
+    // juntos en un canvas; no se animan ni se arrastran, porque eso los
+    // volvería a convertir en elementos
+    _addMarkerToMap: function (markerData, bulk, dataset) {
+        const self = this;
+        const dom = this._renderMode === 'dom';
+        const style = this._markerStyle(markerData.style);
+        const options = {
             position: { lat: markerData.lat, lng: markerData.lng },
             map: this._map,
             title: markerData.title || '',
-            animation: google.maps.Animation.DROP
-        });
+            icon: style.icon,
+            label: style.label,
+            draggable: this._markersDraggable && !dataset && dom,
+            animation: bulk || dataset || !dom ? null : google.maps.Animation.DROP
+        };
+        if (!dom) {
+            options.optimized = true;
+        }
+        const marker = new google.maps.Marker(options);
 
-        // Guardar referencia al marcador
-        this._markers[index] = {
+        // Guardar referencia al marcador por su identificador
+        const entry = (dataset ? this._datasetMarkers : this._markers)[markerData.id] = {
             ...markerData,
             marker: marker
         };
 
-        // Info Window para descripción
-        if (markerData.description) {
-            const infoWindow = new google.maps.InfoWindow({
-                content: markerData.description
+        // Info Window compartida para la descripción vigente
+        marker.addListener('click', function () {
+            if (entry.description) {
+                if (!self._infoWindow) {
+                    self._infoWindow = new google.maps.InfoWindow();
+                }
+                self._infoWindow.setContent(entry.description);
+                self._infoWindow.open(self._map, marker);
+            }
+            self.fire('onMarkerClick', {
+                data: [entry.id]
+            }, { toServer: true });
+        });
+        ['drag', 'dragend'].forEach(function (type) {
+            marker.addListener(type, function () {
+                const position = marker.getPosition();
+                self._markerDragged(entry, position.lat(), position.lng(), type === 'dragend');
             });
+        });
+    },
 
-            marker.addListener('click', function () {
-                infoWindow.open(self._map, marker);
-                self.fire('onMarkerClick', {
-                    data: [index]
-                }, { toServer: true });
-            });
-        } else {
-            marker.addListener('click', function () {
-                self.fire('onMarkerClick', {
-                    data: [index]
-                }, { toServer: true });
-            });
+    // Icono y etiqueta compartidos de un estilo de marcador
+    _markerStyle: function (style) {
+        return this._renderMode === 'dom'
+            ? zkoss.component.map.core.MarkerStyles.get(this, style, 'google', this._createMarkerStyle)
+            : zkoss.component.map.core.MarkerStyles.get(this, style, 'google-canvas', this._createMarkerSymbol);
+    },
+    
+    // Crear el círculo de una definición para los marcadores optimizados:
+    // solo su color y tamaño
+    _createMarkerSymbol: function (def) {
+        def = def || {};
+        return {
+            icon: {
+                path: google.maps.SymbolPath.CIRCLE,
+                scale: (def.size || 12) / 2,
+                fillColor: def.color || '#EA4335',
+                fillOpacity: 1,
+                strokeColor: '#FFFFFF',
+                strokeWeight: 2
+            },
+            label: null
+        };
+    },
+    
+    // Crear el icono y la etiqueta de una definición de estilo: la imagen
+    // indicada o un círculo de color, con el texto fijo si lo tiene.
+    // Ambos son literales que Google Maps admite compartidos
+    _createMarkerStyle: function (def) {
+        if (!def) {
+            return { icon: null, label: null };
         }
+        const size = def.size || (def.icon ? 32 : 16);
+        const icon = def.icon
+            ? {
+                url: def.icon,
+                scaledSize: new google.maps.Size(size, size),
+                labelOrigin: new google.maps.Point(size / 2, -8)
+            }
+            : {
+                path: google.maps.SymbolPath.CIRCLE,
+                scale: size / 2,
+                fillColor: def.color || '#EA4335',
+                fillOpacity: 1,
+                strokeColor: '#FFFFFF',
+                strokeWeight: 2,
+                labelOrigin: new google.maps.Point(0, -2)
+            };
+        return {
+            icon: icon,
+            label: def.label != null ? { text: def.label, color: '#333333', fontSize: '12px' } : null
+        };
     },
-
+    
     // Limpiar recursos al cerrar
     unbind_: function () {
         if (this._map) {
@@ -209,25 +549,64 @@ zkoss.component.map.google.GMMap = zk.$extends(zul.Widget, {
             this._map = null;
         }
 
+        // Cancelar carga masiva en curso
+        if (this._chunkTimer) {
+            clearTimeout(this._chunkTimer);
+            this._chunkTimer = null;
+        }
+        this._chunks = null;
+
         // Limpiar array de marcadores
-        this._markers = [];
+        this._markers = null;
+        this._pendingMarkers = null;
+        this._pendingOps = null;
+        this._datasetMarkers = null;
+        this._pendingDataset = null;
+        this._shapes = null;
+        this._shapeCount = 0;
+        this._pendingShapes = null;
+        if (this._heatmapOverlay) {
+            this._heatmapOverlay.setMap(null);
+            this._heatmapOverlay = null;
+        }
+        this._heatmapData = null;
+        this._infoWindow = null;
+        this._clusterMarkers = [];
+        this._loadedBounds = null;
+        this._reportedZoom = null;
+        zkoss.component.map.core.MapEvents.cancel(this);
+        zkoss.component.map.core.MarkerAnimator.cancel(this);
+        zkoss.component.map.core.MapVisibility.cancel(this);
 
         this.$supers(zkoss.component.map.google.GMMap, 'unbind_', arguments);
     },
 
-    // Manejador de comandos del servidor
-    bind_: function () {
-        this.$supers(zkoss.component.map.google.GMMap, 'bind_', arguments);
-    },
-
     // Manejador de comandos del servidor
     service_: function (comando, args) {
         switch (comando) {
+            case 'batch':
+                this._applyBatch(args);
+                break;
             case 'addMarker':
                 this._handleAddMarker(args);
                 break;
+            case 'addMarkers':
+                this._handleAddMarkers(args);
+                break;
+            case 'setClusters':
+                this._handleSetClusters(args);
+                break;
+            case 'updateViewport':
+                this._handleUpdateViewport(args);
+                break;
             case 'removeMarker':
-                this._handleRemoveMarker(args.index);
+                this._handleRemoveMarker(args.id);
+                break;
+            case 'updateMarker':
+                this._handleUpdateMarker(args);
+                break;
+            case 'defineMarkerStyles':
+                zkoss.component.map.core.MarkerStyles.define(this, args);
                 break;
             case 'clearMarkers':
                 this._handleClearMarkers();
@@ -238,53 +617,432 @@ zkoss.component.map.google.GMMap = zk.$extends(zul.Widget, {
             case 'setMapView':
                 this._handleSetMapView(args.lat, args.lng, args.zoom);
                 break;
+            case 'setZoom':
+                this._handleSetZoom(args.zoom);
+                break;
+            case 'updateDataset':
+                this._handleUpdateDataset(args);
+                break;
+            case 'updateShapes':
+                this._handleUpdateShapes(args);
+                break;
+            case 'updateHeatmap':
+                this._handleUpdateHeatmap(args);
+                break;
+            case 'trackFrame':
+                this._handleTrackFrame(args);
+                break;
             default:
                 this.$supers(zkoss.component.map.google.GMMap, 'service_', arguments);
         }
     },
+    
+    // Aplicar en una sola pasada la lista de comandos combinada en el servidor
+    _applyBatch: function (ops) {
+        for (let i = 0; i < ops.length; i++) {
+            this.service_(ops[i][0], ops[i][1]);
+        }
+    },
 
     // Añadir marcador
     _handleAddMarker: function (markerData) {
-        if (!this._map) return;
+        if (!this._map) {
+            this._queuePending('_handleAddMarker', markerData);
+            return;
+        }
+
+        this._addMarkerToMap(markerData);
+    },
+
+    // Encolar un bloque de una carga masiva
+    _handleAddMarkers: function (chunk) {
+        if (!this._map) {
+            this._queuePending('_handleAddMarkers', chunk);
+            return;
+        }
+
+        (this._chunks || (this._chunks = [])).push(chunk);
+        if (!this._chunkTimer) {
+            this._scheduleChunk();
+        }
+    },
+
+    // Dibujar el siguiente bloque cediendo antes el control al navegador
+    _scheduleChunk: function () {
+        const self = this;
+        this._chunkTimer = setTimeout(function () {
+            self._chunkTimer = null;
+            const chunk = self._chunks.shift();
+            if (chunk) {
+                self._applyChunk(chunk);
+            }
+            if (self._chunks.length) {
+                self._scheduleChunk();
+            }
+        }, 0);
+    },
+
+    // Dibujar un bloque completo en una sola pasada
+    _applyChunk: function (chunk) {
+        // En el modo webgl el bloque trae arreglos planos en lugar de filas
+        const rows = chunk.arrays
+            ? zkoss.component.map.core.MarkerCodec.decodeArrays(chunk.arrays) : chunk.markers;
+        for (let i = 0; i < rows.length; i++) {
+            this._addMarkerToMap(chunk.arrays ? rows[i] : this._rowToMarker(rows[i]), true);
+        }
 
-        // Añadir marcador al final del array
-        const index = this._markers.length;
-        this._addMarkerToMap(markerData, index);
-        this._markers().push({
-            lat: markerData.lat,
-            lng: markerData.lng,
-            marker: this._markers[index].marker
+        // Notificar el avance (solo viaja al servidor si hay un listener)
+        this.fire('onMarkersLoad', {
+            data: [chunk.loaded, chunk.total]
         });
     },
 
+    // Reemplazar los clusters y marcadores individuales del zoom actual
+    _handleSetClusters: function (data) {
+        this._clusters = data;
+        if (!this._map) return;
+
+        this._clearClusterMarkers();
+        this._handleClearMarkers();
+
+        const clusters = data.clusters;
+        for (let i = 0; i < clusters.length; i++) {
+            this._addClusterToMap(clusters[i]);
+        }
+        const singles = data.markers;
+        for (let i = 0; i < singles.length; i++) {
+            this._addMarkerToMap(this._rowToMarker(singles[i]), true);
+        }
+    },
+
+    // Aplicar las altas y bajas de marcadores del área visible
+    _handleUpdateViewport: function (diff) {
+        if (!this._map) {
+            this._queuePending('_handleUpdateViewport', diff);
+            return;
+        }
+
+        const removed = diff.remove;
+        for (let i = 0; i < removed.length; i++) {
+            this._handleRemoveMarker(removed[i]);
+        }
+        const added = diff.add;
+        for (let i = 0; i < added.length; i++) {
+            this._addMarkerToMap(this._rowToMarker(added[i]), true);
+        }
+    },
+
     // Eliminar marcador
-    _handleRemoveMarker: function (index) {
-        if (!this._map || !this._markers[index]) return;
+    _handleRemoveMarker: function (id) {
+        if (!this._map) {
+            this._queuePending('_handleRemoveMarker', id);
+            return;
+        }
+        if (!this._markers[id]) return;
 
         // Eliminar marcador del mapa
-        this._markers[index].marker.setMap(null);
+        this._markers[id].marker.setMap(null);
+        delete this._markers[id];
+    },
+
+    // Aplicar solo los campos de un marcador que cambiaron
+    _handleUpdateMarker: function (changes) {
+        if (!this._map) {
+            this._queuePending('_handleUpdateMarker', changes);
+            return;
+        }
+        zkoss.component.map.core.MarkerAnimator.finish(this);
+        const entry = this._markers[changes.id];
+        if (entry) {
+            this._updateEntry(entry, changes);
+        }
+    },
+
+    // Aplicar a un marcador dibujado los campos presentes en 'changes'
+    _updateEntry: function (entry, changes) {
+        if (changes.lat !== undefined) {
+            entry.lat = changes.lat;
+            entry.lng = changes.lng;
+            entry.marker.setPosition({ lat: changes.lat, lng: changes.lng });
+        }
+        if (changes.title !== undefined) {
+            entry.title = changes.title;
+            entry.marker.setTitle(changes.title || '');
+        }
+        if (changes.description !== undefined) {
+            entry.description = changes.description;
+        }
+        if (changes.style !== undefined) {
+            const style = this._markerStyle(changes.style);
+            entry.style = changes.style;
+            entry.marker.setIcon(style.icon);
+            entry.marker.setLabel(style.label);
+        }
+    },
+
+    // Aplicar una versión del conjunto compartido: el estado completo
+    // (reset) o las claves eliminadas y los marcadores nuevos o modificados
+    _handleUpdateDataset: function (data) {
+        if (!this._map) {
+            if (data.reset || !this._pendingDataset) {
+                this._pendingDataset = [];
+            }
+            this._pendingDataset.push(data);
+            return;
+        }
 
-        // Eliminar del array
-        this._markers.splice(index, 1);
+        if (data.reset) {
+            for (const id in this._datasetMarkers) {
+                this._datasetMarkers[id].marker.setMap(null);
+            }
+            this._datasetMarkers = {};
+        } else {
+            for (let i = 0; i < data.remove.length; i++) {
+                const entry = this._datasetMarkers[data.remove[i]];
+                if (entry) {
+                    entry.marker.setMap(null);
+                    delete this._datasetMarkers[data.remove[i]];
+                }
+            }
+        }
+        const markers = zkoss.component.map.core.MarkerCodec.decode(data.markers);
+        for (let i = 0; i < markers.length; i++) {
+            const entry = this._datasetMarkers[markers[i].id];
+            if (entry) {
+                this._updateEntry(entry, markers[i]);
+            } else {
+                this._addMarkerToMap(markers[i], true, true);
+            }
+        }
+    },
+
+    // Guardar un comando de marcadores recibido antes de crear el mapa
+    _queuePending: function (handler, data) {
+        (this._pendingOps || (this._pendingOps = [])).push([handler, data]);
+    },
+
+    // Aplicar, en el orden en que llegaron, los comandos de marcadores
+    // recibidos antes de crear el mapa
+    _applyPendingOps: function () {
+        const pending = this._pendingOps;
+        this._pendingOps = null;
+        if (pending) {
+            for (let i = 0; i < pending.length; i++) {
+                this[pending[i][0]](pending[i][1]);
+            }
+        }
+    },
+
+    // Aplicar las versiones del conjunto recibidas antes de crear el mapa
+    _applyPendingDataset: function () {
+        const pending = this._pendingDataset;
+        this._pendingDataset = null;
+        if (pending) {
+            for (let i = 0; i < pending.length; i++) {
+                this._handleUpdateDataset(pending[i]);
+            }
+        }
+    },
+
+    // Celdas del mapa de calor enviadas por el servidor
+    _handleUpdateHeatmap: function (data) {
+        this._heatmapData = data && {
+            zoom: data.zoom,
+            cell: data.cell,
+            max: data.max,
+            cells: zkoss.component.map.core.MarkerCodec.decodeCells(data)
+        };
+        this._drawHeatmap();
+    },
+
+    // Dibujar el mapa de calor en el canvas de un OverlayView, del tamaño
+    // del mapa; Google Maps llama a draw() al cambiar el zoom y se vuelve a
+    // dibujar al terminar cada desplazamiento
+    _drawHeatmap: function () {
+        if (!this._map) return;
+
+        const data = this._heatmap && this._heatmapData;
+        let overlay = this._heatmapOverlay;
+        if (!data) {
+            if (overlay) {
+                overlay.setMap(null);
+                this._heatmapOverlay = null;
+            }
+            return;
+        }
+        if (!overlay) {
+            const self = this;
+            overlay = new google.maps.OverlayView();
+            overlay.onAdd = function () {
+                const canvas = document.createElement('canvas');
+                canvas.style.position = 'absolute';
+                canvas.style.pointerEvents = 'none';
+                this.getPanes().overlayLayer.appendChild(canvas);
+                this.canvas = canvas;
+            };
+            overlay.draw = function () {
+                self._drawHeatmap();
+            };
+            overlay.onRemove = function () {
+                this.canvas.parentNode.removeChild(this.canvas);
+                this.canvas = null;
+            };
+            overlay.setMap(this._map);
+            this._heatmapOverlay = overlay;
+            return;
+        }
+
+        const projection = overlay.getProjection();
+        const bounds = this._map.getBounds();
+        const canvas = overlay.canvas;
+        if (!projection || !bounds || !canvas) return;
+
+        const node = this.$n();
+        canvas.width = node.offsetWidth;
+        canvas.height = node.offsetHeight;
+        const origin = projection.fromLatLngToDivPixel(new google.maps.LatLng(
+            bounds.getNorthEast().lat(), bounds.getSouthWest().lng()));
+        canvas.style.left = origin.x + 'px';
+        canvas.style.top = origin.y + 'px';
+
+        // Hasta que lleguen las celdas del zoom nuevo se escalan las anteriores
+        const renderer = zkoss.component.map.core.HeatmapRenderer;
+        const scale = Math.pow(2, this._map.getZoom() - data.zoom);
+        const points = new Array(data.cells.length);
+        for (let i = 0; i < data.cells.length; i++) {
+            const cell = data.cells[i];
+            const p = projection.fromLatLngToDivPixel(new google.maps.LatLng(cell.lat, cell.lng));
+            points[i] = [p.x - origin.x, p.y - origin.y, renderer.intensity(cell.count, data.max)];
+        }
+        renderer.draw(canvas, points, Math.max(1, Math.round(data.cell * scale)));
+    },
+
+    // Mover los marcadores de un cuadro del seguimiento en vivo
+    _handleTrackFrame: function (frame) {
+        if (!this._map) {
+            this._queuePending('_handleTrackFrame', frame);
+            return;
+        }
+        zkoss.component.map.core.MarkerAnimator.apply(this, frame, this._markers, this._moveEntry);
+    },
+
+    // Mover el marcador dibujado de una entrada
+    _moveEntry: function (entry, lat, lng) {
+        entry.marker.setPosition({ lat: lat, lng: lng });
+    },
+
+    // Aplicar las formas enviadas por el servidor: todas con el detalle del
+    // zoom actual (reset) o las eliminadas y las nuevas
+    _handleUpdateShapes: function (data) {
+        if (!this._map) {
+            if (data.reset || !this._pendingShapes) {
+                this._pendingShapes = [];
+            }
+            this._pendingShapes.push(data);
+            return;
+        }
+
+        if (data.reset) {
+            for (const id in this._shapes) {
+                this._shapes[id].setMap(null);
+            }
+            this._shapes = {};
+        } else {
+            for (let i = 0; i < data.remove.length; i++) {
+                const overlay = this._shapes[data.remove[i]];
+                if (overlay) {
+                    overlay.setMap(null);
+                    delete this._shapes[data.remove[i]];
+                }
+            }
+        }
+        for (let i = 0; i < data.shapes.length; i++) {
+            this._addShapeToMap(data.shapes[i], data.p);
+        }
+
+        // Con formas el servidor necesita el zoom para enviar su detalle
+        const first = !this._shapeCount;
+        this._shapeCount = data.count;
+        if (first && data.count) {
+            this._reportViewport(true);
+        }
+    },
+
+    // Dibujar una línea o un polígono; sin descripción no captura los
+    // clics, que llegan directamente al mapa
+    _addShapeToMap: function (shape, precision) {
+        const path = zkoss.component.map.core.MarkerCodec.decodePath(shape, precision)
+            .map(function (vertex) {
+                return { lat: vertex[0], lng: vertex[1] };
+            });
+        const options = {
+            map: this._map,
+            path: path,
+            clickable: !!shape.description,
+            strokeColor: shape.color || '#3388FF',
+            strokeWeight: 3
+        };
+        let overlay;
+        if (shape.type === 'polygon') {
+            options.fillColor = options.strokeColor;
+            options.fillOpacity = 0.2;
+            overlay = new google.maps.Polygon(options);
+        } else {
+            overlay = new google.maps.Polyline(options);
+        }
+        if (shape.description) {
+            const self = this;
+            overlay.addListener('click', function (event) {
+                if (!self._infoWindow) {
+                    self._infoWindow = new google.maps.InfoWindow();
+                }
+                self._infoWindow.setContent(shape.description);
+                self._infoWindow.setPosition(event.latLng);
+                self._infoWindow.open(self._map);
+                // Las formas no son marcadores: el clic sigue siendo en el mapa
+                self.fire('onMapClick', {
+                    data: [event.latLng.lat(), event.latLng.lng()]
+                }, { toServer: true });
+            });
+        }
+        this._shapes[shape.id] = overlay;
+    },
+
+    // Aplicar las formas recibidas antes de crear el mapa
+    _applyPendingShapes: function () {
+        const pending = this._pendingShapes;
+        this._pendingShapes = null;
+        if (pending) {
+            for (let i = 0; i < pending.length; i++) {
+                this._handleUpdateShapes(pending[i]);
+            }
+        }
     },
 
     // Limpiar todos los marcadores
     _handleClearMarkers: function () {
-        if (!this._map) return;
+        if (!this._map) {
+            this._pendingMarkers = null;
+            this._pendingOps = null;
+            return;
+        }
 
         // Eliminar todos los marcadores del mapa
-        for (let i = 0; i < this._markers.length; i++) {
-            if (this._markers[i].marker) {
-                this._markers[i].marker.setMap(null);
-            }
+        for (const id in this._markers) {
+            this._markers[id].marker.setMap(null);
         }
 
-        // Limpiar array
-        this._markers = [];
+        // Limpiar marcadores y bloques pendientes
+        this._markers = {};
+        if (this._chunks) {
+            this._chunks.length = 0;
+        }
     },
 
     // Centrar mapa
     _handleCenterMap: function (lat, lng) {
+        this._latitude = lat;
+        this._longitude = lng;
         if (!this._map) return;
 
         this._map.setCenter({ lat: lat, lng: lng });
@@ -292,9 +1050,20 @@ zkoss.component.map.google.GMMap = zk.$extends(zul.Widget, {
 
     // Establecer vista completa
     _handleSetMapView: function (lat, lng, zoom) {
+        this._latitude = lat;
+        this._longitude = lng;
+        this._zoom = zoom;
         if (!this._map) return;
 
         this._map.setCenter({ lat: lat, lng: lng });
+        this._map.setZoom(zoom);
+    },
+
+    // Cambiar el zoom sin mover el centro
+    _handleSetZoom: function (zoom) {
+        this._zoom = zoom;
+        if (!this._map) return;
+
         this._map.setZoom(zoom);
     }
 });
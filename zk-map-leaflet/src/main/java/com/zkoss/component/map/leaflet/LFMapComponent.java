@@ -1,12 +1,6 @@
 package com.zkoss.component.map.leaflet;
 
-import org.zkoss.zk.ui.event.Events;
-import org.zkoss.zk.au.AuRequest;
-import org.zkoss.json.JSONObject;
-
 import com.zkoss.component.map.core.AbstractMapComponent;
-import com.zkoss.component.map.core.MapClickEvent;
-import com.zkoss.component.map.core.MarkerClickEvent;
 
 /**
  * Componente de mapa interactivo para ZK Framework que utiliza Leaflet
@@ -19,6 +13,7 @@ public class LFMapComponent extends AbstractMapComponent {
     private String tileUrl = "https://{s}.tile.openstreetmap.org/{z}/{x}/{y}.png"; // URL para los tiles
     private String attribution = "© OpenStreetMap contributors"; // Atribución para el mapa
     private String accessToken = ""; // Token de acceso para proveedores que lo requieren (Mapbox)
+    private String tileProxy; // URL base del proxy de tiles (zk-map-tiles), null = directo al proveedor
     
     public LFMapComponent() {
         super();
@@ -68,6 +63,29 @@ public class LFMapComponent extends AbstractMapComponent {
         return accessToken;
     }
     
+    /**
+     * Establece la URL base de un proxy de tiles (TileProxyServlet del
+     * módulo zk-map-tiles), por ejemplo "/zk-map/tiles". Los tiles de osm,
+     * carto y esri se piden entonces al proxy, que los comparte entre todos
+     * los usuarios; Mapbox siempre se pide directamente.
+     * @param tileProxy URL base del proxy, null para pedir al proveedor
+     */
+    public void setTileProxy(String tileProxy) {
+        this.tileProxy = tileProxy != null && tileProxy.endsWith("/")
+                ? tileProxy.substring(0, tileProxy.length() - 1) : tileProxy;
+        configureTileProvider();
+        smartUpdate("tileProxy", this.tileProxy);
+        smartUpdate("tileUrl", tileUrl);
+    }
+    
+    /**
+     * Obtiene la URL base del proxy de tiles
+     * @return URL base, null si los tiles se piden al proveedor
+     */
+    public String getTileProxy() {
+        return tileProxy;
+    }
+    
     /**
      * Configura los detalles del proveedor de tiles
      */
@@ -89,38 +107,23 @@ public class LFMapComponent extends AbstractMapComponent {
                 this.tileUrl = "https://{s}.tile.openstreetmap.org/{z}/{x}/{y}.png";
                 this.attribution = "© OpenStreetMap contributors";
         }
+        if (tileProxy != null) {
+            switch (tileProvider.toLowerCase()) {
+                case "mapbox":
+                    break;
+                case "carto":
+                case "esri":
+                    this.tileUrl = tileProxy + "/" + tileProvider.toLowerCase() + "/{z}/{x}/{y}";
+                    break;
+                default:
+                    this.tileUrl = tileProxy + "/osm/{z}/{x}/{y}";
+            }
+        }
     }
     
     @Override
-    protected void handleAddMarker(JSONObject marker) {
-        response("addMarker", marker);
-    }
-    
-    @Override
-    protected void handleRemoveMarker(int index) {
-        response("removeMarker", index);
-    }
-    
-    @Override
-    protected void handleClearMarkers() {
-        response("clearMarkers", null);
-    }
-    
-    @Override
-    protected void handleCenterMap(double lat, double lng) {
-        JSONObject data = new JSONObject();
-        data.put("lat", lat);
-        data.put("lng", lng);
-        response("centerMap", data);
-    }
-    
-    @Override
-    protected void handleSetMapView(double lat, double lng, int zoom) {
-        JSONObject data = new JSONObject();
-        data.put("lat", lat);
-        data.put("lng", lng);
-        data.put("zoom", zoom);
-        response("setMapView", data);
+    protected boolean supportsVectorTiles() {
+        return true;
     }
     
     @Override
@@ -131,39 +134,6 @@ public class LFMapComponent extends AbstractMapComponent {
         render(renderer, "tileUrl", tileUrl);
         render(renderer, "attribution", attribution);
         render(renderer, "accessToken", accessToken);
-    }
-    
-    // Eventos del mapa
-    @Override
-    public void service(AuRequest request, boolean everError) {
-        final String cmd = request.getCommand();
-        if ("onMapClick".equals(cmd)) {
-            handleMapClick(request);
-        } else if ("onMarkerClick".equals(cmd)) {
-            handleMarkerClick(request);
-        } else {
-            super.service(request, everError);
-        }
-    }
-    
-    private void handleMapClick(AuRequest request) {
-        final Object[] data = request.getData();
-        if (data != null && data.length >= 2) {
-            double lat = ((Number) data[0]).doubleValue();
-            double lng = ((Number) data[1]).doubleValue();
-            
-            MapClickEvent event = new MapClickEvent("onMapClick", this, lat, lng);
-            Events.postEvent(event);
-        }
-    }
-    
-    private void handleMarkerClick(AuRequest request) {
-        final Object[] data = request.getData();
-        if (data != null && data.length >= 1) {
-            int markerIndex = ((Number) data[0]).intValue();
-            
-            MarkerClickEvent event = new MarkerClickEvent("onMarkerClick", this, markerIndex);
-            Events.postEvent(event);
-        }
+        render(renderer, "tileProxy", tileProxy);
     }
 }
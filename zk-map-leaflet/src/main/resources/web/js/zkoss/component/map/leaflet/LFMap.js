@@ -5,8 +5,22 @@
 zkoss.component.map.leaflet.LFMap = zk.$extends(zul.Widget, {
     _map: null,           // Objeto de mapa Leaflet
     _tileLayer: null,     // Capa de tiles
-    _markers: [],         // Array de marcadores
+    _markers: null,       // Marcadores dibujados por identificador
+    _pendingMarkers: null, // Marcadores recibidos antes de crear el mapa
+    _pendingOps: null,    // Altas, bajas y cambios de marcadores recibidos antes de crear el mapa
     _markerLayer: null,   // Grupo de marcadores
+    _datasetMarkers: null, // Marcadores del conjunto compartido por identificador
+    _datasetLayer: null,  // Grupo de marcadores del conjunto compartido
+    _pendingDataset: null, // Versiones del conjunto recibidas antes de crear el mapa
+    _datasetTiles: null,  // Capa de tiles vectoriales del conjunto compartido
+    _datasetTilesUrl: null, // URL de los tiles vectoriales en espera de Leaflet.VectorGrid
+    _shapes: null,        // Líneas y polígonos dibujados por identificador
+    _shapeLayer: null,    // Grupo de líneas y polígonos
+    _shapeCount: 0,       // Formas recibidas (el zoom se informa si hay alguna)
+    _pendingShapes: null, // Formas recibidas antes de crear el mapa
+    _heatmap: false,      // Mapa de calor agregado en el servidor
+    _heatmapData: null,   // Últimas celdas recibidas {zoom, cell, max, cells}
+    _heatmapCanvas: null, // Canvas del mapa de calor
     _latitude: 40.4168,   // Latitud inicial
     _longitude: -3.7038,  // Longitud inicial
     _zoom: 10,            // Zoom inicial
@@ -16,6 +30,21 @@ zkoss.component.map.leaflet.LFMap = zk.$extends(zul.Widget, {
     _tileUrl: 'https://{s}.tile.openstreetmap.org/{z}/{x}/{y}.png', // URL de tiles
     _attribution: '© OpenStreetMap contributors', // Atribución
     _accessToken: '',     // Token para Mapbox
+    _tileProxy: null,     // URL base del proxy de tiles (zk-map-tiles)
+    _chunks: null,        // Bloques de carga masiva pendientes de dibujar
+    _chunkTimer: null,    // Temporizador del siguiente bloque
+    _clustering: false,   // Agrupación de marcadores en el servidor
+    _clusters: null,      // Últimos clusters recibidos
+    _clusterLayer: null,  // Grupo de clusters
+    _viewportStreaming: false, // Marcadores enviados según el área visible
+    _viewportMargin: 0.5, // Margen del área pedida, proporcional a la visible
+    _loadedBounds: null,  // Área (con margen) cuyos marcadores ya se tienen
+    _reportedZoom: null,  // Último zoom informado al servidor
+    _markersDraggable: false, // Marcadores arrastrables
+    _viewportEventDelay: 300, // Espera tras el último movimiento antes de onViewportChange
+    _dragEventInterval: 150,  // Intervalo mínimo entre eventos onMarkerDrag
+    _lazyInit: false,     // Crear el mapa cuando se vea por primera vez
+    _renderMode: 'dom',   // Dibujo de los marcadores (dom, canvas, webgl)
     
     // Getters y Setters estándar para propiedades
     $define: {
@@ -65,25 +94,131 @@ zkoss.component.map.leaflet.LFMap = zk.$extends(zul.Widget, {
                 this._tileLayer.setAttribution(val);
             }
         },
+        // El servidor envía después tileUrl, que vuelve a crear la capa
+        tileProxy: null,
         accessToken: function (val) {
             this._accessToken = val;
             this._updateTileLayer();
+        },
+        clustering: function (val) {
+            this._clustering = val;
+            if (this._map && !val) {
+                this._clusters = null;
+                this._clusterLayer.clearLayers();
+            }
+            this._loadedBounds = null;
+        },
+        viewportStreaming: function (val) {
+            this._viewportStreaming = val;
+            if (this._map) {
+                this._handleClearMarkers();
+                this._reportViewport(true);
+            }
+        },
+        viewportMargin: null,
+        heatmap: function (val) {
+            this._heatmap = val;
+            if (!val) {
+                this._heatmapData = null;
+                this._drawHeatmap();
+            }
+            this._reportViewport(true);
+        },
+        markersDraggable: function (val) {
+            this._markersDraggable = val;
+            if (this._markers) {
+                for (const id in this._markers) {
+                    const dragging = this._markers[id].marker.dragging;
+                    if (dragging) {
+                        val ? dragging.enable() : dragging.disable();
+                    }
+                }
+            }
+        },
+        viewportEventDelay: null,
+        dragEventInterval: null,
+        lazyInit: null,
+        // El servidor redibuja el widget cuando cambia
+        renderMode: null
+    },
+    
+    // Lista completa de marcadores enviada por el servidor (array o JSON en texto)
+    setMarkers: function (val) {
+        const markers = typeof val === 'string' ? JSON.parse(val) : (val || []);
+        if (!this._map) {
+            this._pendingMarkers = markers;
+            this._pendingOps = null;
+            return;
         }
+        
+        this._handleClearMarkers();
+        for (let i = 0; i < markers.length; i++) {
+            this._addMarkerToMap(markers[i]);
+        }
+    },
+    
+    // Lista de marcadores en el formato compacto (markerEncoding="compact")
+    setEncodedMarkers: function (encoded) {
+        this.setMarkers(zkoss.component.map.core.MarkerCodec.decode(encoded));
+    },
+    
+    // Lista de marcadores en arreglos planos (renderMode="webgl")
+    setMarkerArrays: function (encoded) {
+        this.setMarkers(zkoss.component.map.core.MarkerCodec.decodeArrays(encoded));
+    },
+    
+    // Clusters iniciales enviados por el servidor
+    setClusters: function (data) {
+        this._handleSetClusters(data);
+    },
+    
+    // Estado inicial del conjunto de marcadores compartido
+    setDatasetMarkers: function (data) {
+        this._handleUpdateDataset(data);
+    },
+    
+    // Estado inicial de las líneas y polígonos
+    setShapes: function (data) {
+        this._handleUpdateShapes(data);
+    },
+    
+    // Definiciones de los estilos de marcador, antes que los marcadores
+    setMarkerStyles: function (styles) {
+        zkoss.component.map.core.MarkerStyles.define(this, styles);
     },
     
     // Creación del widget
     bind_: function () {
         this.$supers(zkoss.component.map.leaflet.LFMap, 'bind_', arguments);
         
-        // Verificar que Leaflet esté cargado
-        if (typeof L === 'undefined') {
-            console.error('Leaflet no está disponible');
-            this.$n().innerHTML = '<div class="lfmap-error">Error: Leaflet no está disponible</div>';
+        // Creación diferida: el servidor envía el estado cuando el mapa se ve
+        if (this._lazyInit) {
+            const wgt = this;
+            zkoss.component.map.core.MapVisibility.observe(this, function () {
+                // La librería se carga mientras llega el estado
+                zkoss.component.map.core.MapLoader.load('leaflet').catch(function () {});
+                wgt.fire('onMapShow', null, {toServer: true});
+            });
             return;
         }
         
-        // Inicializar el mapa
-        this._initMap();
+        // Leaflet se carga con el primer mapa de la página
+        const loader = zkoss.component.map.core.MapLoader;
+        if (loader.isLoaded('leaflet')) {
+            this._initMap();
+            return;
+        }
+        const self = this;
+        loader.load('leaflet').then(function () {
+            if (self.desktop && !self._map) {
+                self._initMap();
+            }
+        }, function (error) {
+            console.error('Leaflet no está disponible', error);
+            if (self.desktop) {
+                self.$n().innerHTML = '<div class="lfmap-error">Error: Leaflet no está disponible</div>';
+            }
+        });
     },
     
     // Inicialización del mapa
@@ -91,10 +226,13 @@ zkoss.component.map.leaflet.LFMap = zk.$extends(zul.Widget, {
         const node = this.$n();
         
         // Crear el mapa
+        // Leaflet no tiene WebGL: fuera del modo dom los marcadores (y las
+        // formas) se dibujan en un canvas
         this._map = L.map(node, {
             center: [this._latitude, this._longitude],
             zoom: this._zoom,
-            zoomControl: this._showControls
+            zoomControl: this._showControls,
+            preferCanvas: this._renderMode !== 'dom'
         });
         
         // Añadir capa de tiles
@@ -103,15 +241,28 @@ zkoss.component.map.leaflet.LFMap = zk.$extends(zul.Widget, {
         // Configurar eventos
         this._setupEvents();
         
-        // Crear capa de marcadores
+        // Crear capas de formas, marcadores y clusters
+        this._shapeLayer = L.layerGroup().addTo(this._map);
+        this._shapes = {};
+        this._datasetLayer = L.layerGroup().addTo(this._map);
         this._markerLayer = L.layerGroup().addTo(this._map);
+        this._clusterLayer = L.layerGroup().addTo(this._map);
+        this._markers = {};
+        this._datasetMarkers = {};
         
-        // Si hay marcadores, añadirlos
-        if (this._markers && this._markers.length > 0) {
-            for (let i = 0; i < this._markers.length; i++) {
-                this._addMarkerToMap(this._markers[i], i);
+        // Si hay clusters o marcadores, añadirlos
+        this._reportViewport(true);
+        if (this._clusters) {
+            this._handleSetClusters(this._clusters);
+        } else if (this._pendingMarkers) {
+            for (let i = 0; i < this._pendingMarkers.length; i++) {
+                this._addMarkerToMap(this._pendingMarkers[i]);
             }
         }
+        this._pendingMarkers = null;
+        this._applyPendingOps();
+        this._applyPendingDataset();
+        this._applyPendingShapes();
     },
     
     // Actualizar capa de tiles
@@ -148,7 +299,8 @@ zkoss.component.map.leaflet.LFMap = zk.$extends(zul.Widget, {
                     }
                     break;
                 case 'esri':
-                    this._tileLayer.setUrl('https://server.arcgisonline.com/ArcGIS/rest/services/World_Imagery/MapServer/tile/{z}/{y}/{x}');
+                    this._tileLayer.setUrl(this._proxyUrl('esri',
+                        'https://server.arcgisonline.com/ArcGIS/rest/services/World_Imagery/MapServer/tile/{z}/{y}/{x}'));
                     break;
             }
         }
@@ -162,12 +314,18 @@ zkoss.component.map.leaflet.LFMap = zk.$extends(zul.Widget, {
                     }
                     break;
                 case 'carto':
-                    this._tileLayer.setUrl('https://{s}.basemaps.cartocdn.com/rastertiles/voyager/{z}/{x}/{y}{r}.png');
+                    this._tileLayer.setUrl(this._proxyUrl('carto-voyager',
+                        'https://{s}.basemaps.cartocdn.com/rastertiles/voyager/{z}/{x}/{y}{r}.png'));
                     break;
             }
         }
     },
     
+    // URL de una capa a través del proxy de tiles, si está configurado
+    _proxyUrl: function (layer, url) {
+        return this._tileProxy ? this._tileProxy + '/' + layer + '/{z}/{x}/{y}' : url;
+    },
+    
     // Configurar eventos del mapa
     _setupEvents: function () {
         const self = this;
@@ -178,38 +336,230 @@ zkoss.component.map.leaflet.LFMap = zk.$extends(zul.Widget, {
                 data: [event.latlng.lat, event.latlng.lng]
             }, { toServer: true });
         });
+        
+        // Informar el área visible al terminar cada desplazamiento o zoom
+        this._map.on('moveend', function () {
+            self._drawHeatmap();
+            self._reportViewport(false);
+            self._fireViewportChange();
+        });
+    },
+    
+    // Área visible [south, west, north, east]; east puede pasar de 180
+    _visibleBounds: function () {
+        const bounds = this._map.getBounds();
+        return [bounds.getSouth(), bounds.getWest(), bounds.getNorth(), bounds.getEast()];
+    },
+    
+    // Datos de onViewportChange: [lat, lng, zoom, south, west, north, east]
+    _viewportChangeData: function () {
+        if (!this._map) return null;
+        
+        const center = this._map.getCenter();
+        return [center.lat, this._wrapLng(center.lng), this._map.getZoom()]
+            .concat(this._normalizeBounds(this._visibleBounds()));
     },
     
-    // Añadir un marcador al mapa
-    _addMarkerToMap: function (markerData, index) {
+    // Informar el área visible cuando pasan viewportEventDelay ms sin moverse
+    _fireViewportChange: function () {
         const self = this;
-        const marker = L.marker([markerData.lat, markerData.lng], {
-            title: markerData.title || ''
-        }).addTo(this._markerLayer);
+        zkoss.component.map.core.MapEvents.debounce(this, 'onViewportChange',
+            this._viewportEventDelay, function () {
+                const data = self._viewportChangeData();
+                return data && { data: data };
+            });
+    },
+    
+    // Informar la posición de un marcador arrastrado (regulada por
+    // dragEventInterval; al soltarlo se envía siempre)
+    _markerDragged: function (entry, lat, lng, end) {
+        entry.lat = lat;
+        entry.lng = this._wrapLng(lng);
+        const data = { data: [entry.id, entry.lat, entry.lng, end] };
+        const events = zkoss.component.map.core.MapEvents;
+        if (end) {
+            events.flush(this, 'onMarkerDrag', data);
+        } else {
+            events.throttle(this, 'onMarkerDrag', this._dragEventInterval, data);
+        }
+    },
+    
+    // Llevar una longitud al rango [-180, 180)
+    _wrapLng: function (lng) {
+        return ((lng + 180) % 360 + 360) % 360 - 180;
+    },
+    
+    // Informar al servidor el zoom y el área visible con margen, solo si
+    // la vista salió del área ya cargada o cambió el zoom
+    _reportViewport: function (force) {
+        if (!this._map || (!this._clustering && !this._viewportStreaming && !this._shapeCount
+                && !this._heatmap)) return;
         
-        // Guardar referencia al marcador
-        this._markers[index] = {
+        const view = this._visibleBounds();
+        const zoom = this._map.getZoom();
+        if (!force && zoom === this._reportedZoom && ((!this._viewportStreaming && !this._clustering && !this._heatmap)
+                || (this._loadedBounds && this._containsBounds(this._loadedBounds, view)))) {
+            return;
+        }
+        
+        this._loadedBounds = this._expandBounds(view, this._viewportMargin);
+        this._reportedZoom = zoom;
+        this.fire('onMapViewport', {
+            data: [zoom].concat(this._normalizeBounds(this._loadedBounds))
+        }, { toServer: true });
+    },
+    
+    // Área [sur, oeste, norte, este] ampliada con un margen proporcional a su tamaño
+    _expandBounds: function (view, margin) {
+        const dLat = (view[2] - view[0]) * margin;
+        const dLng = (view[3] - view[1]) * margin;
+        return [Math.max(-90, view[0] - dLat), view[1] - dLng,
+                Math.min(90, view[2] + dLat), view[3] + dLng];
+    },
+    
+    // Indica si un área contiene a otra (longitudes sin normalizar)
+    _containsBounds: function (outer, inner) {
+        if (inner[0] < outer[0] || inner[2] > outer[2]) return false;
+        if (outer[3] - outer[1] >= 360) return true;
+        const west = inner[1] - 360 * Math.floor((inner[1] - outer[1]) / 360);
+        return west + (inner[3] - inner[1]) <= outer[3];
+    },
+    
+    // Longitudes en [-180, 180]; si el área cruza el antimeridiano el oeste queda mayor que el este
+    _normalizeBounds: function (bounds) {
+        if (bounds[3] - bounds[1] >= 360) {
+            return [bounds[0], -180, bounds[2], 180];
+        }
+        const wrap = function (lng) {
+            return ((lng + 180) % 360 + 360) % 360 - 180;
+        };
+        return [bounds[0], wrap(bounds[1]), bounds[2], wrap(bounds[3])];
+    },
+    
+    // Dibujar un cluster con la cantidad de marcadores que agrupa
+    _addClusterToMap: function (cluster) {
+        const self = this;
+        const count = cluster[2];
+        const size = count < 10 ? 'small' : count < 100 ? 'medium' : 'large';
+        const marker = L.marker([cluster[0], cluster[1]], {
+            icon: L.divIcon({
+                html: '<div><span>' + count + '</span></div>',
+                className: 'lfmap-cluster lfmap-cluster-' + size,
+                iconSize: L.point(40, 40)
+            })
+        }).addTo(this._clusterLayer);
+        
+        marker.on('click', function () {
+            self.fire('onClusterClick', {
+                data: [cluster[3]]
+            }, { toServer: true });
+        });
+    },
+    
+    // Convertir una fila [lat, lng, title, description, id, style] en un
+    // marcador; el estilo solo viene si no es el por defecto
+    _rowToMarker: function (row) {
+        return {
+            lat: row[0],
+            lng: row[1],
+            title: row[2],
+            description: row[3],
+            id: row[4],
+            style: row[5] || 0
+        };
+    },
+    
+    // Añadir un marcador al mapa; los del conjunto compartido van en su
+    // propia capa y no se arrastran. Fuera del modo dom es un círculo del
+    // canvas del mapa, que Leaflet también detecta al hacer clic
+    _addMarkerToMap: function (markerData, dataset) {
+        const self = this;
+        const marker = (this._renderMode !== 'dom'
+            ? L.circleMarker([markerData.lat, markerData.lng], this._markerPath(markerData.style))
+            : L.marker([markerData.lat, markerData.lng], {
+                title: markerData.title || '',
+                icon: this._markerIcon(markerData.style),
+                draggable: this._markersDraggable && !dataset
+            })).addTo(dataset ? this._datasetLayer : this._markerLayer);
+        
+        // Guardar referencia al marcador por su identificador
+        const entry = (dataset ? this._datasetMarkers : this._markers)[markerData.id] = {
             ...markerData,
             marker: marker
         };
         
-        // Popup para descripción
+        // Popup para descripción (Leaflet lo abre al hacer clic)
         if (markerData.description) {
             marker.bindPopup(markerData.description);
-            
-            marker.on('click', function () {
-                marker.openPopup();
-                self.fire('onMarkerClick', {
-                    data: [index]
-                }, { toServer: true });
-            });
-        } else {
-            marker.on('click', function () {
-                self.fire('onMarkerClick', {
-                    data: [index]
-                }, { toServer: true });
+        }
+        marker.on('click', function () {
+            self.fire('onMarkerClick', {
+                data: [markerData.id]
+            }, { toServer: true });
+        });
+        marker.on('drag dragend', function (event) {
+            const latlng = marker.getLatLng();
+            self._markerDragged(entry, latlng.lat, latlng.lng, event.type === 'dragend');
+        });
+    },
+    
+    // Icono compartido de un estilo de marcador
+    _markerIcon: function (style) {
+        return zkoss.component.map.core.MarkerStyles.get(this, style, 'leaflet', this._createMarkerIcon);
+    },
+    
+    // Opciones compartidas del círculo de un estilo de marcador en canvas
+    _markerPath: function (style) {
+        return zkoss.component.map.core.MarkerStyles.get(this, style, 'leaflet-canvas', this._createMarkerPath);
+    },
+    
+    // Crear las opciones del círculo de una definición: su color y tamaño
+    // (una imagen se reduce a un círculo del tamaño indicado)
+    _createMarkerPath: function (def) {
+        def = def || {};
+        return {
+            radius: (def.size || 12) / 2,
+            color: '#FFFFFF',
+            weight: 2,
+            fillColor: def.color || '#3388FF',
+            fillOpacity: 1,
+            bubblingMouseEvents: false // El clic en el marcador no es un clic en el mapa
+        };
+    },
+    
+    // Crear el icono de una definición de estilo: la imagen indicada o un
+    // círculo de color, con el texto fijo encima si lo tiene
+    _createMarkerIcon: function (def) {
+        if (!def) {
+            return L.Marker.prototype.options.icon;
+        }
+        const size = def.size || (def.icon ? 32 : 16);
+        // Las imágenes apuntan con su borde inferior y los círculos con su centro
+        const anchor = def.icon ? [size / 2, size] : [size / 2, size / 2];
+        if (def.icon && def.label == null) {
+            return L.icon({
+                iconUrl: def.icon,
+                iconSize: [size, size],
+                iconAnchor: anchor,
+                popupAnchor: [0, -anchor[1]]
             });
         }
+        let html = def.icon
+            ? '<img src="' + zUtl.encodeXML(def.icon) + '" width="' + size + '" height="' + size + '">'
+            : '<span style="display:block;width:100%;height:100%;box-sizing:border-box;border-radius:50%;'
+                + 'border:2px solid #FFFFFF;background:' + zUtl.encodeXML(def.color || '#3388FF') + '"></span>';
+        if (def.label != null) {
+            html += '<span style="position:absolute;left:50%;bottom:100%;transform:translateX(-50%);'
+                + 'white-space:nowrap;font:12px sans-serif;color:#333333;text-shadow:0 0 3px #FFFFFF">'
+                + zUtl.encodeXML(def.label) + '</span>';
+        }
+        return L.divIcon({
+            className: '',
+            html: html,
+            iconSize: [size, size],
+            iconAnchor: anchor,
+            popupAnchor: [0, -anchor[1]]
+        });
     },
     
     // Limpiar recursos al cerrar
@@ -223,10 +573,36 @@ zkoss.component.map.leaflet.LFMap = zk.$extends(zul.Widget, {
             this._map = null;
         }
         
+        // Cancelar carga masiva en curso
+        if (this._chunkTimer) {
+            clearTimeout(this._chunkTimer);
+            this._chunkTimer = null;
+        }
+        this._chunks = null;
+        
         // Limpiar referencias
         this._tileLayer = null;
         this._markerLayer = null;
-        this._markers = [];
+        this._clusterLayer = null;
+        this._markers = null;
+        this._pendingMarkers = null;
+        this._pendingOps = null;
+        this._datasetLayer = null;
+        this._datasetMarkers = null;
+        this._pendingDataset = null;
+        this._datasetTiles = null;
+        this._datasetTilesUrl = null;
+        this._shapeLayer = null;
+        this._shapes = null;
+        this._shapeCount = 0;
+        this._pendingShapes = null;
+        this._heatmapData = null;
+        this._heatmapCanvas = null;
+        this._loadedBounds = null;
+        this._reportedZoom = null;
+        zkoss.component.map.core.MapEvents.cancel(this);
+        zkoss.component.map.core.MarkerAnimator.cancel(this);
+        zkoss.component.map.core.MapVisibility.cancel(this);
         
         this.$supers(zkoss.component.map.leaflet.LFMap, 'unbind_', arguments);
     },
@@ -234,11 +610,29 @@ zkoss.component.map.leaflet.LFMap = zk.$extends(zul.Widget, {
     // Manejador de comandos del servidor
     service_: function (comando, args) {
         switch (comando) {
+            case 'batch':
+                this._applyBatch(args);
+                break;
             case 'addMarker':
                 this._handleAddMarker(args);
                 break;
+            case 'addMarkers':
+                this._handleAddMarkers(args);
+                break;
+            case 'setClusters':
+                this._handleSetClusters(args);
+                break;
+            case 'updateViewport':
+                this._handleUpdateViewport(args);
+                break;
             case 'removeMarker':
-                this._handleRemoveMarker(args.index);
+                this._handleRemoveMarker(args.id);
+                break;
+            case 'updateMarker':
+                this._handleUpdateMarker(args);
+                break;
+            case 'defineMarkerStyles':
+                zkoss.component.map.core.MarkerStyles.define(this, args);
                 break;
             case 'clearMarkers':
                 this._handleClearMarkers();
@@ -249,44 +643,448 @@ zkoss.component.map.leaflet.LFMap = zk.$extends(zul.Widget, {
             case 'setMapView':
                 this._handleSetMapView(args.lat, args.lng, args.zoom);
                 break;
+            case 'setZoom':
+                this._handleSetZoom(args.zoom);
+                break;
+            case 'updateDataset':
+                this._handleUpdateDataset(args);
+                break;
+            case 'updateShapes':
+                this._handleUpdateShapes(args);
+                break;
+            case 'updateHeatmap':
+                this._handleUpdateHeatmap(args);
+                break;
+            case 'trackFrame':
+                this._handleTrackFrame(args);
+                break;
             default:
                 this.$supers(zkoss.component.map.leaflet.LFMap, 'service_', arguments);
         }
     },
     
+    // Aplicar en una sola pasada la lista de comandos combinada en el servidor
+    _applyBatch: function (ops) {
+        for (let i = 0; i < ops.length; i++) {
+            this.service_(ops[i][0], ops[i][1]);
+        }
+    },
+    
     // Añadir marcador
     _handleAddMarker: function (markerData) {
+        if (!this._map) {
+            this._queuePending('_handleAddMarker', markerData);
+            return;
+        }
+        
+        this._addMarkerToMap(markerData);
+    },
+    
+    // Encolar un bloque de una carga masiva
+    _handleAddMarkers: function (chunk) {
+        if (!this._map) {
+            this._queuePending('_handleAddMarkers', chunk);
+            return;
+        }
+        
+        (this._chunks || (this._chunks = [])).push(chunk);
+        if (!this._chunkTimer) {
+            this._scheduleChunk();
+        }
+    },
+    
+    // Dibujar el siguiente bloque cediendo antes el control al navegador
+    _scheduleChunk: function () {
+        const self = this;
+        this._chunkTimer = setTimeout(function () {
+            self._chunkTimer = null;
+            const chunk = self._chunks.shift();
+            if (chunk) {
+                self._applyChunk(chunk);
+            }
+            if (self._chunks.length) {
+                self._scheduleChunk();
+            }
+        }, 0);
+    },
+    
+    // Dibujar un bloque completo en una sola pasada
+    _applyChunk: function (chunk) {
+        // En el modo webgl el bloque trae arreglos planos en lugar de filas
+        const rows = chunk.arrays
+            ? zkoss.component.map.core.MarkerCodec.decodeArrays(chunk.arrays) : chunk.markers;
+        for (let i = 0; i < rows.length; i++) {
+            this._addMarkerToMap(chunk.arrays ? rows[i] : this._rowToMarker(rows[i]));
+        }
+        
+        // Notificar el avance (solo viaja al servidor si hay un listener)
+        this.fire('onMarkersLoad', {
+            data: [chunk.loaded, chunk.total]
+        });
+    },
+    
+    // Reemplazar los clusters y marcadores individuales del zoom actual
+    _handleSetClusters: function (data) {
+        this._clusters = data;
         if (!this._map) return;
         
-        // Añadir marcador al final del array
-        const index = this._markers.length;
-        this._addMarkerToMap(markerData, index);
+        this._clusterLayer.clearLayers();
+        this._markerLayer.clearLayers();
+        this._markers = {};
+        
+        const clusters = data.clusters;
+        for (let i = 0; i < clusters.length; i++) {
+            this._addClusterToMap(clusters[i]);
+        }
+        const singles = data.markers;
+        for (let i = 0; i < singles.length; i++) {
+            this._addMarkerToMap(this._rowToMarker(singles[i]));
+        }
+    },
+    
+    // Aplicar las altas y bajas de marcadores del área visible
+    _handleUpdateViewport: function (diff) {
+        if (!this._map) {
+            this._queuePending('_handleUpdateViewport', diff);
+            return;
+        }
+        
+        const removed = diff.remove;
+        for (let i = 0; i < removed.length; i++) {
+            this._handleRemoveMarker(removed[i]);
+        }
+        const added = diff.add;
+        for (let i = 0; i < added.length; i++) {
+            this._addMarkerToMap(this._rowToMarker(added[i]));
+        }
     },
     
     // Eliminar marcador
-    _handleRemoveMarker: function (index) {
-        if (!this._map || !this._markers[index]) return;
+    _handleRemoveMarker: function (id) {
+        if (!this._map) {
+            this._queuePending('_handleRemoveMarker', id);
+            return;
+        }
+        if (!this._markers[id]) return;
         
         // Eliminar marcador del mapa
-        this._markerLayer.removeLayer(this._markers[index].marker);
+        this._markerLayer.removeLayer(this._markers[id].marker);
+        delete this._markers[id];
+    },
+    
+    // Aplicar solo los campos de un marcador que cambiaron
+    _handleUpdateMarker: function (changes) {
+        if (!this._map) {
+            this._queuePending('_handleUpdateMarker', changes);
+            return;
+        }
+        zkoss.component.map.core.MarkerAnimator.finish(this);
+        const entry = this._markers[changes.id];
+        if (entry) {
+            this._updateEntry(entry, changes);
+        }
+    },
+    
+    // Aplicar a un marcador dibujado los campos presentes en 'changes'
+    _updateEntry: function (entry, changes) {
+        const marker = entry.marker;
+        if (changes.lat !== undefined) {
+            entry.lat = changes.lat;
+            entry.lng = changes.lng;
+            marker.setLatLng([changes.lat, changes.lng]);
+        }
+        if (changes.title !== undefined) {
+            entry.title = changes.title;
+            marker.options.title = changes.title || '';
+            const icon = marker.getElement();
+            if (icon) {
+                icon.title = marker.options.title;
+            }
+        }
+        if (changes.description !== undefined) {
+            entry.description = changes.description;
+            if (changes.description) {
+                marker.bindPopup(changes.description);
+            } else {
+                marker.unbindPopup();
+            }
+        }
+        if (changes.style !== undefined) {
+            entry.style = changes.style;
+            if (this._renderMode !== 'dom') {
+                const path = this._markerPath(changes.style);
+                marker.setStyle(path);
+                marker.setRadius(path.radius);
+            } else {
+                marker.setIcon(this._markerIcon(changes.style));
+            }
+        }
+    },
+    
+    // Aplicar una versión del conjunto compartido: el estado completo
+    // (reset), las claves eliminadas y los marcadores nuevos o modificados,
+    // o la URL de sus tiles vectoriales (tiles)
+    _handleUpdateDataset: function (data) {
+        if (!this._map) {
+            if (data.reset || data.tiles || !this._pendingDataset) {
+                this._pendingDataset = [];
+            }
+            this._pendingDataset.push(data);
+            return;
+        }
+        
+        if (data.tiles) {
+            this._datasetLayer.clearLayers();
+            this._datasetMarkers = {};
+            this._setDatasetTiles(data.tiles);
+            return;
+        }
+        this._setDatasetTiles(null);
+        if (data.reset) {
+            this._datasetLayer.clearLayers();
+            this._datasetMarkers = {};
+        } else {
+            for (let i = 0; i < data.remove.length; i++) {
+                const entry = this._datasetMarkers[data.remove[i]];
+                if (entry) {
+                    this._datasetLayer.removeLayer(entry.marker);
+                    delete this._datasetMarkers[data.remove[i]];
+                }
+            }
+        }
+        const markers = zkoss.component.map.core.MarkerCodec.decode(data.markers);
+        for (let i = 0; i < markers.length; i++) {
+            const entry = this._datasetMarkers[markers[i].id];
+            if (entry) {
+                this._updateEntry(entry, markers[i]);
+            } else {
+                this._addMarkerToMap(markers[i], true);
+            }
+        }
+    },
+    
+    // Crear, actualizar o quitar la capa de tiles vectoriales del conjunto.
+    // Cada versión tiene su propia URL, así que basta con cambiarla.
+    // Leaflet no lee tiles vectoriales: se carga Leaflet.VectorGrid la
+    // primera vez que hacen falta
+    _setDatasetTiles: function (url) {
+        this._datasetTilesUrl = url;
+        if (!url) {
+            if (this._datasetTiles) {
+                this._map.removeLayer(this._datasetTiles);
+                this._datasetTiles = null;
+            }
+            return;
+        }
+        if (this._datasetTiles) {
+            this._datasetTiles.setUrl(url);
+            return;
+        }
+        const self = this;
+        if (!L.vectorGrid) {
+            zkoss.component.map.core.MapLoader.load('vectorgrid').then(function () {
+                if (self._map && self._datasetTilesUrl && !self._datasetTiles) {
+                    self._setDatasetTiles(self._datasetTilesUrl);
+                }
+            }, function (error) {
+                console.error('Leaflet.VectorGrid no está disponible', error);
+            });
+            return;
+        }
+        
+        this._datasetTiles = L.vectorGrid.protobuf(url, {
+            interactive: true,
+            vectorTileLayerStyles: {
+                markers: {
+                    radius: 7,
+                    weight: 2,
+                    color: '#FFFFFF',
+                    fill: true,
+                    fillColor: '#3388FF',
+                    fillOpacity: 1
+                }
+            }
+        }).addTo(this._map);
+        this._datasetTiles.on('click', function (event) {
+            const props = event.layer.properties;
+            if (props.description) {
+                L.popup().setLatLng(event.latlng).setContent(props.description).openOn(self._map);
+            }
+            self.fire('onMarkerClick', {
+                data: [props.id]
+            }, { toServer: true });
+            L.DomEvent.stop(event); // No es un clic en el mapa
+        });
+    },
+    
+    // Guardar un comando de marcadores recibido antes de crear el mapa
+    _queuePending: function (handler, data) {
+        (this._pendingOps || (this._pendingOps = [])).push([handler, data]);
+    },
+    
+    // Aplicar, en el orden en que llegaron, los comandos de marcadores
+    // recibidos antes de crear el mapa
+    _applyPendingOps: function () {
+        const pending = this._pendingOps;
+        this._pendingOps = null;
+        if (pending) {
+            for (let i = 0; i < pending.length; i++) {
+                this[pending[i][0]](pending[i][1]);
+            }
+        }
+    },
+    
+    // Aplicar las versiones del conjunto recibidas antes de crear el mapa
+    _applyPendingDataset: function () {
+        const pending = this._pendingDataset;
+        this._pendingDataset = null;
+        if (pending) {
+            for (let i = 0; i < pending.length; i++) {
+                this._handleUpdateDataset(pending[i]);
+            }
+        }
+    },
+    
+    // Celdas del mapa de calor enviadas por el servidor
+    _handleUpdateHeatmap: function (data) {
+        this._heatmapData = data && {
+            zoom: data.zoom,
+            cell: data.cell,
+            max: data.max,
+            cells: zkoss.component.map.core.MarkerCodec.decodeCells(data)
+        };
+        this._drawHeatmap();
+    },
+    
+    // Dibujar el mapa de calor en un canvas del tamaño del mapa; se vuelve
+    // a dibujar tras cada desplazamiento o zoom
+    _drawHeatmap: function () {
+        if (!this._map) return;
+        
+        const data = this._heatmap && this._heatmapData;
+        let canvas = this._heatmapCanvas;
+        if (!data) {
+            if (canvas) {
+                L.DomUtil.remove(canvas);
+                this._heatmapCanvas = null;
+            }
+            return;
+        }
+        if (!canvas) {
+            canvas = L.DomUtil.create('canvas', 'lfmap-heatmap', this._map.getPanes().overlayPane);
+            canvas.style.pointerEvents = 'none';
+            this._heatmapCanvas = canvas;
+        }
+        const size = this._map.getSize();
+        canvas.width = size.x;
+        canvas.height = size.y;
+        L.DomUtil.setPosition(canvas, this._map.containerPointToLayerPoint([0, 0]));
+        
+        // Hasta que lleguen las celdas del zoom nuevo se escalan las anteriores
+        const renderer = zkoss.component.map.core.HeatmapRenderer;
+        const scale = Math.pow(2, this._map.getZoom() - data.zoom);
+        const points = new Array(data.cells.length);
+        for (let i = 0; i < data.cells.length; i++) {
+            const cell = data.cells[i];
+            const p = this._map.latLngToContainerPoint([cell.lat, cell.lng]);
+            points[i] = [p.x, p.y, renderer.intensity(cell.count, data.max)];
+        }
+        renderer.draw(canvas, points, Math.max(1, Math.round(data.cell * scale)));
+    },
+    
+    // Mover los marcadores de un cuadro del seguimiento en vivo
+    _handleTrackFrame: function (frame) {
+        if (!this._map) {
+            this._queuePending('_handleTrackFrame', frame);
+            return;
+        }
+        zkoss.component.map.core.MarkerAnimator.apply(this, frame, this._markers, this._moveEntry);
+    },
+    
+    // Mover el marcador dibujado de una entrada
+    _moveEntry: function (entry, lat, lng) {
+        entry.marker.setLatLng([lat, lng]);
+    },
+    
+    // Aplicar las formas enviadas por el servidor: todas con el detalle del
+    // zoom actual (reset) o las eliminadas y las nuevas
+    _handleUpdateShapes: function (data) {
+        if (!this._map) {
+            if (data.reset || !this._pendingShapes) {
+                this._pendingShapes = [];
+            }
+            this._pendingShapes.push(data);
+            return;
+        }
         
-        // Eliminar del array
-        this._markers.splice(index, 1);
+        if (data.reset) {
+            this._shapeLayer.clearLayers();
+            this._shapes = {};
+        } else {
+            for (let i = 0; i < data.remove.length; i++) {
+                const layer = this._shapes[data.remove[i]];
+                if (layer) {
+                    this._shapeLayer.removeLayer(layer);
+                    delete this._shapes[data.remove[i]];
+                }
+            }
+        }
+        for (let i = 0; i < data.shapes.length; i++) {
+            this._addShapeToMap(data.shapes[i], data.p);
+        }
+        // Con formas el servidor necesita el zoom para enviar su detalle
+        const first = !this._shapeCount;
+        this._shapeCount = data.count;
+        if (first && data.count) {
+            this._reportViewport(true);
+        }
+    },
+    
+    // Dibujar una línea o un polígono
+    _addShapeToMap: function (shape, precision) {
+        const path = zkoss.component.map.core.MarkerCodec.decodePath(shape, precision);
+        const options = shape.color ? { color: shape.color } : {};
+        const layer = shape.type === 'polygon' ? L.polygon(path, options) : L.polyline(path, options);
+        if (shape.description) {
+            layer.bindPopup(shape.description);
+        }
+        this._shapeLayer.addLayer(layer);
+        this._shapes[shape.id] = layer;
+    },
+    
+    // Aplicar las formas recibidas antes de crear el mapa
+    _applyPendingShapes: function () {
+        const pending = this._pendingShapes;
+        this._pendingShapes = null;
+        if (pending) {
+            for (let i = 0; i < pending.length; i++) {
+                this._handleUpdateShapes(pending[i]);
+            }
+        }
     },
     
     // Limpiar todos los marcadores
     _handleClearMarkers: function () {
-        if (!this._map) return;
+        if (!this._map) {
+            this._pendingMarkers = null;
+            this._pendingOps = null;
+            return;
+        }
         
         // Limpiar capa de marcadores
         this._markerLayer.clearLayers();
         
-        // Limpiar array
-        this._markers = [];
+        // Limpiar marcadores y bloques pendientes
+        this._markers = {};
+        if (this._chunks) {
+            this._chunks.length = 0;
+        }
     },
     
     // Centrar mapa
     _handleCenterMap: function (lat, lng) {
+        this._latitude = lat;
+        this._longitude = lng;
         if (!this._map) return;
         
         this._map.setView([lat, lng], this._map.getZoom());
@@ -294,8 +1092,19 @@ zkoss.component.map.leaflet.LFMap = zk.$extends(zul.Widget, {
     
     // Establecer vista completa
     _handleSetMapView: function (lat, lng, zoom) {
+        this._latitude = lat;
+        this._longitude = lng;
+        this._zoom = zoom;
         if (!this._map) return;
         
         this._map.setView([lat, lng], zoom);
+    },
+    
+    // Cambiar el zoom sin mover el centro
+    _handleSetZoom: function (zoom) {
+        this._zoom = zoom;
+        if (!this._map) return;
+        
+        this._map.setZoom(zoom);
     }
 });
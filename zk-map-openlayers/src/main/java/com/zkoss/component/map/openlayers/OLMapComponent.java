@@ -1,12 +1,6 @@
 package com.zkoss.component.map.openlayers;
 
-import org.zkoss.zk.ui.event.Events;
-import org.zkoss.zk.au.AuRequest;
-import org.zkoss.json.JSONObject;
-
 import com.zkoss.component.map.core.AbstractMapComponent;
-import com.zkoss.component.map.core.MapClickEvent;
-import com.zkoss.component.map.core.MarkerClickEvent;
 
 /**
  * Componente de mapa interactivo para ZK Framework que utiliza OpenLayers
@@ -15,6 +9,8 @@ public class OLMapComponent extends AbstractMapComponent {
     
     private static final long serialVersionUID = 1L;
     
+    private String tileProxy; // URL base del proxy de tiles (zk-map-tiles), null = directo al proveedor
+    
     public OLMapComponent() {
         super();
     }
@@ -24,69 +20,36 @@ public class OLMapComponent extends AbstractMapComponent {
         return "z-olmapcomponent";
     }
     
-    @Override
-    protected void handleAddMarker(JSONObject marker) {
-        response("addMarker", marker);
-    }
-    
-    @Override
-    protected void handleRemoveMarker(int index) {
-        response("removeMarker", index);
-    }
-    
-    @Override
-    protected void handleClearMarkers() {
-        response("clearMarkers", null);
+    /**
+     * Establece la URL base de un proxy de tiles (TileProxyServlet del
+     * módulo zk-map-tiles), por ejemplo "/zk-map/tiles". Las capas base
+     * (osm, satellite y terrain) se piden entonces al proxy, que comparte
+     * los tiles entre todos los usuarios.
+     * @param tileProxy URL base del proxy, null para pedir al proveedor
+     */
+    public void setTileProxy(String tileProxy) {
+        this.tileProxy = tileProxy != null && tileProxy.endsWith("/")
+                ? tileProxy.substring(0, tileProxy.length() - 1) : tileProxy;
+        smartUpdate("tileProxy", this.tileProxy);
     }
     
-    @Override
-    protected void handleCenterMap(double lat, double lng) {
-        JSONObject data = new JSONObject();
-        data.put("lat", lat);
-        data.put("lng", lng);
-        response("centerMap", data);
+    /**
+     * Obtiene la URL base del proxy de tiles
+     * @return URL base, null si los tiles se piden al proveedor
+     */
+    public String getTileProxy() {
+        return tileProxy;
     }
     
     @Override
-    protected void handleSetMapView(double lat, double lng, int zoom) {
-        JSONObject data = new JSONObject();
-        data.put("lat", lat);
-        data.put("lng", lng);
-        data.put("zoom", zoom);
-        response("setMapView", data);
+    protected void renderProperties(org.zkoss.zk.ui.sys.ContentRenderer renderer)
+            throws java.io.IOException {
+        super.renderProperties(renderer);
+        render(renderer, "tileProxy", tileProxy);
     }
     
-    // Eventos del mapa
     @Override
-    public void service(AuRequest request, boolean everError) {
-        final String cmd = request.getCommand();
-        if ("onMapClick".equals(cmd)) {
-            handleMapClick(request);
-        } else if ("onMarkerClick".equals(cmd)) {
-            handleMarkerClick(request);
-        } else {
-            super.service(request, everError);
-        }
-    }
-    
-    private void handleMapClick(AuRequest request) {
-        final Object[] data = request.getData();
-        if (data != null && data.length >= 2) {
-            double lat = ((Number) data[0]).doubleValue();
-            double lng = ((Number) data[1]).doubleValue();
-            
-            MapClickEvent event = new MapClickEvent("onMapClick", this, lat, lng);
-            Events.postEvent(event);
-        }
-    }
-    
-    private void handleMarkerClick(AuRequest request) {
-        final Object[] data = request.getData();
-        if (data != null && data.length >= 1) {
-            int markerIndex = ((Number) data[0]).intValue();
-            
-            MarkerClickEvent event = new MarkerClickEvent("onMarkerClick", this, markerIndex);
-            Events.postEvent(event);
-        }
+    protected boolean supportsVectorTiles() {
+        return true;
     }
 }
@@ -5,14 +5,47 @@
 zkoss.component.map.openlayers.OLMap = zk.$extends(zul.Widget, {
     _map: null,           // Objeto de mapa OpenLayers
     _view: null,          // Vista del mapa
-    _markers: [],         // Array de marcadores
+    _markers: null,       // Marcadores dibujados por identificador
+    _pendingMarkers: null, // Marcadores recibidos antes de crear el mapa
+    _pendingOps: null,    // Altas, bajas y cambios de marcadores recibidos antes de crear el mapa
     _markerLayer: null,   // Capa de marcadores
+    _datasetMarkers: null, // Marcadores del conjunto compartido por identificador
+    _datasetLayer: null,  // Capa de marcadores del conjunto compartido
+    _pendingDataset: null, // Versiones del conjunto recibidas antes de crear el mapa
+    _datasetTiles: null,  // Capa de tiles vectoriales del conjunto compartido
+    _shapes: null,        // Líneas y polígonos dibujados por identificador
+    _shapeLayer: null,    // Capa de líneas y polígonos
+    _shapeStyles: null,   // Estilos de forma compartidos por color
+    _shapeCount: 0,       // Formas recibidas (el zoom se informa si hay alguna)
+    _pendingShapes: null, // Formas recibidas antes de crear el mapa
+    _heatmap: false,      // Mapa de calor agregado en el servidor
+    _heatmapLayer: null,  // Capa de calor de OpenLayers
     _baseLayers: {},      // Capas base disponibles
     _latitude: 40.4168,   // Latitud inicial
     _longitude: -3.7038,  // Longitud inicial
     _zoom: 10,            // Zoom inicial
     _mapType: 'osm',      // Tipo de mapa (osm, satellite, terrain)
     _showControls: true,  // Controles visibles
+    _tileProxy: null,     // URL base del proxy de tiles (zk-map-tiles)
+    _popup: null,         // Overlay compartido para las descripciones
+    _popupContent: null,  // Contenido del popup
+    _chunks: null,        // Bloques de carga masiva pendientes de dibujar
+    _chunkTimer: null,    // Temporizador del siguiente bloque
+    _clustering: false,   // Agrupación de marcadores en el servidor
+    _clusters: null,      // Últimos clusters recibidos
+    _clusterLayer: null,  // Capa de clusters
+    _clusterStyles: null, // Estilos de cluster compartidos por cantidad
+    _batchFeatures: null, // Marcadores sueltos de la lista de comandos en curso
+    _translate: null,     // Interacción de arrastre de marcadores
+    _viewportStreaming: false, // Marcadores enviados según el área visible
+    _viewportMargin: 0.5, // Margen del área pedida, proporcional a la visible
+    _loadedBounds: null,  // Área (con margen) cuyos marcadores ya se tienen
+    _reportedZoom: null,  // Último zoom informado al servidor
+    _markersDraggable: false, // Marcadores arrastrables
+    _viewportEventDelay: 300, // Espera tras el último movimiento antes de onViewportChange
+    _dragEventInterval: 150,  // Intervalo mínimo entre eventos onMarkerDrag
+    _lazyInit: false,     // Crear el mapa cuando se vea por primera vez
+    _renderMode: 'dom',   // Dibujo de los marcadores (dom, canvas, webgl)
     
     // Getters y Setters estándar para propiedades
     $define: {
@@ -42,47 +75,128 @@ zkoss.component.map.openlayers.OLMap = zk.$extends(zul.Widget, {
                 this._updateBaseLayer();
             }
         },
+        tileProxy: function (val) {
+            this._tileProxy = val;
+            if (this._map) {
+                this._updateTileUrls();
+            }
+        },
         showControls: function (val) {
             this._showControls = val;
             if (this._map) {
                 this._updateControls();
             }
+        },
+        clustering: function (val) {
+            this._clustering = val;
+            if (this._map && !val) {
+                this._clusters = null;
+                this._clusterLayer.getSource().clear();
+            }
+            this._loadedBounds = null;
+        },
+        viewportStreaming: function (val) {
+            this._viewportStreaming = val;
+            if (this._map) {
+                this._handleClearMarkers();
+                this._reportViewport(true);
+            }
+        },
+        viewportMargin: null,
+        heatmap: function (val) {
+            this._heatmap = val;
+            if (!val) {
+                this._handleUpdateHeatmap(null);
+            }
+            this._reportViewport(true);
+        },
+        markersDraggable: function (val) {
+            this._markersDraggable = val;
+            if (this._translate) {
+                this._translate.setActive(val);
+            }
+        },
+        viewportEventDelay: null,
+        dragEventInterval: null,
+        lazyInit: null,
+        // El servidor redibuja el widget cuando cambia
+        renderMode: null
+    },
+    
+    // Lista completa de marcadores enviada por el servidor (array o JSON en texto)
+    setMarkers: function (val) {
+        const markers = typeof val === 'string' ? JSON.parse(val) : (val || []);
+        if (!this._map) {
+            this._pendingMarkers = markers;
+            this._pendingOps = null;
+            return;
+        }
+        
+        this._handleClearMarkers();
+        for (let i = 0; i < markers.length; i++) {
+            this._addMarkerToMap(markers[i]);
         }
     },
     
+    // Lista de marcadores en el formato compacto (markerEncoding="compact")
+    setEncodedMarkers: function (encoded) {
+        this.setMarkers(zkoss.component.map.core.MarkerCodec.decode(encoded));
+    },
+    
+    // Lista de marcadores en arreglos planos (renderMode="webgl")
+    setMarkerArrays: function (encoded) {
+        this.setMarkers(zkoss.component.map.core.MarkerCodec.decodeArrays(encoded));
+    },
+    
+    // Clusters iniciales enviados por el servidor
+    setClusters: function (data) {
+        this._handleSetClusters(data);
+    },
+    
+    // Estado inicial del conjunto de marcadores compartido
+    setDatasetMarkers: function (data) {
+        this._handleUpdateDataset(data);
+    },
+    
+    // Estado inicial de las líneas y polígonos
+    setShapes: function (data) {
+        this._handleUpdateShapes(data);
+    },
+    
+    // Definiciones de los estilos de marcador, antes que los marcadores
+    setMarkerStyles: function (styles) {
+        zkoss.component.map.core.MarkerStyles.define(this, styles);
+    },
+    
     // Creación del widget
     bind_: function () {
         this.$supers(zkoss.component.map.openlayers.OLMap, 'bind_', arguments);
         
-        // Verificar que OpenLayers esté cargado
-        if (typeof ol === 'undefined') {
-            console.error('OpenLayers no está disponible');
-            this._loadOpenLayers();
+        // Creación diferida: el servidor envía el estado cuando el mapa se ve
+        if (this._lazyInit) {
+            const wgt = this;
+            zkoss.component.map.core.MapVisibility.observe(this, function () {
+                // La librería se carga mientras llega el estado
+                zkoss.component.map.core.MapLoader.load('openlayers').catch(function () {});
+                wgt.fire('onMapShow', null, {toServer: true});
+            });
             return;
         }
         
-        // Inicializar el mapa
-        this._initMap();
-    },
-    
-    // Cargar OpenLayers dinámicamente
-    _loadOpenLayers: function() {
+        // OpenLayers se carga con el primer mapa de la página
+        const loader = zkoss.component.map.core.MapLoader;
+        if (loader.isLoaded('openlayers')) {
+            this._initMap();
+            return;
+        }
         const self = this;
-        
-        // Cargar CSS
-        const cssLink = document.createElement('link');
-        cssLink.rel = 'stylesheet';
-        cssLink.href = 'https://cdn.jsdelivr.net/npm/ol@v7.2.2/ol.css';
-        document.head.appendChild(cssLink);
-        
-        // Cargar JS
-        const script = document.createElement('script');
-        script.type = 'text/javascript';
-        script.src = 'https://cdn.jsdelivr.net/npm/ol@v7.2.2';
-        script.onload = function() {
-            self._initMap();
-        };
-        document.head.appendChild(script);
+        loader.load('openlayers').then(function () {
+            if (self.desktop && !self._map) {
+                self._initMap();
+            }
+        }, function (error) {
+            console.error('OpenLayers no está disponible', error);
+        });
     },
     
     // Inicialización del mapa
@@ -101,9 +215,18 @@ zkoss.component.map.openlayers.OLMap = zk.$extends(zul.Widget, {
             zoom: this._zoom
         });
         
-        // Crear capa de marcadores
-        this._markerLayer = new ol.layer.Vector({
-            source: new ol.source.Vector()
+        // Crear capas de formas, marcadores y clusters
+        this._shapeStyles = {};
+        this._shapeLayer = new ol.layer.Vector({
+            source: new ol.source.Vector(),
+            style: this._shapeStyle.bind(this)
+        });
+        this._datasetLayer = this._createMarkerLayer();
+        this._markerLayer = this._createMarkerLayer();
+        this._clusterStyles = {};
+        this._clusterLayer = new ol.layer.Vector({
+            source: new ol.source.Vector(),
+            style: this._clusterStyle.bind(this)
         });
         
         // Crear mapa
@@ -111,23 +234,66 @@ zkoss.component.map.openlayers.OLMap = zk.$extends(zul.Widget, {
             target: node,
             layers: [
                 this._baseLayers[this._mapType], // Capa base inicial
-                this._markerLayer  // Capa de marcadores
+                this._shapeLayer,   // Capa de líneas y polígonos
+                this._datasetLayer, // Capa del conjunto compartido
+                this._markerLayer,  // Capa de marcadores
+                this._clusterLayer  // Capa de clusters
             ],
             view: this._view
         });
         
+        // Arrastre de marcadores (solo la capa de marcadores sueltos)
+        this._translate = new ol.interaction.Translate({
+            layers: [this._markerLayer]
+        });
+        this._translate.setActive(this._markersDraggable);
+        this._map.addInteraction(this._translate);
+        
         // Actualizar controles
         this._updateControls();
         
         // Configurar eventos
         this._setupEvents();
+        this._markers = {};
+        this._datasetMarkers = {};
+        this._shapes = {};
         
-        // Si hay marcadores, añadirlos
-        if (this._markers && this._markers.length > 0) {
-            for (let i = 0; i < this._markers.length; i++) {
-                this._addMarkerToMap(this._markers[i], i);
+        // Si hay clusters o marcadores, añadirlos
+        if (this._clusters) {
+            this._handleSetClusters(this._clusters);
+        } else if (this._pendingMarkers) {
+            for (let i = 0; i < this._pendingMarkers.length; i++) {
+                this._addMarkerToMap(this._pendingMarkers[i]);
             }
         }
+        this._pendingMarkers = null;
+        this._applyPendingOps();
+        this._applyPendingDataset();
+        this._applyPendingShapes();
+    },
+    
+    // Crear una capa de marcadores. OpenLayers ya dibuja las capas
+    // vectoriales en canvas, así que dom y canvas son iguales; en webgl los
+    // puntos se dibujan en la GPU, como círculos con el color y el tamaño
+    // que cada feature lleva en sus propiedades y sin título
+    _createMarkerLayer: function () {
+        if (this._renderMode !== 'webgl') {
+            return new ol.layer.Vector({
+                source: new ol.source.Vector(),
+                style: this._featureStyle.bind(this)
+            });
+        }
+        return new ol.layer.WebGLPoints({
+            source: new ol.source.Vector(),
+            style: {
+                symbol: {
+                    symbolType: 'circle',
+                    size: ['get', 'size'],
+                    color: ['color', ['get', 'red'], ['get', 'green'], ['get', 'blue'], 1],
+                    rotateWithView: false
+                }
+            }
+        });
     },
     
     // Crear capas base disponibles
@@ -141,8 +307,7 @@ zkoss.component.map.openlayers.OLMap = zk.$extends(zul.Widget, {
         this._baseLayers.satellite = new ol.layer.Tile({
             visible: false,
             source: new ol.source.XYZ({
-                attributions: ['© Esri, Maxar, Earthstar Geographics, and the GIS User Community'],
-                url: 'https://server.arcgisonline.com/ArcGIS/rest/services/World_Imagery/MapServer/tile/{z}/{y}/{x}'
+                attributions: ['© Esri, Maxar, Earthstar Geographics, and the GIS User Community']
             })
         });
         
@@ -153,10 +318,26 @@ zkoss.component.map.openlayers.OLMap = zk.$extends(zul.Widget, {
                 attributions: ['Map tiles by <a href="http://stamen.com">Stamen Design</a>, ' +
                                'under <a href="http://creativecommons.org/licenses/by/3.0">CC BY 3.0</a>, ' +
                                'Data by <a href="http://openstreetmap.org">OpenStreetMap</a>, ' +
-                               'under <a href="http://www.openstreetmap.org/copyright">ODbL</a>'],
-                url: 'https://stamen-tiles.a.ssl.fastly.net/terrain/{z}/{x}/{y}.jpg'
+                               'under <a href="http://www.openstreetmap.org/copyright">ODbL</a>']
             })
         });
+        
+        this._updateTileUrls();
+    },
+    
+    // URLs de las capas base, directas o a través del proxy de tiles
+    _updateTileUrls: function () {
+        this._baseLayers.osm.getSource().setUrl(this._proxyUrl('osm',
+            'https://tile.openstreetmap.org/{z}/{x}/{y}.png'));
+        this._baseLayers.satellite.getSource().setUrl(this._proxyUrl('esri',
+            'https://server.arcgisonline.com/ArcGIS/rest/services/World_Imagery/MapServer/tile/{z}/{y}/{x}'));
+        this._baseLayers.terrain.getSource().setUrl(this._proxyUrl('stamen-terrain',
+            'https://stamen-tiles.a.ssl.fastly.net/terrain/{z}/{x}/{y}.jpg'));
+    },
+    
+    // URL de una capa a través del proxy de tiles, si está configurado
+    _proxyUrl: function (layer, url) {
+        return this._tileProxy ? this._tileProxy + '/' + layer + '/{z}/{x}/{y}' : url;
     },
     
     // Actualizar capa base según mapType
@@ -198,14 +379,44 @@ zkoss.component.map.openlayers.OLMap = zk.$extends(zul.Widget, {
     _setupEvents: function () {
         const self = this;
         
-        // Evento de clic en mapa
+        // Popup compartido por todos los marcadores
+        this._createPopup();
+        
+        // Un único manejador de clic para el mapa y todos los marcadores
         this._map.on('click', function (event) {
             // Verificar si se hizo clic en un marcador
             const feature = self._map.forEachFeatureAtPixel(event.pixel, function(feature) {
                 return feature;
             });
             
-            if (!feature) {
+            if (feature && feature.get('shape')) {
+                // Las formas no son marcadores: el clic sigue siendo en el mapa
+                if (feature.get('description')) {
+                    self._popupContent.innerHTML = feature.get('description');
+                    self._popup.setPosition(event.coordinate);
+                }
+                const coords = ol.proj.transform(event.coordinate, 'EPSG:3857', 'EPSG:4326');
+                self.fire('onMapClick', {
+                    data: [coords[1], coords[0]] // [lat, lng]
+                }, { toServer: true });
+            } else if (feature && feature.get('cluster')) {
+                self.fire('onClusterClick', {
+                    data: [feature.get('cluster')]
+                }, { toServer: true });
+            } else if (feature) {
+                // Mostrar popup si el marcador tiene descripción
+                if (feature.get('description')) {
+                    // Los puntos de los tiles vectoriales solo tienen coordenadas planas
+                    const geometry = feature.getGeometry();
+                    self._popupContent.innerHTML = feature.get('description');
+                    self._popup.setPosition(geometry.getCoordinates
+                        ? geometry.getCoordinates() : geometry.getFlatCoordinates().slice(0, 2));
+                }
+                
+                self.fire('onMarkerClick', {
+                    data: [feature.get('id')]
+                }, { toServer: true });
+            } else {
                 // No se hizo clic en un marcador, enviar evento de clic en mapa
                 const coords = ol.proj.transform(event.coordinate, 'EPSG:3857', 'EPSG:4326');
                 self.fire('onMapClick', {
@@ -213,40 +424,279 @@ zkoss.component.map.openlayers.OLMap = zk.$extends(zul.Widget, {
                 }, { toServer: true });
             }
         });
+        
+        // Informar la posición de los marcadores arrastrados
+        const dragged = function (event) {
+            const end = event.type === 'translateend';
+            event.features.forEach(function (feature) {
+                const entry = self._markers[feature.get('id')];
+                if (entry) {
+                    const coords = ol.proj.transform(
+                        feature.getGeometry().getCoordinates(), 'EPSG:3857', 'EPSG:4326');
+                    self._markerDragged(entry, coords[1], coords[0], end);
+                }
+            });
+        };
+        this._translate.on('translating', dragged);
+        this._translate.on('translateend', dragged);
+        
+        // Informar el área visible al terminar cada desplazamiento o zoom
+        this._map.on('moveend', function () {
+            self._reportViewport(false);
+            self._fireViewportChange();
+        });
+    },
+    
+    // Área visible [south, west, north, east]; east puede pasar de 180.
+    // Los límites no existen hasta que el mapa tiene tamaño
+    _visibleBounds: function () {
+        const size = this._map.getSize();
+        if (!size) return null;
+        const extent = ol.proj.transformExtent(
+            this._view.calculateExtent(size), 'EPSG:3857', 'EPSG:4326');
+        return [extent[1], extent[0], extent[3], extent[2]];
     },
     
-    // Añadir un marcador al mapa
-    _addMarkerToMap: function (markerData, index) {
+    // Datos de onViewportChange: [lat, lng, zoom, south, west, north, east]
+    _viewportChangeData: function () {
+        const view = this._map && this._visibleBounds();
+        if (!view) return null;
+        
+        const center = ol.proj.transform(this._view.getCenter(), 'EPSG:3857', 'EPSG:4326');
+        return [center[1], this._wrapLng(center[0]), Math.round(this._view.getZoom())]
+            .concat(this._normalizeBounds(view));
+    },
+    
+    // Informar el área visible cuando pasan viewportEventDelay ms sin moverse
+    _fireViewportChange: function () {
         const self = this;
+        zkoss.component.map.core.MapEvents.debounce(this, 'onViewportChange',
+            this._viewportEventDelay, function () {
+                const data = self._viewportChangeData();
+                return data && { data: data };
+            });
+    },
+    
+    // Informar la posición de un marcador arrastrado (regulada por
+    // dragEventInterval; al soltarlo se envía siempre)
+    _markerDragged: function (entry, lat, lng, end) {
+        entry.lat = lat;
+        entry.lng = this._wrapLng(lng);
+        const data = { data: [entry.id, entry.lat, entry.lng, end] };
+        const events = zkoss.component.map.core.MapEvents;
+        if (end) {
+            events.flush(this, 'onMarkerDrag', data);
+        } else {
+            events.throttle(this, 'onMarkerDrag', this._dragEventInterval, data);
+        }
+    },
+    
+    // Llevar una longitud al rango [-180, 180)
+    _wrapLng: function (lng) {
+        return ((lng + 180) % 360 + 360) % 360 - 180;
+    },
+    
+    // Informar al servidor el zoom y el área visible con margen, solo si
+    // la vista salió del área ya cargada o cambió el zoom
+    _reportViewport: function (force) {
+        if (!this._map || (!this._clustering && !this._viewportStreaming && !this._shapeCount
+                && !this._heatmap)) return;
         
-        // Crear punto geométrico
-        const point = new ol.geom.Point(
-            ol.proj.transform([markerData.lng, markerData.lat], 'EPSG:4326', 'EPSG:3857')
-        );
+        const view = this._visibleBounds();
+        if (!view) return;
+        const zoom = Math.round(this._view.getZoom());
+        if (!force && zoom === this._reportedZoom && ((!this._viewportStreaming && !this._clustering && !this._heatmap)
+                || (this._loadedBounds && this._containsBounds(this._loadedBounds, view)))) {
+            return;
+        }
         
-        // Crear feature
-        const feature = new ol.Feature({
-            geometry: point,
-            name: markerData.title || '',
-            description: markerData.description || '',
-            index: index
+        this._loadedBounds = this._expandBounds(view, this._viewportMargin);
+        this._reportedZoom = zoom;
+        this.fire('onMapViewport', {
+            data: [zoom].concat(this._normalizeBounds(this._loadedBounds))
+        }, { toServer: true });
+    },
+    
+    // Área [sur, oeste, norte, este] ampliada con un margen proporcional a su tamaño
+    _expandBounds: function (view, margin) {
+        const dLat = (view[2] - view[0]) * margin;
+        const dLng = (view[3] - view[1]) * margin;
+        return [Math.max(-90, view[0] - dLat), view[1] - dLng,
+                Math.min(90, view[2] + dLat), view[3] + dLng];
+    },
+    
+    // Indica si un área contiene a otra (longitudes sin normalizar)
+    _containsBounds: function (outer, inner) {
+        if (inner[0] < outer[0] || inner[2] > outer[2]) return false;
+        if (outer[3] - outer[1] >= 360) return true;
+        const west = inner[1] - 360 * Math.floor((inner[1] - outer[1]) / 360);
+        return west + (inner[3] - inner[1]) <= outer[3];
+    },
+    
+    // Longitudes en [-180, 180]; si el área cruza el antimeridiano el oeste queda mayor que el este
+    _normalizeBounds: function (bounds) {
+        if (bounds[3] - bounds[1] >= 360) {
+            return [bounds[0], -180, bounds[2], 180];
+        }
+        const wrap = function (lng) {
+            return ((lng + 180) % 360 + 360) % 360 - 180;
+        };
+        return [bounds[0], wrap(bounds[1]), bounds[2], wrap(bounds[3])];
+    },
+    
+    // Estilo de un cluster, compartido entre todos los clusters de igual cantidad
+    _clusterStyle: function (feature) {
+        const count = feature.get('count');
+        let style = this._clusterStyles[count];
+        if (!style) {
+            style = this._clusterStyles[count] = new ol.style.Style({
+                image: new ol.style.Circle({
+                    radius: count < 10 ? 14 : count < 100 ? 18 : 22,
+                    fill: new ol.style.Fill({
+                        color: count < 10 ? 'rgba(60, 160, 20, 0.8)'
+                            : count < 100 ? 'rgba(200, 150, 0, 0.8)' : 'rgba(220, 80, 0, 0.8)'
+                    }),
+                    stroke: new ol.style.Stroke({
+                        color: '#FFFFFF',
+                        width: 2
+                    })
+                }),
+                text: new ol.style.Text({
+                    text: String(count),
+                    fill: new ol.style.Fill({
+                        color: '#FFFFFF'
+                    })
+                })
+            });
+        }
+        return style;
+    },
+    
+    // Icono de imagen apoyado en su borde inferior. OpenLayers 7.2 no
+    // admite el tamaño en píxeles: la escala se calcula al cargar la imagen,
+    // antes de que OpenLayers vuelva a dibujar la capa
+    _createMarkerIcon: function (src, size) {
+        const icon = new ol.style.Icon({
+            src: src,
+            anchor: [0.5, 1]
+        });
+        if (size) {
+            const img = icon.getImage(1);
+            const fit = function () {
+                if (img.naturalWidth) {
+                    icon.setScale(size / Math.max(img.naturalWidth, img.naturalHeight));
+                }
+            };
+            if (img.complete) {
+                fit();
+            } else {
+                img.addEventListener('load', fit);
+            }
+        }
+        return icon;
+    },
+    
+    // Crear el overlay de popup (usando overlay)
+    _createPopup: function () {
+        const self = this;
+        const container = document.createElement('div');
+        container.className = 'ol-popup';
+        
+        const closer = document.createElement('a');
+        closer.href = '#';
+        closer.className = 'ol-popup-closer';
+        
+        const content = document.createElement('div');
+        
+        container.appendChild(closer);
+        container.appendChild(content);
+        
+        this._popupContent = content;
+        this._popup = new ol.Overlay({
+            element: container,
+            positioning: 'bottom-center',
+            stopEvent: false,
+            offset: [0, -10]
         });
+        this._map.addOverlay(this._popup);
         
-        // Estilo para el marcador
-        const markerStyle = new ol.style.Style({
-            image: new ol.style.Circle({
-                radius: 8,
+        // Cerrar popup
+        closer.onclick = function() {
+            self._popup.setPosition(undefined);
+            closer.blur();
+            return false;
+        };
+    },
+    
+    // Convertir una fila [lat, lng, title, description, id, style] en un
+    // marcador; el estilo solo viene si no es el por defecto
+    _rowToMarker: function (row) {
+        return {
+            lat: row[0],
+            lng: row[1],
+            title: row[2],
+            description: row[3],
+            id: row[4],
+            style: row[5] || 0
+        };
+    },
+    
+    // Estilo de las capas de marcadores a partir del feature
+    _featureStyle: function (feature) {
+        return this._markerStyle(feature.get('styleId'), feature.get('name'));
+    },
+    
+    // Estilo de un marcador, compartido por todos los de su estilo. Sin
+    // texto fijo, el del estilo compartido se cambia al título de cada
+    // marcador justo antes de dibujarlo, que es cuando OpenLayers lo lee
+    _markerStyle: function (id, title) {
+        const style = zkoss.component.map.core.MarkerStyles.get(this, id, 'openlayers', this._createMarkerStyle);
+        if (!style.fixedText) {
+            style.getText().setText(title || '');
+        }
+        return style;
+    },
+    
+    // Propiedades de dibujo de un estilo en la capa webgl
+    _pointStyle: function (id) {
+        return zkoss.component.map.core.MarkerStyles.get(this, id, 'openlayers-webgl', this._createPointStyle);
+    },
+    
+    // Crear las propiedades de dibujo de una definición: su color y su
+    // tamaño (una imagen se reduce a un círculo del tamaño indicado)
+    _createPointStyle: function (def) {
+        def = def || {};
+        const color = ol.color.asArray(def.color || '#FF0000');
+        return {
+            size: def.size || 16,
+            red: color[0],
+            green: color[1],
+            blue: color[2]
+        };
+    },
+    
+    // Crear el estilo de una definición: la imagen indicada o un círculo de
+    // color (el rojo por defecto), con el texto fijo si lo tiene
+    _createMarkerStyle: function (def) {
+        def = def || {};
+        const size = def.size || (def.icon ? 32 : 16);
+        const image = def.icon
+            ? this._createMarkerIcon(def.icon, def.size)
+            : new ol.style.Circle({
+                radius: size / 2,
                 fill: new ol.style.Fill({
-                    color: '#FF0000'
+                    color: def.color || '#FF0000'
                 }),
                 stroke: new ol.style.Stroke({
                     color: '#FFFFFF',
                     width: 2
                 })
-            }),
+            });
+        const style = new ol.style.Style({
+            image: image,
             text: new ol.style.Text({
-                text: markerData.title || '',
-                offsetY: -15,
+                text: def.label != null ? def.label : '',
+                offsetY: def.icon ? -size - 7 : -size / 2 - 7,
                 fill: new ol.style.Fill({
                     color: '#333333'
                 }),
@@ -256,96 +706,95 @@ zkoss.component.map.openlayers.OLMap = zk.$extends(zul.Widget, {
                 })
             })
         });
+        style.fixedText = def.label != null;
+        return style;
+    },
+    
+    // Añadir un marcador al mapa; en las cargas masivas solo crea el
+    // feature y el llamador lo añade a la capa junto con el resto del bloque.
+    // Los del conjunto compartido se guardan aparte y siempre van en bloque
+    _addMarkerToMap: function (markerData, bulk, dataset) {
+        // Crear punto geométrico
+        const point = new ol.geom.Point(
+            ol.proj.transform([markerData.lng, markerData.lat], 'EPSG:4326', 'EPSG:3857')
+        );
         
-        // Aplicar estilo
-        feature.setStyle(markerStyle);
+        // Crear feature
+        // El estilo lo pone la capa según el estilo y el título del feature
+        const feature = new ol.Feature({
+            geometry: point,
+            name: markerData.title || '',
+            description: markerData.description || '',
+            id: markerData.id,
+            styleId: markerData.style || 0
+        });
+        if (this._renderMode === 'webgl') {
+            feature.setProperties(this._pointStyle(markerData.style), true);
+        }
         
         // Añadir a la capa de marcadores
-        this._markerLayer.getSource().addFeature(feature);
+        if (!bulk) {
+            if (this._batchFeatures) {
+                this._batchFeatures.push(feature);
+            } else {
+                this._markerLayer.getSource().addFeature(feature);
+            }
+        }
         
-        // Guardar referencia al marcador
-        this._markers[index] = {
+        // Guardar referencia al marcador por su identificador
+        (dataset ? this._datasetMarkers : this._markers)[markerData.id] = {
             ...markerData,
             feature: feature
         };
-        
-        // Configurar popup y evento de clic
-        if (markerData.description) {
-            // Configurar popup en clic (usando overlay)
-            const container = document.createElement('div');
-            container.className = 'ol-popup';
-            
-            const closer = document.createElement('a');
-            closer.href = '#';
-            closer.className = 'ol-popup-closer';
-            
-            const content = document.createElement('div');
-            content.innerHTML = markerData.description;
-            
-            container.appendChild(closer);
-            container.appendChild(content);
-            
-            const overlay = new ol.Overlay({
-                element: container,
-                positioning: 'bottom-center',
-                stopEvent: false,
-                offset: [0, -10]
-            });
-            
-            this._map.addOverlay(overlay);
-            
-            // Cerrar popup
-            closer.onclick = function() {
-                overlay.setPosition(undefined);
-                closer.blur();
-                return false;
-            };
-            
-            // Evento de clic en el mapa para features
-            this._map.on('click', function(evt) {
-                const featureClicked = self._map.forEachFeatureAtPixel(evt.pixel, function(feature) {
-                    return feature;
-                });
-                
-                if (featureClicked === feature) {
-                    // Mostrar popup
-                    const coordinate = feature.getGeometry().getCoordinates();
-                    overlay.setPosition(coordinate);
-                    
-                    // Disparar evento
-                    self.fire('onMarkerClick', {
-                        data: [index]
-                    }, { toServer: true });
-                }
-            });
-        } else {
-            // Si no hay descripción, solo configurar el evento
-            this._map.on('click', function(evt) {
-                const featureClicked = self._map.forEachFeatureAtPixel(evt.pixel, function(feature) {
-                    return feature;
-                });
-                
-                if (featureClicked === feature) {
-                    self.fire('onMarkerClick', {
-                        data: [index]
-                    }, { toServer: true });
-                }
-            });
-        }
+        return feature;
     },
     
     // Limpiar recursos al cerrar
     unbind_: function () {
         if (this._map) {
+            if (this._renderMode === 'webgl') {
+                // Las capas webgl liberan su contexto de la GPU
+                this._markerLayer.dispose();
+                this._datasetLayer.dispose();
+            }
             this._map.setTarget(null);
             this._map = null;
         }
         
+        // Cancelar carga masiva en curso
+        if (this._chunkTimer) {
+            clearTimeout(this._chunkTimer);
+            this._chunkTimer = null;
+        }
+        this._chunks = null;
+        
         // Limpiar referencias
+        this._popup = null;
+        this._popupContent = null;
         this._view = null;
         this._markerLayer = null;
+        this._datasetLayer = null;
+        this._datasetTiles = null;
+        this._shapeLayer = null;
+        this._shapes = null;
+        this._shapeStyles = null;
+        this._shapeCount = 0;
+        this._pendingShapes = null;
+        this._heatmapLayer = null;
+        this._clusterLayer = null;
+        this._clusterStyles = null;
+        this._translate = null;
         this._baseLayers = {};
-        this._markers = [];
+        this._markers = null;
+        this._pendingMarkers = null;
+        this._pendingOps = null;
+        this._datasetMarkers = null;
+        this._pendingDataset = null;
+        this._loadedBounds = null;
+        this._reportedZoom = null;
+        zkoss.component.map.core.MapEvents.cancel(this);
+        zkoss.component.map.core.MarkerAnimator.cancel(this);
+        zkoss.component.map.core.MapVisibility.cancel(this);
         
         this.$supers(zkoss.component.map.openlayers.OLMap, 'unbind_', arguments);
     },
@@ -353,11 +802,29 @@ zkoss.component.map.openlayers.OLMap = zk.$extends(zul.Widget, {
     // Manejador de comandos del servidor
     service_: function (comando, args) {
         switch (comando) {
+            case 'batch':
+                this._applyBatch(args);
+                break;
             case 'addMarker':
                 this._handleAddMarker(args);
                 break;
+            case 'addMarkers':
+                this._handleAddMarkers(args);
+                break;
+            case 'setClusters':
+                this._handleSetClusters(args);
+                break;
+            case 'updateViewport':
+                this._handleUpdateViewport(args);
+                break;
             case 'removeMarker':
-                this._handleRemoveMarker(args.index);
+                this._handleRemoveMarker(args.id);
+                break;
+            case 'updateMarker':
+                this._handleUpdateMarker(args);
+                break;
+            case 'defineMarkerStyles':
+                zkoss.component.map.core.MarkerStyles.define(this, args);
                 break;
             case 'clearMarkers':
                 this._handleClearMarkers();
@@ -368,44 +835,471 @@ zkoss.component.map.openlayers.OLMap = zk.$extends(zul.Widget, {
             case 'setMapView':
                 this._handleSetMapView(args.lat, args.lng, args.zoom);
                 break;
+            case 'setZoom':
+                this._handleSetZoom(args.zoom);
+                break;
+            case 'updateDataset':
+                this._handleUpdateDataset(args);
+                break;
+            case 'updateShapes':
+                this._handleUpdateShapes(args);
+                break;
+            case 'updateHeatmap':
+                this._handleUpdateHeatmap(args);
+                break;
+            case 'trackFrame':
+                this._handleTrackFrame(args);
+                break;
             default:
                 this.$supers(zkoss.component.map.openlayers.OLMap, 'service_', arguments);
         }
     },
     
+    // Aplicar en una sola pasada la lista de comandos combinada en el
+    // servidor; los marcadores sueltos se añaden a la capa todos juntos
+    _applyBatch: function (ops) {
+        this._batchFeatures = [];
+        try {
+            for (let i = 0; i < ops.length; i++) {
+                this.service_(ops[i][0], ops[i][1]);
+            }
+        } finally {
+            this._commitBatchFeatures();
+            this._batchFeatures = null;
+        }
+    },
+    
+    // Añadir a la capa los marcadores acumulados de la lista en curso
+    _commitBatchFeatures: function () {
+        const features = this._batchFeatures;
+        if (features && features.length && this._markerLayer) {
+            this._markerLayer.getSource().addFeatures(features);
+            features.length = 0;
+        }
+    },
+    
     // Añadir marcador
     _handleAddMarker: function (markerData) {
+        if (!this._map) {
+            this._queuePending('_handleAddMarker', markerData);
+            return;
+        }
+        
+        this._addMarkerToMap(markerData);
+    },
+    
+    // Encolar un bloque de una carga masiva
+    _handleAddMarkers: function (chunk) {
+        if (!this._map) {
+            this._queuePending('_handleAddMarkers', chunk);
+            return;
+        }
+        
+        (this._chunks || (this._chunks = [])).push(chunk);
+        if (!this._chunkTimer) {
+            this._scheduleChunk();
+        }
+    },
+    
+    // Dibujar el siguiente bloque cediendo antes el control al navegador
+    _scheduleChunk: function () {
+        const self = this;
+        this._chunkTimer = setTimeout(function () {
+            self._chunkTimer = null;
+            const chunk = self._chunks.shift();
+            if (chunk) {
+                self._applyChunk(chunk);
+            }
+            if (self._chunks.length) {
+                self._scheduleChunk();
+            }
+        }, 0);
+    },
+    
+    // Dibujar un bloque completo con una sola llamada a addFeatures
+    _applyChunk: function (chunk) {
+        // En el modo webgl el bloque trae arreglos planos en lugar de filas
+        const rows = chunk.arrays
+            ? zkoss.component.map.core.MarkerCodec.decodeArrays(chunk.arrays) : chunk.markers;
+        const features = new Array(rows.length);
+        for (let i = 0; i < rows.length; i++) {
+            features[i] = this._addMarkerToMap(chunk.arrays ? rows[i] : this._rowToMarker(rows[i]), true);
+        }
+        this._markerLayer.getSource().addFeatures(features);
+        
+        // Notificar el avance (solo viaja al servidor si hay un listener)
+        this.fire('onMarkersLoad', {
+            data: [chunk.loaded, chunk.total]
+        });
+    },
+    
+    // Reemplazar los clusters y marcadores individuales del zoom actual
+    _handleSetClusters: function (data) {
+        this._clusters = data;
         if (!this._map) return;
         
-        // Añadir marcador al final del array
-        const index = this._markers.length;
-        this._addMarkerToMap(markerData, index);
+        const clusters = data.clusters;
+        const clusterFeatures = new Array(clusters.length);
+        for (let i = 0; i < clusters.length; i++) {
+            const cluster = clusters[i];
+            clusterFeatures[i] = new ol.Feature({
+                geometry: new ol.geom.Point(
+                    ol.proj.transform([cluster[1], cluster[0]], 'EPSG:4326', 'EPSG:3857')
+                ),
+                count: cluster[2],
+                cluster: cluster[3]
+            });
+        }
+        
+        const singles = data.markers;
+        const features = new Array(singles.length);
+        this._markers = {};
+        for (let i = 0; i < singles.length; i++) {
+            features[i] = this._addMarkerToMap(this._rowToMarker(singles[i]), true);
+        }
+        
+        const clusterSource = this._clusterLayer.getSource();
+        clusterSource.clear();
+        clusterSource.addFeatures(clusterFeatures);
+        const markerSource = this._markerLayer.getSource();
+        markerSource.clear();
+        markerSource.addFeatures(features);
+    },
+    
+    // Aplicar las altas y bajas de marcadores del área visible
+    _handleUpdateViewport: function (diff) {
+        if (!this._map) {
+            this._queuePending('_handleUpdateViewport', diff);
+            return;
+        }
+        
+        const source = this._markerLayer.getSource();
+        const removed = diff.remove;
+        for (let i = 0; i < removed.length; i++) {
+            this._handleRemoveMarker(removed[i]);
+        }
+        const added = diff.add;
+        const features = new Array(added.length);
+        for (let i = 0; i < added.length; i++) {
+            features[i] = this._addMarkerToMap(this._rowToMarker(added[i]), true);
+        }
+        source.addFeatures(features);
     },
     
     // Eliminar marcador
-    _handleRemoveMarker: function (index) {
-        if (!this._map || !this._markers[index]) return;
+    _handleRemoveMarker: function (id) {
+        if (!this._map) {
+            this._queuePending('_handleRemoveMarker', id);
+            return;
+        }
+        if (!this._markers[id]) return;
         
-        // Eliminar marcador de la capa
-        this._markerLayer.getSource().removeFeature(this._markers[index].feature);
+        // Eliminar marcador de la capa (antes se añaden los pendientes de la lista)
+        this._commitBatchFeatures();
+        this._markerLayer.getSource().removeFeature(this._markers[id].feature);
+        delete this._markers[id];
+    },
+    
+    // Aplicar solo los campos de un marcador que cambiaron
+    _handleUpdateMarker: function (changes) {
+        if (!this._map) {
+            this._queuePending('_handleUpdateMarker', changes);
+            return;
+        }
+        zkoss.component.map.core.MarkerAnimator.finish(this);
+        const entry = this._markers[changes.id];
+        if (entry) {
+            this._updateEntry(entry, changes);
+        }
+    },
+    
+    // Aplicar a un marcador dibujado los campos presentes en 'changes'
+    _updateEntry: function (entry, changes) {
+        const feature = entry.feature;
+        if (changes.lat !== undefined) {
+            entry.lat = changes.lat;
+            entry.lng = changes.lng;
+            feature.getGeometry().setCoordinates(
+                ol.proj.transform([changes.lng, changes.lat], 'EPSG:4326', 'EPSG:3857')
+            );
+        }
+        if (changes.title !== undefined) {
+            entry.title = changes.title;
+            feature.set('name', changes.title || '');
+        }
+        if (changes.description !== undefined) {
+            entry.description = changes.description;
+            feature.set('description', changes.description || '');
+        }
+        if (changes.style !== undefined) {
+            entry.style = changes.style;
+            feature.set('styleId', changes.style);
+            if (this._renderMode === 'webgl') {
+                feature.setProperties(this._pointStyle(changes.style));
+            }
+        }
+    },
+    
+    // Aplicar una versión del conjunto compartido: el estado completo
+    // (reset), las claves eliminadas y los marcadores nuevos o modificados,
+    // o la URL de sus tiles vectoriales (tiles).
+    // Los nuevos se añaden a la capa en una sola llamada
+    _handleUpdateDataset: function (data) {
+        if (!this._map) {
+            if (data.reset || data.tiles || !this._pendingDataset) {
+                this._pendingDataset = [];
+            }
+            this._pendingDataset.push(data);
+            return;
+        }
         
-        // Eliminar del array
-        this._markers.splice(index, 1);
+        const source = this._datasetLayer.getSource();
+        if (data.tiles) {
+            source.clear();
+            this._datasetMarkers = {};
+            this._setDatasetTiles(data.tiles);
+            return;
+        }
+        this._setDatasetTiles(null);
+        if (data.reset) {
+            source.clear();
+            this._datasetMarkers = {};
+        } else {
+            for (let i = 0; i < data.remove.length; i++) {
+                const entry = this._datasetMarkers[data.remove[i]];
+                if (entry) {
+                    source.removeFeature(entry.feature);
+                    delete this._datasetMarkers[data.remove[i]];
+                }
+            }
+        }
+        const markers = zkoss.component.map.core.MarkerCodec.decode(data.markers);
+        const features = [];
+        for (let i = 0; i < markers.length; i++) {
+            const entry = this._datasetMarkers[markers[i].id];
+            if (entry) {
+                this._updateEntry(entry, markers[i]);
+            } else {
+                features.push(this._addMarkerToMap(markers[i], true, true));
+            }
+        }
+        if (features.length) {
+            source.addFeatures(features);
+        }
+    },
+    
+    // Crear, actualizar o quitar la capa de tiles vectoriales del conjunto.
+    // Cada versión tiene su propia URL, así que basta con cambiarla
+    _setDatasetTiles: function (url) {
+        if (!url) {
+            if (this._datasetTiles) {
+                this._map.removeLayer(this._datasetTiles);
+                this._datasetTiles = null;
+            }
+            return;
+        }
+        if (this._datasetTiles) {
+            this._datasetTiles.getSource().setUrl(url);
+            return;
+        }
+        
+        const self = this;
+        this._datasetTiles = new ol.layer.VectorTile({
+            source: new ol.source.VectorTile({
+                format: new ol.format.MVT(),
+                url: url
+            }),
+            style: function (feature) {
+                return self._markerStyle(0, feature.get('title'));
+            }
+        });
+        const layers = this._map.getLayers();
+        layers.insertAt(layers.getArray().indexOf(this._datasetLayer) + 1, this._datasetTiles);
+    },
+    
+    // Guardar un comando de marcadores recibido antes de crear el mapa
+    _queuePending: function (handler, data) {
+        (this._pendingOps || (this._pendingOps = [])).push([handler, data]);
+    },
+    
+    // Aplicar, en el orden en que llegaron, los comandos de marcadores
+    // recibidos antes de crear el mapa
+    _applyPendingOps: function () {
+        const pending = this._pendingOps;
+        this._pendingOps = null;
+        if (pending) {
+            for (let i = 0; i < pending.length; i++) {
+                this[pending[i][0]](pending[i][1]);
+            }
+        }
+    },
+    
+    // Aplicar las versiones del conjunto recibidas antes de crear el mapa
+    _applyPendingDataset: function () {
+        const pending = this._pendingDataset;
+        this._pendingDataset = null;
+        if (pending) {
+            for (let i = 0; i < pending.length; i++) {
+                this._handleUpdateDataset(pending[i]);
+            }
+        }
+    },
+    
+    // Celdas del mapa de calor enviadas por el servidor, dibujadas con la
+    // capa de calor de OpenLayers: un punto por celda con su intensidad
+    _handleUpdateHeatmap: function (data) {
+        if (!this._map) return;
+        
+        if (!data || !this._heatmap) {
+            if (this._heatmapLayer) {
+                this._map.removeLayer(this._heatmapLayer);
+                this._heatmapLayer = null;
+            }
+            return;
+        }
+        if (!this._heatmapLayer) {
+            this._heatmapLayer = new ol.layer.Heatmap({
+                source: new ol.source.Vector()
+            });
+            const layers = this._map.getLayers();
+            layers.insertAt(layers.getArray().indexOf(this._shapeLayer) + 1, this._heatmapLayer);
+        }
+        this._heatmapLayer.setRadius(data.cell);
+        this._heatmapLayer.setBlur(data.cell);
+        
+        const renderer = zkoss.component.map.core.HeatmapRenderer;
+        const cells = zkoss.component.map.core.MarkerCodec.decodeCells(data);
+        const features = new Array(cells.length);
+        for (let i = 0; i < cells.length; i++) {
+            features[i] = new ol.Feature({
+                geometry: new ol.geom.Point(ol.proj.fromLonLat([cells[i].lng, cells[i].lat])),
+                weight: renderer.intensity(cells[i].count, data.max)
+            });
+        }
+        const source = this._heatmapLayer.getSource();
+        source.clear(true);
+        source.addFeatures(features);
+    },
+    
+    // Mover los marcadores de un cuadro del seguimiento en vivo
+    _handleTrackFrame: function (frame) {
+        if (!this._map) {
+            this._queuePending('_handleTrackFrame', frame);
+            return;
+        }
+        zkoss.component.map.core.MarkerAnimator.apply(this, frame, this._markers, this._moveEntry);
+    },
+    
+    // Mover el marcador dibujado de una entrada
+    _moveEntry: function (entry, lat, lng) {
+        entry.feature.getGeometry().setCoordinates(ol.proj.fromLonLat([lng, lat]));
+    },
+    
+    // Aplicar las formas enviadas por el servidor: todas con el detalle del
+    // zoom actual (reset) o las eliminadas y las nuevas
+    _handleUpdateShapes: function (data) {
+        if (!this._map) {
+            if (data.reset || !this._pendingShapes) {
+                this._pendingShapes = [];
+            }
+            this._pendingShapes.push(data);
+            return;
+        }
+        
+        const source = this._shapeLayer.getSource();
+        if (data.reset) {
+            source.clear();
+            this._shapes = {};
+        } else {
+            for (let i = 0; i < data.remove.length; i++) {
+                const feature = this._shapes[data.remove[i]];
+                if (feature) {
+                    source.removeFeature(feature);
+                    delete this._shapes[data.remove[i]];
+                }
+            }
+        }
+        const features = [];
+        for (let i = 0; i < data.shapes.length; i++) {
+            const shape = data.shapes[i];
+            const path = zkoss.component.map.core.MarkerCodec.decodePath(shape, data.p);
+            const coords = path.map(function (vertex) {
+                return ol.proj.fromLonLat([vertex[1], vertex[0]]);
+            });
+            const feature = new ol.Feature({
+                geometry: shape.type === 'polygon'
+                    ? new ol.geom.Polygon([coords.concat([coords[0]])])
+                    : new ol.geom.LineString(coords),
+                shape: true,
+                title: shape.title,
+                description: shape.description,
+                color: shape.color
+            });
+            this._shapes[shape.id] = feature;
+            features.push(feature);
+        }
+        source.addFeatures(features);
+        
+        // Con formas el servidor necesita el zoom para enviar su detalle
+        const first = !this._shapeCount;
+        this._shapeCount = data.count;
+        if (first && data.count) {
+            this._reportViewport(true);
+        }
+    },
+    
+    // Estilo de las formas: el color indicado o el azul por defecto
+    _shapeStyle: function (feature) {
+        const color = feature.get('color') || '#3388FF';
+        let style = this._shapeStyles[color];
+        if (!style) {
+            const fill = ol.color.asArray(color).slice();
+            fill[3] = 0.2;
+            style = new ol.style.Style({
+                stroke: new ol.style.Stroke({ color: color, width: 3 }),
+                fill: new ol.style.Fill({ color: fill })
+            });
+            this._shapeStyles[color] = style;
+        }
+        return style;
+    },
+    
+    // Aplicar las formas recibidas antes de crear el mapa
+    _applyPendingShapes: function () {
+        const pending = this._pendingShapes;
+        this._pendingShapes = null;
+        if (pending) {
+            for (let i = 0; i < pending.length; i++) {
+                this._handleUpdateShapes(pending[i]);
+            }
+        }
     },
     
     // Limpiar todos los marcadores
     _handleClearMarkers: function () {
-        if (!this._map) return;
+        if (!this._map) {
+            this._pendingMarkers = null;
+            this._pendingOps = null;
+            return;
+        }
         
         // Limpiar capa de marcadores
         this._markerLayer.getSource().clear();
+        if (this._batchFeatures) {
+            this._batchFeatures.length = 0;
+        }
         
-        // Limpiar array
-        this._markers = [];
+        // Limpiar marcadores y bloques pendientes
+        this._markers = {};
+        if (this._chunks) {
+            this._chunks.length = 0;
+        }
     },
     
     // Centrar mapa
     _handleCenterMap: function (lat, lng) {
+        this._latitude = lat;
+        this._longitude = lng;
         if (!this._view) return;
         
         const center = ol.proj.transform([lng, lat], 'EPSG:4326', 'EPSG:3857');
@@ -414,10 +1308,21 @@ zkoss.component.map.openlayers.OLMap = zk.$extends(zul.Widget, {
     
     // Establecer vista completa
     _handleSetMapView: function (lat, lng, zoom) {
+        this._latitude = lat;
+        this._longitude = lng;
+        this._zoom = zoom;
         if (!this._view) return;
         
         const center = ol.proj.transform([lng, lat], 'EPSG:4326', 'EPSG:3857');
         this._view.setCenter(center);
+        this._view.setZoom(zoom);
+    },
+    
+    // Cambiar el zoom sin mover el centro
+    _handleSetZoom: function (zoom) {
+        this._zoom = zoom;
+        if (!this._view) return;
+        
         this._view.setZoom(zoom);
     }
 });
@@ -0,0 +1,75 @@
+package com.zkoss.component.map.tiles;
+
+/**
+ * Imagen de un tile con los datos de caché recibidos del proveedor
+ */
+public final class Tile {
+
+    private final byte[] data;
+    private final String contentType;
+    private final String etag;
+    private final long expires;
+
+    /**
+     * Constructor para un tile
+     *
+     * @param data Contenido de la imagen
+     * @param contentType Tipo MIME de la imagen
+     * @param etag ETag del proveedor (puede ser null)
+     * @param expires Instante de caducidad en milisegundos desde la época
+     */
+    public Tile(byte[] data, String contentType, String etag, long expires) {
+        this.data = data;
+        this.contentType = contentType;
+        this.etag = etag;
+        this.expires = expires;
+    }
+
+    /**
+     * Obtiene el contenido de la imagen; no debe modificarse
+     * @return Bytes de la imagen
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Obtiene el tipo MIME de la imagen
+     * @return Tipo MIME
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Obtiene el ETag del proveedor
+     * @return ETag, null si el proveedor no lo envió
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Obtiene el instante de caducidad
+     * @return Milisegundos desde la época
+     */
+    public long getExpires() {
+        return expires;
+    }
+
+    /**
+     * Indica si el tile caducó
+     * @param now Instante actual en milisegundos
+     * @return true si hay que volver a validarlo con el proveedor
+     */
+    public boolean isExpired(long now) {
+        return now >= expires;
+    }
+
+    /**
+     * Copia con otra caducidad, tras revalidarlo con el proveedor
+     */
+    Tile withExpires(long expires) {
+        return new Tile(data, contentType, etag, expires);
+    }
+}
@@ -0,0 +1,222 @@
+package com.zkoss.component.map.tiles;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Caché LRU de tiles en dos niveles: memoria y disco, cada uno con su
+ * límite en bytes. Los tiles expulsados de memoria siguen en disco; los
+ * leídos del disco vuelven a memoria. En disco cada tile es un archivo
+ * con una cabecera (caducidad, tipo MIME y ETag) seguida de la imagen,
+ * escrito en un temporal y movido de forma atómica. Al arrancar se
+ * recupera el índice del disco ordenado por fecha de modificación.
+ */
+final class TileCache {
+
+    private static final int MAGIC = 0x5a4b5431; // "ZKT1"
+    private static final String SUFFIX = ".tile";
+
+    private final Path directory;
+    private final long memoryLimit;
+    private final long diskLimit;
+
+    private final LinkedHashMap<String, Tile> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryUsed;
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(1024, 0.75f, true); // clave -> bytes
+    private long diskUsed;
+
+    /**
+     * @param directory Directorio de la caché en disco
+     * @param memoryLimit Bytes de imagen como máximo en memoria
+     * @param diskLimit Bytes como máximo en disco (0 = sin disco)
+     */
+    TileCache(Path directory, long memoryLimit, long diskLimit) throws IOException {
+        this.directory = directory;
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = diskLimit;
+        if (diskLimit > 0) {
+            Files.createDirectories(directory);
+            loadIndex();
+        }
+    }
+
+    /**
+     * Obtiene un tile de memoria o, si no está, del disco
+     * @param key Clave "capa/z/x/y"
+     * @return Tile (quizá caducado), null si no está en caché
+     */
+    Tile get(String key) {
+        synchronized (this) {
+            final Tile tile = memory.get(key);
+            if (tile != null || disk.get(key) == null) {
+                return tile;
+            }
+        }
+        final Tile tile = read(key);
+        if (tile != null) {
+            synchronized (this) {
+                putMemory(key, tile);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Guarda un tile en memoria y en disco
+     * @param key Clave "capa/z/x/y"
+     * @param tile Tile a guardar
+     */
+    void put(String key, Tile tile) {
+        synchronized (this) {
+            putMemory(key, tile);
+        }
+        if (diskLimit > 0) {
+            final long size = write(key, tile);
+            if (size >= 0) {
+                final List<String> evicted = new ArrayList<>();
+                synchronized (this) {
+                    final Long previous = disk.put(key, size);
+                    diskUsed += size - (previous != null ? previous : 0);
+                    final Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+                    while (diskUsed > diskLimit && it.hasNext()) {
+                        final Map.Entry<String, Long> eldest = it.next();
+                        if (!eldest.getKey().equals(key)) {
+                            diskUsed -= eldest.getValue();
+                            evicted.add(eldest.getKey());
+                            it.remove();
+                        }
+                    }
+                }
+                for (String old : evicted) {
+                    delete(old);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bytes de imagen en memoria
+     */
+    synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * Bytes ocupados en disco
+     */
+    synchronized long getDiskUsed() {
+        return diskUsed;
+    }
+
+    private void putMemory(String key, Tile tile) {
+        final Tile previous = memory.put(key, tile);
+        memoryUsed += tile.getData().length - (previous != null ? previous.getData().length : 0);
+        final Iterator<Map.Entry<String, Tile>> it = memory.entrySet().iterator();
+        while (memoryUsed > memoryLimit && it.hasNext()) {
+            final Map.Entry<String, Tile> eldest = it.next();
+            memoryUsed -= eldest.getValue().getData().length;
+            it.remove();
+        }
+    }
+
+    private Path pathOf(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private Tile read(String key) {
+        try (InputStream file = Files.newInputStream(pathOf(key));
+                DataInputStream in = new DataInputStream(file)) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            final long expires = in.readLong();
+            final String contentType = in.readUTF();
+            final String etag = in.readUTF();
+            final byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return new Tile(data, contentType, etag.isEmpty() ? null : etag, expires);
+        } catch (IOException e) {
+            // Expulsado mientras se leía o archivo dañado: se pide de nuevo
+            return null;
+        }
+    }
+
+    /**
+     * @return Bytes escritos, -1 si no se pudo escribir
+     */
+    private long write(String key, Tile tile) {
+        final Path path = pathOf(key);
+        try {
+            Files.createDirectories(path.getParent());
+            final Path tmp = Files.createTempFile(path.getParent(), "tile", ".tmp");
+            try {
+                try (OutputStream file = Files.newOutputStream(tmp);
+                        DataOutputStream out = new DataOutputStream(file)) {
+                    out.writeInt(MAGIC);
+                    out.writeLong(tile.getExpires());
+                    out.writeUTF(tile.getContentType());
+                    out.writeUTF(tile.getEtag() != null ? tile.getEtag() : "");
+                    out.writeInt(tile.getData().length);
+                    out.write(tile.getData());
+                }
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            return Files.size(path);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(pathOf(key));
+        } catch (IOException e) {
+            // Se volverá a intentar si el tile se guarda y expulsa de nuevo
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        final List<Object[]> files = new ArrayList<>(); // {clave, bytes, modificación}
+        try (Stream<Path> walk = Files.walk(directory)) {
+            walk.filter(Files::isRegularFile).forEach(p -> {
+                try {
+                    final String file = p.getFileName().toString();
+                    if (file.endsWith(".tmp")) {
+                        // Temporal de una escritura interrumpida
+                        Files.deleteIfExists(p);
+                        return;
+                    } else if (!file.endsWith(SUFFIX)) {
+                        return;
+                    }
+                    final BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                    final String name = directory.relativize(p).toString().replace('\\', '/');
+                    files.add(new Object[] {name.substring(0, name.length() - SUFFIX.length()),
+                            attrs.size(), attrs.lastModifiedTime().toMillis()});
+                } catch (IOException e) {
+                    // Archivo borrado durante el recorrido
+                }
+            });
+        }
+        files.sort(Comparator.comparingLong(f -> (Long) f[2]));
+        for (Object[] f : files) {
+            disk.put((String) f[0], (Long) f[1]);
+            diskUsed += (Long) f[1];
+        }
+    }
+}
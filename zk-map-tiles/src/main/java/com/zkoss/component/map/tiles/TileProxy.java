@@ -0,0 +1,281 @@
+package com.zkoss.component.map.tiles;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Obtiene tiles de los proveedores a través de una {@link TileCache}.
+ * <ul>
+ * <li>Las peticiones simultáneas del mismo tile comparten una única
+ * descarga.</li>
+ * <li>La caducidad sale de Cache-Control (max-age) o Expires del
+ * proveedor, o de {@code defaultMaxAge}; un tile caducado se revalida
+ * con If-None-Match y, si el proveedor falla, se sigue sirviendo.</li>
+ * <li>Las descargas se hacen en hilos virtuales cuando la JVM los tiene
+ * (Java 21 o superior) y en un pool de hilos en otro caso, con un máximo
+ * de conexiones simultáneas por proxy para respetar los límites de los
+ * proveedores.</li>
+ * </ul>
+ * Las URL de las capas usan {z}, {x} e {y}, y opcionalmente {s} para
+ * repartir las peticiones entre subdominios (a, b, c).
+ */
+public class TileProxy implements AutoCloseable {
+
+    private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])max-age=(\\d+)");
+
+    private final Map<String, String> layers;
+    private final TileCache cache;
+    private final long defaultMaxAge;
+    private final Duration timeout;
+    private final String userAgent;
+    private final Semaphore connections;
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final ConcurrentHashMap<String, CompletableFuture<Tile>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor del proxy
+     *
+     * @param layers Capas disponibles: nombre -> URL del proveedor
+     * @param cacheDir Directorio de la caché en disco
+     * @param memoryLimit Bytes de imagen como máximo en memoria
+     * @param diskLimit Bytes como máximo en disco (0 = solo memoria)
+     * @param defaultMaxAge Vigencia en milisegundos si el proveedor no la indica
+     * @param timeout Tiempo máximo de cada descarga
+     * @param maxConnections Descargas simultáneas como máximo
+     * @param userAgent User-Agent de las descargas (algunos proveedores lo exigen)
+     * @throws IOException si no se puede preparar el directorio de la caché
+     */
+    public TileProxy(Map<String, String> layers, Path cacheDir, long memoryLimit, long diskLimit,
+            long defaultMaxAge, Duration timeout, int maxConnections, String userAgent) throws IOException {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("El máximo de conexiones debe ser mayor que 0");
+        }
+        this.layers = new LinkedHashMap<>(layers);
+        this.cache = new TileCache(cacheDir, memoryLimit, diskLimit);
+        this.defaultMaxAge = defaultMaxAge;
+        this.timeout = timeout;
+        this.userAgent = userAgent;
+        this.connections = new Semaphore(maxConnections);
+        this.executor = newExecutor();
+        this.client = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * Indica si existe una capa
+     * @param layer Nombre de la capa
+     * @return true si la capa está configurada
+     */
+    public boolean hasLayer(String layer) {
+        return layers.containsKey(layer);
+    }
+
+    /**
+     * Obtiene un tile de la caché o del proveedor
+     *
+     * @param layer Nombre de la capa
+     * @param z Nivel de zoom
+     * @param x Columna
+     * @param y Fila
+     * @return Tile, null si la capa no existe o el proveedor no lo tiene
+     * @throws IOException si el proveedor falla y no hay copia en caché
+     */
+    public Tile getTile(String layer, int z, int x, int y) throws IOException {
+        final String template = layers.get(layer);
+        if (template == null) {
+            return null;
+        }
+        final String key = layer + "/" + z + "/" + x + "/" + y;
+        final Tile cached = cache.get(key);
+        if (cached != null && !cached.isExpired(System.currentTimeMillis())) {
+            return cached;
+        }
+
+        // Una sola descarga por tile; el resto de peticiones la esperan
+        final CompletableFuture<Tile> created = new CompletableFuture<>();
+        CompletableFuture<Tile> pending = inFlight.putIfAbsent(key, created);
+        if (pending == null) {
+            pending = created;
+            final String url = expand(template, z, x, y);
+            // Se quita de las descargas en curso antes de completarla, para
+            // que una petición posterior no reciba una descarga ya terminada
+            executor.execute(() -> {
+                Tile tile = null;
+                Throwable error = null;
+                try {
+                    tile = load(key, url, cached);
+                } catch (Throwable e) {
+                    error = e;
+                }
+                inFlight.remove(key, created);
+                if (error != null) {
+                    created.completeExceptionally(error);
+                } else {
+                    created.complete(tile);
+                }
+            });
+        }
+        try {
+            // La espera incluye la cola de conexiones libres
+            return pending.get(timeout.toMillis() * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Descarga del tile interrumpida");
+        } catch (TimeoutException e) {
+            if (cached != null) {
+                return cached;
+            }
+            throw new IOException("Tiempo agotado al descargar el tile " + key, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Bytes de imagen en la caché en memoria
+     * @return Bytes ocupados
+     */
+    public long getMemoryUsed() {
+        return cache.getMemoryUsed();
+    }
+
+    /**
+     * Bytes de la caché en disco
+     * @return Bytes ocupados
+     */
+    public long getDiskUsed() {
+        return cache.getDiskUsed();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Descarga o revalida un tile y lo guarda en la caché
+     */
+    private Tile load(String key, String url, Tile stale) throws IOException, InterruptedException {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .header("User-Agent", userAgent);
+        if (stale != null && stale.getEtag() != null) {
+            request.header("If-None-Match", stale.getEtag());
+        }
+
+        final HttpResponse<byte[]> response;
+        connections.acquire();
+        try {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            if (stale != null) {
+                return stale;
+            }
+            throw e;
+        } finally {
+            connections.release();
+        }
+
+        final int status = response.statusCode();
+        if (status == 304 && stale != null) {
+            final Tile revalidated = stale.withExpires(expiresOf(response));
+            cache.put(key, revalidated);
+            return revalidated;
+        }
+        if (status == 404 || status == 204) {
+            return null;
+        }
+        if (status != 200) {
+            if (stale != null) {
+                return stale;
+            }
+            throw new IOException("El proveedor respondió " + status + " para " + key);
+        }
+
+        final Tile tile = new Tile(response.body(),
+                response.headers().firstValue("Content-Type").orElse("image/png"),
+                response.headers().firstValue("ETag").orElse(null),
+                expiresOf(response));
+        if (!response.headers().firstValue("Cache-Control").orElse("").contains("no-store")) {
+            cache.put(key, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Caducidad según Cache-Control (max-age) o Expires del proveedor
+     */
+    private long expiresOf(HttpResponse<?> response) {
+        final long now = System.currentTimeMillis();
+        final Matcher maxAge = MAX_AGE.matcher(response.headers().firstValue("Cache-Control").orElse(""));
+        if (maxAge.find()) {
+            try {
+                return now + Long.parseLong(maxAge.group(1)) * 1000;
+            } catch (NumberFormatException e) {
+                // Valor fuera de rango: se usa la vigencia por defecto
+            }
+        }
+        final String expires = response.headers().firstValue("Expires").orElse(null);
+        if (expires != null) {
+            try {
+                return ZonedDateTime.parse(expires, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                // Fecha inválida: se usa la vigencia por defecto
+            }
+        }
+        return now + defaultMaxAge;
+    }
+
+    /**
+     * Sustituye {z}, {x}, {y} y {s} en la URL de una capa
+     */
+    static String expand(String template, int z, int x, int y) {
+        return template
+                .replace("{z}", Integer.toString(z))
+                .replace("{x}", Integer.toString(x))
+                .replace("{y}", Integer.toString(y))
+                .replace("{s}", String.valueOf((char) ('a' + Math.floorMod(x + y, 3))));
+    }
+
+    /**
+     * Hilos virtuales si la JVM los tiene (Java 21+); el módulo compila
+     * para Java 11, por eso se buscan por reflexión
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                final Thread thread = new Thread(task, "zk-map-tiles");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.zkoss.component.map.tiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet que sirve los tiles de los mapas a través de un {@link TileProxy},
+ * de modo que todos los usuarios comparten una misma caché en lugar de
+ * descargar cada uno los tiles del proveedor.
+ * <p>
+ * Atiende rutas {@code /{capa}/{z}/{x}/{y}} (con extensión opcional) bajo
+ * su mapeo, por ejemplo {@code /tiles/*}. Parámetros de inicio:
+ * <ul>
+ * <li>{@code cacheDir}: directorio de la caché (por defecto, zk-map-tiles
+ * en el directorio temporal de la aplicación)</li>
+ * <li>{@code memoryCacheSize} y {@code diskCacheSize}: límites en MB
+ * (por defecto 64 y 1024; 0 en disco para usar solo memoria)</li>
+ * <li>{@code maxAge}: vigencia en segundos si el proveedor no la indica
+ * (por defecto 7 días)</li>
+ * <li>{@code timeout}: tiempo máximo de cada descarga en segundos (10)</li>
+ * <li>{@code maxConnections}: descargas simultáneas como máximo (4)</li>
+ * <li>{@code userAgent}: User-Agent de las descargas</li>
+ * <li>{@code layer.<nombre>}: URL de una capa con {z}, {x}, {y} y {s};
+ * agrega capas a las predefinidas (osm, carto, carto-voyager, esri,
+ * stamen-terrain) o las reemplaza</li>
+ * </ul>
+ */
+public class TileProxyServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    /** Capas predefinidas, con los mismos proveedores que los componentes */
+    public static final Map<String, String> DEFAULT_LAYERS;
+
+    static {
+        final Map<String, String> layers = new LinkedHashMap<>();
+        layers.put("osm", "https://tile.openstreetmap.org/{z}/{x}/{y}.png");
+        layers.put("carto", "https://{s}.basemaps.cartocdn.com/light_all/{z}/{x}/{y}.png");
+        layers.put("carto-voyager", "https://{s}.basemaps.cartocdn.com/rastertiles/voyager/{z}/{x}/{y}.png");
+        layers.put("esri", "https://server.arcgisonline.com/ArcGIS/rest/services/World_Imagery/MapServer/tile/{z}/{y}/{x}");
+        layers.put("stamen-terrain", "https://stamen-tiles.a.ssl.fastly.net/terrain/{z}/{x}/{y}.jpg");
+        DEFAULT_LAYERS = Collections.unmodifiableMap(layers);
+    }
+
+    private static final int MAX_ZOOM = 22;
+
+    private transient TileProxy proxy;
+
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        final ServletContext context = config.getServletContext();
+
+        final Map<String, String> layers = new LinkedHashMap<>(DEFAULT_LAYERS);
+        for (String name : Collections.list(config.getInitParameterNames())) {
+            if (name.startsWith("layer.")) {
+                layers.put(name.substring("layer.".length()), config.getInitParameter(name));
+            }
+        }
+
+        String cacheDir = config.getInitParameter("cacheDir");
+        if (cacheDir == null) {
+            final File tmp = (File) context.getAttribute(ServletContext.TEMPDIR);
+            cacheDir = new File(tmp != null ? tmp : new File(System.getProperty("java.io.tmpdir")),
+                    "zk-map-tiles").getPath();
+        }
+
+        try {
+            proxy = new TileProxy(layers, new File(cacheDir).toPath(),
+                    longParam(config, "memoryCacheSize", 64) << 20,
+                    longParam(config, "diskCacheSize", 1024) << 20,
+                    longParam(config, "maxAge", 7 * 24 * 3600) * 1000,
+                    Duration.ofSeconds(longParam(config, "timeout", 10)),
+                    (int) longParam(config, "maxConnections", 4),
+                    config.getInitParameter("userAgent") != null
+                            ? config.getInitParameter("userAgent") : "zk-map-tiles/1.0");
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ServletException("No se pudo iniciar el proxy de tiles", e);
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        // /{capa}/{z}/{x}/{y}[.ext]
+        final String path = request.getPathInfo();
+        final String[] parts = path != null ? path.split("/") : new String[0];
+        if (parts.length != 5 || !parts[0].isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        final String layer = parts[1];
+        if (!proxy.hasLayer(layer)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        final int z, x, y;
+        try {
+            z = Integer.parseInt(parts[2]);
+            x = Integer.parseInt(parts[3]);
+            final int dot = parts[4].indexOf('.');
+            y = Integer.parseInt(dot < 0 ? parts[4] : parts[4].substring(0, dot));
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (z < 0 || z > MAX_ZOOM || x < 0 || y < 0 || x >= 1 << z || y >= 1 << z) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final Tile tile;
+        try {
+            tile = proxy.getTile(layer, z, x, y);
+        } catch (IOException e) {
+            log("Error al obtener el tile " + path, e);
+            response.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+            return;
+        }
+        if (tile == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final long maxAge = Math.max(0, (tile.getExpires() - System.currentTimeMillis()) / 1000);
+        response.setHeader("Cache-Control", "public, max-age=" + maxAge);
+        if (tile.getEtag() != null) {
+            response.setHeader("ETag", tile.getEtag());
+            if (tile.getEtag().equals(request.getHeader("If-None-Match"))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+        response.setContentType(tile.getContentType());
+        response.setContentLength(tile.getData().length);
+        response.getOutputStream().write(tile.getData());
+    }
+
+    @Override
+    public void destroy() {
+        if (proxy != null) {
+            proxy.close();
+        }
+        super.destroy();
+    }
+
+    private static long longParam(ServletConfig config, String name, long defaultValue) throws ServletException {
+        final String value = config.getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ServletException("Parámetro " + name + " inválido: " + value);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.zkoss.component.map.tiles;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Pruebas del proxy contra un proveedor local que responde lo que cada
+ * prueba indica y guarda las peticiones recibidas
+ */
+public class TileProxyTest {
+
+    private static final byte[] PNG = "png".getBytes(StandardCharsets.US_ASCII);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Headers> requests = new CopyOnWriteArrayList<>();
+    private volatile int status;
+    private volatile Headers responseHeaders;
+    private HttpServer upstream;
+    private TileProxy proxy;
+
+    @Before
+    public void setUp() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        upstream.createContext("/", this::respond);
+        upstream.start();
+        respondWith(200, "Content-Type", "image/webp", "ETag", "\"v1\"", "Cache-Control", "max-age=60");
+        proxy = new TileProxy(
+                Collections.singletonMap("osm", "http://127.0.0.1:" + upstream.getAddress().getPort()
+                        + "/{z}/{x}/{y}.png"),
+                folder.getRoot().toPath(), 1 << 20, 0, 60_000, Duration.ofSeconds(5), 2, "zk-map-test");
+    }
+
+    @After
+    public void tearDown() {
+        proxy.close();
+        upstream.stop(0);
+    }
+
+    @Test
+    public void cachesTiles() throws IOException {
+        final Tile first = proxy.getTile("osm", 3, 4, 5);
+        final Tile second = proxy.getTile("osm", 3, 4, 5);
+        assertSame(first, second);
+        assertEquals(1, requests.size());
+        assertArrayEquals(PNG, first.getData());
+        assertEquals(PNG.length, proxy.getMemoryUsed());
+    }
+
+    @Test
+    public void keepsProviderHeaders() throws IOException {
+        final long before = System.currentTimeMillis();
+        final Tile tile = proxy.getTile("osm", 3, 4, 5);
+        assertEquals("image/webp", tile.getContentType());
+        assertEquals("\"v1\"", tile.getEtag());
+        assertTrue(tile.getExpires() >= before + 60_000);
+        assertEquals("zk-map-test", requests.get(0).getFirst("User-Agent"));
+    }
+
+    @Test
+    public void revalidatesExpiredTiles() throws IOException {
+        respondWith(200, "ETag", "\"v1\"", "Cache-Control", "max-age=0");
+        final Tile stale = proxy.getTile("osm", 1, 0, 0);
+        respondWith(304, "Cache-Control", "max-age=60");
+        final Tile revalidated = proxy.getTile("osm", 1, 0, 0);
+        assertEquals(2, requests.size());
+        assertEquals("\"v1\"", requests.get(1).getFirst("If-None-Match"));
+        assertArrayEquals(stale.getData(), revalidated.getData());
+        assertFalse(revalidated.isExpired(System.currentTimeMillis()));
+        assertSame(revalidated, proxy.getTile("osm", 1, 0, 0));
+    }
+
+    @Test
+    public void doesNotCacheNoStore() throws IOException {
+        respondWith(200, "Cache-Control", "no-store");
+        proxy.getTile("osm", 2, 1, 1);
+        proxy.getTile("osm", 2, 1, 1);
+        assertEquals(2, requests.size());
+        assertEquals(0, proxy.getMemoryUsed());
+    }
+
+    @Test
+    public void missingTilesAreNull() throws IOException {
+        respondWith(404);
+        assertNull(proxy.getTile("osm", 2, 1, 1));
+        assertNull(proxy.getTile("otra", 2, 1, 1));
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void providerErrorsPassThrough() {
+        respondWith(503);
+        try {
+            proxy.getTile("osm", 2, 1, 1);
+            fail("Sin copia en caché el error del proveedor llega al llamador");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("503"));
+        }
+    }
+
+    @Test
+    public void servesStaleTilesWhenTheProviderFails() throws IOException {
+        respondWith(200, "Cache-Control", "max-age=0");
+        final Tile stale = proxy.getTile("osm", 2, 1, 1);
+        respondWith(500);
+        assertSame(stale, proxy.getTile("osm", 2, 1, 1));
+        assertEquals(2, requests.size());
+    }
+
+    /**
+     * Cambia la respuesta del proveedor: estado y pares nombre, valor
+     */
+    private void respondWith(int status, String... headers) {
+        final Headers values = new Headers();
+        for (int i = 0; i < headers.length; i += 2) {
+            values.add(headers[i], headers[i + 1]);
+        }
+        this.responseHeaders = values;
+        this.status = status;
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        requests.add(exchange.getRequestHeaders());
+        exchange.getResponseHeaders().putAll(responseHeaders);
+        final boolean body = status == 200;
+        exchange.sendResponseHeaders(status, body ? PNG.length : -1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (body) {
+                out.write(PNG);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.zkoss.component.map.vector;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.zkoss.component.map.core.MarkerDataset;
+import com.zkoss.component.map.core.Mercator;
+
+/**
+ * Codifica los marcadores de un conjunto compartido como un tile vectorial
+ * (Mapbox Vector Tile 2.1) con una capa "markers" de puntos y las
+ * propiedades id, title y description.
+ * <p>
+ * Los marcadores del tile salen del índice espacial de la versión del
+ * conjunto. Se incluye un margen alrededor del tile para que los iconos
+ * del borde no se corten, y se deja un solo punto por cada cuadro de 4×4
+ * píxeles de pantalla, porque los demás quedarían ocultos bajo su icono.
+ * <p>
+ * El protobuf se escribe a mano, sin dependencias: la especificación solo
+ * usa varints y campos de longitud delimitada.
+ */
+public final class VectorTileEncoder {
+
+    /** Nombre de la capa de marcadores */
+    public static final String LAYER = "markers";
+
+    /** Resolución del tile en unidades de geometría */
+    public static final int EXTENT = 4096;
+
+    /** Margen alrededor del tile, en unidades de geometría (8 píxeles) */
+    public static final int BUFFER = 128;
+
+    private static final int CELL = 4 * EXTENT / Mercator.TILE_SIZE; // Unidades por cuadro de 4×4 píxeles
+    private static final int GRID = (EXTENT + 2 * BUFFER) / CELL;
+
+    private static final String[] KEYS = {"id", "title", "description"};
+
+    private VectorTileEncoder() {
+    }
+
+    /**
+     * Codifica un tile
+     * @param snapshot Versión del conjunto
+     * @param z Nivel de zoom
+     * @param x Columna
+     * @param y Fila
+     * @return Tile en formato MVT, vacío si no hay marcadores
+     */
+    public static byte[] encode(MarkerDataset.Snapshot snapshot, int z, int x, int y) {
+        final double n = 1L << z;
+        final double margin = (double) BUFFER / EXTENT;
+        final double west = Math.max(-180, Mercator.lng((x - margin) / n));
+        final double east = Math.min(180, Mercator.lng((x + 1 + margin) / n));
+        final double north = Mercator.lat((y - margin) / n);
+        final double south = Mercator.lat((y + 1 + margin) / n);
+        final int[] indexes = snapshot.getMarkersIn(south, west, north, east);
+        if (indexes.length == 0) {
+            return new byte[0];
+        }
+
+        final Buffer features = new Buffer();
+        final Buffer feature = new Buffer();
+        final Buffer packed = new Buffer();
+        final Buffer geometry = new Buffer();
+        final Map<Object, Integer> values = new HashMap<>();
+        final Buffer valueTable = new Buffer();
+        final boolean[] taken = new boolean[GRID * GRID];
+
+        for (int index : indexes) {
+            final int px = (int) Math.round((Mercator.x(snapshot.getLongitude(index)) * n - x) * EXTENT);
+            final int py = (int) Math.round((Mercator.y(snapshot.getLatitude(index)) * n - y) * EXTENT);
+            if (px < -BUFFER || py < -BUFFER || px >= EXTENT + BUFFER || py >= EXTENT + BUFFER) {
+                continue;
+            }
+            final int cell = (py + BUFFER) / CELL * GRID + (px + BUFFER) / CELL;
+            if (taken[cell]) {
+                continue;
+            }
+            taken[cell] = true;
+
+            final long key = snapshot.getKey(index);
+            packed.reset();
+            packed.varint(0).varint(value(values, valueTable, key));
+            final String title = snapshot.getTitle(index);
+            if (title != null) {
+                packed.varint(1).varint(value(values, valueTable, title));
+            }
+            final String description = snapshot.getDescription(index);
+            if (description != null) {
+                packed.varint(2).varint(value(values, valueTable, description));
+            }
+
+            feature.reset();
+            feature.tag(1, 0).varint(key);
+            feature.tag(2, 2).bytes(packed);
+            feature.tag(3, 0).varint(1); // POINT
+            geometry.reset();
+            geometry.varint(9) // MoveTo, 1 punto
+                    .varint(zigzag(px))
+                    .varint(zigzag(py));
+            feature.tag(4, 2).bytes(geometry);
+            features.tag(2, 2).bytes(feature);
+        }
+
+        final Buffer layer = new Buffer();
+        layer.tag(15, 0).varint(2);
+        layer.tag(1, 2).string(LAYER);
+        layer.append(features);
+        for (String k : KEYS) {
+            layer.tag(3, 2).string(k);
+        }
+        layer.append(valueTable);
+        layer.tag(5, 0).varint(EXTENT);
+
+        final Buffer tile = new Buffer();
+        tile.tag(3, 2).bytes(layer);
+        return tile.toByteArray();
+    }
+
+    /**
+     * Índice de un valor en la tabla de la capa, agregándolo si es nuevo
+     */
+    private static int value(Map<Object, Integer> values, Buffer table, Object value) {
+        Integer index = values.get(value);
+        if (index == null) {
+            index = values.size();
+            values.put(value, index);
+            final Buffer message = new Buffer();
+            if (value instanceof Long) {
+                message.tag(5, 0).varint((Long) value); // uint_value
+            } else {
+                message.tag(1, 2).string((String) value); // string_value
+            }
+            table.tag(4, 2).bytes(message);
+        }
+        return index;
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    /**
+     * Búfer de bytes con las primitivas de protobuf
+     */
+    private static final class Buffer {
+        private byte[] data = new byte[256];
+        private int size;
+
+        Buffer tag(int field, int wireType) {
+            return varint(field << 3 | wireType);
+        }
+
+        Buffer varint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                data[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            data[size++] = (byte) v;
+            return this;
+        }
+
+        Buffer string(String s) {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, data, size, bytes.length);
+            size += bytes.length;
+            return this;
+        }
+
+        Buffer bytes(Buffer other) {
+            varint(other.size);
+            return append(other);
+        }
+
+        Buffer append(Buffer other) {
+            ensure(other.size);
+            System.arraycopy(other.data, 0, data, size, other.size);
+            size += other.size;
+            return this;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.zkoss.component.map.vector;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.zkoss.zk.ui.WebApp;
+import org.zkoss.zk.ui.WebApps;
+
+import com.zkoss.component.map.core.MarkerDataset;
+import com.zkoss.component.map.core.MarkerDatasets;
+
+/**
+ * Servlet que sirve los conjuntos de marcadores compartidos
+ * ({@link MarkerDatasets}) como tiles vectoriales, generados bajo demanda
+ * con {@link VectorTileEncoder}.
+ * <p>
+ * Atiende rutas {@code /{conjunto}/{z}/{x}/{y}.pbf} bajo su mapeo, por
+ * ejemplo {@code /mvt/*}, que es la URL que se asigna a la propiedad
+ * vectorTiles de los componentes. Los componentes agregan {@code ?v=} con
+ * la versión del conjunto: si coincide con la actual, el navegador puede
+ * guardar el tile sin caducidad, porque una versión nueva cambia la URL.
+ * <p>
+ * Los tiles generados se guardan en una caché LRU en memoria por versión;
+ * el parámetro de inicio {@code cacheSize} fija su límite en MB (por
+ * defecto 32).
+ */
+public class VectorTileServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    /** Tipo MIME de los tiles vectoriales */
+    public static final String CONTENT_TYPE = "application/vnd.mapbox-vector-tile";
+
+    private static final int MAX_ZOOM = 22;
+    private static final int ENTRY_OVERHEAD = 64; // Bytes por entrada, también para los tiles vacíos
+
+    private transient Map<String, byte[]> cache;
+    private long cacheLimit;
+    private long cacheUsed;
+
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        final String size = config.getInitParameter("cacheSize");
+        try {
+            cacheLimit = (size != null ? Long.parseLong(size.trim()) : 32) << 20;
+        } catch (NumberFormatException e) {
+            throw new ServletException("Parámetro cacheSize inválido: " + size);
+        }
+        cache = new LinkedHashMap<>(256, 0.75f, true);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        // /{conjunto}/{z}/{x}/{y}[.pbf]
+        final String path = request.getPathInfo();
+        final String[] parts = path != null ? path.split("/") : new String[0];
+        if (parts.length != 5 || !parts[0].isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        final int z, x, y;
+        try {
+            z = Integer.parseInt(parts[2]);
+            x = Integer.parseInt(parts[3]);
+            final int dot = parts[4].indexOf('.');
+            y = Integer.parseInt(dot < 0 ? parts[4] : parts[4].substring(0, dot));
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (z < 0 || z > MAX_ZOOM || x < 0 || y < 0 || x >= 1 << z || y >= 1 << z) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final WebApp webApp = WebApps.getCurrent();
+        final String name = parts[1]; // getPathInfo() ya viene decodificado
+        final MarkerDataset dataset = webApp != null ? MarkerDatasets.find(webApp, name) : null;
+        if (dataset == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final MarkerDataset.Snapshot snapshot = dataset.getSnapshot();
+        final String version = Long.toString(snapshot.getVersion());
+        final String etag = "\"" + version + "\"";
+        response.setHeader("Cache-Control", version.equals(request.getParameter("v"))
+                ? "public, max-age=31536000, immutable" : "no-cache");
+        response.setHeader("ETag", etag);
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        final byte[] tile = getTile(name, snapshot, z, x, y);
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(tile.length);
+        response.getOutputStream().write(tile);
+    }
+
+    /**
+     * Obtiene un tile de la caché o lo genera. Dos peticiones simultáneas
+     * del mismo tile pueden generarlo las dos; el resultado es el mismo
+     */
+    private byte[] getTile(String name, MarkerDataset.Snapshot snapshot, int z, int x, int y) {
+        final String key = name + "/" + snapshot.getVersion() + "/" + z + "/" + x + "/" + y;
+        synchronized (this) {
+            final byte[] cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final byte[] tile = VectorTileEncoder.encode(snapshot, z, x, y);
+        synchronized (this) {
+            final byte[] previous = cache.put(key, tile);
+            cacheUsed += tile.length + ENTRY_OVERHEAD - (previous != null ? previous.length + ENTRY_OVERHEAD : 0);
+            final Iterator<byte[]> it = cache.values().iterator();
+            while (cacheUsed > cacheLimit && it.hasNext()) {
+                cacheUsed -= it.next().length + ENTRY_OVERHEAD;
+                it.remove();
+            }
+        }
+        return tile;
+    }
+}